@@ -0,0 +1,112 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import se.bitcraze.crazyflie.lib.crazyflie.Crazyflie;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.log.LogAdapter;
+import se.bitcraze.crazyflie.lib.log.LogConfig;
+import se.bitcraze.crazyflie.lib.log.Logg;
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+/**
+ * Decoding of log data packets, with a log config of three floats and three 16 bit integers
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LogBenchmark {
+
+    private LogConfig mLogConfig;
+    private Logg mLogg;
+    private byte[] mLogData;
+    private CrtpPacket mLogDataPacket;
+
+    @Setup
+    public void setUp() {
+        mLogConfig = new LogConfig("bench", 10);
+        // memory variables don't need a TOC
+        mLogConfig.addMemory("stabilizer.roll", VariableType.FLOAT, 0x1000);
+        mLogConfig.addMemory("stabilizer.pitch", VariableType.FLOAT, 0x1004);
+        mLogConfig.addMemory("stabilizer.yaw", VariableType.FLOAT, 0x1008);
+        mLogConfig.addMemory("acc.x", VariableType.INT16_T, 0x100C);
+        mLogConfig.addMemory("acc.y", VariableType.INT16_T, 0x100E);
+        mLogConfig.addMemory("acc.z", VariableType.INT16_T, 0x1010);
+
+        // 18 bytes of variables, padded like the full size packets delivered by the radio
+        mLogData = new byte[26];
+        for (int i = 0; i < 18; i++) {
+            mLogData[i] = (byte) (i * 7);
+        }
+
+        mLogg = new Logg(new Crazyflie(new ReplayDriver()));
+        mLogg.addConfig(mLogConfig);
+        mLogg.addLogListener(new LogAdapter() {
+            @Override
+            public void logDataReceived(LogConfig logConfig, Map<String, Number> data, int timestamp) {
+            }
+        });
+
+        // log data: id, 3 byte timestamp, variables
+        byte[] payload = new byte[4 + mLogData.length];
+        payload[0] = (byte) mLogConfig.getId();
+        payload[1] = 0x10;
+        payload[2] = 0x20;
+        System.arraycopy(mLogData, 0, payload, 4, mLogData.length);
+        mLogDataPacket = new CrtpPacket((byte) 0x52, payload);
+    }
+
+    @Benchmark
+    public Map<String, Number> unpackLogData() {
+        return mLogConfig.unpackLogData(mLogData);
+    }
+
+    @Benchmark
+    public void newPacketReceived(Blackhole blackhole) {
+        mLogg.newPacketReceived(mLogDataPacket);
+        blackhole.consume(mLogDataPacket);
+    }
+
+}
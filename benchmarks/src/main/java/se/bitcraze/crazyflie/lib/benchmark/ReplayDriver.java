@@ -0,0 +1,101 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.benchmark;
+
+import se.bitcraze.crazyflie.lib.crazyradio.ConnectionData;
+import se.bitcraze.crazyflie.lib.crtp.CrtpDriver;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+
+/**
+ * In-memory driver that replays a fixed set of packets.
+ *
+ * The driver reports itself as connected until the given number of packets has been received,
+ * so a packet handler loop can be run on the benchmark thread. Sent packets are dropped.
+ */
+public class ReplayDriver extends CrtpDriver {
+
+    private final CrtpPacket[] mPackets;
+    private int mNext = 0;
+    private int mRemaining = 0;
+
+    public ReplayDriver(CrtpPacket... packets) {
+        this.mPackets = packets;
+    }
+
+    /**
+     * Replay the next packets
+     *
+     * @param count number of packets to return before the driver disconnects
+     */
+    public void replay(int count) {
+        this.mRemaining = count;
+    }
+
+    @Override
+    public void connect(ConnectionData connectionData) {
+        this.mConnectionData = connectionData;
+    }
+
+    @Override
+    public void disconnect() {
+        this.mRemaining = 0;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mRemaining > 0;
+    }
+
+    @Override
+    public void sendPacket(CrtpPacket packet) {
+    }
+
+    @Override
+    public CrtpPacket receivePacket(int wait) {
+        if (mRemaining == 0) {
+            return null;
+        }
+        mRemaining--;
+        CrtpPacket packet = mPackets[mNext];
+        mNext = (mNext + 1) % mPackets.length;
+        return packet;
+    }
+
+    @Override
+    public boolean scanSelected(int channel, int datarate, byte[] packet) {
+        return false;
+    }
+
+    @Override
+    public void startSendReceiveThread() {
+    }
+
+    @Override
+    public void stopSendReceiveThread() {
+    }
+
+}
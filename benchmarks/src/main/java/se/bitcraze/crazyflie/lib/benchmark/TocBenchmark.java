@@ -0,0 +1,84 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.bitcraze.crazyflie.lib.log.LogTocElement;
+import se.bitcraze.crazyflie.lib.toc.Toc;
+import se.bitcraze.crazyflie.lib.toc.TocElement;
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+/**
+ * Lookup of TOC elements by id
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TocBenchmark {
+
+    @Param({"50", "250"})
+    public int mTocSize;
+
+    private Toc mToc;
+    private int mNextId = 0;
+
+    @Setup
+    public void setUp() {
+        mToc = new Toc();
+        for (int i = 0; i < mTocSize; i++) {
+            TocElement tocElement = new LogTocElement();
+            tocElement.setIdent(i);
+            tocElement.setGroup("group" + (i / 10));
+            tocElement.setName("name" + i);
+            tocElement.setCtype(VariableType.FLOAT);
+            mToc.addElement(tocElement);
+        }
+    }
+
+    @Benchmark
+    public TocElement getElementById() {
+        mNextId = (mNextId + 1) % mTocSize;
+        return mToc.getElementById(mNextId);
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+/**
+ * Decoding of single variables and of a whole payload
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VariableTypeBenchmark {
+
+    @Param({"UINT8_T", "UINT16_T", "UINT32_T", "INT16_T", "FLOAT", "DOUBLE", "UINT64_T", "FP16"})
+    public VariableType mVariableType;
+
+    private ByteBuffer mBuffer;
+    private ByteBuffer mDirectBuffer;
+    private VariableType[] mTypes;
+    private double[] mValues;
+
+    @Setup
+    public void setUp() {
+        byte[] data = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30};
+        mBuffer = ByteBuffer.wrap(data).order(CrtpPacket.BYTE_ORDER);
+        mDirectBuffer = ByteBuffer.allocateDirect(data.length).order(CrtpPacket.BYTE_ORDER);
+        mDirectBuffer.put(data);
+        // a full 26 byte log payload of the benchmarked type
+        mTypes = new VariableType[26 / mVariableType.getSize()];
+        Arrays.fill(mTypes, mVariableType);
+        mValues = new double[mTypes.length];
+    }
+
+    @Benchmark
+    public Number parse() {
+        mBuffer.rewind();
+        return mVariableType.parse(mBuffer);
+    }
+
+    @Benchmark
+    public double getDouble() {
+        return mVariableType.getDouble(mBuffer, 4);
+    }
+
+    @Benchmark
+    public double getDoubleDirect() {
+        return mVariableType.getDouble(mDirectBuffer, 4);
+    }
+
+    @Benchmark
+    public double[] decodePayload() {
+        VariableType.decode(mBuffer, 4, mTypes, mValues);
+        return mValues;
+    }
+
+}
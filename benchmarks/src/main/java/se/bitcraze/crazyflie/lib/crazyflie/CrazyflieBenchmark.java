@@ -0,0 +1,136 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crazyflie;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.bitcraze.crazyflie.lib.benchmark.ReplayDriver;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket.Header;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPort;
+
+/**
+ * Dispatch of incoming packets to data listeners and matching of replies with pending requests.
+ *
+ * Lives in the crazyflie package to reach the package private packet resender.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CrazyflieBenchmark {
+
+    private final static int PACKETS_PER_INVOCATION = 1024;
+    private final static int PENDING_REQUESTS = 32;
+    // the resender has no thread here, so expired timeouts are dropped by clearing it regularly
+    private final static int CLEAR_INTERVAL = 4096;
+
+    private ReplayDriver mDriver;
+    private Crazyflie.IncomingPacketHandler mIncomingPacketHandler;
+
+    private PacketResender mPacketResender;
+    private CrtpPacket mRequest;
+    private CrtpPacket mReply;
+    private CrtpPacket mUnrelatedPacket;
+    private int mTrackCount = 0;
+
+    private static CrtpPacket createPacket(CrtpPort port, int channel, byte... payload) {
+        return new CrtpPacket(Header.valueOf(channel, port).getByte(), payload);
+    }
+
+    @Setup
+    public void setUp() {
+        // log data, param replies and console output, like a connected Crazyflie
+        mDriver = new ReplayDriver(
+                createPacket(CrtpPort.LOGGING, 2, new byte[24]),
+                createPacket(CrtpPort.LOGGING, 2, new byte[24]),
+                createPacket(CrtpPort.PARAMETERS, 1, new byte[] {3, 1, 0, 0, 0}),
+                createPacket(CrtpPort.CONSOLE, 0, new byte[] {'o', 'k'}));
+        Crazyflie crazyflie = new Crazyflie(mDriver);
+        for (CrtpPort port : new CrtpPort[] {CrtpPort.LOGGING, CrtpPort.PARAMETERS, CrtpPort.CONSOLE}) {
+            crazyflie.addDataListener(new DataListener(port) {
+                @Override
+                public void dataReceived(CrtpPacket packet) {
+                }
+            });
+        }
+        mIncomingPacketHandler = crazyflie.new IncomingPacketHandler();
+
+        mPacketResender = new PacketResender(crazyflie);
+        trackPendingRequests();
+        mRequest = createPacket(CrtpPort.PARAMETERS, 1, new byte[] {7});
+        mRequest.setExpectedReply(new byte[] {7});
+        mReply = createPacket(CrtpPort.PARAMETERS, 1, new byte[] {7, 42, 0, 0, 0});
+        mUnrelatedPacket = createPacket(CrtpPort.LOGGING, 2, new byte[24]);
+    }
+
+    private void trackPendingRequests() {
+        for (int i = 0; i < PENDING_REQUESTS; i++) {
+            CrtpPacket request = createPacket(CrtpPort.PARAMETERS, 1, new byte[] {(byte) (i + 100)});
+            request.setExpectedReply(new byte[] {(byte) (i + 100)});
+            mPacketResender.track(request, 1000, PacketResender.RESEND_FOREVER, null);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PACKETS_PER_INVOCATION)
+    public void dispatch() {
+        mDriver.replay(PACKETS_PER_INVOCATION);
+        mIncomingPacketHandler.run();
+    }
+
+    @Benchmark
+    public boolean resendMatchMiss() {
+        return mPacketResender.replyReceived(mUnrelatedPacket);
+    }
+
+    @Benchmark
+    public boolean resendMatchHit() {
+        if (++mTrackCount == CLEAR_INTERVAL) {
+            mTrackCount = 0;
+            mPacketResender.clear();
+            trackPendingRequests();
+        }
+        mPacketResender.track(mRequest, 1000, PacketResender.RESEND_FOREVER, null);
+        return mPacketResender.replyReceived(mReply);
+    }
+
+}
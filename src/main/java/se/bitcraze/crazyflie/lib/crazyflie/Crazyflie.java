@@ -31,7 +31,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,10 +54,21 @@ public class Crazyflie {
     private CrtpDriver mDriver;
     private Thread mIncomingPacketHandlerThread;
 
-    private LinkedBlockingDeque<CrtpPacket> mResendQueue = new LinkedBlockingDeque<CrtpPacket>();
-    private Thread mResendQueueHandlerThread;
-
-    private Set<DataListener> mDataListeners = new CopyOnWriteArraySet<DataListener>();
+    /**
+     * Default time to wait for an expected reply before a packet is resent
+     */
+    public final static long DEFAULT_RESEND_TIMEOUT_MS = 50;
+
+    private final PacketResender mPacketResender = new PacketResender(this);
+    private Thread mPacketResenderThread;
+    private volatile long mResendTimeoutMs = DEFAULT_RESEND_TIMEOUT_MS;
+    private volatile boolean mParamValueCacheEnabled = false;
+
+    // Data listener dispatch table with one copy-on-write slot per port and channel
+    private final static int CHANNELS_PER_PORT = 4;
+    private final static DataListener[] NO_DATA_LISTENERS = new DataListener[0];
+    private final AtomicReferenceArray<DataListener[]> mDataListeners = createDataListenerTable();
+    private final Object mDataListenerLock = new Object();
     private Set<PacketListener> mPacketListeners = new CopyOnWriteArraySet<PacketListener>();
 
     private State mState = State.DISCONNECTED;
@@ -139,10 +150,9 @@ public class Crazyflie {
             mIncomingPacketHandlerThread.start();
         }
 
-        if (mResendQueueHandlerThread == null) {
-            ResendQueueHandler rqh = new ResendQueueHandler();
-            mResendQueueHandlerThread = new Thread(rqh);
-            mResendQueueHandlerThread.start();
+        if (mPacketResenderThread == null) {
+            mPacketResenderThread = new Thread(mPacketResender);
+            mPacketResenderThread.start();
         }
 
     }
@@ -161,9 +171,11 @@ public class Crazyflie {
             if(mIncomingPacketHandlerThread != null) {
                 mIncomingPacketHandlerThread.interrupt();
             }
-            if(mResendQueueHandlerThread != null) {
-                mResendQueueHandlerThread.interrupt();
+            if(mPacketResenderThread != null) {
+                mPacketResenderThread.interrupt();
+                mPacketResenderThread = null;
             }
+            mPacketResender.clear();
             removePacketListener(mPacketListener);
             mState = State.DISCONNECTED;
         }
@@ -180,74 +192,82 @@ public class Crazyflie {
     }
 
     /**
-     * Send a packet through the driver interface
+     * Send a packet through the driver interface. If the packet has an expected reply,
+     * it is resent until the reply has been received.
      *
      * @param packet
      */
     // def send_packet(self, pk, expected_reply=(), resend=False):
     public void sendPacket(CrtpPacket packet){
-        if (mDriver.isConnected()) {
-            mDriver.sendPacket(packet);
+        sendPacket(packet, mResendTimeoutMs, PacketResender.RESEND_FOREVER, null);
+    }
 
+    /**
+     * Send a packet with an expected reply through the driver interface and notify the listener
+     * when the reply has been received or when no reply has been received after all resends.
+     *
+     * @param packet packet with an expected reply
+     * @param timeoutMs time to wait for the reply before the packet is resent
+     * @param maxResends max number of resends, -1 to resend until a reply is received
+     * @param listener listener to notify about the reply (can be <code>null</code>)
+     */
+    public void sendPacket(CrtpPacket packet, long timeoutMs, int maxResends, ReplyListener listener) {
+        if (mDriver.isConnected()) {
             if (packet.getExpectedReply() != null && packet.getExpectedReply().length > 0) {
-                //add packet to resend queue
-                if(!mResendQueue.contains(packet)) {
-                    mResendQueue.add(packet);
-                } else {
-                    mLogger.warn("Packet already exists in Queue.");
-                }
+                // track before sending so that a fast reply can not be missed
+                mPacketResender.track(packet, timeoutMs, maxResends, listener);
             }
+            mDriver.sendPacket(packet);
+        } else if (listener != null) {
+            listener.noReplyReceived(packet);
         }
     }
 
     /**
-     * Callback called for every packet received to check if we are
-     * waiting for an packet like this. If so, then remove it from the queue.
+     * Resend a packet without tracking it again. Called by the packet resender.
      *
      * @param packet
      */
-    private void checkReceivedPackets(CrtpPacket packet) {
-        // compare received packet with expectedReplies in resend queue
-        for(CrtpPacket resendQueuePacket : mResendQueue) {
-            if(isPacketMatchingExpectedReply(resendQueuePacket, packet)) {
-                mResendQueue.remove(resendQueuePacket);
-                // mLogger.debug("QUEUE REMOVE: " + resendQueuePacket);
-                break;
-            }
+    void resendPacket(CrtpPacket packet) {
+        if (mDriver.isConnected()) {
+            mDriver.sendPacket(packet);
         }
     }
 
-    private boolean isPacketMatchingExpectedReply(CrtpPacket resendQueuePacket, CrtpPacket packet) {
-        //Only check equality for the amount of bytes in expected reply
-        byte[] expectedReply = resendQueuePacket.getExpectedReply();
-        for(int i = 0; i < expectedReply.length;i++) {
-            if(expectedReply[i] != packet.getPayload()[i]) {
-                return false;
-            }
+    /**
+     * Set the time to wait for an expected reply before a packet sent with {@link #sendPacket(CrtpPacket)} is resent
+     *
+     * @param timeoutMs
+     */
+    public void setResendTimeout(long timeoutMs) {
+        if (timeoutMs <= 0) {
+            throw new IllegalArgumentException("Resend timeout must be positive");
         }
-        return true;
+        this.mResendTimeoutMs = timeoutMs;
     }
 
-    private class ResendQueueHandler implements Runnable {
-
-        public void run() {
-            while(true) {
-                if (!mResendQueue.isEmpty()) {
-                    CrtpPacket resendPacket = mResendQueue.poll();
-                    mLogger.debug("RESEND: " + resendPacket + " ID: " + resendPacket.getPayload()[0]);
-                    sendPacket(resendPacket);
-                }
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException e) {
-                    mLogger.debug("ResendQueueHandlerThread was interrupted.");
-                    break;
-                }
-            }
-        }
+    public long getResendTimeout() {
+        return this.mResendTimeoutMs;
+    }
 
+    /**
+     * Returns the number of sent packets that are still waiting for their expected reply
+     *
+     * @return number of pending packets
+     */
+    public int getPendingReplyCount() {
+        return mPacketResender.getPendingCount();
     }
 
+    /**
+     * Callback called for every packet received to check if we are
+     * waiting for an packet like this. If so, then stop resending it.
+     *
+     * @param packet
+     */
+    private void checkReceivedPackets(CrtpPacket packet) {
+        mPacketResender.replyReceived(packet);
+    }
 
     /**
      * Called when first packet arrives from Crazyflie.
@@ -282,6 +302,7 @@ public class Crazyflie {
         mLogger.info("We are connected [" + mConnectionData.toString() + "], requesting connection setup...");
 
         mParam = new Param(this);
+        mParam.setValueCacheEnabled(mParamValueCacheEnabled);
         //must be defined first to be usable in Log TocFetchFinishedListener
         final TocFetchFinishedListener paramTocFetchFinishedListener = new TocFetchFinishedListener(CrtpPort.PARAMETERS) {
             public void tocFetchFinished() {
@@ -323,6 +344,22 @@ public class Crazyflie {
         return mLogg;
     }
 
+    /**
+     * Enable the parameter value cache for the next connections, see {@link Param#setValueCacheEnabled(boolean)}
+     *
+     * @param enabled
+     */
+    public void setParamValueCacheEnabled(boolean enabled) {
+        this.mParamValueCacheEnabled = enabled;
+        if (mParam != null) {
+            mParam.setValueCacheEnabled(enabled);
+        }
+    }
+
+    public boolean isParamValueCacheEnabled() {
+        return mParamValueCacheEnabled;
+    }
+
     public void clearTocCache() {
         mTocCache.clear();
     }
@@ -335,6 +372,14 @@ public class Crazyflie {
 
     /** DATA LISTENER **/
 
+    private static AtomicReferenceArray<DataListener[]> createDataListenerTable() {
+        AtomicReferenceArray<DataListener[]> table = new AtomicReferenceArray<DataListener[]>(CrtpPort.values().length * CHANNELS_PER_PORT);
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, NO_DATA_LISTENERS);
+        }
+        return table;
+    }
+
     /**
      * Add a data listener for data that comes on a specific port
      *
@@ -342,7 +387,20 @@ public class Crazyflie {
      */
     public void addDataListener(DataListener dataListener) {
         mLogger.debug("Adding data listener for port [" + dataListener.getPort() + "]");
-        this.mDataListeners.add(dataListener);
+        synchronized (mDataListenerLock) {
+            for (int channel = 0; channel < CHANNELS_PER_PORT; channel++) {
+                if (dataListener.getChannel() == DataListener.ANY_CHANNEL || dataListener.getChannel() == channel) {
+                    int slot = getDataListenerSlot(dataListener.getPort(), channel);
+                    DataListener[] listeners = mDataListeners.get(slot);
+                    if (indexOf(listeners, dataListener) < 0) {
+                        DataListener[] newListeners = new DataListener[listeners.length + 1];
+                        System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+                        newListeners[listeners.length] = dataListener;
+                        mDataListeners.set(slot, newListeners);
+                    }
+                }
+            }
+        }
     }
 
     /**
@@ -352,24 +410,56 @@ public class Crazyflie {
      */
     public void removeDataListener(DataListener dataListener) {
         mLogger.debug("Removing data listener for port [" + dataListener.getPort() + "]");
-        this.mDataListeners.remove(dataListener);
+        synchronized (mDataListenerLock) {
+            for (int channel = 0; channel < CHANNELS_PER_PORT; channel++) {
+                int slot = getDataListenerSlot(dataListener.getPort(), channel);
+                DataListener[] listeners = mDataListeners.get(slot);
+                int index = indexOf(listeners, dataListener);
+                if (index >= 0) {
+                    DataListener[] newListeners = NO_DATA_LISTENERS;
+                    if (listeners.length > 1) {
+                        newListeners = new DataListener[listeners.length - 1];
+                        System.arraycopy(listeners, 0, newListeners, 0, index);
+                        System.arraycopy(listeners, index + 1, newListeners, index, listeners.length - index - 1);
+                    }
+                    mDataListeners.set(slot, newListeners);
+                }
+            }
+        }
     }
 
     //public void removeDataListener(CrtpPort); ?
 
+    private static int indexOf(DataListener[] listeners, DataListener dataListener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].equals(dataListener)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the dispatch table slot for the given port and channel.
+     * The port ordinal is used instead of the port number, because ALL and UNKNOWN share the same number.
+     */
+    private static int getDataListenerSlot(CrtpPort port, int channel) {
+        return port.ordinal() * CHANNELS_PER_PORT + channel;
+    }
+
     /**
+     * Notify the data listeners registered for the port and channel of the packet
+     *
      * @param packet
      */
     private void notifyDataReceived(CrtpPacket packet) {
-        boolean found = false;
-        for (DataListener dataListener : mDataListeners) {
-            if (dataListener.getPort() == packet.getHeader().getPort()) {
-                dataListener.dataReceived(packet);
-                found = true;
-            }
+        CrtpPort port = packet.getHeader().getPort();
+        if (port == null) {
+            return;
         }
-        if (!found) {
-            //mLogger.warn("Got packet on port [" + packet.getHeader().getPort() + "] but found no data listener to handle it.");
+        DataListener[] listeners = mDataListeners.get(getDataListenerSlot(port, packet.getHeader().getChannel()));
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].dataReceived(packet);
         }
     }
 
@@ -413,6 +503,9 @@ public class Crazyflie {
                 notifyPacketReceived(packet);
 
                 notifyDataReceived(packet);
+
+                // hand pooled packets back to the driver's packet pool
+                packet.release();
             }
             mLogger.debug("IncomingPacketHandlerThread was interrupted.");
         }
@@ -33,24 +33,49 @@ import se.bitcraze.crazyflie.lib.crtp.CrtpPort;
 /**
  * Interface for receiving notifications about data received from the Crazyflie.
  *
+ * A data listener receives the packets of one port, either on all channels or on one specific channel.
+ *
  * TODO:
- * -add channel?
  * -add port mask (or use CrtpPort.ALL?)
  * -add channel mask
  *
  */
 public abstract class DataListener {
 
+    /**
+     * Channel value for listeners that want to receive packets on all channels of a port
+     */
+    public final static int ANY_CHANNEL = -1;
+
     private CrtpPort mPort;
+    private int mChannel;
 
     public DataListener(CrtpPort port) {
+        this(port, ANY_CHANNEL);
+    }
+
+    /**
+     * Create a data listener for a specific channel of a port
+     *
+     * @param port
+     * @param channel channel in range 0-3 or {@link #ANY_CHANNEL}
+     */
+    public DataListener(CrtpPort port, int channel) {
+        if (channel != ANY_CHANNEL && (channel < 0 || channel > 3)) {
+            throw new IllegalArgumentException("Channel must be in range 0-3");
+        }
         mPort = port;
+        mChannel = channel;
     }
 
     public CrtpPort getPort() {
         return mPort;
     }
 
+    public int getChannel() {
+        return mChannel;
+    }
+
     public abstract void dataReceived(CrtpPacket packet);
 
 }
@@ -0,0 +1,260 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crazyflie;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded queue that delivers events to one listener on an executor, so a slow listener
+ * does not stall the thread producing the events (usually the packet thread).
+ * <br/>
+ * Events are delivered in order and never concurrently. When the queue is full the {@link DeliveryPolicy}
+ * decides what happens, dropped events are counted. Events offered as not droppable (e.g. state changes)
+ * are always queued. Any executor can be used, e.g. a virtual thread per task executor on Java 21.
+ *
+ * @param <E> event type
+ */
+public abstract class DeliveryQueue<E> {
+
+    final Logger mLogger = LoggerFactory.getLogger("DeliveryQueue");
+
+    // events delivered by one task before the executor gets the chance to run others
+    private final static int MAX_BATCH = 64;
+
+    private final Executor mExecutor;
+    private final int mCapacity;
+    private final DeliveryPolicy mPolicy;
+
+    // guarded by itself
+    private final ArrayDeque<Entry<E>> mQueue = new ArrayDeque<Entry<E>>();
+    // number of droppable events in the queue, guarded by mQueue
+    private int mDroppableCount = 0;
+    private final AtomicBoolean mScheduled = new AtomicBoolean(false);
+    private final AtomicLong mDeliveredCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    private final Runnable mDrainTask = new Runnable() {
+        public void run() {
+            drain();
+        }
+    };
+
+    private static class Entry<E> {
+        private final E mEvent;
+        private final boolean mDroppable;
+
+        Entry(E event, boolean droppable) {
+            this.mEvent = event;
+            this.mDroppable = droppable;
+        }
+    }
+
+    private static class DefaultExecutorHolder {
+        private final static ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ListenerDelivery-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return shared cached pool of daemon threads
+     */
+    public static Executor getDefaultExecutor() {
+        return DefaultExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * @param executor executor running the deliveries
+     * @param capacity maximum number of pending droppable events
+     * @param policy what to do when the queue is full
+     */
+    public DeliveryQueue(Executor executor, int capacity, DeliveryPolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.mExecutor = executor;
+        this.mCapacity = capacity;
+        this.mPolicy = policy;
+    }
+
+    /**
+     * Deliver an event to the listener, called on the executor
+     *
+     * @param event
+     */
+    protected abstract void deliver(E event);
+
+    /**
+     * Queue a droppable event
+     *
+     * @param event
+     */
+    public void offer(E event) {
+        offer(event, true);
+    }
+
+    /**
+     * Queue an event
+     *
+     * @param event
+     * @param droppable <code>false</code> if the event must be delivered regardless of the policy
+     */
+    public void offer(E event, boolean droppable) {
+        synchronized (mQueue) {
+            if (droppable) {
+                if (mPolicy == DeliveryPolicy.LATEST_ONLY) {
+                    if (removeDroppable(false)) {
+                        mDroppedCount.incrementAndGet();
+                    }
+                } else if (mDroppableCount >= mCapacity) {
+                    if (mPolicy == DeliveryPolicy.BLOCK) {
+                        while (mDroppableCount >= mCapacity) {
+                            try {
+                                mQueue.wait();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                mDroppedCount.incrementAndGet();
+                                return;
+                            }
+                        }
+                    } else {
+                        removeDroppable(true);
+                        mDroppedCount.incrementAndGet();
+                    }
+                }
+                mDroppableCount++;
+            }
+            mQueue.add(new Entry<E>(event, droppable));
+        }
+        schedule();
+    }
+
+    /**
+     * @return number of events delivered to the listener
+     */
+    public long getDeliveredCount() {
+        return mDeliveredCount.get();
+    }
+
+    /**
+     * @return number of events dropped because of the policy
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * @return number of pending events
+     */
+    public int size() {
+        synchronized (mQueue) {
+            return mQueue.size();
+        }
+    }
+
+    public DeliveryPolicy getPolicy() {
+        return mPolicy;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @param oldest remove the oldest, otherwise the newest droppable event
+     * @return <code>true</code> if an event was removed
+     */
+    private boolean removeDroppable(boolean oldest) {
+        Iterator<Entry<E>> iterator = oldest ? mQueue.iterator() : mQueue.descendingIterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mDroppable) {
+                iterator.remove();
+                mDroppableCount--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void schedule() {
+        if (mScheduled.compareAndSet(false, true)) {
+            try {
+                mExecutor.execute(mDrainTask);
+            } catch (RejectedExecutionException e) {
+                mScheduled.set(false);
+                mLogger.warn("Listener delivery rejected by executor: " + e.getMessage());
+            }
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < MAX_BATCH; i++) {
+            Entry<E> entry;
+            synchronized (mQueue) {
+                entry = mQueue.poll();
+                if (entry != null && entry.mDroppable) {
+                    mDroppableCount--;
+                    if (mPolicy == DeliveryPolicy.BLOCK) {
+                        mQueue.notifyAll();
+                    }
+                }
+            }
+            if (entry == null) {
+                break;
+            }
+            try {
+                deliver(entry.mEvent);
+            } catch (RuntimeException e) {
+                mLogger.error("Listener threw an exception", e);
+            }
+            mDeliveredCount.incrementAndGet();
+        }
+        mScheduled.set(false);
+        // events offered while the flag was still set
+        if (size() > 0) {
+            schedule();
+        }
+    }
+
+}
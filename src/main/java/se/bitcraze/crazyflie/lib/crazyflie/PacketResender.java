@@ -0,0 +1,369 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crazyflie;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketPool;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPort;
+
+/**
+ * Resends packets with an expected reply until the reply has been received or the resend budget is used up.
+ *
+ * Pending requests are indexed by port, channel and expected reply (like the answer patterns of the python
+ * cflib), so an incoming packet is matched with one hash lookup per expected reply length in use.
+ * Deadlines are kept in a delay queue that is served by the resend thread. Timeouts of requests that
+ * have been answered or resent in the meantime are ignored when they expire.
+ */
+class PacketResender implements Runnable {
+
+    final Logger mLogger = LoggerFactory.getLogger("PacketResender");
+
+    /**
+     * Resend budget for packets that are resent until a reply is received
+     */
+    public final static int RESEND_FOREVER = -1;
+
+    private final static int INITIAL_BUCKET_COUNT = 64;
+
+    private final Crazyflie mCrazyflie;
+    private final DelayQueue<Timeout> mTimeouts = new DelayQueue<Timeout>();
+
+    // hash index of pending requests with chaining, guarded by this
+    private PendingRequest[] mBuckets = new PendingRequest[INITIAL_BUCKET_COUNT];
+    private int mPendingCount = 0;
+    private final int[] mPendingCountByReplyLength = new int[CrtpPacketPool.MAX_PAYLOAD_SIZE + 1];
+
+    public PacketResender(Crazyflie crazyflie) {
+        this.mCrazyflie = crazyflie;
+    }
+
+    /**
+     * A packet that waits for its expected reply
+     */
+    private static class PendingRequest {
+        private final CrtpPort mPort;
+        private final int mChannel;
+        private final byte[] mExpectedReply;
+        private final int mHash;
+
+        private CrtpPacket mPacket;
+        private long mTimeoutNanos;
+        private int mResendsLeft;
+        private int mGeneration = 0;
+        private ReplyListener[] mListeners = new ReplyListener[0];
+        private PendingRequest mNextInBucket;
+
+        public PendingRequest(CrtpPacket packet, int hash) {
+            this.mPort = packet.getHeader().getPort();
+            this.mChannel = packet.getHeader().getChannel();
+            this.mExpectedReply = packet.getExpectedReply();
+            this.mHash = hash;
+        }
+
+        private void addListener(ReplyListener listener) {
+            if (listener != null) {
+                ReplyListener[] listeners = new ReplyListener[mListeners.length + 1];
+                System.arraycopy(mListeners, 0, listeners, 0, mListeners.length);
+                listeners[mListeners.length] = listener;
+                mListeners = listeners;
+            }
+        }
+
+        private boolean matches(CrtpPort port, int channel, byte[] data, int length) {
+            if (mPort != port || mChannel != channel || mExpectedReply.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (mExpectedReply[i] != data[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Deadline of one transmission of a pending request
+     */
+    private static class Timeout implements Delayed {
+        private final PendingRequest mRequest;
+        private final int mGeneration;
+        private final long mDeadline;
+
+        public Timeout(PendingRequest request, int generation, long deadline) {
+            this.mRequest = request;
+            this.mGeneration = generation;
+            this.mDeadline = deadline;
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(mDeadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        public int compareTo(Delayed other) {
+            long diff = mDeadline - ((Timeout) other).mDeadline;
+            return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+        }
+    }
+
+    private static int hash(CrtpPort port, int channel, byte[] data, int length) {
+        int hash = port.ordinal() * 31 + channel;
+        hash = hash * 31 + length;
+        for (int i = 0; i < length; i++) {
+            hash = hash * 31 + data[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Start waiting for the expected reply of a packet that has just been sent. If a request with the same
+     * port, channel and expected reply is already pending, it is replaced by the new packet and the listener
+     * is added to the listeners of the pending request.
+     *
+     * @param packet the sent packet with an expected reply
+     * @param timeoutMs time to wait for a reply before the packet is resent
+     * @param maxResends max number of resends or {@link #RESEND_FOREVER}
+     * @param listener listener to notify about the reply (can be <code>null</code>)
+     */
+    public void track(CrtpPacket packet, long timeoutMs, int maxResends, ReplyListener listener) {
+        CrtpPort port = packet.getHeader().getPort();
+        byte[] expectedReply = packet.getExpectedReply();
+        if (port == null || expectedReply == null || expectedReply.length == 0 || expectedReply.length > CrtpPacketPool.MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Packet has no valid port or expected reply");
+        }
+        int channel = packet.getHeader().getChannel();
+        int hash = hash(port, channel, expectedReply, expectedReply.length);
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        Timeout timeout;
+        synchronized (this) {
+            PendingRequest request = find(port, channel, expectedReply, expectedReply.length, hash);
+            if (request == null) {
+                request = new PendingRequest(packet, hash);
+                insert(request);
+            } else {
+                mLogger.debug("Request with the same expected reply is already pending, replacing packet.");
+                request.mGeneration++;
+            }
+            request.mPacket = packet;
+            request.mTimeoutNanos = timeoutNanos;
+            request.mResendsLeft = maxResends;
+            request.addListener(listener);
+            timeout = new Timeout(request, request.mGeneration, System.nanoTime() + timeoutNanos);
+        }
+        mTimeouts.add(timeout);
+    }
+
+    /**
+     * Match a received packet with the pending requests and notify the listeners of the matching request.
+     *
+     * @param packet the received packet
+     * @return <code>true</code> if the packet was the expected reply of a pending request
+     */
+    public boolean replyReceived(CrtpPacket packet) {
+        CrtpPort port = packet.getHeader().getPort();
+        if (port == null) {
+            return false;
+        }
+        int channel = packet.getHeader().getChannel();
+        byte[] payload = packet.getPayload();
+        PendingRequest request = null;
+        synchronized (this) {
+            if (mPendingCount == 0) {
+                return false;
+            }
+            int maxLength = Math.min(payload.length, CrtpPacketPool.MAX_PAYLOAD_SIZE);
+            for (int length = 1; length <= maxLength && request == null; length++) {
+                if (mPendingCountByReplyLength[length] > 0) {
+                    request = find(port, channel, payload, length, hash(port, channel, payload, length));
+                }
+            }
+            if (request == null) {
+                return false;
+            }
+            remove(request);
+        }
+        for (ReplyListener listener : request.mListeners) {
+            listener.replyReceived(request.mPacket, packet);
+        }
+        return true;
+    }
+
+    /**
+     * Drop all pending requests and notify their listeners that no reply has been received.
+     */
+    public void clear() {
+        List<PendingRequest> requests = new ArrayList<PendingRequest>();
+        synchronized (this) {
+            for (int i = 0; i < mBuckets.length; i++) {
+                for (PendingRequest request = mBuckets[i]; request != null; request = request.mNextInBucket) {
+                    requests.add(request);
+                }
+                mBuckets[i] = null;
+            }
+            mPendingCount = 0;
+            for (int i = 0; i < mPendingCountByReplyLength.length; i++) {
+                mPendingCountByReplyLength[i] = 0;
+            }
+        }
+        mTimeouts.clear();
+        for (PendingRequest request : requests) {
+            notifyNoReply(request);
+        }
+    }
+
+    /**
+     * Returns the number of requests that wait for a reply
+     *
+     * @return number of pending requests
+     */
+    public synchronized int getPendingCount() {
+        return mPendingCount;
+    }
+
+    /**
+     * Resend packets when their deadline expires
+     */
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Timeout timeout;
+            try {
+                timeout = mTimeouts.take();
+            } catch (InterruptedException e) {
+                mLogger.debug("PacketResender was interrupted.");
+                break;
+            }
+            PendingRequest request = timeout.mRequest;
+            CrtpPacket resendPacket = null;
+            boolean failed = false;
+            synchronized (this) {
+                if (timeout.mGeneration != request.mGeneration || !isPending(request)) {
+                    // answered or resent in the meantime
+                    continue;
+                }
+                if (request.mResendsLeft == 0) {
+                    remove(request);
+                    failed = true;
+                } else {
+                    if (request.mResendsLeft > 0) {
+                        request.mResendsLeft--;
+                    }
+                    request.mGeneration++;
+                    resendPacket = request.mPacket;
+                    mTimeouts.add(new Timeout(request, request.mGeneration, System.nanoTime() + request.mTimeoutNanos));
+                }
+            }
+            if (failed) {
+                mLogger.warn("No reply received for " + request.mPacket);
+                notifyNoReply(request);
+            } else {
+                mLogger.debug("RESEND: " + resendPacket + " ID: " + resendPacket.getPayload()[0]);
+                mCrazyflie.resendPacket(resendPacket);
+            }
+        }
+    }
+
+    private void notifyNoReply(PendingRequest request) {
+        for (ReplyListener listener : request.mListeners) {
+            listener.noReplyReceived(request.mPacket);
+        }
+    }
+
+    /* Hash index, must be called while holding the lock */
+
+    private PendingRequest find(CrtpPort port, int channel, byte[] data, int length, int hash) {
+        for (PendingRequest request = mBuckets[hash & (mBuckets.length - 1)]; request != null; request = request.mNextInBucket) {
+            if (request.mHash == hash && request.matches(port, channel, data, length)) {
+                return request;
+            }
+        }
+        return null;
+    }
+
+    private boolean isPending(PendingRequest pendingRequest) {
+        for (PendingRequest request = mBuckets[pendingRequest.mHash & (mBuckets.length - 1)]; request != null; request = request.mNextInBucket) {
+            if (request == pendingRequest) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void insert(PendingRequest request) {
+        if (mPendingCount >= mBuckets.length) {
+            resize(mBuckets.length * 2);
+        }
+        int index = request.mHash & (mBuckets.length - 1);
+        request.mNextInBucket = mBuckets[index];
+        mBuckets[index] = request;
+        mPendingCount++;
+        mPendingCountByReplyLength[request.mExpectedReply.length]++;
+    }
+
+    private void remove(PendingRequest pendingRequest) {
+        int index = pendingRequest.mHash & (mBuckets.length - 1);
+        PendingRequest previous = null;
+        for (PendingRequest request = mBuckets[index]; request != null; request = request.mNextInBucket) {
+            if (request == pendingRequest) {
+                if (previous == null) {
+                    mBuckets[index] = request.mNextInBucket;
+                } else {
+                    previous.mNextInBucket = request.mNextInBucket;
+                }
+                request.mNextInBucket = null;
+                mPendingCount--;
+                mPendingCountByReplyLength[request.mExpectedReply.length]--;
+                return;
+            }
+            previous = request;
+        }
+    }
+
+    private void resize(int bucketCount) {
+        PendingRequest[] oldBuckets = mBuckets;
+        mBuckets = new PendingRequest[bucketCount];
+        for (int i = 0; i < oldBuckets.length; i++) {
+            PendingRequest request = oldBuckets[i];
+            while (request != null) {
+                PendingRequest next = request.mNextInBucket;
+                int index = request.mHash & (bucketCount - 1);
+                request.mNextInBucket = mBuckets[index];
+                mBuckets[index] = request;
+                request = next;
+            }
+        }
+    }
+
+}
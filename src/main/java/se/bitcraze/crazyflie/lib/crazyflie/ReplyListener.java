@@ -0,0 +1,55 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crazyflie;
+
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+
+/**
+ * Interface for receiving notifications about the reply to a packet with an expected reply.
+ *
+ * Callbacks are executed on the thread that handles incoming packets (reply) or on the
+ * resend thread (no reply), so they must return quickly. A received reply packet must be
+ * retained if it is used after the callback returns.
+ */
+public interface ReplyListener {
+
+    /**
+     * Called when the expected reply for a packet has been received
+     *
+     * @param request the packet that was sent
+     * @param reply the received reply
+     */
+    public void replyReceived(CrtpPacket request, CrtpPacket reply);
+
+    /**
+     * Called when no reply has been received after all resends or when the Crazyflie has been disconnected
+     *
+     * @param request the packet that was sent
+     */
+    public void noReplyReceived(CrtpPacket request);
+
+}
@@ -0,0 +1,105 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crazyradio;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts the poll rate to the observed downlink activity.
+ *
+ * The strategy keeps a smoothed estimate of the interval between acks that contain data (e.g. the period of the
+ * active log blocks) and polls a few times per expected packet. Right after data has been received it polls
+ * immediately, because the Crazyflie often has more packets queued. When no data has been received for several
+ * expected intervals the link is considered idle and the strategy waits the maximum wait time.
+ */
+public class AdaptivePollStrategy implements PollStrategy {
+
+    public final static long DEFAULT_MIN_WAIT_TIME = TimeUnit.MICROSECONDS.toNanos(500);
+    public final static long DEFAULT_MAX_WAIT_TIME = TimeUnit.MILLISECONDS.toNanos(10);
+    public final static int DEFAULT_POLLS_PER_INTERVAL = 4;
+
+    private final static double SMOOTHING = 0.2;
+    private final static int IDLE_INTERVALS = 4;
+
+    private final long mMinWaitTime;
+    private final long mMaxWaitTime;
+    private final int mPollsPerInterval;
+
+    private boolean mDataSeen = false;
+    private long mLastData = 0;
+    private volatile double mInterval = 0;
+
+    public AdaptivePollStrategy() {
+        this(DEFAULT_MIN_WAIT_TIME, DEFAULT_MAX_WAIT_TIME, TimeUnit.NANOSECONDS, DEFAULT_POLLS_PER_INTERVAL);
+    }
+
+    /**
+     * @param minWaitTime minimum wait time while data is expected
+     * @param maxWaitTime wait time while the link is idle
+     * @param unit unit of the wait times
+     * @param pollsPerInterval number of polls per expected downlink packet
+     */
+    public AdaptivePollStrategy(long minWaitTime, long maxWaitTime, TimeUnit unit, int pollsPerInterval) {
+        if (minWaitTime < 0 || maxWaitTime < minWaitTime || pollsPerInterval < 1) {
+            throw new IllegalArgumentException("Invalid adaptive poll parameters");
+        }
+        this.mMinWaitTime = unit.toNanos(minWaitTime);
+        this.mMaxWaitTime = unit.toNanos(maxWaitTime);
+        this.mPollsPerInterval = pollsPerInterval;
+    }
+
+    public long getWaitTime(boolean receivedData, long now) {
+        if (receivedData) {
+            if (mDataSeen) {
+                long interval = now - mLastData;
+                mInterval = mInterval == 0 ? interval : mInterval + SMOOTHING * (interval - mInterval);
+            }
+            mDataSeen = true;
+            mLastData = now;
+            return 0;
+        }
+        if (!mDataSeen || mInterval == 0 || now - mLastData > IDLE_INTERVALS * mInterval) {
+            return mMaxWaitTime;
+        }
+        long waitTime = (long) (mInterval / mPollsPerInterval);
+        return Math.max(mMinWaitTime, Math.min(waitTime, mMaxWaitTime));
+    }
+
+    public void reset() {
+        mDataSeen = false;
+        mLastData = 0;
+        mInterval = 0;
+    }
+
+    /**
+     * @return the estimated interval between downlink packets in nanoseconds, 0 if unknown
+     */
+    public long getEstimatedInterval() {
+        return (long) mInterval;
+    }
+
+}
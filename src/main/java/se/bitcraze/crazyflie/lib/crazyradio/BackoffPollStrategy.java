@@ -0,0 +1,94 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crazyradio;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls continuously while data is received and backs off exponentially when the link is idle.
+ *
+ * After a number of empty acks the wait time starts at the initial wait time and doubles with every
+ * further empty ack up to the maximum wait time. Any received data resets the backoff.
+ */
+public class BackoffPollStrategy implements PollStrategy {
+
+    public final static int DEFAULT_EMPTY_ACKS_BEFORE_BACKOFF = 10;
+    public final static long DEFAULT_INITIAL_WAIT_TIME = TimeUnit.MILLISECONDS.toNanos(1);
+    public final static long DEFAULT_MAX_WAIT_TIME = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final int mEmptyAcksBeforeBackoff;
+    private final long mInitialWaitTime;
+    private final long mMaxWaitTime;
+
+    private int mEmptyCtr = 0;
+    private long mWaitTime = 0;
+
+    /**
+     * Back off after 10 empty acks, from 1 ms up to 10 ms
+     */
+    public BackoffPollStrategy() {
+        this(DEFAULT_EMPTY_ACKS_BEFORE_BACKOFF, DEFAULT_INITIAL_WAIT_TIME, DEFAULT_MAX_WAIT_TIME, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param emptyAcksBeforeBackoff number of empty acks before the strategy starts to wait
+     * @param initialWaitTime first wait time
+     * @param maxWaitTime maximum wait time
+     * @param unit unit of the wait times
+     */
+    public BackoffPollStrategy(int emptyAcksBeforeBackoff, long initialWaitTime, long maxWaitTime, TimeUnit unit) {
+        if (emptyAcksBeforeBackoff < 0 || initialWaitTime <= 0 || maxWaitTime < initialWaitTime) {
+            throw new IllegalArgumentException("Invalid backoff parameters");
+        }
+        this.mEmptyAcksBeforeBackoff = emptyAcksBeforeBackoff;
+        this.mInitialWaitTime = unit.toNanos(initialWaitTime);
+        this.mMaxWaitTime = unit.toNanos(maxWaitTime);
+    }
+
+    public long getWaitTime(boolean receivedData, long now) {
+        if (receivedData) {
+            reset();
+            return 0;
+        }
+        if (mEmptyCtr < mEmptyAcksBeforeBackoff) {
+            mEmptyCtr++;
+            return 0;
+        }
+        if (mWaitTime == 0) {
+            mWaitTime = mInitialWaitTime;
+        } else {
+            mWaitTime = Math.min(mWaitTime * 2, mMaxWaitTime);
+        }
+        return mWaitTime;
+    }
+
+    public void reset() {
+        mEmptyCtr = 0;
+        mWaitTime = 0;
+    }
+
+}
@@ -373,6 +373,36 @@ public class Crazyradio {
         return ackIn;
     }
 
+    /**
+     * Send a packet and receive the ack from the radio dongle without allocating.
+     * The given ack is reset and filled in place: the ack payload is not copied but left in
+     * {@link RadioAck#getRawData()} starting at index 1 with {@link RadioAck#getDataLength()} bytes.
+     *
+     * @param dataOut
+     * @param ackIn reusable ack to fill
+     * @return the filled ack or <code>null</code> if the dongle is not connected
+     */
+    public RadioAck sendPacket(byte[] dataOut, RadioAck ackIn) {
+        if (mUsbInterface == null || !mUsbInterface.isUsbConnected()) {
+            return null;
+        }
+        byte[] data = ackIn.getRawData();
+        Arrays.fill(data, (byte) 0);
+        ackIn.reset();
+        int received = mUsbInterface.sendBulkTransfer(dataOut, data);
+
+        if (data[0] != 0) {
+            ackIn.setAck((data[0] & 0x01) != 0);
+            ackIn.setPowerDet((data[0] & 0x02) != 0);
+            ackIn.setRetry(data[0] >> 4);
+            // the transfer is only as long as the ack, an empty ack is just the status byte
+            ackIn.setDataLength(Math.max(0, received - 1));
+        } else {
+            ackIn.setRetry(mArc);
+        }
+        return ackIn;
+    }
+
     public void sendVendorSetup(int request, int value, int index, byte[] data) {
         // usb.TYPE_VENDOR = 64 <=> 0x40
         int usbTypeVendor = 0x40;
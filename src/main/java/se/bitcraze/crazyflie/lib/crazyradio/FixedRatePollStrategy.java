@@ -0,0 +1,76 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crazyradio;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls at a fixed rate, independent of the downlink activity.
+ *
+ * Outgoing packets are still sent immediately, they also count as a poll.
+ */
+public class FixedRatePollStrategy implements PollStrategy {
+
+    private final long mPeriod;
+    private long mNextPoll = 0;
+    private boolean mStarted = false;
+
+    /**
+     * @param rate poll rate in Hz
+     */
+    public FixedRatePollStrategy(double rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Poll rate must be positive");
+        }
+        this.mPeriod = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+    }
+
+    public long getWaitTime(boolean receivedData, long now) {
+        if (!mStarted) {
+            mStarted = true;
+            mNextPoll = now;
+        }
+        mNextPoll += mPeriod;
+        // don't try to catch up after a slow round trip
+        if (mNextPoll - now < 0) {
+            mNextPoll = now;
+        }
+        return mNextPoll - now;
+    }
+
+    public void reset() {
+        mStarted = false;
+    }
+
+    /**
+     * @return the poll period in nanoseconds
+     */
+    public long getPeriod() {
+        return mPeriod;
+    }
+
+}
@@ -0,0 +1,55 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crazyradio;
+
+/**
+ * Decides how often the radio thread polls the Crazyflie for downlink data.
+ *
+ * The Crazyflie can only send data in the ack of a packet sent by the radio, so when there is nothing to send
+ * the radio thread sends null packets to poll for data. After every round trip the radio thread asks the strategy
+ * how long it may wait for an outgoing packet before it sends the next null packet. An outgoing packet that
+ * arrives during the wait is sent immediately.
+ *
+ * A strategy is only used by one radio thread at a time.
+ */
+public interface PollStrategy {
+
+    /**
+     * Returns the maximum time to wait for an outgoing packet before polling again.
+     *
+     * @param receivedData <code>true</code> if the ack of the last round trip contained data
+     * @param now the current time in nanoseconds ({@link System#nanoTime()})
+     * @return wait time in nanoseconds, 0 to poll again immediately
+     */
+    long getWaitTime(boolean receivedData, long now);
+
+    /**
+     * Reset the state of the strategy, called when a radio thread starts using it
+     */
+    void reset();
+
+}
@@ -28,11 +28,21 @@
 package se.bitcraze.crazyflie.lib.crazyradio;
 
 public class RadioAck {
+
+    /**
+     * Size of the raw USB transfer: one status byte followed by up to 32 bytes of ACK payload
+     */
+    public final static int RAW_DATA_SIZE = 33;
+
     private boolean ack = false;
     private boolean powerDet = false;
     private int retry = 0;
     private byte[] data;
 
+    // reusable raw USB buffer, only used by Crazyradio.sendPacket(byte[], RadioAck)
+    private byte[] rawData;
+    private int dataLength = 0;
+
     public boolean isAck() {
         return ack;
     }
@@ -57,4 +67,37 @@ public class RadioAck {
     public void setData(byte[] data) {
         this.data = data;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the reusable raw USB buffer of this ack (status byte at index 0, payload starting at index 1).
+     *
+     * @return the raw data buffer
+     */
+    public byte[] getRawData() {
+        if (rawData == null) {
+            rawData = new byte[RAW_DATA_SIZE];
+        }
+        return rawData;
+    }
+    /**
+     * Returns the number of payload bytes in the raw data buffer (starting at index 1).
+     *
+     * @return the payload length or 0 if the ack did not contain a payload
+     */
+    public int getDataLength() {
+        return dataLength;
+    }
+    public void setDataLength(int dataLength) {
+        this.dataLength = dataLength;
+    }
+    /**
+     * Reset all fields so the ack can be reused for the next transfer.
+     */
+    public void reset() {
+        this.ack = false;
+        this.powerDet = false;
+        this.retry = 0;
+        this.data = null;
+        this.dataLength = 0;
+    }
+}
@@ -28,9 +28,8 @@
 package se.bitcraze.crazyflie.lib.crazyradio;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -38,6 +37,14 @@ import org.slf4j.LoggerFactory;
 
 import se.bitcraze.crazyflie.lib.crtp.CrtpDriver;
 import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketPool;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketRingBuffer;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketRingBuffer.OverflowPolicy;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketRingBuffer.WaitStrategy;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketScheduler;
+import se.bitcraze.crazyflie.lib.crtp.LinkQualityEstimator;
+import se.bitcraze.crazyflie.lib.crtp.LinkStatistics;
+import se.bitcraze.crazyflie.lib.crtp.LinkStatisticsRecorder;
 import se.bitcraze.crazyflie.lib.usb.CrazyUsbInterface;
 
 /**
@@ -53,17 +60,54 @@ public class RadioDriver extends CrtpDriver {
 
     private CrazyUsbInterface mUsbInterface;
 
-    private final BlockingQueue<CrtpPacket> mInQueue;
-    private final BlockingQueue<CrtpPacket> mOutQueue;
+    // Default in queue size, the out lanes are sized by the scheduler
+    public final static int DEFAULT_IN_QUEUE_CAPACITY = 256;
+
+    private final CrtpPacketRingBuffer mInQueue;
+    private final CrtpPacketScheduler mOutScheduler;
+
+    private volatile CrtpPacketPool mPacketPool;
+
+    private volatile PollStrategy mPollStrategy = new BackoffPollStrategy();
+
+    private final LinkStatisticsRecorder mLinkStatistics = new LinkStatisticsRecorder();
+
+    private volatile LinkQualityEstimator mLinkQualityEstimator = new LinkQualityEstimator();
+
+    // poll measurements, only written by the radio thread
+    private final static long POLL_RATE_WINDOW = TimeUnit.SECONDS.toNanos(1);
+    private volatile long mPollCount = 0;
+    private volatile double mPollRate = 0;
+    private volatile long mDataPollCount = 0;
+    private volatile long mTotalAddedLatency = 0;
+    private volatile long mMaxAddedLatency = 0;
 
     /**
      * Create the link driver
      */
     public RadioDriver(CrazyUsbInterface usbInterface) {
+        // the radio thread must not block on a slow consumer, so incoming packets replace the oldest ones
+        this(usbInterface,
+             new CrtpPacketRingBuffer(DEFAULT_IN_QUEUE_CAPACITY, OverflowPolicy.DROP_OLDEST, WaitStrategy.PARK),
+             new CrtpPacketScheduler());
+    }
+
+    /**
+     * Create the link driver with a custom in queue and out scheduler.
+     *
+     * The in queue is filled by the radio thread and emptied by the consumer of {@link #receivePacket(int)}.
+     * The out scheduler is emptied by the radio thread and filled by {@link #sendPacket(CrtpPacket)}, it keeps
+     * only the latest commander set-point and sends link control, parameter and log packets before bulk traffic.
+     *
+     * @param usbInterface
+     * @param inQueue queue for received packets
+     * @param outScheduler scheduler for packets to send
+     */
+    public RadioDriver(CrazyUsbInterface usbInterface, CrtpPacketRingBuffer inQueue, CrtpPacketScheduler outScheduler) {
         this.mUsbInterface = usbInterface;
         this.mCradio = null;
-        this.mInQueue = new LinkedBlockingQueue<CrtpPacket>();
-        this.mOutQueue = new LinkedBlockingQueue<CrtpPacket>(); //TODO: Limit size of out queue to avoid "ReadBack" effect?
+        this.mInQueue = inQueue;
+        this.mOutScheduler = outScheduler;
         this.mRadioDriverThread = null;
     }
 
@@ -125,11 +169,122 @@ public class RadioDriver extends CrtpDriver {
         }
     }
 
+    /**
+     * Enable the pooled receive mode by setting a packet pool (or disable it by setting <code>null</code>).
+     *
+     * In pooled mode received packets are taken from the pool instead of being allocated. The consumer of
+     * {@link #receivePacket(int)} (normally the Crazyflie) must call {@link CrtpPacket#release()} on every
+     * received packet once it has been handled.
+     *
+     * @param packetPool the pool to take received packets from
+     */
+    public void setPacketPool(CrtpPacketPool packetPool) {
+        this.mPacketPool = packetPool;
+    }
+
+    public CrtpPacketPool getPacketPool() {
+        return this.mPacketPool;
+    }
+
+    /**
+     * Set the strategy that decides how often the radio thread polls the Crazyflie for downlink data.
+     * The strategy can be changed while the link is open.
+     *
+     * @param pollStrategy
+     */
+    public void setPollStrategy(PollStrategy pollStrategy) {
+        if (pollStrategy == null) {
+            throw new IllegalArgumentException("Poll strategy must not be null");
+        }
+        this.mPollStrategy = pollStrategy;
+    }
+
+    public PollStrategy getPollStrategy() {
+        return this.mPollStrategy;
+    }
+
+    /**
+     * Returns the number of radio round trips since the link has been opened
+     *
+     * @return number of round trips
+     */
+    public long getPollCount() {
+        return mPollCount;
+    }
+
+    /**
+     * Returns the measured number of radio round trips per second, updated once per second
+     *
+     * @return poll rate in Hz
+     */
+    public double getPollRate() {
+        return mPollRate;
+    }
+
+    /**
+     * Returns the average time the radio thread was idle before a round trip that received data.
+     * This is the latency the poll strategy added to downlink packets.
+     *
+     * @param unit
+     * @return average added latency
+     */
+    public long getAverageAddedLatency(TimeUnit unit) {
+        long dataPollCount = mDataPollCount;
+        return dataPollCount == 0 ? 0 : unit.convert(mTotalAddedLatency / dataPollCount, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the maximum time the radio thread was idle before a round trip that received data
+     *
+     * @param unit
+     * @return maximum added latency
+     */
+    public long getMaxAddedLatency(TimeUnit unit) {
+        return unit.convert(mMaxAddedLatency, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Set the estimator that smooths and rate limits the link quality updates sent to the connection listeners.
+     * Takes effect when the link is opened.
+     *
+     * @param linkQualityEstimator
+     */
+    public void setLinkQualityEstimator(LinkQualityEstimator linkQualityEstimator) {
+        if (linkQualityEstimator == null) {
+            throw new IllegalArgumentException("Link quality estimator must not be null");
+        }
+        this.mLinkQualityEstimator = linkQualityEstimator;
+    }
+
+    public LinkQualityEstimator getLinkQualityEstimator() {
+        return this.mLinkQualityEstimator;
+    }
+
+    /* (non-Javadoc)
+     * @see se.bitcraze.crazyflie.lib.crtp.CrtpDriver#getLinkStatistics()
+     */
+    @Override
+    public LinkStatistics getLinkStatistics() {
+        return mLinkStatistics.snapshot(mInQueue.size(), mOutScheduler.size());
+    }
+
     //TODO: Remove
     public int getInQueueSize() {
         return mInQueue.size();
     }
 
+    public int getOutQueueSize() {
+        return mOutScheduler.size();
+    }
+
+    public CrtpPacketRingBuffer getInQueue() {
+        return mInQueue;
+    }
+
+    public CrtpPacketScheduler getOutScheduler() {
+        return mOutScheduler;
+    }
+
     /*
      * Send the packet though the link
      *
@@ -155,7 +310,9 @@ public class RadioDriver extends CrtpDriver {
 
         // this.mOutQueue.addLast(packet);
         try {
-            this.mOutQueue.put(packet);
+            if (!this.mOutScheduler.offer(packet)) {
+                mLogger.warn("RadioDriver: Could not send packet to copter, out queue is full");
+            }
         } catch (InterruptedException e) {
             mLogger.error("InterruptedException: " + e.getMessage());
         }
@@ -240,6 +397,14 @@ public class RadioDriver extends CrtpDriver {
     }
 
 
+    private void resetPollMeasurements() {
+        mPollCount = 0;
+        mPollRate = 0;
+        mDataPollCount = 0;
+        mTotalAddedLatency = 0;
+        mMaxAddedLatency = 0;
+    }
+
     public void startSendReceiveThread() {
         if (mRadioDriverThread == null) {
             //self._thread = _RadioDriverThread(self.cradio, self.in_queue, self.out_queue, link_quality_callback, link_error_callback)
@@ -266,6 +431,9 @@ public class RadioDriver extends CrtpDriver {
         private final static int RETRYCOUNT_BEFORE_DISCONNECT = 10;
         private int mRetryBeforeDisconnect;
 
+        // reused for every round trip
+        private final RadioAck mAck = new RadioAck();
+
         /**
          * Create the object
          */
@@ -282,8 +450,15 @@ public class RadioDriver extends CrtpDriver {
         public void run() {
             byte[] dataOut = Crazyradio.NULL_PACKET;
 
-            double waitTime = 0;
-            int emptyCtr = 0;
+            PollStrategy pollStrategy = mPollStrategy;
+            pollStrategy.reset();
+            resetPollMeasurements();
+            mLinkStatistics.reset();
+            LinkQualityEstimator linkQualityEstimator = mLinkQualityEstimator;
+            linkQualityEstimator.reset();
+            long pollRateWindowStart = System.nanoTime();
+            long pollRateWindowCount = 0;
+            long idleTime = 0;
 
             while(mCradio != null && !Thread.currentThread().isInterrupted()) {
                 try {
@@ -298,7 +473,9 @@ public class RadioDriver extends CrtpDriver {
                                                  "Exception:%s\n\n%s" % (e,
                                                  traceback.format_exc()))
                     */
-                    RadioAck ackStatus = mCradio.sendPacket(dataOut);
+                    long roundTripStart = System.nanoTime();
+                    RadioAck ackStatus = mCradio.sendPacket(dataOut, mAck);
+                    long roundTripTime = System.nanoTime() - roundTripStart;
 
                     // Analyze the data packet
                     if (ackStatus == null) {
@@ -307,7 +484,15 @@ public class RadioDriver extends CrtpDriver {
                         continue;
                     }
 
-                    notifyLinkQualityUpdated((10 - ackStatus.getRetry()) * 10);
+                    mPollCount++;
+                    pollRateWindowCount++;
+                    mLinkStatistics.recordRoundTrip(roundTripTime, ackStatus.isAck(), ackStatus.getRetry());
+
+                    // listeners are notified on another thread, at a limited rate
+                    int linkQuality = linkQualityEstimator.update(ackStatus.isAck(), ackStatus.getRetry(), roundTripStart + roundTripTime);
+                    if (linkQuality >= 0) {
+                        postLinkQualityUpdated(linkQuality);
+                    }
 
                     // If no copter, retry
                     //TODO: how is this actually possible?
@@ -321,29 +506,54 @@ public class RadioDriver extends CrtpDriver {
                     }
                     this.mRetryBeforeDisconnect = RETRYCOUNT_BEFORE_DISCONNECT;
 
-                    byte[] data = ackStatus.getData();
+                    if (dataOut != Crazyradio.NULL_PACKET) {
+                        mLinkStatistics.recordUplink(dataOut[0], dataOut.length);
+                    }
 
-                    // if there is a copter in range, the packet is analyzed and the next packet to send is prepared
-                    if (data != null && data.length > 0) {
-                        CrtpPacket inPacket = new CrtpPacket(data);
-                        mInQueue.put(inPacket);
+                    byte[] data = ackStatus.getRawData();
+                    int dataLength = ackStatus.getDataLength();
 
-                        waitTime = 0;
-                        emptyCtr = 0;
-                    } else {
-                        emptyCtr += 1;
-                        if (emptyCtr > 10) {
-                            emptyCtr = 10;
-                            // Relaxation time if the last 10 packets where empty
-                            waitTime = 0.01;
+                    // if there is a copter in range, the packet is analyzed and the next packet to send is prepared
+                    if (dataLength > 0) {
+                        CrtpPacketPool packetPool = mPacketPool;
+                        CrtpPacket inPacket;
+                        if (packetPool != null) {
+                            inPacket = packetPool.obtain(data, 1, dataLength);
                         } else {
-                            waitTime = 0;
+                            inPacket = new CrtpPacket(data[1], Arrays.copyOfRange(data, 2, dataLength + 1));
+                        }
+                        if (!mInQueue.offer(inPacket)) {
+                            inPacket.release();
+                        }
+
+                        mLinkStatistics.recordDownlink(data[1], dataLength);
+
+                        mDataPollCount++;
+                        mTotalAddedLatency += idleTime;
+                        if (idleTime > mMaxAddedLatency) {
+                            mMaxAddedLatency = idleTime;
                         }
+                    } else {
+                        mLinkStatistics.recordEmptyAck();
+                    }
+
+                    long now = System.nanoTime();
+                    mLinkStatistics.updateRates(now);
+                    if (now - pollRateWindowStart >= POLL_RATE_WINDOW) {
+                        mPollRate = pollRateWindowCount * 1e9 / (now - pollRateWindowStart);
+                        pollRateWindowStart = now;
+                        pollRateWindowCount = 0;
+                    }
+
+                    if (pollStrategy != mPollStrategy) {
+                        pollStrategy = mPollStrategy;
+                        pollStrategy.reset();
                     }
 
-                    // get the next packet to send after relaxation (wait 10ms)
-                    CrtpPacket outPacket = null;
-                    outPacket = mOutQueue.poll((long) waitTime, TimeUnit.SECONDS);
+                    // get the next packet to send, the strategy decides how long to wait for it before polling again
+                    long waitTime = pollStrategy.getWaitTime(dataLength > 0, now);
+                    CrtpPacket outPacket = mOutScheduler.poll(waitTime, TimeUnit.NANOSECONDS);
+                    idleTime = waitTime > 0 ? System.nanoTime() - now : 0;
 
                     if (outPacket != null) {
                         dataOut = outPacket.toByteArray();
@@ -353,7 +563,7 @@ public class RadioDriver extends CrtpDriver {
 //                    Thread.sleep(10);
                 } catch (InterruptedException e) {
                     mLogger.debug("RadioDriverThread was interrupted.");
-                    notifyLinkQualityUpdated(0);
+                    postLinkQualityUpdated(0);
                     break;
                 }
             }
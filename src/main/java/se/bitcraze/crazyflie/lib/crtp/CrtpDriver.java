@@ -32,6 +32,8 @@ import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import se.bitcraze.crazyflie.lib.crazyflie.ConnectionListener;
+import se.bitcraze.crazyflie.lib.crazyflie.DeliveryPolicy;
+import se.bitcraze.crazyflie.lib.crazyflie.DeliveryQueue;
 import se.bitcraze.crazyflie.lib.crazyradio.ConnectionData;
 
 /**
@@ -45,6 +47,14 @@ public abstract class CrtpDriver {
 
     protected ConnectionData mConnectionData;
 
+    // only the latest link quality is delivered, on the shared listener delivery threads
+    private final DeliveryQueue<Integer> mLinkQualityQueue = new DeliveryQueue<Integer>(DeliveryQueue.getDefaultExecutor(), 1, DeliveryPolicy.LATEST_ONLY) {
+        @Override
+        protected void deliver(Integer percent) {
+            notifyLinkQualityUpdated(percent);
+        }
+    };
+
     /**
      * Driver constructor. Throw an exception if the driver is unable to open the URI
      */
@@ -89,6 +99,15 @@ public abstract class CrtpDriver {
 
     public abstract boolean scanSelected(int channel, int datarate, byte[] packet);
 
+    /**
+     * Get a snapshot of the link statistics. Can be polled from any thread.
+     *
+     * @return the statistics or <code>null</code> if the driver does not collect statistics
+     */
+    public LinkStatistics getLinkStatistics() {
+        return null;
+    }
+
     /* CONNECTION LISTENER */
 
     public void addConnectionListener(ConnectionListener listener) {
@@ -103,8 +122,9 @@ public abstract class CrtpDriver {
      * Notify all registered listeners about a requested connection
      */
     protected void notifyConnectionRequested() {
+        String connectionInfo = mConnectionData.toString();
         for (ConnectionListener cl : this.mConnectionListeners) {
-            cl.connectionRequested(mConnectionData.toString());
+            cl.connectionRequested(connectionInfo);
         }
     }
 
@@ -112,8 +132,9 @@ public abstract class CrtpDriver {
      * Notify all registered listeners about a connect.
      */
     public void notifyConnected() {
+        String connectionInfo = mConnectionData.toString();
         for (ConnectionListener cl : this.mConnectionListeners) {
-            cl.connected(mConnectionData.toString());
+            cl.connected(connectionInfo);
         }
     }
 
@@ -121,8 +142,9 @@ public abstract class CrtpDriver {
      * Notify all registered listeners about a finished setup.
      */
     public void notifySetupFinished() {
+        String connectionInfo = mConnectionData.toString();
         for (ConnectionListener cl : this.mConnectionListeners) {
-            cl.setupFinished(mConnectionData.toString());
+            cl.setupFinished(connectionInfo);
         }
     }
 
@@ -132,8 +154,9 @@ public abstract class CrtpDriver {
      * @param msg
      */
     protected void notifyConnectionFailed(String msg) {
+        String connectionInfo = mConnectionData.toString();
         for (ConnectionListener cl : this.mConnectionListeners) {
-            cl.connectionFailed(mConnectionData.toString(), msg);
+            cl.connectionFailed(connectionInfo, msg);
         }
     }
 
@@ -143,8 +166,9 @@ public abstract class CrtpDriver {
      * @param msg
      */
     protected void notifyConnectionLost(String msg) {
+        String connectionInfo = mConnectionData.toString();
         for (ConnectionListener cl : this.mConnectionListeners) {
-            cl.connectionLost(mConnectionData.toString(), msg);
+            cl.connectionLost(connectionInfo, msg);
         }
     }
 
@@ -152,8 +176,9 @@ public abstract class CrtpDriver {
      * Notify all registered listeners about a disconnect.
      */
     protected void notifyDisconnected() {
+        String connectionInfo = mConnectionData.toString();
         for (ConnectionListener cl : this.mConnectionListeners) {
-            cl.disconnected(mConnectionData.toString());
+            cl.disconnected(connectionInfo);
         }
     }
 
@@ -168,6 +193,18 @@ public abstract class CrtpDriver {
         }
     }
 
+    /**
+     * Deliver a link quality update to the listeners without blocking the calling thread.
+     *
+     * The listeners are notified on the shared listener delivery threads (see {@link DeliveryQueue#getDefaultExecutor()}).
+     * If they are still busy with an earlier update, only the latest value is delivered.
+     *
+     * @param percent quality of the link (0 = connection lost, 100 = good)
+     */
+    protected void postLinkQualityUpdated(int percent) {
+        mLinkQualityQueue.offer(percent);
+    }
+
     public abstract void startSendReceiveThread();
 
     public abstract void stopSendReceiveThread();
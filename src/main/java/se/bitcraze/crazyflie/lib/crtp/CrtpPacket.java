@@ -30,11 +30,15 @@ package se.bitcraze.crazyflie.lib.crtp;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * Packet of data which can be sent/received from/to the Crazyflie. All packet
  * implementations must be immutable to avoid issues with modifying packets via
  * references, e.g. in a send queue.
+ * <br/>
+ * Packets obtained from a {@link CrtpPacketPool} are immutable until they are
+ * released with {@link #release()}, after which they are recycled by the pool.
  */
 public class CrtpPacket {
 
@@ -57,11 +61,24 @@ public class CrtpPacket {
         }
     };
 
+    /**
+     * Header of a packet. Headers are immutable, the headers of all 256 header bytes are
+     * interned and can be looked up with {@link #valueOf(byte)}.
+     */
     public static class Header {
 
-        private int mChannel;
-        private CrtpPort mPort;
-        private boolean isNullPacketHeader = false;
+        private final static Header[] HEADERS = new Header[256];
+
+        static {
+            for (int i = 0; i < HEADERS.length; i++) {
+                HEADERS[i] = new Header((byte) i);
+            }
+        }
+
+        private final int mChannel;
+        private final CrtpPort mPort;
+        private final boolean isNullPacketHeader;
+        private final byte mByte;
 
         public int getChannel() {
             return mChannel;
@@ -73,26 +90,54 @@ public class CrtpPacket {
 
         public Header(byte header) {
             if(header != -1){
-                this.mPort = CrtpPort.getByNumber((byte) (header >> 4));
+                this.isNullPacketHeader = false;
+                this.mPort = CrtpPort.getByNumber((byte) ((header >> 4) & 0x0F));
                 this.mChannel = header & 0x03;
             }else{
                 isNullPacketHeader = true;
                 this.mPort = CrtpPort.UNKNOWN;
                 this.mChannel = 0;
             }
+            this.mByte = header;
         }
 
         //TODO: change order of parameters according to python cflib?
         public Header(int channel, CrtpPort port){
             this.mChannel = channel;
             this.mPort = port;
+            this.isNullPacketHeader = false;
+            this.mByte = (byte) (((port.getNumber() & 0x0F) << 4) | (channel & 0x03));
         }
 
-        public byte getByte(){
-            if(isNullPacketHeader) {
-                return (byte) 0xFF;
+        /**
+         * Get the interned header of a header byte.
+         *
+         * @param header the header byte
+         * @return the shared header instance
+         */
+        public static Header valueOf(byte header) {
+            return HEADERS[header & 0xFF];
+        }
+
+        /**
+         * Get the interned header of a port and channel.
+         *
+         * @param channel
+         * @param port
+         * @return the shared header instance or a new header if the combination is not in the table
+         */
+        public static Header valueOf(int channel, CrtpPort port) {
+            if (port != null && channel >= 0 && channel <= 3) {
+                Header header = HEADERS[((port.getNumber() & 0x0F) << 4) | channel];
+                if (header.mPort == port && header.mChannel == channel) {
+                    return header;
+                }
             }
-            return (byte) (((mPort.getNumber() & 0x0F) << 4) | (mChannel & 0x03));
+            return new Header(channel, port);
+        }
+
+        public byte getByte(){
+            return mByte;
         }
 
         public String toString() {
@@ -134,14 +179,23 @@ public class CrtpPacket {
         }
     }
 
-    private final Header mPacketHeader;
+    private static final AtomicIntegerFieldUpdater<CrtpPacket> REF_COUNT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(CrtpPacket.class, "mRefCount");
+
+    // only reassigned when a pooled packet is refilled
+    private Header mPacketHeader;
     private final byte[] mPacketPayload;
     private byte[] mSerializedPacket;
     private byte[] mExpectedReply;
 
+    // only used by pooled packets
+    private final CrtpPacketPool mPool;
+    private volatile int mRefCount;
+
     public CrtpPacket() {
         mPacketHeader = null;
         mPacketPayload = null;
+        mPool = null;
     }
 
     /**
@@ -151,9 +205,10 @@ public class CrtpPacket {
      * @param port port to set in the header.
      */
     public CrtpPacket(int channel, CrtpPort port) {
-        this.mPacketHeader = new Header(channel, port);
+        this.mPacketHeader = Header.valueOf(channel, port);
         this.mPacketPayload = new byte[0];
         this.mSerializedPacket = null;
+        this.mPool = null;
     }
 
     /**
@@ -163,9 +218,10 @@ public class CrtpPacket {
      * @param packetPayload payload of the packet.
      */
     public CrtpPacket(byte packetHeader, byte[] packetPayload) {
-        this.mPacketHeader = new Header(packetHeader);
+        this.mPacketHeader = Header.valueOf(packetHeader);
         this.mPacketPayload = packetPayload;
         this.mSerializedPacket = null;
+        this.mPool = null;
     }
 
     /**
@@ -174,9 +230,75 @@ public class CrtpPacket {
      * @param packetData
      */
     public CrtpPacket(byte[] packetData) {
-        this.mPacketHeader = new Header(packetData[0]);
+        this.mPacketHeader = Header.valueOf(packetData[0]);
         this.mPacketPayload = Arrays.copyOfRange(packetData, 1, packetData.length);
         this.mSerializedPacket = null;
+        this.mPool = null;
+    }
+
+    /**
+     * Create a recyclable packet owned by the given pool.
+     *
+     * @param pool the pool the packet is returned to when released
+     * @param payloadLength fixed length of the payload
+     */
+    CrtpPacket(CrtpPacketPool pool, int payloadLength) {
+        this.mPacketHeader = Header.valueOf((byte) 0xff);
+        this.mPacketPayload = new byte[payloadLength];
+        this.mSerializedPacket = null;
+        this.mPool = pool;
+    }
+
+    /**
+     * Refill a pooled packet with header and payload. The payload length must match the length of the pooled packet.
+     *
+     * @param data source array containing the header byte followed by the payload
+     * @param offset position of the header byte in the source array
+     */
+    void fill(byte[] data, int offset) {
+        this.mPacketHeader = Header.valueOf(data[offset]);
+        System.arraycopy(data, offset + 1, mPacketPayload, 0, mPacketPayload.length);
+        this.mSerializedPacket = null;
+        this.mExpectedReply = null;
+        this.mRefCount = 1;
+    }
+
+    /**
+     * Check whether this packet is owned by a {@link CrtpPacketPool}.
+     *
+     * @return <code>true</code> if the packet is recycled after it has been released
+     */
+    public boolean isPooled() {
+        return mPool != null;
+    }
+
+    /**
+     * Increase the reference count of a pooled packet. Listeners that keep a reference to a received packet
+     * beyond their callback (e.g. to hand it to another thread) must retain it and release it when done.
+     * Does nothing for packets that are not pooled.
+     *
+     * @return this packet
+     */
+    public CrtpPacket retain() {
+        if (mPool != null) {
+            REF_COUNT_UPDATER.incrementAndGet(this);
+        }
+        return this;
+    }
+
+    /**
+     * Decrease the reference count of a pooled packet and return it to its pool when the count drops to zero.
+     * The packet must not be used afterwards. Does nothing for packets that are not pooled.
+     */
+    public void release() {
+        if (mPool != null) {
+            int refCount = REF_COUNT_UPDATER.decrementAndGet(this);
+            if (refCount == 0) {
+                mPool.recycle(this);
+            } else if (refCount < 0) {
+                throw new IllegalStateException("Pooled packet released more often than retained");
+            }
+        }
     }
 
     /**
@@ -0,0 +1,144 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crtp;
+
+/**
+ * Pool of recyclable {@link CrtpPacket}s.
+ *
+ * Link drivers can use the pool to hand received packets to the upper layers without allocating
+ * a new packet (and payload array) for every packet. Packets are kept in one free list per payload
+ * length. A packet obtained from the pool has a reference count of one and returns to the pool
+ * when {@link CrtpPacket#release()} brings the count back to zero.
+ */
+public class CrtpPacketPool {
+
+    /**
+     * Max size of the CRTP payload (a radio packet has 32 bytes incl. the header)
+     */
+    public final static int MAX_PAYLOAD_SIZE = 32;
+
+    private final static int DEFAULT_CAPACITY = 64;
+
+    private final CrtpPacket[][] mFreePackets;
+    private final int[] mFreeCount;
+    private final int mCapacity;
+
+    private long mCreatedCount = 0;
+    private long mObtainedCount = 0;
+
+    /**
+     * Create a packet pool that keeps up to 64 free packets per payload length
+     */
+    public CrtpPacketPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a packet pool
+     *
+     * @param capacity max number of free packets that are kept per payload length
+     */
+    public CrtpPacketPool(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.mCapacity = capacity;
+        this.mFreePackets = new CrtpPacket[MAX_PAYLOAD_SIZE + 1][];
+        this.mFreeCount = new int[MAX_PAYLOAD_SIZE + 1];
+    }
+
+    /**
+     * Get a packet from the pool and fill it with the given data.
+     *
+     * @param data source array containing the header byte followed by the payload
+     * @param offset position of the header byte in the source array
+     * @param length number of bytes incl. the header byte
+     * @return a packet with a reference count of one
+     */
+    public CrtpPacket obtain(byte[] data, int offset, int length) {
+        int payloadLength = length - 1;
+        if (payloadLength < 0 || payloadLength > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Invalid packet length: " + length);
+        }
+        CrtpPacket packet = null;
+        synchronized (this) {
+            mObtainedCount++;
+            int freeCount = mFreeCount[payloadLength];
+            if (freeCount > 0) {
+                freeCount--;
+                packet = mFreePackets[payloadLength][freeCount];
+                mFreePackets[payloadLength][freeCount] = null;
+                mFreeCount[payloadLength] = freeCount;
+            } else {
+                mCreatedCount++;
+            }
+        }
+        if (packet == null) {
+            packet = new CrtpPacket(this, payloadLength);
+        }
+        packet.fill(data, offset);
+        return packet;
+    }
+
+    /**
+     * Put a released packet back into its free list. Packets are dropped if the free list is full.
+     *
+     * @param packet
+     */
+    void recycle(CrtpPacket packet) {
+        int payloadLength = packet.getPayload().length;
+        synchronized (this) {
+            if (mFreePackets[payloadLength] == null) {
+                mFreePackets[payloadLength] = new CrtpPacket[mCapacity];
+            }
+            int freeCount = mFreeCount[payloadLength];
+            if (freeCount < mCapacity) {
+                mFreePackets[payloadLength][freeCount] = packet;
+                mFreeCount[payloadLength] = freeCount + 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of packets the pool had to create because no free packet was available.
+     *
+     * @return number of created packets
+     */
+    public synchronized long getCreatedCount() {
+        return mCreatedCount;
+    }
+
+    /**
+     * Returns the number of packets that have been obtained from the pool.
+     *
+     * @return number of obtained packets
+     */
+    public synchronized long getObtainedCount() {
+        return mObtainedCount;
+    }
+
+}
@@ -0,0 +1,312 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crtp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded ring buffer for CRTP packets with a pre-sized array of packet slots.
+ *
+ * The buffer is lock-free for a single producer and a single consumer. If several threads
+ * put packets into the buffer (e.g. the out queue of a driver) it has to be created with
+ * <code>multipleProducers</code> set to <code>true</code>, then producers are serialized with a lock
+ * while the consumer side stays lock-free.
+ *
+ * The {@link OverflowPolicy} decides what happens when a packet is offered to a full buffer,
+ * the {@link WaitStrategy} how a thread waits for a packet (consumer) or for a free slot (producer).
+ * Pooled packets that are dropped by the buffer are released.
+ */
+public class CrtpPacketRingBuffer {
+
+    /**
+     * What to do when a packet is offered to a full buffer
+     */
+    public enum OverflowPolicy {
+        /** Wait until a slot becomes free */
+        BLOCK,
+        /** Drop the oldest packet in the buffer to make room for the new one */
+        DROP_OLDEST,
+        /** Reject the new packet */
+        REJECT;
+    }
+
+    /**
+     * How threads wait for packets or free slots
+     */
+    public enum WaitStrategy {
+        /** Spin on the CPU, lowest latency but keeps a core busy (only use it with a dedicated core per thread) */
+        BUSY_SPIN,
+        /** Yield the CPU between checks */
+        YIELD,
+        /** Park the thread, the consumer is woken up by the producer */
+        PARK;
+    }
+
+    // max time a producer parks before checking for free slots again
+    private final static long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final AtomicReferenceArray<CrtpPacket> mSlots;
+    private final int mMask;
+    private final OverflowPolicy mOverflowPolicy;
+    private final WaitStrategy mWaitStrategy;
+    private final Object mProducerLock;
+
+    // next slot to read (only advanced by CAS, because DROP_OLDEST also moves it from the producer side)
+    private final AtomicLong mHead = new AtomicLong();
+    // next slot to write
+    private final AtomicLong mTail = new AtomicLong();
+
+    private volatile Thread mWaitingConsumer;
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    /**
+     * Create a ring buffer for one producer and one consumer thread.
+     *
+     * @param capacity min number of packets the buffer can hold (rounded up to a power of two)
+     * @param overflowPolicy
+     * @param waitStrategy
+     */
+    public CrtpPacketRingBuffer(int capacity, OverflowPolicy overflowPolicy, WaitStrategy waitStrategy) {
+        this(capacity, overflowPolicy, waitStrategy, false);
+    }
+
+    /**
+     * Create a ring buffer.
+     *
+     * @param capacity min number of packets the buffer can hold (rounded up to a power of two)
+     * @param overflowPolicy
+     * @param waitStrategy
+     * @param multipleProducers <code>true</code> if more than one thread puts packets into the buffer
+     */
+    public CrtpPacketRingBuffer(int capacity, OverflowPolicy overflowPolicy, WaitStrategy waitStrategy, boolean multipleProducers) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be in range 1-2^30");
+        }
+        if (overflowPolicy == null || waitStrategy == null) {
+            throw new IllegalArgumentException("Overflow policy and wait strategy must not be null");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mSlots = new AtomicReferenceArray<CrtpPacket>(size);
+        this.mMask = size - 1;
+        this.mOverflowPolicy = overflowPolicy;
+        this.mWaitStrategy = waitStrategy;
+        this.mProducerLock = multipleProducers ? new Object() : null;
+    }
+
+    /**
+     * Offer a packet to the buffer. Depending on the overflow policy this method waits for a free slot,
+     * drops the oldest packet or rejects the packet if the buffer is full.
+     *
+     * @param packet
+     * @return <code>true</code> if the packet has been added, <code>false</code> if it has been rejected
+     * @throws InterruptedException if the thread is interrupted while waiting for a free slot
+     */
+    public boolean offer(CrtpPacket packet) throws InterruptedException {
+        if (packet == null) {
+            throw new IllegalArgumentException("Packet must not be null");
+        }
+        boolean added;
+        if (mProducerLock != null) {
+            synchronized (mProducerLock) {
+                added = doOffer(packet);
+            }
+        } else {
+            added = doOffer(packet);
+        }
+        if (added) {
+            Thread waitingConsumer = mWaitingConsumer;
+            if (waitingConsumer != null) {
+                LockSupport.unpark(waitingConsumer);
+            }
+        }
+        return added;
+    }
+
+    private boolean doOffer(CrtpPacket packet) throws InterruptedException {
+        long tail = mTail.get();
+        while (tail - mHead.get() > mMask) {
+            switch (mOverflowPolicy) {
+                case REJECT:
+                    mDroppedCount.incrementAndGet();
+                    return false;
+                case DROP_OLDEST:
+                    long head = mHead.get();
+                    if (tail - head > mMask) {
+                        CrtpPacket oldest = mSlots.get((int) head & mMask);
+                        if (mHead.compareAndSet(head, head + 1)) {
+                            mDroppedCount.incrementAndGet();
+                            oldest.release();
+                        }
+                    }
+                    break;
+                default:
+                    waitForSlot();
+                    break;
+            }
+        }
+        mSlots.lazySet((int) tail & mMask, packet);
+        // full volatile store: it must not be reordered with the read of mWaitingConsumer in offer(),
+        // otherwise the producer and a consumer that is about to park can miss each other
+        mTail.set(tail + 1);
+        return true;
+    }
+
+    private void waitForSlot() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        switch (mWaitStrategy) {
+            case BUSY_SPIN:
+                break;
+            case YIELD:
+                Thread.yield();
+                break;
+            default:
+                LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+                break;
+        }
+    }
+
+    /**
+     * Take the oldest packet from the buffer without waiting. Must only be called from the consumer thread.
+     *
+     * @return the oldest packet or <code>null</code> if the buffer is empty
+     */
+    public CrtpPacket poll() {
+        while (true) {
+            long head = mHead.get();
+            if (head >= mTail.get()) {
+                return null;
+            }
+            // slots are not cleared after reading, they are overwritten by the producer once the head has moved on
+            CrtpPacket packet = mSlots.get((int) head & mMask);
+            if (mHead.compareAndSet(head, head + 1)) {
+                return packet;
+            }
+        }
+    }
+
+    /**
+     * Take the oldest packet from the buffer, waiting up to the given time for a packet to arrive.
+     * Must only be called from the consumer thread.
+     *
+     * @param timeout time to wait, a value &lt;= 0 does not wait
+     * @param unit unit of the timeout
+     * @return the oldest packet or <code>null</code> if the timeout elapsed
+     * @throws InterruptedException
+     */
+    public CrtpPacket poll(long timeout, TimeUnit unit) throws InterruptedException {
+        CrtpPacket packet = poll();
+        if (packet != null || timeout <= 0) {
+            return packet;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            while (true) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (mWaitStrategy == WaitStrategy.PARK) {
+                    mWaitingConsumer = Thread.currentThread();
+                }
+                packet = poll();
+                if (packet != null) {
+                    return packet;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                switch (mWaitStrategy) {
+                    case BUSY_SPIN:
+                        break;
+                    case YIELD:
+                        Thread.yield();
+                        break;
+                    default:
+                        LockSupport.parkNanos(this, remaining);
+                        break;
+                }
+            }
+        } finally {
+            mWaitingConsumer = null;
+        }
+    }
+
+    /**
+     * Remove all packets from the buffer. Must only be called from the consumer thread.
+     */
+    public void clear() {
+        CrtpPacket packet;
+        while ((packet = poll()) != null) {
+            packet.release();
+        }
+    }
+
+    /**
+     * Returns the number of packets in the buffer
+     *
+     * @return number of packets
+     */
+    public int size() {
+        long head = mHead.get();
+        long size = mTail.get() - head;
+        return (int) Math.max(0, Math.min(size, mMask + 1));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * Returns the number of packets that have been dropped or rejected because the buffer was full
+     *
+     * @return number of dropped packets
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return mOverflowPolicy;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return mWaitStrategy;
+    }
+
+}
@@ -0,0 +1,353 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crtp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketRingBuffer.OverflowPolicy;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketRingBuffer.WaitStrategy;
+
+/**
+ * Outbound packet scheduler of a link driver.
+ *
+ * Packets are sorted into lanes:
+ * <ul>
+ * <li>{@link Lane#COMMANDER}: a single slot for commander set-points, a newer set-point overwrites
+ * the one that has not been sent yet, so only the freshest set-point is transmitted</li>
+ * <li>{@link Lane#PRIORITY}: link control, parameter and log packets</li>
+ * <li>{@link Lane#BULK}: everything else, e.g. memory access and bootloader (flashing) packets</li>
+ * </ul>
+ * The priority lane is served first, then the commander slot, then the bulk lane. To avoid starvation
+ * the commander slot and the bulk lane are served anyway after they have been passed over a
+ * configurable number of times in a row.
+ *
+ * Packets can be added from several threads, but only one thread may take packets.
+ */
+public class CrtpPacketScheduler {
+
+    /**
+     * Lanes of the scheduler
+     */
+    public enum Lane {
+        COMMANDER,
+        PRIORITY,
+        BULK;
+    }
+
+    public final static int DEFAULT_PRIORITY_CAPACITY = 64;
+    public final static int DEFAULT_BULK_CAPACITY = 64;
+    public final static int DEFAULT_MAX_COMMANDER_SKIPS = 1;
+    public final static int DEFAULT_MAX_BULK_SKIPS = 4;
+
+    private final AtomicReference<CrtpPacket> mCommanderSlot = new AtomicReference<CrtpPacket>();
+    private final CrtpPacketRingBuffer mPriorityLane;
+    private final CrtpPacketRingBuffer mBulkLane;
+
+    private final int mMaxCommanderSkips;
+    private final int mMaxBulkSkips;
+    // only accessed by the consumer thread
+    private int mCommanderSkips = 0;
+    private int mBulkSkips = 0;
+
+    private volatile Thread mWaitingConsumer;
+
+    // metrics, indexed by lane ordinal
+    private final AtomicLongArray mSentCounts = new AtomicLongArray(Lane.values().length);
+    private final AtomicLongArray mDeferredCounts = new AtomicLongArray(Lane.values().length);
+    private final AtomicLongArray mForcedCounts = new AtomicLongArray(Lane.values().length);
+    private final AtomicLong mSetpointOverwrites = new AtomicLong();
+
+    /**
+     * Create a scheduler with default lane sizes and starvation limits
+     */
+    public CrtpPacketScheduler() {
+        this(new CrtpPacketRingBuffer(DEFAULT_PRIORITY_CAPACITY, OverflowPolicy.BLOCK, WaitStrategy.PARK, true),
+             new CrtpPacketRingBuffer(DEFAULT_BULK_CAPACITY, OverflowPolicy.BLOCK, WaitStrategy.PARK, true),
+             DEFAULT_MAX_COMMANDER_SKIPS, DEFAULT_MAX_BULK_SKIPS);
+    }
+
+    /**
+     * Create a scheduler
+     *
+     * @param priorityLane buffer for the priority lane (must support multiple producers)
+     * @param bulkLane buffer for the bulk lane (must support multiple producers)
+     * @param maxCommanderSkips number of times in a row a waiting set-point can be passed over by priority packets
+     * @param maxBulkSkips number of times in a row a waiting bulk packet can be passed over by other packets
+     */
+    public CrtpPacketScheduler(CrtpPacketRingBuffer priorityLane, CrtpPacketRingBuffer bulkLane, int maxCommanderSkips, int maxBulkSkips) {
+        if (maxCommanderSkips < 0 || maxBulkSkips < 0) {
+            throw new IllegalArgumentException("Max skips must not be negative");
+        }
+        this.mPriorityLane = priorityLane;
+        this.mBulkLane = bulkLane;
+        this.mMaxCommanderSkips = maxCommanderSkips;
+        this.mMaxBulkSkips = maxBulkSkips;
+    }
+
+    /**
+     * Returns the lane a packet is scheduled in
+     *
+     * @param packet
+     * @return the lane of the packet
+     */
+    public static Lane getLane(CrtpPacket packet) {
+        CrtpPort port = packet.getHeader().getPort();
+        if (port == CrtpPort.COMMANDER) {
+            return Lane.COMMANDER;
+        } else if (port == CrtpPort.LINKCTRL || port == CrtpPort.PARAMETERS || port == CrtpPort.LOGGING) {
+            return Lane.PRIORITY;
+        }
+        return Lane.BULK;
+    }
+
+    /**
+     * Add a packet to its lane.
+     *
+     * @param packet
+     * @return <code>false</code> if the packet has been rejected because its lane is full
+     * @throws InterruptedException if the thread is interrupted while waiting for a free slot
+     */
+    public boolean offer(CrtpPacket packet) throws InterruptedException {
+        boolean added = true;
+        switch (getLane(packet)) {
+            case COMMANDER:
+                CrtpPacket overwritten = mCommanderSlot.getAndSet(packet);
+                if (overwritten != null) {
+                    mSetpointOverwrites.incrementAndGet();
+                    overwritten.release();
+                }
+                break;
+            case PRIORITY:
+                added = mPriorityLane.offer(packet);
+                break;
+            default:
+                added = mBulkLane.offer(packet);
+                break;
+        }
+        if (added) {
+            Thread waitingConsumer = mWaitingConsumer;
+            if (waitingConsumer != null) {
+                LockSupport.unpark(waitingConsumer);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Take the next packet to send without waiting. Must only be called from the consumer thread.
+     *
+     * @return the next packet or <code>null</code> if all lanes are empty
+     */
+    public CrtpPacket poll() {
+        boolean commanderWaiting = mCommanderSlot.get() != null;
+        boolean bulkWaiting = !mBulkLane.isEmpty();
+
+        // starvation guards
+        if (bulkWaiting && mBulkSkips >= mMaxBulkSkips) {
+            CrtpPacket packet = mBulkLane.poll();
+            if (packet != null) {
+                mForcedCounts.incrementAndGet(Lane.BULK.ordinal());
+                return sent(Lane.BULK, packet, commanderWaiting, false);
+            }
+        }
+        if (commanderWaiting && mCommanderSkips >= mMaxCommanderSkips) {
+            CrtpPacket packet = mCommanderSlot.getAndSet(null);
+            if (packet != null) {
+                mForcedCounts.incrementAndGet(Lane.COMMANDER.ordinal());
+                return sent(Lane.COMMANDER, packet, false, bulkWaiting);
+            }
+        }
+
+        CrtpPacket packet = mPriorityLane.poll();
+        if (packet != null) {
+            return sent(Lane.PRIORITY, packet, commanderWaiting, bulkWaiting);
+        }
+        packet = mCommanderSlot.getAndSet(null);
+        if (packet != null) {
+            return sent(Lane.COMMANDER, packet, false, bulkWaiting);
+        }
+        packet = mBulkLane.poll();
+        if (packet != null) {
+            return sent(Lane.BULK, packet, false, false);
+        }
+        return null;
+    }
+
+    private CrtpPacket sent(Lane lane, CrtpPacket packet, boolean commanderDeferred, boolean bulkDeferred) {
+        mSentCounts.incrementAndGet(lane.ordinal());
+        if (lane == Lane.COMMANDER) {
+            mCommanderSkips = 0;
+        } else if (commanderDeferred) {
+            mCommanderSkips++;
+            mDeferredCounts.incrementAndGet(Lane.COMMANDER.ordinal());
+        }
+        if (lane == Lane.BULK) {
+            mBulkSkips = 0;
+        } else if (bulkDeferred) {
+            mBulkSkips++;
+            mDeferredCounts.incrementAndGet(Lane.BULK.ordinal());
+        }
+        return packet;
+    }
+
+    /**
+     * Take the next packet to send, waiting up to the given time for a packet.
+     * Must only be called from the consumer thread.
+     *
+     * @param timeout time to wait, a value &lt;= 0 does not wait
+     * @param unit unit of the timeout
+     * @return the next packet or <code>null</code> if the timeout elapsed
+     * @throws InterruptedException
+     */
+    public CrtpPacket poll(long timeout, TimeUnit unit) throws InterruptedException {
+        CrtpPacket packet = poll();
+        if (packet != null || timeout <= 0) {
+            return packet;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            while (true) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                mWaitingConsumer = Thread.currentThread();
+                packet = poll();
+                if (packet != null) {
+                    return packet;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+        } finally {
+            mWaitingConsumer = null;
+        }
+    }
+
+    /**
+     * Remove all waiting packets. Must only be called from the consumer thread.
+     */
+    public void clear() {
+        CrtpPacket packet = mCommanderSlot.getAndSet(null);
+        if (packet != null) {
+            packet.release();
+        }
+        mPriorityLane.clear();
+        mBulkLane.clear();
+    }
+
+    /**
+     * Returns the number of waiting packets in all lanes
+     *
+     * @return number of waiting packets
+     */
+    public int size() {
+        return (mCommanderSlot.get() != null ? 1 : 0) + mPriorityLane.size() + mBulkLane.size();
+    }
+
+    /**
+     * Returns the number of waiting packets in a lane
+     *
+     * @param lane
+     * @return number of waiting packets
+     */
+    public int size(Lane lane) {
+        switch (lane) {
+            case COMMANDER:
+                return mCommanderSlot.get() != null ? 1 : 0;
+            case PRIORITY:
+                return mPriorityLane.size();
+            default:
+                return mBulkLane.size();
+        }
+    }
+
+    /* Fairness metrics */
+
+    /**
+     * Returns the number of packets that have been taken from a lane
+     *
+     * @param lane
+     * @return number of sent packets
+     */
+    public long getSentCount(Lane lane) {
+        return mSentCounts.get(lane.ordinal());
+    }
+
+    /**
+     * Returns how often a waiting packet of a lane has been passed over by a packet of another lane
+     *
+     * @param lane
+     * @return number of deferrals
+     */
+    public long getDeferredCount(Lane lane) {
+        return mDeferredCounts.get(lane.ordinal());
+    }
+
+    /**
+     * Returns how often a lane has been served by the starvation guard
+     *
+     * @param lane
+     * @return number of forced packets
+     */
+    public long getForcedCount(Lane lane) {
+        return mForcedCounts.get(lane.ordinal());
+    }
+
+    /**
+     * Returns the number of set-points that have been overwritten by a newer set-point before they were sent
+     *
+     * @return number of overwritten set-points
+     */
+    public long getOverwrittenSetpointCount() {
+        return mSetpointOverwrites.get();
+    }
+
+    /**
+     * Returns the number of packets that have been rejected or dropped by a lane
+     *
+     * @param lane
+     * @return number of dropped packets
+     */
+    public long getDroppedCount(Lane lane) {
+        switch (lane) {
+            case COMMANDER:
+                return 0;
+            case PRIORITY:
+                return mPriorityLane.getDroppedCount();
+            default:
+                return mBulkLane.getDroppedCount();
+        }
+    }
+
+}
@@ -42,6 +42,18 @@ public enum CrtpPort {
     ALL(255),
     UNKNOWN(-1); //FIXME
 
+    private final static CrtpPort[] VALUES = values();
+    // ports indexed by their 4 bit number
+    private final static CrtpPort[] BY_NUMBER = new CrtpPort[16];
+
+    static {
+        for (CrtpPort p : VALUES) {
+            if (p.mNumber >= 0 && p.mNumber < BY_NUMBER.length) {
+                BY_NUMBER[p.mNumber] = p;
+            }
+        }
+    }
+
     private byte mNumber;
 
     private CrtpPort(int number) {
@@ -65,7 +77,10 @@ public enum CrtpPort {
      * @return the port or <code>null</code> if no port with the specified number exists.
      */
     public static CrtpPort getByNumber(byte number) {
-        for (CrtpPort p : CrtpPort.values()) {
+        if (number >= 0 && number < BY_NUMBER.length) {
+            return BY_NUMBER[number];
+        }
+        for (CrtpPort p : VALUES) {
             if (p.getNumber() == number) {
                 return p;
             }
@@ -0,0 +1,130 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crtp;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates the link quality from the retries and lost acks of the radio round trips.
+ *
+ * Every round trip yields a sample (100% for an ack without retries, 10% less for every retry, 0% for a lost ack)
+ * that is smoothed with an exponentially weighted moving average. {@link #update(boolean, int, long)} reports a new
+ * value at most at the notification rate, and only if it differs from the last reported value by at least the
+ * hysteresis, so listeners see a stable value.
+ *
+ * An estimator is only used by one thread at a time.
+ */
+public class LinkQualityEstimator {
+
+    public final static double DEFAULT_SMOOTHING = 0.05;
+    public final static double DEFAULT_NOTIFICATION_RATE = 10;
+    public final static int DEFAULT_HYSTERESIS = 3;
+
+    private final double mSmoothing;
+    private final long mNotificationInterval;
+    private final int mHysteresis;
+
+    private boolean mStarted = false;
+    private double mQuality = 0;
+
+    private boolean mNotified = false;
+    private long mLastNotification = 0;
+    private int mNotifiedQuality = 0;
+
+    /**
+     * Create an estimator that reports at 10 Hz
+     */
+    public LinkQualityEstimator() {
+        this(DEFAULT_SMOOTHING, DEFAULT_NOTIFICATION_RATE, DEFAULT_HYSTERESIS);
+    }
+
+    /**
+     * @param smoothing weight of a new sample (0 - 1], 1 disables smoothing
+     * @param notificationRate max number of reported values per second
+     * @param hysteresis min change in percent before a new value is reported
+     */
+    public LinkQualityEstimator(double smoothing, double notificationRate, int hysteresis) {
+        if (smoothing <= 0 || smoothing > 1 || notificationRate <= 0 || hysteresis < 0) {
+            throw new IllegalArgumentException("Invalid link quality estimator parameters");
+        }
+        this.mSmoothing = smoothing;
+        this.mNotificationInterval = (long) (TimeUnit.SECONDS.toNanos(1) / notificationRate);
+        this.mHysteresis = hysteresis;
+    }
+
+    /**
+     * Add the result of a round trip
+     *
+     * @param acked <code>true</code> if an ack has been received
+     * @param retries number of retries needed for the ack
+     * @param now current time in nanoseconds ({@link System#nanoTime()})
+     * @return the link quality in percent if listeners should be notified, otherwise -1
+     */
+    public int update(boolean acked, int retries, long now) {
+        double sample = acked ? Math.max(0, 10 - retries) * 10 : 0;
+        if (mStarted) {
+            mQuality += mSmoothing * (sample - mQuality);
+        } else {
+            mQuality = sample;
+            mStarted = true;
+        }
+
+        if (mNotified && now - mLastNotification < mNotificationInterval) {
+            return -1;
+        }
+        int quality = getQuality();
+        if (mNotified) {
+            int change = Math.abs(quality - mNotifiedQuality);
+            // always report reaching the limits, the hysteresis would hide them otherwise
+            boolean limit = (quality == 0 || quality == 100) && change > 0;
+            if (change < mHysteresis && !limit) {
+                return -1;
+            }
+        }
+        mNotified = true;
+        mLastNotification = now;
+        mNotifiedQuality = quality;
+        return quality;
+    }
+
+    /**
+     * @return the current smoothed link quality in percent
+     */
+    public int getQuality() {
+        return (int) Math.round(mQuality);
+    }
+
+    /**
+     * Forget all samples, called when the link is opened
+     */
+    public void reset() {
+        mStarted = false;
+        mQuality = 0;
+        mNotified = false;
+    }
+
+}
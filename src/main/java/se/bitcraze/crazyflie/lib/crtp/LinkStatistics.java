@@ -0,0 +1,214 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crtp;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable snapshot of the statistics of a link.
+ *
+ * Counters are accumulated since the link has been opened, rates are measured over the last second.
+ * The counters are read one by one without locking, so a snapshot taken while the link is busy
+ * can be off by a packet between different counters.
+ */
+public class LinkStatistics {
+
+    /**
+     * Number of entries in the retry histogram (the radio retries up to 15 times)
+     */
+    public final static int MAX_RETRIES = 16;
+
+    private final long mTimestamp;
+    private final double mUplinkPacketRate;
+    private final double mDownlinkPacketRate;
+    private final long mUplinkPacketCount;
+    private final long mDownlinkPacketCount;
+    private final long mAckCount;
+    private final long mEmptyAckCount;
+    private final long mLostAckCount;
+    private final long[] mRetryHistogram;
+    private final int mInQueueDepth;
+    private final int mOutQueueDepth;
+    private final long[] mUplinkBytesByPort;
+    private final long[] mDownlinkBytesByPort;
+    private final long mRoundTripP50;
+    private final long mRoundTripP90;
+    private final long mRoundTripP99;
+    private final long mRoundTripMax;
+
+    LinkStatistics(long timestamp, double uplinkPacketRate, double downlinkPacketRate, long uplinkPacketCount,
+            long downlinkPacketCount, long ackCount, long emptyAckCount, long lostAckCount, long[] retryHistogram,
+            int inQueueDepth, int outQueueDepth, long[] uplinkBytesByPort, long[] downlinkBytesByPort,
+            long roundTripP50, long roundTripP90, long roundTripP99, long roundTripMax) {
+        this.mTimestamp = timestamp;
+        this.mUplinkPacketRate = uplinkPacketRate;
+        this.mDownlinkPacketRate = downlinkPacketRate;
+        this.mUplinkPacketCount = uplinkPacketCount;
+        this.mDownlinkPacketCount = downlinkPacketCount;
+        this.mAckCount = ackCount;
+        this.mEmptyAckCount = emptyAckCount;
+        this.mLostAckCount = lostAckCount;
+        this.mRetryHistogram = retryHistogram;
+        this.mInQueueDepth = inQueueDepth;
+        this.mOutQueueDepth = outQueueDepth;
+        this.mUplinkBytesByPort = uplinkBytesByPort;
+        this.mDownlinkBytesByPort = downlinkBytesByPort;
+        this.mRoundTripP50 = roundTripP50;
+        this.mRoundTripP90 = roundTripP90;
+        this.mRoundTripP99 = roundTripP99;
+        this.mRoundTripMax = roundTripMax;
+    }
+
+    /**
+     * @return time of the snapshot in milliseconds ({@link System#currentTimeMillis()})
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * @return packets sent to the Crazyflie per second (without null packets)
+     */
+    public double getUplinkPacketRate() {
+        return mUplinkPacketRate;
+    }
+
+    /**
+     * @return packets received from the Crazyflie per second
+     */
+    public double getDownlinkPacketRate() {
+        return mDownlinkPacketRate;
+    }
+
+    public long getUplinkPacketCount() {
+        return mUplinkPacketCount;
+    }
+
+    public long getDownlinkPacketCount() {
+        return mDownlinkPacketCount;
+    }
+
+    /**
+     * @return number of acks received, including empty acks
+     */
+    public long getAckCount() {
+        return mAckCount;
+    }
+
+    /**
+     * @return number of acks without data
+     */
+    public long getEmptyAckCount() {
+        return mEmptyAckCount;
+    }
+
+    /**
+     * @return share of acks without data (0 - 1)
+     */
+    public double getEmptyAckRatio() {
+        return mAckCount == 0 ? 0 : (double) mEmptyAckCount / mAckCount;
+    }
+
+    /**
+     * @return number of packets for which no ack has been received after all retries
+     */
+    public long getLostAckCount() {
+        return mLostAckCount;
+    }
+
+    /**
+     * Returns how many acked packets needed the given number of retries
+     *
+     * @param retries number of retries (0 - 15)
+     * @return number of packets
+     */
+    public long getRetryCount(int retries) {
+        return mRetryHistogram[retries];
+    }
+
+    public int getInQueueDepth() {
+        return mInQueueDepth;
+    }
+
+    public int getOutQueueDepth() {
+        return mOutQueueDepth;
+    }
+
+    /**
+     * @param port
+     * @return number of bytes (including headers) sent to the given port
+     */
+    public long getUplinkBytes(CrtpPort port) {
+        return mUplinkBytesByPort[port.getNumber() & 0x0F];
+    }
+
+    /**
+     * @param port
+     * @return number of bytes (including headers) received from the given port
+     */
+    public long getDownlinkBytes(CrtpPort port) {
+        return mDownlinkBytesByPort[port.getNumber() & 0x0F];
+    }
+
+    /**
+     * Returns a percentile of the round trip time of the radio, i.e. sending a packet and receiving its ack.
+     * The value is the upper bound of the histogram bucket the percentile falls in.
+     *
+     * @param percentile 50, 90, 99 or 100 (max)
+     * @param unit
+     * @return round trip time
+     */
+    public long getRoundTripTime(int percentile, TimeUnit unit) {
+        long value;
+        switch (percentile) {
+            case 50:
+                value = mRoundTripP50;
+                break;
+            case 90:
+                value = mRoundTripP90;
+                break;
+            case 99:
+                value = mRoundTripP99;
+                break;
+            case 100:
+                value = mRoundTripMax;
+                break;
+            default:
+                throw new IllegalArgumentException("Percentile " + percentile + " is not available");
+        }
+        return unit.convert(value, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LinkStatistics - up: %.1f pkt/s, down: %.1f pkt/s, empty acks: %.0f%%, lost acks: %d, "
+                + "in queue: %d, out queue: %d, rtt p50/p99: %d/%d us",
+                mUplinkPacketRate, mDownlinkPacketRate, getEmptyAckRatio() * 100, mLostAckCount, mInQueueDepth,
+                mOutQueueDepth, TimeUnit.NANOSECONDS.toMicros(mRoundTripP50), TimeUnit.NANOSECONDS.toMicros(mRoundTripP99));
+    }
+
+}
@@ -0,0 +1,245 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crtp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects the statistics of a link.
+ *
+ * The recorder is written by a single thread (the send/receive thread of the driver), so the counters are
+ * updated with plain writes that are published with {@link AtomicLongArray#lazySet(int, long)} instead of
+ * atomic increments. The hot counters are striped over separate cache lines so that threads polling
+ * {@link #snapshot(int, int)} don't slow down the writer. Snapshots can be taken from any thread without locking.
+ */
+public class LinkStatisticsRecorder {
+
+    // one counter per cache line
+    private final static int STRIPE = 8;
+
+    private final static int ACKS = 0;
+    private final static int EMPTY_ACKS = 1;
+    private final static int LOST_ACKS = 2;
+    private final static int UPLINK_PACKETS = 3;
+    private final static int DOWNLINK_PACKETS = 4;
+    private final static int COUNTER_COUNT = 5;
+
+    private final static int PORTS = 16;
+
+    // round trip histogram in microseconds: 16 linear buckets, then 8 buckets per power of two
+    private final static int LINEAR_BUCKETS = 16;
+    private final static int SUB_BUCKET_BITS = 3;
+    private final static int MAX_OCTAVE = 24;
+    private final static int RTT_BUCKETS = LINEAR_BUCKETS + (MAX_OCTAVE - 4 + 1) * (1 << SUB_BUCKET_BITS);
+
+    private final static long RATE_WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLongArray mCounters = new AtomicLongArray(COUNTER_COUNT * STRIPE);
+    private final AtomicLongArray mRetryHistogram = new AtomicLongArray(LinkStatistics.MAX_RETRIES);
+    private final AtomicLongArray mUplinkBytes = new AtomicLongArray(PORTS);
+    private final AtomicLongArray mDownlinkBytes = new AtomicLongArray(PORTS);
+    private final AtomicLongArray mRoundTripHistogram = new AtomicLongArray(RTT_BUCKETS);
+    private volatile long mRoundTripMax = 0;
+
+    // rate window, only accessed by the writer
+    private long mWindowStart = 0;
+    private long mWindowUplinkPackets = 0;
+    private long mWindowDownlinkPackets = 0;
+
+    private volatile double mUplinkPacketRate = 0;
+    private volatile double mDownlinkPacketRate = 0;
+
+    private static void increment(AtomicLongArray array, int index, long delta) {
+        array.lazySet(index, array.get(index) + delta);
+    }
+
+    /**
+     * Record a radio round trip
+     *
+     * @param roundTripTime time between sending the packet and receiving the ack in nanoseconds
+     * @param acked <code>true</code> if an ack has been received
+     * @param retries number of retries needed for the ack
+     */
+    public void recordRoundTrip(long roundTripTime, boolean acked, int retries) {
+        if (acked) {
+            increment(mCounters, ACKS * STRIPE, 1);
+            increment(mRetryHistogram, Math.max(0, Math.min(retries, LinkStatistics.MAX_RETRIES - 1)), 1);
+        } else {
+            increment(mCounters, LOST_ACKS * STRIPE, 1);
+        }
+        increment(mRoundTripHistogram, getBucket(TimeUnit.NANOSECONDS.toMicros(roundTripTime)), 1);
+        if (roundTripTime > mRoundTripMax) {
+            mRoundTripMax = roundTripTime;
+        }
+    }
+
+    /**
+     * Record a packet that has been delivered to the Crazyflie
+     *
+     * @param header header byte of the packet
+     * @param length length of the packet including the header
+     */
+    public void recordUplink(byte header, int length) {
+        increment(mCounters, UPLINK_PACKETS * STRIPE, 1);
+        increment(mUplinkBytes, (header >> 4) & 0x0F, length);
+    }
+
+    /**
+     * Record a packet that has been received from the Crazyflie
+     *
+     * @param header header byte of the packet
+     * @param length length of the packet including the header
+     */
+    public void recordDownlink(byte header, int length) {
+        increment(mCounters, DOWNLINK_PACKETS * STRIPE, 1);
+        increment(mDownlinkBytes, (header >> 4) & 0x0F, length);
+    }
+
+    /**
+     * Record an ack without data
+     */
+    public void recordEmptyAck() {
+        increment(mCounters, EMPTY_ACKS * STRIPE, 1);
+    }
+
+    /**
+     * Update the packet rates, called regularly by the writer
+     *
+     * @param now current time in nanoseconds ({@link System#nanoTime()})
+     */
+    public void updateRates(long now) {
+        if (mWindowStart == 0) {
+            mWindowStart = now;
+            mWindowUplinkPackets = mCounters.get(UPLINK_PACKETS * STRIPE);
+            mWindowDownlinkPackets = mCounters.get(DOWNLINK_PACKETS * STRIPE);
+            return;
+        }
+        long elapsed = now - mWindowStart;
+        if (elapsed >= RATE_WINDOW) {
+            long uplinkPackets = mCounters.get(UPLINK_PACKETS * STRIPE);
+            long downlinkPackets = mCounters.get(DOWNLINK_PACKETS * STRIPE);
+            mUplinkPacketRate = (uplinkPackets - mWindowUplinkPackets) * 1e9 / elapsed;
+            mDownlinkPacketRate = (downlinkPackets - mWindowDownlinkPackets) * 1e9 / elapsed;
+            mWindowStart = now;
+            mWindowUplinkPackets = uplinkPackets;
+            mWindowDownlinkPackets = downlinkPackets;
+        }
+    }
+
+    /**
+     * Reset all statistics. Must only be called by the writer.
+     */
+    public void reset() {
+        for (int i = 0; i < mCounters.length(); i++) {
+            mCounters.set(i, 0);
+        }
+        for (int i = 0; i < mRetryHistogram.length(); i++) {
+            mRetryHistogram.set(i, 0);
+        }
+        for (int i = 0; i < PORTS; i++) {
+            mUplinkBytes.set(i, 0);
+            mDownlinkBytes.set(i, 0);
+        }
+        for (int i = 0; i < mRoundTripHistogram.length(); i++) {
+            mRoundTripHistogram.set(i, 0);
+        }
+        mRoundTripMax = 0;
+        mWindowStart = 0;
+        mUplinkPacketRate = 0;
+        mDownlinkPacketRate = 0;
+    }
+
+    /**
+     * Take a snapshot of the statistics. Can be called from any thread.
+     *
+     * @param inQueueDepth current depth of the in queue of the driver
+     * @param outQueueDepth current depth of the out queue of the driver
+     * @return the snapshot
+     */
+    public LinkStatistics snapshot(int inQueueDepth, int outQueueDepth) {
+        long[] roundTripHistogram = toArray(mRoundTripHistogram);
+        long roundTrips = 0;
+        for (long count : roundTripHistogram) {
+            roundTrips += count;
+        }
+        return new LinkStatistics(System.currentTimeMillis(), mUplinkPacketRate, mDownlinkPacketRate,
+                mCounters.get(UPLINK_PACKETS * STRIPE), mCounters.get(DOWNLINK_PACKETS * STRIPE),
+                mCounters.get(ACKS * STRIPE), mCounters.get(EMPTY_ACKS * STRIPE), mCounters.get(LOST_ACKS * STRIPE),
+                toArray(mRetryHistogram), inQueueDepth, outQueueDepth, toArray(mUplinkBytes), toArray(mDownlinkBytes),
+                getPercentile(roundTripHistogram, roundTrips, 0.50), getPercentile(roundTripHistogram, roundTrips, 0.90),
+                getPercentile(roundTripHistogram, roundTrips, 0.99), mRoundTripMax);
+    }
+
+    private static long[] toArray(AtomicLongArray array) {
+        long[] values = new long[array.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.get(i);
+        }
+        return values;
+    }
+
+    static int getBucket(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+        int octave = 63 - Long.numberOfLeadingZeros(micros);
+        if (octave > MAX_OCTAVE) {
+            return RTT_BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >> (octave - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return LINEAR_BUCKETS + ((octave - 4) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * @return the largest value in microseconds that falls into the bucket
+     */
+    static long getBucketUpperBound(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int octave = ((bucket - LINEAR_BUCKETS) >> SUB_BUCKET_BITS) + 4;
+        int subBucket = (bucket - LINEAR_BUCKETS) & ((1 << SUB_BUCKET_BITS) - 1);
+        return ((long) ((1 << SUB_BUCKET_BITS) + subBucket + 1) << (octave - SUB_BUCKET_BITS)) - 1;
+    }
+
+    private static long getPercentile(long[] histogram, long total, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * percentile);
+        long count = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            count += histogram[i];
+            if (count >= target) {
+                return TimeUnit.MICROSECONDS.toNanos(getBucketUpperBound(i));
+            }
+        }
+        return TimeUnit.MICROSECONDS.toNanos(getBucketUpperBound(histogram.length - 1));
+    }
+
+}
@@ -0,0 +1,153 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import se.bitcraze.crazyflie.lib.crazyflie.DeliveryPolicy;
+import se.bitcraze.crazyflie.lib.crazyflie.DeliveryQueue;
+
+/**
+ * Log listener that forwards all callbacks to another listener on an executor, so a slow listener
+ * does not stall the packet thread.
+ * <br/>
+ * Log data is dropped according to the {@link DeliveryPolicy}, added, started and error callbacks are never dropped.
+ */
+public class AsyncLogListener implements LogListener {
+
+    private final LogListener mDelegate;
+    private final DeliveryQueue<LogEvent> mQueue;
+
+    static final int ADDED = 0;
+    static final int ERROR = 1;
+    static final int STARTED = 2;
+    static final int DATA = 3;
+    static final int RECORD = 4;
+
+    static class LogEvent {
+        private final int mType;
+        private final LogConfig mLogConfig;
+        private final Map<String, Number> mData;
+        private final int mTimestamp;
+        private final LogRecord mRecord;
+
+        LogEvent(int type, LogConfig logConfig, Map<String, Number> data, int timestamp, LogRecord record) {
+            this.mType = type;
+            this.mLogConfig = logConfig;
+            this.mData = data;
+            this.mTimestamp = timestamp;
+            this.mRecord = record;
+        }
+    }
+
+    /**
+     * Deliver callbacks on the default executor, dropping the oldest log data when more than 64 are pending
+     *
+     * @param delegate
+     */
+    public AsyncLogListener(LogListener delegate) {
+        this(delegate, DeliveryQueue.getDefaultExecutor(), 64, DeliveryPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * @param delegate listener that receives the callbacks
+     * @param executor executor running the listener, e.g. a virtual thread per task executor
+     * @param capacity maximum number of pending log data callbacks
+     * @param policy what to do when the queue is full
+     */
+    public AsyncLogListener(LogListener delegate, Executor executor, int capacity, DeliveryPolicy policy) {
+        this.mDelegate = delegate;
+        this.mQueue = new DeliveryQueue<LogEvent>(executor, capacity, policy) {
+            @Override
+            protected void deliver(LogEvent event) {
+                dispatch(event);
+            }
+        };
+    }
+
+    void dispatch(LogEvent event) {
+        switch (event.mType) {
+            case ADDED:
+                mDelegate.logConfigAdded(event.mLogConfig);
+                break;
+            case ERROR:
+                mDelegate.logConfigError(event.mLogConfig);
+                break;
+            case STARTED:
+                mDelegate.logConfigStarted(event.mLogConfig);
+                break;
+            case DATA:
+                mDelegate.logDataReceived(event.mLogConfig, event.mData, event.mTimestamp);
+                break;
+            case RECORD:
+                ((LogRecordListener) mDelegate).logRecordReceived(event.mRecord);
+                break;
+            default:
+                break;
+        }
+    }
+
+    void offer(LogEvent event, boolean droppable) {
+        mQueue.offer(event, droppable);
+    }
+
+    public void logConfigAdded(LogConfig logConfig) {
+        offer(new LogEvent(ADDED, logConfig, null, 0, null), false);
+    }
+
+    public void logConfigError(LogConfig logConfig) {
+        offer(new LogEvent(ERROR, logConfig, null, 0, null), false);
+    }
+
+    public void logConfigStarted(LogConfig logConfig) {
+        offer(new LogEvent(STARTED, logConfig, null, 0, null), false);
+    }
+
+    public void logDataReceived(LogConfig logConfig, Map<String, Number> data, int timestamp) {
+        offer(new LogEvent(DATA, logConfig, data, timestamp, null), true);
+    }
+
+    public LogListener getDelegate() {
+        return mDelegate;
+    }
+
+    /**
+     * @return number of log data callbacks dropped because of the delivery policy
+     */
+    public long getDroppedCount() {
+        return mQueue.getDroppedCount();
+    }
+
+    /**
+     * @return number of callbacks delivered to the wrapped listener
+     */
+    public long getDeliveredCount() {
+        return mQueue.getDeliveredCount();
+    }
+
+}
@@ -0,0 +1,59 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import java.util.concurrent.Executor;
+
+import se.bitcraze.crazyflie.lib.crazyflie.DeliveryPolicy;
+import se.bitcraze.crazyflie.lib.crazyflie.DeliveryQueue;
+
+/**
+ * Record listener that forwards all callbacks to another record listener on an executor.
+ * <br/>
+ * Records are copied before they are queued, because Logg reuses them for the next packet.
+ */
+public class AsyncLogRecordListener extends AsyncLogListener implements LogRecordListener {
+
+    public AsyncLogRecordListener(LogRecordListener delegate) {
+        this(delegate, DeliveryQueue.getDefaultExecutor(), 64, DeliveryPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * @param delegate listener that receives the callbacks
+     * @param executor executor running the listener, e.g. a virtual thread per task executor
+     * @param capacity maximum number of pending records
+     * @param policy what to do when the queue is full
+     */
+    public AsyncLogRecordListener(LogRecordListener delegate, Executor executor, int capacity, DeliveryPolicy policy) {
+        super(delegate, executor, capacity, policy);
+    }
+
+    public void logRecordReceived(LogRecord record) {
+        offer(new LogEvent(RECORD, record.getLogConfig(), null, record.getTimestamp(), record.copy()), true);
+    }
+
+}
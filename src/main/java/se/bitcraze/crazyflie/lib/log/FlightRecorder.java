@@ -0,0 +1,434 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import se.bitcraze.crazyflie.lib.crazyflie.DataListener;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPort;
+import se.bitcraze.crazyflie.lib.toc.Toc;
+
+/**
+ * Records the log data packets received by {@link Logg} into memory-mapped segment files.
+ * <br/>
+ * The packet thread only copies each packet into a preallocated ring of slots, a writer thread appends
+ * the packets together with the layouts of their log configs to the current segment and starts a new
+ * segment when it is full. If the writer can't keep up, packets are dropped and counted instead of
+ * blocking the packet thread. Use {@link FlightRecording} to read a recording.
+ */
+public class FlightRecorder {
+
+    final Logger mLogger = LoggerFactory.getLogger("FlightRecorder");
+
+    public final static int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    public final static int DEFAULT_BUFFER_SLOTS = 1024;
+
+    private final static int CHAN_LOGDATA = 2;
+    // block id and 3 byte timestamp
+    private final static int LOG_DATA_OFFSET = 4;
+    private final static int MAX_PAYLOAD_SIZE = 32;
+    private final static long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final File mDirectory;
+    private final int mSegmentSize;
+    private final int mIndexInterval;
+
+    // single producer, single consumer ring of slots
+    private final byte[][] mSlotData;
+    private final int[] mSlotLength;
+    private final long[] mSlotTime;
+    private final Layout[] mSlotLayout;
+    private final AtomicLong mHead = new AtomicLong();
+    private final AtomicLong mTail = new AtomicLong();
+
+    private final AtomicLong mRecordedCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    // latest layout of each log config id, only used by the packet thread
+    private final Layout[] mOfferLayouts = new Layout[Logg.MAX_LOG_CONFIGS];
+
+    private Logg mLogg;
+    private DataListener mDataListener;
+    private Thread mWriterThread;
+    private volatile boolean mRunning = false;
+
+    // only used by the writer thread
+    private MappedByteBuffer mSegment;
+    private int mSegmentNumber;
+    private volatile int mSegmentCount;
+    private int mOffset;
+    private int mNextIndexOffset;
+    private int mIndexCount;
+    private final Layout[] mLayouts = new Layout[Logg.MAX_LOG_CONFIGS];
+
+    public FlightRecorder(File directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_BUFFER_SLOTS);
+    }
+
+    /**
+     * @param directory directory for the segment files
+     * @param segmentSize size of each segment file in bytes
+     * @param bufferSlots number of packets that can wait for the writer thread
+     */
+    public FlightRecorder(File directory, int segmentSize, int bufferSlots) {
+        if (segmentSize < FlightRecording.DATA_START + 4096 || bufferSlots < 1) {
+            throw new IllegalArgumentException("Invalid segment size or buffer slots");
+        }
+        this.mDirectory = directory;
+        this.mSegmentSize = segmentSize;
+        this.mIndexInterval = (segmentSize - FlightRecording.DATA_START) / FlightRecording.INDEX_CAPACITY;
+        this.mSlotData = new byte[bufferSlots][MAX_PAYLOAD_SIZE];
+        this.mSlotLength = new int[bufferSlots];
+        this.mSlotTime = new long[bufferSlots];
+        this.mSlotLayout = new Layout[bufferSlots];
+    }
+
+    /**
+     * Start recording the log data packets of the log configs of Logg. New segment files are
+     * numbered after the existing ones in the directory.
+     *
+     * @param logg
+     * @throws IOException if the first segment can't be created
+     */
+    public synchronized void start(Logg logg) throws IOException {
+        if (mDataListener != null) {
+            throw new IllegalStateException("Flight recorder is already running");
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+        this.mLogg = logg;
+        mSegmentNumber = FlightRecording.listSegments(mDirectory).length;
+        mSegmentCount = 0;
+        openSegment();
+
+        mRunning = true;
+        mWriterThread = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "FlightRecorder");
+        mWriterThread.setDaemon(true);
+        mWriterThread.start();
+
+        mDataListener = new DataListener(CrtpPort.LOGGING, CHAN_LOGDATA) {
+            @Override
+            public void dataReceived(CrtpPacket packet) {
+                offer(packet);
+            }
+        };
+        logg.getCrazyflie().addDataListener(mDataListener);
+    }
+
+    /**
+     * Stop recording, write the remaining packets and flush the segment
+     */
+    public synchronized void stop() {
+        if (mDataListener == null) {
+            return;
+        }
+        mLogg.getCrazyflie().removeDataListener(mDataListener);
+        mDataListener = null;
+        mRunning = false;
+        LockSupport.unpark(mWriterThread);
+        try {
+            mWriterThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeSegment();
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * @return number of packets written to the segments
+     */
+    public long getRecordedCount() {
+        return mRecordedCount.get();
+    }
+
+    /**
+     * @return number of packets dropped because the writer thread could not keep up
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * @return number of segments written since the recorder has been started
+     */
+    public int getSegmentCount() {
+        return mSegmentCount;
+    }
+
+    /**
+     * Copy a log data packet into the next free slot, called by the packet thread
+     */
+    void offer(CrtpPacket packet) {
+        offer(packet, System.currentTimeMillis());
+    }
+
+    void offer(CrtpPacket packet, long hostTimestamp) {
+        byte[] payload = packet.getPayload();
+        if (payload.length < LOG_DATA_OFFSET) {
+            return;
+        }
+        LogConfig logConfig = mLogg.getLogConfig(payload[0] & 0xFF);
+        if (logConfig == null) {
+            // without a layout the data can't be decoded
+            mDroppedCount.incrementAndGet();
+            return;
+        }
+        long tail = mTail.get();
+        if (tail - mHead.get() >= mSlotData.length) {
+            mDroppedCount.incrementAndGet();
+            return;
+        }
+        // the layout as it is when the packet arrives, a new one is only created when the log config has changed
+        int id = payload[0] & 0xFF;
+        LogDecoder decoder = logConfig.getDecoder();
+        Layout layout = mOfferLayouts[id];
+        if (layout == null || !layout.matches(logConfig, decoder)) {
+            layout = new Layout(id, logConfig, decoder);
+            mOfferLayouts[id] = layout;
+        }
+        int slot = (int) (tail % mSlotData.length);
+        int length = Math.min(payload.length, MAX_PAYLOAD_SIZE);
+        System.arraycopy(payload, 0, mSlotData[slot], 0, length);
+        mSlotLength[slot] = length;
+        mSlotTime[slot] = hostTimestamp;
+        mSlotLayout[slot] = layout;
+        // publishes the slot
+        mTail.lazySet(tail + 1);
+    }
+
+    private void writeLoop() {
+        while (true) {
+            boolean running = mRunning;
+            long head = mHead.get();
+            long tail = mTail.get();
+            if (head == tail) {
+                if (!running) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_WAIT_NANOS);
+                continue;
+            }
+            try {
+                for (; head < tail; head++) {
+                    int slot = (int) (head % mSlotData.length);
+                    write(mSlotLayout[slot], mSlotData[slot], mSlotLength[slot], mSlotTime[slot]);
+                    mSlotLayout[slot] = null;
+                }
+                mSegment.putInt(FlightRecording.HEADER_END, mOffset);
+            } catch (IOException e) {
+                mLogger.error("Flight recorder stopped: " + e.getMessage());
+                mRunning = false;
+                mHead.set(tail);
+                break;
+            }
+            mHead.lazySet(head);
+        }
+    }
+
+    private void write(Layout layout, byte[] payload, int length, long hostTimestamp) throws IOException {
+        int size = Math.min(length - LOG_DATA_OFFSET, layout.mDataSize);
+        int id = layout.mId;
+        int recordSize = FlightRecording.RECORD_HEADER_SIZE + 14 + size;
+
+        if (mOffset + recordSize + getLayoutsSize(layout) > mSegmentSize) {
+            closeSegment();
+            mSegmentNumber++;
+            openSegment();
+        }
+        if (mOffset >= mNextIndexOffset && mIndexCount < FlightRecording.INDEX_CAPACITY) {
+            addIndexEntry(hostTimestamp, payload);
+        }
+        if (mLayouts[id] != layout) {
+            mLayouts[id] = layout;
+            writeLayout(layout);
+        }
+
+        mSegment.position(mOffset);
+        mSegment.put(FlightRecording.TYPE_DATA);
+        mSegment.putShort((short) (14 + size));
+        mSegment.put((byte) id);
+        mSegment.putInt((payload[1] & 0xFF) | (payload[2] & 0xFF) << 8 | (payload[3] & 0xFF) << 16);
+        mSegment.putLong(hostTimestamp);
+        mSegment.put((byte) size);
+        mSegment.put(payload, LOG_DATA_OFFSET, size);
+        mOffset = mSegment.position();
+        mRecordedCount.incrementAndGet();
+    }
+
+    /**
+     * Index the current offset and repeat all layouts, so reading can start here
+     */
+    private void addIndexEntry(long hostTimestamp, byte[] payload) {
+        int entry = FlightRecording.HEADER_SIZE + mIndexCount * FlightRecording.INDEX_ENTRY_SIZE;
+        mSegment.putLong(entry, hostTimestamp);
+        mSegment.putInt(entry + 8, (payload[1] & 0xFF) | (payload[2] & 0xFF) << 8 | (payload[3] & 0xFF) << 16);
+        mSegment.putInt(entry + 12, mOffset);
+        mIndexCount++;
+        mSegment.putInt(FlightRecording.HEADER_INDEX_COUNT, mIndexCount);
+        mNextIndexOffset = mOffset + mIndexInterval;
+        for (Layout layout : mLayouts) {
+            if (layout != null) {
+                writeLayout(layout);
+            }
+        }
+    }
+
+    private int getLayoutsSize(Layout newLayout) {
+        int size = newLayout.mSize;
+        for (Layout layout : mLayouts) {
+            if (layout != null) {
+                size += layout.mSize;
+            }
+        }
+        return size;
+    }
+
+    private void writeLayout(Layout layout) {
+        int start = mOffset;
+        mSegment.position(start + FlightRecording.RECORD_HEADER_SIZE);
+        mSegment.put((byte) layout.mId);
+        mSegment.putInt(layout.mPeriodInMs);
+        putString(layout.mName);
+        mSegment.put((byte) layout.mVariableNames.length);
+        for (int i = 0; i < layout.mVariableNames.length; i++) {
+            putString(layout.mVariableNames[i]);
+            putString(layout.mTypeNames[i]);
+        }
+        mOffset = mSegment.position();
+        mSegment.put(start, FlightRecording.TYPE_LAYOUT);
+        mSegment.putShort(start + 1, (short) (mOffset - start - FlightRecording.RECORD_HEADER_SIZE));
+    }
+
+    private static byte[] encode(String string) {
+        byte[] bytes = string.getBytes(FlightRecording.CHARSET);
+        // strings are prefixed with a single length byte
+        return bytes.length > 255 ? Arrays.copyOf(bytes, 255) : bytes;
+    }
+
+    private void putString(byte[] bytes) {
+        mSegment.put((byte) bytes.length);
+        mSegment.put(bytes);
+    }
+
+    private void openSegment() throws IOException {
+        File file = new File(mDirectory, String.format("%s%05d%s", FlightRecording.SEGMENT_PREFIX, mSegmentNumber, FlightRecording.SEGMENT_SUFFIX));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(mSegmentSize);
+            mSegment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mSegmentSize);
+        } finally {
+            // the mapping stays valid
+            raf.close();
+        }
+        mSegment.order(CrtpPacket.BYTE_ORDER);
+        Toc toc = mLogg.getToc();
+        mSegment.putInt(FlightRecording.HEADER_MAGIC, FlightRecording.MAGIC);
+        mSegment.putShort(FlightRecording.HEADER_VERSION, FlightRecording.VERSION);
+        mSegment.putInt(FlightRecording.HEADER_SEGMENT, mSegmentNumber);
+        mSegment.putInt(FlightRecording.HEADER_TOC_CRC, toc == null ? 0 : toc.getCrc());
+        mSegment.putLong(FlightRecording.HEADER_CREATED, System.currentTimeMillis());
+        mSegment.putInt(FlightRecording.HEADER_END, FlightRecording.DATA_START);
+        mSegment.putInt(FlightRecording.HEADER_INDEX_COUNT, 0);
+        mOffset = FlightRecording.DATA_START;
+        mNextIndexOffset = mOffset;
+        mIndexCount = 0;
+        mSegmentCount++;
+    }
+
+    private void closeSegment() {
+        if (mSegment != null) {
+            mSegment.putInt(FlightRecording.HEADER_END, mOffset);
+            mSegment.force();
+            mSegment = null;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the layout of a log config, taken when its packets arrive
+     */
+    private static class Layout {
+
+        private final int mId;
+        private final LogConfig mLogConfig;
+        private final LogDecoder mDecoder;
+        private final int mPeriodInMs;
+        private final String mConfigName;
+        private final byte[] mName;
+        private final byte[][] mVariableNames;
+        private final byte[][] mTypeNames;
+        private final int mDataSize;
+        // size of the layout record
+        private final int mSize;
+
+        Layout(int id, LogConfig logConfig, LogDecoder decoder) {
+            this.mId = id;
+            this.mLogConfig = logConfig;
+            this.mDecoder = decoder;
+            this.mPeriodInMs = logConfig.getPeriodInMs();
+            this.mConfigName = logConfig.getName();
+            this.mName = encode(mConfigName);
+            this.mDataSize = decoder.getSize();
+            int count = decoder.getVariableCount();
+            this.mVariableNames = new byte[count][];
+            this.mTypeNames = new byte[count][];
+            int size = FlightRecording.RECORD_HEADER_SIZE + 7 + mName.length;
+            for (int i = 0; i < count; i++) {
+                // the decoder uses the fetch-as types
+                mVariableNames[i] = encode(decoder.getName(i));
+                mTypeNames[i] = encode(decoder.getVariableType(i).name());
+                size += 2 + mVariableNames[i].length + mTypeNames[i].length;
+            }
+            this.mSize = size;
+        }
+
+        boolean matches(LogConfig logConfig, LogDecoder decoder) {
+            return mLogConfig == logConfig && mDecoder == decoder && mPeriodInMs == logConfig.getPeriodInMs()
+                    && mConfigName.equals(logConfig.getName());
+        }
+    }
+
+}
@@ -0,0 +1,282 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+/**
+ * Read access to the segment files written by a {@link FlightRecorder}.
+ * <br/>
+ * Segment layout (little endian):
+ * <pre>
+ * header   magic, version, segment number, TOC CRC, creation time, end of data, index entry count
+ * index    INDEX_CAPACITY entries of host timestamp, firmware timestamp and offset
+ * records  type (1 byte), body length (2 bytes), body
+ *          LAYOUT: block id, period, log config name, variable count, (name, variable type)*
+ *          DATA:   block id, firmware timestamp, host timestamp, length, packed variables
+ * </pre>
+ * Every index entry points at a copy of all current layouts, so reading can start at any index entry.
+ */
+public class FlightRecording {
+
+    final static int MAGIC = 0x43524643; // "CFRC"
+    final static short VERSION = 1;
+    final static String SEGMENT_PREFIX = "segment-";
+    final static String SEGMENT_SUFFIX = ".cfr";
+
+    final static int HEADER_MAGIC = 0;
+    final static int HEADER_VERSION = 4;
+    final static int HEADER_SEGMENT = 8;
+    final static int HEADER_TOC_CRC = 12;
+    final static int HEADER_CREATED = 16;
+    final static int HEADER_END = 24;
+    final static int HEADER_INDEX_COUNT = 28;
+    final static int HEADER_SIZE = 32;
+
+    final static int INDEX_ENTRY_SIZE = 16;
+    final static int INDEX_CAPACITY = 256;
+    final static int DATA_START = HEADER_SIZE + INDEX_CAPACITY * INDEX_ENTRY_SIZE;
+
+    final static byte TYPE_LAYOUT = 1;
+    final static byte TYPE_DATA = 2;
+    // type and body length
+    final static int RECORD_HEADER_SIZE = 3;
+
+    final static Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Receives the records read from a recording
+     */
+    public interface Visitor {
+
+        /**
+         * @param hostTimestamp time in ms (System.currentTimeMillis()) when the packet was received
+         * @param record decoded record, reused for every call
+         * @return <code>false</code> to stop reading
+         */
+        public boolean logRecordRead(long hostTimestamp, LogRecord record);
+
+    }
+
+    private final List<MappedByteBuffer> mSegments = new ArrayList<MappedByteBuffer>();
+
+    /**
+     * Open all segments of a recording
+     *
+     * @param directory the directory the recorder has written to
+     * @throws IOException if a segment can't be read or is not a recording
+     */
+    public FlightRecording(File directory) throws IOException {
+        File[] files = listSegments(directory);
+        for (File file : files) {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+                buffer.order(CrtpPacket.BYTE_ORDER);
+                if (buffer.capacity() < DATA_START || buffer.getInt(HEADER_MAGIC) != MAGIC) {
+                    throw new IOException(file + " is not a flight recording segment");
+                }
+                mSegments.add(buffer);
+            } finally {
+                // the mapping stays valid
+                raf.close();
+            }
+        }
+    }
+
+    static File[] listSegments(File directory) {
+        File[] files = directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().startsWith(SEGMENT_PREFIX) && file.getName().endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        // zero padded segment numbers
+        Arrays.sort(files);
+        return files;
+    }
+
+    public int getSegmentCount() {
+        return mSegments.size();
+    }
+
+    /**
+     * @return the CRC of the log TOC when the first segment was created, 0 if unknown
+     */
+    public int getTocCrc() {
+        return mSegments.isEmpty() ? 0 : mSegments.get(0).getInt(HEADER_TOC_CRC);
+    }
+
+    /**
+     * @return host timestamp of the first indexed record or -1 if the recording is empty
+     */
+    public long getStartTime() {
+        for (MappedByteBuffer segment : mSegments) {
+            if (segment.getInt(HEADER_INDEX_COUNT) > 0) {
+                return segment.getLong(HEADER_SIZE);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read all records
+     *
+     * @param visitor
+     */
+    public void scan(Visitor visitor) {
+        query(Long.MIN_VALUE, Long.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Read the records received within a host time range (inclusive). The sparse index is used to skip
+     * the segments and parts of segments before the range.
+     *
+     * @param from host timestamp in ms
+     * @param to host timestamp in ms
+     * @param visitor
+     */
+    public void query(long from, long to, Visitor visitor) {
+        for (int i = 0; i < mSegments.size(); i++) {
+            ByteBuffer segment = mSegments.get(i);
+            // skip segments that end before the range
+            if (i + 1 < mSegments.size() && getFirstIndexedTime(mSegments.get(i + 1)) < from) {
+                continue;
+            }
+            int start = findStart(segment, from);
+            if (start == -1 || !readSegment(segment, start, from, to, visitor)) {
+                return;
+            }
+        }
+    }
+
+    private static long getFirstIndexedTime(ByteBuffer segment) {
+        return segment.getInt(HEADER_INDEX_COUNT) > 0 ? segment.getLong(HEADER_SIZE) : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return offset of the last index entry before the host timestamp
+     */
+    private static int findStart(ByteBuffer segment, long from) {
+        int count = segment.getInt(HEADER_INDEX_COUNT);
+        if (count == 0) {
+            return DATA_START;
+        }
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segment.getLong(HEADER_SIZE + mid * INDEX_ENTRY_SIZE) < from) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return segment.getInt(HEADER_SIZE + low * INDEX_ENTRY_SIZE + 12);
+    }
+
+    /**
+     * @return <code>false</code> if the visitor stopped reading
+     */
+    private static boolean readSegment(ByteBuffer segment, int offset, long from, long to, Visitor visitor) {
+        int end = segment.getInt(HEADER_END);
+        LogConfig[] layouts = new LogConfig[Logg.MAX_LOG_CONFIGS];
+        while (offset + RECORD_HEADER_SIZE <= end) {
+            byte type = segment.get(offset);
+            int length = segment.getShort(offset + 1) & 0xFFFF;
+            int body = offset + RECORD_HEADER_SIZE;
+            if (type == TYPE_LAYOUT) {
+                LogConfig logConfig = readLayout(segment, body);
+                layouts[logConfig.getId()] = logConfig;
+            } else if (type == TYPE_DATA) {
+                long hostTimestamp = segment.getLong(body + 5);
+                if (hostTimestamp > to) {
+                    return false;
+                }
+                LogConfig logConfig = layouts[segment.get(body) & 0xFF];
+                if (hostTimestamp >= from && logConfig != null) {
+                    int size = segment.get(body + 13) & 0xFF;
+                    byte[] data = new byte[size];
+                    for (int i = 0; i < size; i++) {
+                        data[i] = segment.get(body + 14 + i);
+                    }
+                    LogRecord record = logConfig.getRecord();
+                    if (record.decode(data, 0, segment.getInt(body + 1)) && !visitor.logRecordRead(hostTimestamp, record)) {
+                        return false;
+                    }
+                }
+            } else {
+                break;
+            }
+            offset = body + length;
+        }
+        return true;
+    }
+
+    private static LogConfig readLayout(ByteBuffer segment, int offset) {
+        int id = segment.get(offset) & 0xFF;
+        int period = segment.getInt(offset + 1);
+        offset += 5;
+        String name = readString(segment, offset);
+        offset += 1 + (segment.get(offset) & 0xFF);
+        LogConfig logConfig = new LogConfig(name, period);
+        logConfig.setId(id);
+        int count = segment.get(offset++) & 0xFF;
+        for (int i = 0; i < count; i++) {
+            String variableName = readString(segment, offset);
+            offset += 1 + (segment.get(offset) & 0xFF);
+            String typeName = readString(segment, offset);
+            offset += 1 + (segment.get(offset) & 0xFF);
+            logConfig.addVariable(variableName, VariableType.valueOf(typeName));
+        }
+        return logConfig;
+    }
+
+    private static String readString(ByteBuffer segment, int offset) {
+        byte[] bytes = new byte[segment.get(offset) & 0xFF];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = segment.get(offset + 1 + i);
+        }
+        return new String(bytes, CHARSET);
+    }
+
+}
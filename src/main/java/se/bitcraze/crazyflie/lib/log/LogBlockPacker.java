@@ -0,0 +1,86 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packs log variables into as few log configs (firmware log blocks) as possible.
+ *
+ * Uses first fit decreasing on the variable sizes, bounded by the size of the
+ * log data in one packet and by the number of variables that fit into one
+ * create command. Since all sizes are powers of two this is optimal or very
+ * close to it.
+ */
+class LogBlockPacker {
+
+    private static final Comparator<LogVariable> BY_SIZE_DESCENDING = new Comparator<LogVariable>() {
+        public int compare(LogVariable lv1, LogVariable lv2) {
+            return lv2.getFetchAs().getSize() - lv1.getFetchAs().getSize();
+        }
+    };
+
+    private LogBlockPacker() {
+    }
+
+    /**
+     * @param logVariables variables with a variable type
+     * @param maxSize maximum number of data bytes per block
+     * @param maxVariables maximum number of variables per block
+     * @return the variables of each block
+     */
+    static List<List<LogVariable>> pack(List<LogVariable> logVariables, int maxSize, int maxVariables) {
+        List<LogVariable> sorted = new ArrayList<LogVariable>(logVariables);
+        // stable, variables of the same size keep their order
+        Collections.sort(sorted, BY_SIZE_DESCENDING);
+
+        List<List<LogVariable>> blocks = new ArrayList<List<LogVariable>>();
+        List<Integer> blockSizes = new ArrayList<Integer>();
+        for (LogVariable logVariable : sorted) {
+            int size = logVariable.getFetchAs().getSize();
+            if (size > maxSize) {
+                throw new IllegalArgumentException("Log variable " + logVariable.getName() + " is larger than a log block");
+            }
+            int index = 0;
+            while (index < blocks.size()
+                    && (blockSizes.get(index) + size > maxSize || blocks.get(index).size() >= maxVariables)) {
+                index++;
+            }
+            if (index == blocks.size()) {
+                blocks.add(new ArrayList<LogVariable>());
+                blockSizes.add(0);
+            }
+            blocks.get(index).add(logVariable);
+            blockSizes.set(index, blockSizes.get(index) + size);
+        }
+        return blocks;
+    }
+
+}
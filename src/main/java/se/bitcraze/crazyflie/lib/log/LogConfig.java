@@ -27,13 +27,11 @@
 
 package se.bitcraze.crazyflie.lib.log;
 
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
-import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
 import se.bitcraze.crazyflie.lib.toc.VariableType;
 
 
@@ -49,16 +47,21 @@ import se.bitcraze.crazyflie.lib.toc.VariableType;
  */
 public class LogConfig {
 
-    private int mId = -1;
+    // written by user threads while the packet thread reads
+    private volatile int mId = -1;
     private String mName;
     private int mPeriodInMs;
 
-    private int mErrNo;
+    private volatile int mErrNo;
 
     private List<LogVariable> logVariables = new ArrayList<LogVariable>();
-    private boolean mAdded = false;
-    private boolean mStarted = false;
-    private boolean mValid = false;
+    private volatile boolean mAdded = false;
+    private volatile boolean mStarted = false;
+    private volatile boolean mValid = false;
+
+    // compiled lazily from the log variables
+    private LogDecoder mDecoder;
+    private LogRecord mRecord;
 
     /**
      * Create a log configuration
@@ -88,6 +91,20 @@ public class LogConfig {
      */
     public void addVariable(String name, VariableType type){
         logVariables.add(new LogVariable(name, type));
+        invalidateDecoder();
+    }
+
+    /**
+     * Add a log variable that is converted to another type before it is sent, e.g. a float fetched as
+     * {@link VariableType#FP16} or {@link VariableType#INT16_T} uses half the bytes in the log data
+     *
+     * @param name Complete name of the variable in the form group.name
+     * @param type type the variable is stored as, <code>null</code> to take it from the TOC
+     * @param fetchAs type the variable is sent as
+     */
+    public void addVariable(String name, VariableType type, VariableType fetchAs) {
+        logVariables.add(new LogVariable(name, type, fetchAs));
+        invalidateDecoder();
     }
 
     /**
@@ -97,6 +114,7 @@ public class LogConfig {
      */
     public void addVariable(String name){
         logVariables.add(new LogVariable(name));
+        invalidateDecoder();
     }
 
     /**
@@ -108,6 +126,22 @@ public class LogConfig {
      */
     public void addMemory(String name, VariableType type, int address) {
         logVariables.add(new LogVariable(name, type, LogVariable.MEM_TYPE, address));
+        invalidateDecoder();
+    }
+
+    /**
+     * Add a raw memory position that is converted to another type before it is sent
+     *
+     * @param name Arbitrary name of the variable
+     * @param type type the data is stored as
+     * @param fetchAs type the variable is sent as
+     * @param address The address of the data
+     */
+    public void addMemory(String name, VariableType type, VariableType fetchAs, int address) {
+        LogVariable logVariable = new LogVariable(name, type, LogVariable.MEM_TYPE, address);
+        logVariable.setFetchAs(fetchAs);
+        logVariables.add(logVariable);
+        invalidateDecoder();
     }
 
     /**
@@ -213,21 +247,63 @@ public class LogConfig {
         this.mValid = valid;
     }
 
+    /**
+     * Returns the decoder compiled from the log variables. The decoder is compiled again when variables have been
+     * added or their fetch types have been changed since the last call (also directly on the list returned by
+     * {@link #getLogVariables()} or with {@link LogVariable#setFetchAs(VariableType)}).
+     *
+     * @return the decoder
+     */
+    public synchronized LogDecoder getDecoder() {
+        if (mDecoder == null || !mDecoder.matches(logVariables)) {
+            mDecoder = new LogDecoder(logVariables);
+        }
+        return mDecoder;
+    }
+
+    /**
+     * Returns the record that is reused to decode the data packets of this log config.
+     *
+     * @return the reusable record
+     */
+    public synchronized LogRecord getRecord() {
+        LogDecoder decoder = getDecoder();
+        if (mRecord == null || mRecord.getDecoder() != decoder) {
+            mRecord = new LogRecord(this, decoder);
+        }
+        return mRecord;
+    }
+
+    /**
+     * Drop the compiled decoder, e.g. after the variable types have been resolved from the TOC
+     */
+    synchronized void invalidateDecoder() {
+        mDecoder = null;
+        mRecord = null;
+    }
+
     /**
      * Unpack received logging data so it represent real values according to the configuration in the entry
      * @return
      */
     // def unpack_log_data(self, log_data, timestamp):
     public Map<String, Number> unpackLogData(byte[] logData) {
-        ByteBuffer logVariablesRaw = ByteBuffer.wrap(logData).order(CrtpPacket.BYTE_ORDER);
-        Map<String, Number> logDataMap = new ConcurrentHashMap<String, Number>();
-        for(LogVariable logVariable : this.getLogVariables()) {
-            Number parsedValue = logVariable.getVariableType().parse(logVariablesRaw);
-            logDataMap.put(logVariable.getName(), parsedValue);
-            //TODO: write to logger?
+        return unpackLogData(logData, 0);
+    }
+
+    /**
+     * Unpack received logging data starting at the given offset
+     *
+     * @param logData
+     * @param offset position of the first variable
+     * @return map of the values by variable name, empty if the data is too short
+     */
+    public Map<String, Number> unpackLogData(byte[] logData, int offset) {
+        LogRecord record = new LogRecord(this, getDecoder());
+        if (!record.decode(logData, offset, 0)) {
+            return new ConcurrentHashMap<String, Number>();
         }
-        //TODO: timestamps and callback
-        return logDataMap;
+        return record.toMap();
         /*
         ret_data = {}
         data_index = 0
@@ -0,0 +1,149 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import java.util.List;
+
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+/**
+ * Decoder for the data packets of a {@link LogConfig}.
+ *
+ * The variable list of the log config is compiled into fixed offsets and types once, so decoding a packet
+ * reads the values straight from the payload into a reusable {@link LogRecord} without any allocation.
+ * A decoder is immutable, it has to be compiled again when the variables of the log config change.
+ */
+public class LogDecoder {
+
+    private final String[] mNames;
+    private final VariableType[] mTypes;
+    private final int[] mOffsets;
+    private final int mSize;
+
+    /**
+     * Compile the given variables. All variables must have a variable type, they are decoded as their fetch type.
+     *
+     * @param logVariables
+     */
+    public LogDecoder(List<LogVariable> logVariables) {
+        int count = logVariables.size();
+        this.mNames = new String[count];
+        this.mTypes = new VariableType[count];
+        this.mOffsets = new int[count];
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            LogVariable logVariable = logVariables.get(i);
+            if (logVariable.getVariableType() == null) {
+                throw new IllegalArgumentException("Log variable " + logVariable.getName() + " has no type");
+            }
+            mNames[i] = logVariable.getName();
+            mTypes[i] = logVariable.getFetchAs();
+            mOffsets[i] = offset;
+            offset += mTypes[i].getSize();
+        }
+        this.mSize = offset;
+    }
+
+    public int getVariableCount() {
+        return mNames.length;
+    }
+
+    /**
+     * @return number of bytes of the packed variables
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    public String getName(int index) {
+        return mNames[index];
+    }
+
+    public VariableType getVariableType(int index) {
+        return mTypes[index];
+    }
+
+    /**
+     * @param index
+     * @return offset of the variable relative to the start of the packed variables
+     */
+    public int getOffset(int index) {
+        return mOffsets[index];
+    }
+
+    /**
+     * @param logVariables
+     * @return <code>true</code> if the decoder has been compiled from variables with the same names and fetch types
+     */
+    boolean matches(List<LogVariable> logVariables) {
+        if (logVariables.size() != mNames.length) {
+            return false;
+        }
+        for (int i = 0; i < mNames.length; i++) {
+            LogVariable logVariable = logVariables.get(i);
+            if (logVariable.getFetchAs() != mTypes[i] || !mNames[i].equals(logVariable.getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param name
+     * @return index of the variable with the given name or -1
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < mNames.length; i++) {
+            if (mNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decode packed little endian variables into the value arrays of a record.
+     *
+     * @param data source array
+     * @param offset position of the first variable in the source array
+     * @param longValues target for the integer values (floats are truncated)
+     * @param doubleValues target for the floating point values (integers are converted)
+     * @return <code>false</code> if the source array is too short
+     */
+    boolean decode(byte[] data, int offset, long[] longValues, double[] doubleValues) {
+        if (offset < 0 || data.length - offset < mSize) {
+            return false;
+        }
+        for (int i = 0; i < mTypes.length; i++) {
+            int pos = offset + mOffsets[i];
+            longValues[i] = mTypes[i].getLong(data, pos);
+            doubleValues[i] = mTypes[i].getDouble(data, pos);
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,209 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+/**
+ * The merged records of several log configs that share (or nearly share) a timestamp.
+ *
+ * Variables are accessed by index, in the order of the log configs given to the {@link LogFrameMerger}
+ * and within a log config in the order the variables have been added. Values of log configs that are
+ * missing in a partial frame are zero.
+ */
+public class LogFrame {
+
+    private final LogConfig[] mLogConfigs;
+    // index of the first variable of each log config
+    private final int[] mOffsets;
+    private final String[] mNames;
+    private final VariableType[] mTypes;
+
+    private final long[] mLongValues;
+    private final double[] mDoubleValues;
+    private final boolean[] mPresent;
+    private final int[] mTimestamps;
+    private int mPresentCount;
+    private int mTimestamp;
+
+    LogFrame(List<LogConfig> logConfigs) {
+        this.mLogConfigs = logConfigs.toArray(new LogConfig[logConfigs.size()]);
+        this.mOffsets = new int[mLogConfigs.length + 1];
+        for (int i = 0; i < mLogConfigs.length; i++) {
+            mOffsets[i + 1] = mOffsets[i] + mLogConfigs[i].getLogVariables().size();
+        }
+        int count = mOffsets[mLogConfigs.length];
+        this.mNames = new String[count];
+        this.mTypes = new VariableType[count];
+        for (int i = 0; i < mLogConfigs.length; i++) {
+            List<LogVariable> logVariables = mLogConfigs[i].getLogVariables();
+            for (int j = 0; j < logVariables.size(); j++) {
+                mNames[mOffsets[i] + j] = logVariables.get(j).getName();
+            }
+        }
+        this.mLongValues = new long[count];
+        this.mDoubleValues = new double[count];
+        this.mPresent = new boolean[mLogConfigs.length];
+        this.mTimestamps = new int[mLogConfigs.length];
+    }
+
+    void clear(int timestamp) {
+        this.mTimestamp = timestamp;
+        for (int i = 0; i < mPresent.length; i++) {
+            mPresent[i] = false;
+        }
+        for (int i = 0; i < mLongValues.length; i++) {
+            mLongValues[i] = 0;
+            mDoubleValues[i] = 0;
+        }
+        mPresentCount = 0;
+    }
+
+    void add(int index, LogRecord record) {
+        int offset = mOffsets[index];
+        int count = Math.min(record.getVariableCount(), mOffsets[index + 1] - offset);
+        for (int i = 0; i < count; i++) {
+            // types of TOC variables are only known once the log config has been added
+            mTypes[offset + i] = record.getDecoder().getVariableType(i);
+            mLongValues[offset + i] = record.getLong(i);
+            mDoubleValues[offset + i] = record.getDouble(i);
+        }
+        mTimestamps[index] = record.getTimestamp();
+        mPresent[index] = true;
+        mPresentCount++;
+    }
+
+    /**
+     * @return timestamp of the first record of the frame
+     */
+    public int getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * @return <code>true</code> if the records of all log configs are present
+     */
+    public boolean isComplete() {
+        return mPresentCount == mLogConfigs.length;
+    }
+
+    public int getLogConfigCount() {
+        return mLogConfigs.length;
+    }
+
+    public LogConfig getLogConfig(int index) {
+        return mLogConfigs[index];
+    }
+
+    public boolean isPresent(int logConfigIndex) {
+        return mPresent[logConfigIndex];
+    }
+
+    /**
+     * @param logConfigIndex
+     * @return timestamp of the record of the log config, only valid if it is present
+     */
+    public int getTimestamp(int logConfigIndex) {
+        return mTimestamps[logConfigIndex];
+    }
+
+    public int getVariableCount() {
+        return mNames.length;
+    }
+
+    public String getName(int index) {
+        return mNames[index];
+    }
+
+    /**
+     * @param name
+     * @return index of the variable with the given name or -1
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < mNames.length; i++) {
+            if (mNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param index variable index
+     * @return <code>true</code> if the record holding the variable is present
+     */
+    public boolean isVariablePresent(int index) {
+        return mPresent[logConfigIndexOf(index)];
+    }
+
+    public double getDouble(int index) {
+        return mDoubleValues[index];
+    }
+
+    public long getLong(int index) {
+        return mLongValues[index];
+    }
+
+    /**
+     * @param index
+     * @return the boxed value (see {@link LogRecord#getNumber(int)}) or <code>null</code> if not present
+     */
+    public Number getNumber(int index) {
+        if (!isVariablePresent(index)) {
+            return null;
+        }
+        return LogRecord.toNumber(mTypes[index], mLongValues[index], mDoubleValues[index]);
+    }
+
+    /**
+     * @return a new map with the boxed values of the present variables by name
+     */
+    public Map<String, Number> toMap() {
+        Map<String, Number> map = new HashMap<String, Number>();
+        for (int i = 0; i < mLogConfigs.length; i++) {
+            if (mPresent[i]) {
+                for (int j = mOffsets[i]; j < mOffsets[i + 1]; j++) {
+                    map.put(mNames[j], LogRecord.toNumber(mTypes[j], mLongValues[j], mDoubleValues[j]));
+                }
+            }
+        }
+        return map;
+    }
+
+    private int logConfigIndexOf(int variableIndex) {
+        int i = 0;
+        while (mOffsets[i + 1] <= variableIndex) {
+            i++;
+        }
+        return i;
+    }
+
+}
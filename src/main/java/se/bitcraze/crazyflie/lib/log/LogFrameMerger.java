@@ -0,0 +1,264 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Merges the records of several log configs into frames of coherent samples.
+ * <br/>
+ * Each log config is sampled by the firmware with its own timestamp. Records whose timestamps differ by
+ * at most the tolerance are merged into one frame. Frames are emitted in timestamp order: up to
+ * <code>reorderWindow</code> frames are held back to wait for late records, and a frame is emitted
+ * as a partial frame when a record arrives that is more than the timeout newer than the frame (or when the
+ * window overflows). Records that are older than the last emitted frame are dropped.
+ * <br/>
+ * Add the merger to {@link Logg#addLogListener(LogListener)}. All records are expected to be delivered by
+ * the same thread, the listeners are called from that thread.
+ */
+public class LogFrameMerger extends LogRecordAdapter {
+
+    // firmware timestamps are 24 bit milliseconds
+    private final static int TIMESTAMP_BITS = 24;
+
+    private final LogConfig[] mLogConfigs;
+    private final int mTolerance;
+    private final int mReorderWindow;
+    private final int mTimeout;
+    private volatile boolean mEmitPartialFrames = true;
+
+    // pending frames ordered by timestamp, followed by the unused frames
+    private final LogFrame[] mFrames;
+    private int mPendingCount = 0;
+    private boolean mEmitted = false;
+    private int mLastEmittedTimestamp;
+
+    private final Set<LogFrameListener> mListeners = new CopyOnWriteArraySet<LogFrameListener>();
+
+    private volatile long mCompleteFrameCount;
+    private volatile long mPartialFrameCount;
+    private volatile long mDroppedFrameCount;
+    private volatile long mLateRecordCount;
+
+    /**
+     * @param logConfigs the log configs to merge
+     * @param toleranceInMs maximum difference between the timestamps of the records of a frame
+     * @param reorderWindow maximum number of frames that wait for late records
+     * @param timeoutInMs (firmware) time after which an incomplete frame is emitted as partial frame
+     */
+    public LogFrameMerger(List<LogConfig> logConfigs, int toleranceInMs, int reorderWindow, int timeoutInMs) {
+        if (logConfigs.isEmpty() || reorderWindow < 1 || toleranceInMs < 0 || timeoutInMs < 0) {
+            throw new IllegalArgumentException("Invalid merger configuration");
+        }
+        this.mLogConfigs = logConfigs.toArray(new LogConfig[logConfigs.size()]);
+        this.mTolerance = toleranceInMs;
+        this.mReorderWindow = reorderWindow;
+        this.mTimeout = timeoutInMs;
+        // one more to insert a frame before the oldest one is emitted
+        this.mFrames = new LogFrame[reorderWindow + 1];
+        for (int i = 0; i < mFrames.length; i++) {
+            mFrames[i] = new LogFrame(logConfigs);
+        }
+    }
+
+    /**
+     * Merge with a tolerance of half, a timeout of twice the shortest period of the log configs
+     * and a reorder window of 4 frames.
+     *
+     * @param logConfigs
+     */
+    public LogFrameMerger(List<LogConfig> logConfigs) {
+        this(logConfigs, getShortestPeriodInMs(logConfigs) / 2, 4, getShortestPeriodInMs(logConfigs) * 2);
+    }
+
+    private static int getShortestPeriodInMs(List<LogConfig> logConfigs) {
+        int period = Integer.MAX_VALUE;
+        for (LogConfig logConfig : logConfigs) {
+            period = Math.min(period, logConfig.getPeriodInMs());
+        }
+        return period;
+    }
+
+    public List<LogConfig> getLogConfigs() {
+        List<LogConfig> logConfigs = new ArrayList<LogConfig>();
+        for (LogConfig logConfig : mLogConfigs) {
+            logConfigs.add(logConfig);
+        }
+        return logConfigs;
+    }
+
+    /**
+     * @param emitPartialFrames if <code>false</code> incomplete frames are dropped instead
+     */
+    public void setEmitPartialFrames(boolean emitPartialFrames) {
+        this.mEmitPartialFrames = emitPartialFrames;
+    }
+
+    public boolean isEmitPartialFrames() {
+        return mEmitPartialFrames;
+    }
+
+    public void addLogFrameListener(LogFrameListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeLogFrameListener(LogFrameListener listener) {
+        mListeners.remove(listener);
+    }
+
+    public long getCompleteFrameCount() {
+        return mCompleteFrameCount;
+    }
+
+    public long getPartialFrameCount() {
+        return mPartialFrameCount;
+    }
+
+    /**
+     * @return number of incomplete frames that were dropped because partial frames are disabled
+     */
+    public long getDroppedFrameCount() {
+        return mDroppedFrameCount;
+    }
+
+    /**
+     * @return number of records that arrived after their frame had been emitted
+     */
+    public long getLateRecordCount() {
+        return mLateRecordCount;
+    }
+
+    @Override
+    public void logRecordReceived(LogRecord record) {
+        int index = indexOf(record.getLogConfig());
+        if (index == -1) {
+            return;
+        }
+        int timestamp = record.getTimestamp();
+        if (mEmitted && difference(timestamp, mLastEmittedTimestamp) <= 0) {
+            mLateRecordCount++;
+            return;
+        }
+
+        LogFrame frame = findFrame(index, timestamp);
+        if (frame == null) {
+            frame = insertFrame(timestamp);
+        }
+        frame.add(index, record);
+
+        // emit the frames that can't change any more
+        while (mPendingCount > 0) {
+            LogFrame head = mFrames[0];
+            if (head.isComplete() || mPendingCount > mReorderWindow || difference(timestamp, head.getTimestamp()) > mTimeout) {
+                emitHead();
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Emit all pending frames, e.g. after logging has been stopped
+     */
+    public void flush() {
+        while (mPendingCount > 0) {
+            emitHead();
+        }
+    }
+
+    private int indexOf(LogConfig logConfig) {
+        for (int i = 0; i < mLogConfigs.length; i++) {
+            if (mLogConfigs[i] == logConfig) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the pending frame closest to the timestamp within the tolerance that has no record of the log config
+     */
+    private LogFrame findFrame(int index, int timestamp) {
+        LogFrame closest = null;
+        int closestDifference = Integer.MAX_VALUE;
+        for (int i = 0; i < mPendingCount; i++) {
+            LogFrame frame = mFrames[i];
+            int difference = Math.abs(difference(timestamp, frame.getTimestamp()));
+            if (difference <= mTolerance && difference < closestDifference && !frame.isPresent(index)) {
+                closest = frame;
+                closestDifference = difference;
+            }
+        }
+        return closest;
+    }
+
+    private LogFrame insertFrame(int timestamp) {
+        LogFrame frame = mFrames[mPendingCount];
+        frame.clear(timestamp);
+        // keep the pending frames ordered by timestamp
+        int position = mPendingCount;
+        while (position > 0 && difference(mFrames[position - 1].getTimestamp(), timestamp) > 0) {
+            mFrames[position] = mFrames[position - 1];
+            position--;
+        }
+        mFrames[position] = frame;
+        mPendingCount++;
+        return frame;
+    }
+
+    private void emitHead() {
+        LogFrame head = mFrames[0];
+        System.arraycopy(mFrames, 1, mFrames, 0, mFrames.length - 1);
+        mFrames[mFrames.length - 1] = head;
+        mPendingCount--;
+        mEmitted = true;
+        mLastEmittedTimestamp = head.getTimestamp();
+
+        if (head.isComplete()) {
+            mCompleteFrameCount++;
+        } else if (mEmitPartialFrames) {
+            mPartialFrameCount++;
+        } else {
+            mDroppedFrameCount++;
+            return;
+        }
+        for (LogFrameListener listener : mListeners) {
+            listener.logFrameReceived(head);
+        }
+    }
+
+    /**
+     * @return a - b for 24 bit timestamps that may have wrapped around
+     */
+    static int difference(int a, int b) {
+        return ((a - b) << (32 - TIMESTAMP_BITS)) >> (32 - TIMESTAMP_BITS);
+    }
+
+}
@@ -0,0 +1,374 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import se.bitcraze.crazyflie.lib.crtp.CrtpDriver;
+import se.bitcraze.crazyflie.lib.crtp.LinkStatistics;
+
+/**
+ * Adapts the periods of log configs to the bandwidth of the link.
+ * <br/>
+ * The Crazyflie silently drops log data when the link can't carry it. Missing samples are detected from gaps
+ * between the firmware timestamps of a log config, and a saturated downlink from the share of empty acks in the
+ * link statistics (only if the driver has reported empty acks). On every update a congested link slows down the log config with the lowest priority (the period
+ * is doubled), a link with headroom speeds up the log config with the highest priority (the period is halved),
+ * always within the bounds given in {@link #manage(LogConfig, int, int, int)}. After slowing down, speeding up is
+ * held off for a number of updates so the periods don't oscillate.
+ * <br/>
+ * A period change stops the log config, changes the period and starts it again.
+ */
+public class LogPeriodController extends LogRecordAdapter {
+
+    final Logger mLogger = LoggerFactory.getLogger("LogPeriodController");
+
+    public final static int DEFAULT_UPDATE_INTERVAL = 1000;
+
+    // the firmware period is a byte in 10ms units, Logg.addConfig accepts 1 - 254
+    private final static int MIN_PERIOD = 10;
+    private final static int MAX_PERIOD = 2540;
+
+    private final Logg mLogg;
+    private final Map<LogConfig, Block> mBlocks = new ConcurrentHashMap<LogConfig, Block>();
+
+    private double mMinDeliveryRatio = 0.9;
+    private double mMinEmptyAckRatio = 0.05;
+    private double mHeadroomEmptyAckRatio = 0.3;
+    private int mMinSamples = 5;
+    private int mHoldOffUpdates = 5;
+
+    private int mHoldOff = 0;
+    private LinkStatistics mLastStatistics;
+    private int mPeriodChangeCount = 0;
+
+    private Thread mUpdateThread;
+    private volatile boolean mRunning = false;
+
+    private static class Block {
+        private final int mMinPeriod;
+        private final int mMaxPeriod;
+        private final int mPriority;
+
+        // guarded by the block
+        private int mReceived;
+        private int mMissed;
+        private int mLastTimestamp;
+        private boolean mHasTimestamp;
+        private double mDeliveryRatio = 1;
+
+        Block(int minPeriod, int maxPeriod, int priority) {
+            this.mMinPeriod = minPeriod;
+            this.mMaxPeriod = maxPeriod;
+            this.mPriority = priority;
+        }
+
+        synchronized void reset() {
+            mReceived = 0;
+            mMissed = 0;
+            mHasTimestamp = false;
+        }
+    }
+
+    /**
+     * @param logg
+     */
+    public LogPeriodController(Logg logg) {
+        this.mLogg = logg;
+    }
+
+    /**
+     * Let the controller adapt the period of a log config
+     *
+     * @param logConfig
+     * @param minPeriodInMs shortest period, the period when the link has enough bandwidth
+     * @param maxPeriodInMs longest period the log config may be slowed down to
+     * @param priority log configs with a higher priority are slowed down last and sped up first
+     */
+    public void manage(LogConfig logConfig, int minPeriodInMs, int maxPeriodInMs, int priority) {
+        int minPeriod = Math.max(MIN_PERIOD, minPeriodInMs);
+        int maxPeriod = Math.min(MAX_PERIOD, maxPeriodInMs);
+        if (minPeriod > maxPeriod) {
+            throw new IllegalArgumentException("Invalid period bounds " + minPeriodInMs + " - " + maxPeriodInMs);
+        }
+        mBlocks.put(logConfig, new Block(minPeriod, maxPeriod, priority));
+    }
+
+    /**
+     * Stop adapting the period of a log config, the current period is kept
+     *
+     * @param logConfig
+     */
+    public void unmanage(LogConfig logConfig) {
+        mBlocks.remove(logConfig);
+    }
+
+    /**
+     * Add the controller as log listener and update the periods in a background thread
+     *
+     * @param updateIntervalInMs time between updates
+     */
+    public synchronized void start(final int updateIntervalInMs) {
+        if (mRunning) {
+            throw new IllegalStateException("Log period controller is already running");
+        }
+        mRunning = true;
+        mLogg.addLogListener(this);
+        mUpdateThread = new Thread(new Runnable() {
+            public void run() {
+                while (mRunning) {
+                    try {
+                        Thread.sleep(updateIntervalInMs);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                    update();
+                }
+            }
+        }, "LogPeriodController");
+        mUpdateThread.setDaemon(true);
+        mUpdateThread.start();
+    }
+
+    /**
+     * Stop updating the periods, the current periods are kept
+     */
+    public synchronized void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        mLogg.removeLogListener(this);
+        mUpdateThread.interrupt();
+        try {
+            mUpdateThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    public void logRecordReceived(LogRecord record) {
+        Block block = mBlocks.get(record.getLogConfig());
+        if (block == null) {
+            return;
+        }
+        int period = record.getLogConfig().getPeriodInMs();
+        int timestamp = record.getTimestamp();
+        synchronized (block) {
+            if (block.mHasTimestamp && period > 0) {
+                int difference = LogFrameMerger.difference(timestamp, block.mLastTimestamp);
+                if (difference <= 0) {
+                    // late or duplicate packet
+                    return;
+                }
+                if (difference * 2 > period * 3) {
+                    block.mMissed += Math.max(0, Math.round((float) difference / period) - 1);
+                }
+            }
+            block.mLastTimestamp = timestamp;
+            block.mHasTimestamp = true;
+            block.mReceived++;
+        }
+    }
+
+    /**
+     * Evaluate the last update interval and change at most one period, uses the link statistics of the driver if available
+     */
+    public void update() {
+        CrtpDriver driver = mLogg.getCrazyflie().getDriver();
+        update(driver != null ? driver.getLinkStatistics() : null);
+    }
+
+    /**
+     * @param statistics statistics of the link or <code>null</code> to only use the missing samples
+     * @return the log config whose period has been changed or <code>null</code>
+     */
+    synchronized LogConfig update(LinkStatistics statistics) {
+        boolean lossy = false;
+        for (Map.Entry<LogConfig, Block> entry : mBlocks.entrySet()) {
+            Block block = entry.getValue();
+            synchronized (block) {
+                int expected = block.mReceived + block.mMissed;
+                if (expected >= mMinSamples) {
+                    block.mDeliveryRatio = (double) block.mReceived / expected;
+                    if (block.mDeliveryRatio < mMinDeliveryRatio && entry.getKey().isStarted()) {
+                        lossy = true;
+                    }
+                }
+                block.mReceived = 0;
+                block.mMissed = 0;
+            }
+        }
+
+        double emptyAckRatio = getEmptyAckRatio(statistics);
+        mLastStatistics = statistics;
+        boolean saturated = emptyAckRatio >= 0 && emptyAckRatio < mMinEmptyAckRatio;
+        boolean headroom = emptyAckRatio < 0 || emptyAckRatio >= mHeadroomEmptyAckRatio;
+
+        if (lossy || saturated) {
+            mHoldOff = mHoldOffUpdates;
+            LogConfig logConfig = select(false);
+            if (logConfig != null) {
+                Block block = mBlocks.get(logConfig);
+                changePeriod(logConfig, Math.min(block.mMaxPeriod, logConfig.getPeriodInMs() * 2));
+            }
+            return logConfig;
+        }
+        if (mHoldOff > 0) {
+            mHoldOff--;
+            return null;
+        }
+        if (headroom) {
+            LogConfig logConfig = select(true);
+            if (logConfig != null) {
+                Block block = mBlocks.get(logConfig);
+                changePeriod(logConfig, Math.max(block.mMinPeriod, logConfig.getPeriodInMs() / 2));
+            }
+            return logConfig;
+        }
+        return null;
+    }
+
+    /**
+     * @return share of empty acks since the last update or -1 if unknown
+     */
+    private double getEmptyAckRatio(LinkStatistics statistics) {
+        // a link without a single empty ack so far does not report them, even a busy link has idle moments
+        if (statistics == null || statistics.getEmptyAckCount() == 0) {
+            return -1;
+        }
+        long acks = statistics.getAckCount();
+        long emptyAcks = statistics.getEmptyAckCount();
+        LinkStatistics last = mLastStatistics;
+        if (last != null && acks >= last.getAckCount()) {
+            acks -= last.getAckCount();
+            emptyAcks -= last.getEmptyAckCount();
+        }
+        return acks == 0 ? -1 : (double) emptyAcks / acks;
+    }
+
+    /**
+     * @param faster select a log config to speed up, otherwise to slow down
+     * @return the started log config with the highest (faster) or lowest priority that can still be changed
+     */
+    private LogConfig select(boolean faster) {
+        LogConfig selected = null;
+        Block selectedBlock = null;
+        for (Map.Entry<LogConfig, Block> entry : mBlocks.entrySet()) {
+            LogConfig logConfig = entry.getKey();
+            Block block = entry.getValue();
+            int period = logConfig.getPeriodInMs();
+            if (!logConfig.isStarted() || (faster ? period <= block.mMinPeriod : period >= block.mMaxPeriod)) {
+                continue;
+            }
+            if (selected == null
+                    || (faster ? block.mPriority > selectedBlock.mPriority : block.mPriority < selectedBlock.mPriority)
+                    || (block.mPriority == selectedBlock.mPriority
+                        && (faster ? period > selected.getPeriodInMs() : period < selected.getPeriodInMs()))) {
+                selected = logConfig;
+                selectedBlock = block;
+            }
+        }
+        return selected;
+    }
+
+    private void changePeriod(LogConfig logConfig, int periodInMs) {
+        // round to the firmware resolution
+        int period = Math.max(MIN_PERIOD, (periodInMs / 10) * 10);
+        if (period == logConfig.getPeriodInMs()) {
+            return;
+        }
+        mLogger.info("Changing period of log config " + logConfig.getName() + " from " + logConfig.getPeriodInMs() + "ms to " + period + "ms");
+        mLogg.stop(logConfig);
+        logConfig.setPeriodInMs(period);
+        mLogg.start(logConfig);
+        mBlocks.get(logConfig).reset();
+        mPeriodChangeCount++;
+    }
+
+    /**
+     * @param logConfig
+     * @return share of the expected samples received in the last update interval (0 - 1)
+     */
+    public double getDeliveryRatio(LogConfig logConfig) {
+        Block block = mBlocks.get(logConfig);
+        if (block == null) {
+            return 1;
+        }
+        synchronized (block) {
+            return block.mDeliveryRatio;
+        }
+    }
+
+    /**
+     * @return the managed log configs
+     */
+    public List<LogConfig> getLogConfigs() {
+        return new ArrayList<LogConfig>(mBlocks.keySet());
+    }
+
+    /**
+     * @return number of period changes since the controller has been created
+     */
+    public synchronized int getPeriodChangeCount() {
+        return mPeriodChangeCount;
+    }
+
+    /**
+     * @param minDeliveryRatio share of expected samples below which a log config is considered lossy (default 0.9)
+     */
+    public synchronized void setMinDeliveryRatio(double minDeliveryRatio) {
+        this.mMinDeliveryRatio = minDeliveryRatio;
+    }
+
+    /**
+     * @param minEmptyAckRatio share of empty acks below which the downlink is considered saturated (default 0.05)
+     * @param headroomEmptyAckRatio share of empty acks above which a log config may be sped up (default 0.3)
+     */
+    public synchronized void setEmptyAckRatios(double minEmptyAckRatio, double headroomEmptyAckRatio) {
+        this.mMinEmptyAckRatio = minEmptyAckRatio;
+        this.mHeadroomEmptyAckRatio = headroomEmptyAckRatio;
+    }
+
+    /**
+     * @param holdOffUpdates number of updates after slowing down before a log config may be sped up (default 5)
+     */
+    public synchronized void setHoldOffUpdates(int holdOffUpdates) {
+        this.mHoldOffUpdates = holdOffUpdates;
+    }
+
+}
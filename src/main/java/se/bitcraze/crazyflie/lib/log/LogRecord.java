@@ -0,0 +1,169 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+/**
+ * Decoded data of one log data packet, with the values stored as primitives and accessed by variable index
+ * (the order in which the variables have been added to the {@link LogConfig}).
+ *
+ * The record of a log config is reused for every packet, a {@link LogRecordListener} must copy the values
+ * it wants to keep before it returns.
+ */
+public class LogRecord {
+
+    private final LogConfig mLogConfig;
+    private final LogDecoder mDecoder;
+    private final long[] mLongValues;
+    private final double[] mDoubleValues;
+    private int mTimestamp;
+
+    public LogRecord(LogConfig logConfig, LogDecoder decoder) {
+        this.mLogConfig = logConfig;
+        this.mDecoder = decoder;
+        this.mLongValues = new long[decoder.getVariableCount()];
+        this.mDoubleValues = new double[decoder.getVariableCount()];
+    }
+
+    /**
+     * @return a copy of this record that is not reused, e.g. to hand it to another thread
+     */
+    public LogRecord copy() {
+        LogRecord copy = new LogRecord(mLogConfig, mDecoder);
+        System.arraycopy(mLongValues, 0, copy.mLongValues, 0, mLongValues.length);
+        System.arraycopy(mDoubleValues, 0, copy.mDoubleValues, 0, mDoubleValues.length);
+        copy.mTimestamp = mTimestamp;
+        return copy;
+    }
+
+    /**
+     * Decode packed variables into this record
+     *
+     * @param data source array
+     * @param offset position of the first variable in the source array
+     * @param timestamp timestamp of the data
+     * @return <code>false</code> if the source array is too short
+     */
+    public boolean decode(byte[] data, int offset, int timestamp) {
+        this.mTimestamp = timestamp;
+        return mDecoder.decode(data, offset, mLongValues, mDoubleValues);
+    }
+
+    public LogConfig getLogConfig() {
+        return mLogConfig;
+    }
+
+    public LogDecoder getDecoder() {
+        return mDecoder;
+    }
+
+    /**
+     * @return timestamp in ms since the Crazyflie has been started
+     */
+    public int getTimestamp() {
+        return mTimestamp;
+    }
+
+    public int getVariableCount() {
+        return mLongValues.length;
+    }
+
+    public double getDouble(int index) {
+        return mDoubleValues[index];
+    }
+
+    public float getFloat(int index) {
+        return (float) mDoubleValues[index];
+    }
+
+    /**
+     * @param index
+     * @return the value, floating point values are truncated
+     */
+    public long getLong(int index) {
+        return mLongValues[index];
+    }
+
+    public int getInt(int index) {
+        return (int) mLongValues[index];
+    }
+
+    /**
+     * Copy all values as doubles into the given array
+     *
+     * @param target array with at least {@link #getVariableCount()} elements
+     */
+    public void getDoubles(double[] target) {
+        System.arraycopy(mDoubleValues, 0, target, 0, mDoubleValues.length);
+    }
+
+    /**
+     * Returns a boxed value of the same type as {@link VariableType#parse(java.nio.ByteBuffer)}
+     *
+     * @param index
+     * @return the boxed value
+     */
+    public Number getNumber(int index) {
+        return toNumber(mDecoder.getVariableType(index), mLongValues[index], mDoubleValues[index]);
+    }
+
+    static Number toNumber(VariableType type, long longValue, double doubleValue) {
+        switch (type) {
+            case UINT8_T:
+            case UINT16_T:
+            case INT32_T:
+                return (int) longValue;
+            case INT8_T:
+                return (byte) longValue;
+            case INT16_T:
+                return (short) longValue;
+            case FLOAT:
+            case FP16:
+                return (float) doubleValue;
+            case DOUBLE:
+                return doubleValue;
+            default:
+                return longValue;
+        }
+    }
+
+    /**
+     * @return a new map with the boxed values by variable name
+     */
+    public Map<String, Number> toMap() {
+        Map<String, Number> map = new ConcurrentHashMap<String, Number>();
+        for (int i = 0; i < mLongValues.length; i++) {
+            map.put(mDecoder.getName(i), getNumber(i));
+        }
+        return map;
+    }
+
+}
@@ -0,0 +1,223 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import se.bitcraze.crazyflie.lib.toc.Toc;
+import se.bitcraze.crazyflie.lib.toc.TocElement;
+
+/**
+ * A set of TOC variables with desired periods that is logged as one logical stream.
+ * <br/>
+ * When subscribed with {@link Logg#subscribe(LogSubscription)} the variables are grouped by period and each group is
+ * packed into as few log configs as possible, which keeps the number of log data packets (and thus radio airtime)
+ * minimal. The log configs are managed by Logg, the listeners receive one frame per group and timestamp.
+ * <br/>
+ * The records are merged by a {@link LogFrameMerger} per group, with a tolerance of half the period. A frame is only
+ * delivered when all log configs of its group are present.
+ */
+public class LogSubscription {
+
+    // the firmware period is a byte in 10ms units
+    private final static int MIN_PERIOD = 1;
+    private final static int MAX_PERIOD = 254;
+
+    private final String mName;
+    private final int mPeriodInMs;
+
+    // complete name -> period in ms
+    private final Map<String, Integer> mVariables = new LinkedHashMap<String, Integer>();
+
+    private final Set<LogSubscriptionListener> mListeners = new CopyOnWriteArraySet<LogSubscriptionListener>();
+
+    private volatile List<LogFrameMerger> mMergers = Collections.emptyList();
+
+    private final LogRecordListener mRecordListener = new LogRecordAdapter() {
+        public void logRecordReceived(LogRecord record) {
+            for (LogFrameMerger merger : mMergers) {
+                merger.logRecordReceived(record);
+            }
+        }
+    };
+
+    /**
+     * Create a log subscription
+     *
+     * @param name
+     * @param periodInMs default period of the variables
+     */
+    public LogSubscription(String name, int periodInMs) {
+        this.mName = name;
+        this.mPeriodInMs = periodInMs;
+    }
+
+    /**
+     * Create a log subscription with the default period of 100ms
+     *
+     * @param name
+     */
+    public LogSubscription(String name) {
+        this(name, 100);
+    }
+
+    /**
+     * Add a TOC variable with the default period of the subscription
+     *
+     * @param name Complete name of the variable in the form group.name
+     */
+    public void addVariable(String name) {
+        addVariable(name, mPeriodInMs);
+    }
+
+    /**
+     * Add a TOC variable. If the variable was already added, the shorter period is used.
+     *
+     * @param name Complete name of the variable in the form group.name
+     * @param periodInMs
+     */
+    public synchronized void addVariable(String name, int periodInMs) {
+        Integer period = mVariables.get(name);
+        if (period == null || periodInMs < period) {
+            mVariables.put(name, periodInMs);
+        }
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return the period of each variable by complete name
+     */
+    public synchronized Map<String, Integer> getVariables() {
+        return new LinkedHashMap<String, Integer>(mVariables);
+    }
+
+    /**
+     * @return the log configs the variables have been packed into, empty if not subscribed
+     */
+    public List<LogConfig> getLogConfigs() {
+        List<LogConfig> logConfigs = new ArrayList<LogConfig>();
+        for (LogFrameMerger merger : mMergers) {
+            logConfigs.addAll(merger.getLogConfigs());
+        }
+        return logConfigs;
+    }
+
+    /**
+     * @return number of frames that were dropped because not all log configs of the group were present
+     */
+    public long getIncompleteFrameCount() {
+        long count = 0;
+        for (LogFrameMerger merger : mMergers) {
+            count += merger.getDroppedFrameCount();
+        }
+        return count;
+    }
+
+    public void addListener(LogSubscriptionListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(LogSubscriptionListener listener) {
+        mListeners.remove(listener);
+    }
+
+    LogRecordListener getRecordListener() {
+        return mRecordListener;
+    }
+
+    /**
+     * Group the variables by firmware period (10ms units, limited to the range accepted by {@link Logg#addConfig(LogConfig)})
+     * and pack each group into log configs
+     *
+     * @param toc TOC with the variables
+     * @param maxSize maximum number of data bytes per log config
+     * @param maxVariables maximum number of variables per log config
+     * @return the log configs or <code>null</code> if a variable is not in the TOC
+     */
+    synchronized List<LogConfig> pack(Toc toc, int maxSize, int maxVariables) {
+        Map<Integer, List<LogVariable>> groups = new TreeMap<Integer, List<LogVariable>>();
+        for (Entry<String, Integer> entry : mVariables.entrySet()) {
+            TocElement tocElement = toc.getElementByCompleteName(entry.getKey());
+            if (tocElement == null) {
+                return null;
+            }
+            int period = Math.max(MIN_PERIOD, Math.min(MAX_PERIOD, entry.getValue() / 10));
+            if (!groups.containsKey(period)) {
+                groups.put(period, new ArrayList<LogVariable>());
+            }
+            groups.get(period).add(new LogVariable(entry.getKey(), tocElement.getCtype()));
+        }
+
+        List<LogFrameMerger> mergers = new ArrayList<LogFrameMerger>();
+        List<LogConfig> logConfigs = new ArrayList<LogConfig>();
+        for (Entry<Integer, List<LogVariable>> group : groups.entrySet()) {
+            int periodInMs = group.getKey() * 10;
+            List<List<LogVariable>> blocks = LogBlockPacker.pack(group.getValue(), maxSize, maxVariables);
+            List<LogConfig> groupConfigs = new ArrayList<LogConfig>();
+            for (int i = 0; i < blocks.size(); i++) {
+                LogConfig logConfig = new LogConfig(mName + "-" + periodInMs + "ms-" + i, periodInMs);
+                for (LogVariable logVariable : blocks.get(i)) {
+                    logConfig.addVariable(logVariable.getName(), logVariable.getVariableType(), logVariable.getFetchAs());
+                }
+                groupConfigs.add(logConfig);
+            }
+            LogFrameMerger merger = new LogFrameMerger(groupConfigs);
+            merger.setEmitPartialFrames(false);
+            merger.addLogFrameListener(new LogFrameListener() {
+                public void logFrameReceived(LogFrame frame) {
+                    notifyFrameReceived(frame.getLogConfig(0).getPeriodInMs(), frame.toMap(), frame.getTimestamp());
+                }
+            });
+            mergers.add(merger);
+            logConfigs.addAll(groupConfigs);
+        }
+        mMergers = mergers;
+        return logConfigs;
+    }
+
+    void clear() {
+        mMergers = Collections.emptyList();
+    }
+
+    private void notifyFrameReceived(int periodInMs, Map<String, Number> data, int timestamp) {
+        for (LogSubscriptionListener listener : mListeners) {
+            listener.logFrameReceived(this, periodInMs, data, timestamp);
+        }
+    }
+
+}
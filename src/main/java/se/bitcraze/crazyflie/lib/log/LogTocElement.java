@@ -69,6 +69,16 @@ public class LogTocElement extends TocElement {
         mVariableTypeMap.put(0x05, VariableType.INT16_T);
         mVariableTypeMap.put(0x06, VariableType.INT32_T);
         mVariableTypeMap.put(0x07, VariableType.FLOAT);
-        /*TODO: 0x08 FP16*/
+        mVariableTypeMap.put(0x08, VariableType.FP16);
+    }
+
+    /**
+     * @param variableType
+     * @return the id of the log type in the Crazyflie or -1 if the type can't be logged
+     */
+    public static int getTypeId(VariableType variableType) {
+        LogTocElement logTocElement = new LogTocElement();
+        logTocElement.setCtype(variableType);
+        return logTocElement.getVariableTypeId();
     }
 }
@@ -32,7 +32,9 @@ import se.bitcraze.crazyflie.lib.toc.VariableType;
 /**
  * A LogVariable is an element of a {@link LogConfig}
  *
- * Instead of fetch_as/stored_as this class uses VariableType (not to be confused with LogVariable.getType())
+ * Instead of fetch_as/stored_as this class uses VariableType (not to be confused with LogVariable.getType()).
+ * The variable type is the type the variable is stored as in the Crazyflie, the fetch type is the type it is
+ * converted to before it is sent (e.g. a float fetched as FP16 or int16 uses half the bytes).
  *
  * TODO: does LogVariable need to store the ID?
  */
@@ -45,6 +47,7 @@ public class LogVariable {
     private VariableType mVariableType;
     private int mType = TOC_TYPE; // default is TOC_TYPE
     private int mAddress = 0; //TODO: long?
+    private VariableType mFetchAs;
 
     public LogVariable(String name) {
         this.mName = name;
@@ -55,6 +58,16 @@ public class LogVariable {
         this.mVariableType = varType;
     }
 
+    /**
+     * @param name
+     * @param varType type the variable is stored as, <code>null</code> to take it from the TOC
+     * @param fetchAs type the variable is fetched as, <code>null</code> to fetch it as it is stored
+     */
+    public LogVariable(String name, VariableType varType, VariableType fetchAs) {
+        this(name, varType);
+        setFetchAs(fetchAs);
+    }
+
     public LogVariable(String name, VariableType varType, int type) {
         this(name, varType);
         this.mType = type;
@@ -77,6 +90,25 @@ public class LogVariable {
         this.mVariableType = varType;
     }
 
+    /**
+     * Returns the type the variable is sent as, which determines its size in the log data
+     *
+     * @return the fetch type or the variable type if the variable is fetched as it is stored
+     */
+    public VariableType getFetchAs() {
+        return this.mFetchAs != null ? this.mFetchAs : this.mVariableType;
+    }
+
+    /**
+     * @param fetchAs type of at most 4 bytes (the Crazyflie can't convert to 64 bit types), <code>null</code> to fetch the variable as it is stored
+     */
+    public void setFetchAs(VariableType fetchAs) {
+        if (fetchAs != null && fetchAs.getSize() > 4) {
+            throw new IllegalArgumentException("Log variable " + mName + " can't be fetched as " + fetchAs);
+        }
+        this.mFetchAs = fetchAs;
+    }
+
     public int getType() {
         return this.mType;
     }
@@ -95,7 +127,7 @@ public class LogVariable {
     }
 
     public String toString() {
-        return "LogVariable : name: " + this.mName + ", variableType: " + this.mVariableType;
+        return "LogVariable : name: " + this.mName + ", variableType: " + this.mVariableType + (mFetchAs != null ? ", fetchAs: " + mFetchAs : "");
     }
 
 }
@@ -34,6 +34,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,19 +62,29 @@ public class Logg {
 
     final Logger mLogger = LoggerFactory.getLogger("Logging");
 
-    // The max size of a CRTP packet payload
-    private final static int MAX_LOG_DATA_PACKET_SIZE = 30;
+    // log data payload: block id, 3 byte timestamp, packed variables
+    private final static int LOG_DATA_OFFSET = 4;
+    // The max size of the variables in a CRTP packet payload (30 bytes)
+    final static int MAX_LOG_DATA_PACKET_SIZE = 30 - LOG_DATA_OFFSET;
+    // The create command holds command, ID and two bytes per variable
+    final static int MAX_LOG_CONFIG_VARIABLES = (30 - 2) / 2;
 
     private Crazyflie mCrazyflie;
     private Toc mToc = null;
     private TocCache mTocCache = null;
     private TocFetchFinishedListener mTocFetchFinishedListener;
 
-    private List<LogConfig> mLogConfigs = new ArrayList<LogConfig>();
-    private int mLogConfigIdCounter = 0;
+    // Log config (block) ids are a single byte
+    public final static int MAX_LOG_CONFIGS = 256;
+
+    // indexed by log config id, the array elements have volatile semantics
+    private final AtomicReferenceArray<LogConfig> mLogConfigs = new AtomicReferenceArray<LogConfig>(MAX_LOG_CONFIGS);
+    private final AtomicInteger mLogConfigIdCounter = new AtomicInteger(0);
 
     private Set<LogListener> mLogListeners = new CopyOnWriteArraySet<LogListener>();
 
+    private final LogPeriodController mPeriodController = new LogPeriodController(this);
+
     private static Map<Integer, String> mErrCodes = new HashMap<Integer, String>();
 
     /*
@@ -119,6 +131,20 @@ public class Logg {
         */
     }
 
+    Crazyflie getCrazyflie() {
+        return mCrazyflie;
+    }
+
+    /**
+     * Returns the controller that adapts the log periods to the bandwidth of the link.
+     * It does nothing until log configs are managed and it is started.
+     *
+     * @return the log period controller
+     */
+    public LogPeriodController getPeriodController() {
+        return mPeriodController;
+    }
+
     //TODO: only for debugging
     public Toc getToc() {
         return this.mToc;
@@ -163,6 +189,7 @@ public class Logg {
                 }
             }
         }
+        logConfig.invalidateDecoder();
         /*
          * Now check that all the added variables are in the TOC and that
          * the total size constraint of a data packet with logging data is not ???
@@ -173,7 +200,7 @@ public class Logg {
         int size = 0;
         for (LogVariable logVariable : logConfig.getLogVariables()) {
             // size += LogTocElement.get_size_from_id(var.fetch_as)
-            size += logVariable.getVariableType().getSize();
+            size += logVariable.getFetchAs().getSize();
 
             /*
              * Check that we are able to find the variable in the TOC so
@@ -191,14 +218,16 @@ public class Logg {
             }
         }
 
-        if (size <= MAX_LOG_DATA_PACKET_SIZE && (logConfig.getPeriod() > 0 && logConfig.getPeriod() < 0xFF)) {
+        if (size <= MAX_LOG_DATA_PACKET_SIZE && logConfig.getLogVariables().size() <= MAX_LOG_CONFIG_VARIABLES && (logConfig.getPeriod() > 0 && logConfig.getPeriod() < 0xFF)) {
             logConfig.setValid(true);
             // logconf.cf = self.cf         -> not necessary in Java
 
             // set log config ID
-            logConfig.setId((mLogConfigIdCounter + 1) % 255);
-
-            mLogConfigs.add(logConfig);
+            if (!register(logConfig)) {
+                mLogger.warn("No free log config ID for " + logConfig.getName() + ", this log config cannot be used!");
+                logConfig.setValid(false);
+                return;
+            }
             // TODO: self.block_added_cb.call(logconf)
         } else {
             logConfig.setValid(false);
@@ -207,6 +236,56 @@ public class Logg {
         }
     }
 
+    /**
+     * Subscribe to the variables of a log subscription <br/>
+     * <br/>
+     * The variables are grouped by period and packed into as few log configs as possible,
+     * which are then added and started. Like {@link #addConfig(LogConfig)} this requires a valid TOC.
+     *
+     * @param subscription
+     * @return <code>false</code> if the subscription could not be added
+     */
+    public boolean subscribe(LogSubscription subscription) {
+        if (mToc == null) {
+            mLogger.error("Cannot subscribe without a TOC!");
+            return false;
+        }
+        List<LogConfig> logConfigs = subscription.pack(mToc, MAX_LOG_DATA_PACKET_SIZE, MAX_LOG_CONFIG_VARIABLES);
+        if (logConfigs == null) {
+            mLogger.warn("Log subscription " + subscription.getName() + " contains variables that are not in the TOC!");
+            return false;
+        }
+        for (LogConfig logConfig : logConfigs) {
+            addConfig(logConfig);
+            if (!logConfig.isValid()) {
+                mLogger.warn("Log subscription " + subscription.getName() + " cannot be used, " + logConfig.getName() + " is invalid!");
+                unsubscribe(subscription);
+                return false;
+            }
+        }
+        addLogListener(subscription.getRecordListener());
+        for (LogConfig logConfig : logConfigs) {
+            start(logConfig);
+        }
+        mLogger.debug("Log subscription " + subscription.getName() + " packed into " + logConfigs.size() + " log configs");
+        return true;
+    }
+
+    /**
+     * Stop and delete the log configs of a log subscription
+     *
+     * @param subscription
+     */
+    public void unsubscribe(LogSubscription subscription) {
+        removeLogListener(subscription.getRecordListener());
+        for (LogConfig logConfig : subscription.getLogConfigs()) {
+            if (logConfig.isValid()) {
+                delete(logConfig);
+            }
+        }
+        subscription.clear();
+    }
+
     /**
      * Start refreshing the table of loggable variables
      */
@@ -223,13 +302,33 @@ public class Logg {
         this.mCrazyflie.sendPacket(packet);
     }
 
-    private LogConfig findLogConfig (int id) {
-        for (LogConfig logConfig : mLogConfigs) {
-            if (logConfig.getId() == id) {
-                return logConfig;
+    /**
+     * Assign a free log config ID (1-255) to the log config and publish it
+     *
+     * @param logConfig
+     * @return <code>false</code> if all IDs are in use
+     */
+    private boolean register(LogConfig logConfig) {
+        int id = logConfig.getId();
+        if (id > 0 && id < MAX_LOG_CONFIGS && mLogConfigs.get(id) == logConfig) {
+            // already registered
+            return true;
+        }
+        for (int i = 1; i < MAX_LOG_CONFIGS; i++) {
+            id = ((mLogConfigIdCounter.getAndIncrement() & Integer.MAX_VALUE) % (MAX_LOG_CONFIGS - 1)) + 1;
+            if (mLogConfigs.get(id) == null) {
+                // the ID has to be set before the log config is visible to the packet thread
+                logConfig.setId(id);
+                if (mLogConfigs.compareAndSet(id, null, logConfig)) {
+                    return true;
+                }
             }
         }
-        return null;
+        return false;
+    }
+
+    private LogConfig findLogConfig(int id) {
+        return mLogConfigs.get(id & 0xFF);
     }
 
     /**
@@ -250,7 +349,7 @@ public class Logg {
         byte[] payload = packet.getPayload();
 
         if (channel == CHAN_SETTINGS) {
-            int id = payload[1];
+            int id = payload[1] & 0xFF;
             int errorStatus = payload[2];
             LogConfig logConfig = findLogConfig(id);
 
@@ -346,7 +445,9 @@ public class Logg {
                 // Guard against multiple responses due to re-sending
                 if (mToc == null) {
                     mLogger.debug("Logging reset, continue with TOC download");
-                    mLogConfigs = new ArrayList<LogConfig>();
+                    for (int i = 0; i < MAX_LOG_CONFIGS; i++) {
+                        mLogConfigs.set(i, null);
+                    }
 
                     mToc = new Toc();
                     // toc_fetcher = TocFetcher(self.cf, LogTocElement, CRTPPort.LOGGING, self.toc, self._refresh_callback, self._toc_cache)
@@ -357,13 +458,12 @@ public class Logg {
             }
         } else if (channel == CHAN_LOGDATA) {
             // TODO: fix payload offset
-            int id = payload[0];
+            int id = payload[0] & 0xFF;
             LogConfig logConfig = findLogConfig(id);
             
             if (logConfig != null) {
-                Map<String, Number> logDataMap = new HashMap<String, Number>();
-                int timestamp = parseLogData(payload, logConfig, logDataMap);
-                notifyLogDataReceived(logConfig, logDataMap, timestamp);
+                int timestamp = parseTimestamp(payload[1], payload[2], payload[3]);
+                notifyLogDataReceived(logConfig, payload, timestamp);
             } else {
                 mLogger.warn("Error no LogEntry to handle id=" + id);
             }
@@ -374,11 +474,7 @@ public class Logg {
         //get timestamp
         int timestamp = parseTimestamp(payload[1], payload[2], payload[3]);
         // logdata = packet.data[4:]
-        int offset = 4;
-        byte[] logData = new byte[payload.length-offset];
-        System.arraycopy(payload, offset, logData, 0, logData.length);
-
-        logDataMap.putAll(logConfig.unpackLogData(logData));
+        logDataMap.putAll(logConfig.unpackLogData(payload, LOG_DATA_OFFSET));
         LoggerFactory.getLogger("Logging").debug("Unpacked log data (ID: " + logConfig.getId() + ") with time stamp " + timestamp);
         //TODO: what to do with the unpacked data?
         return timestamp;
@@ -387,13 +483,7 @@ public class Logg {
     // timestamps = struct.unpack("<BBB", packet.data[1:4])
     // timestamp = (timestamps[0] | timestamps[1] << 8 | timestamps[2] << 16)
     private static int parseTimestamp(byte data1, byte data2, byte data3) {
-        //allocate 4 bytes for an int
-        ByteBuffer buffer = ByteBuffer.allocate(4).order(CrtpPacket.BYTE_ORDER);
-        buffer.put(data1);
-        buffer.put(data2);
-        buffer.put(data3);
-        buffer.rewind();
-        return buffer.getInt();
+        return (data1 & 0xFF) | (data2 & 0xFF) << 8 | (data3 & 0xFF) << 16;
     }
 
 
@@ -422,7 +512,7 @@ public class Logg {
     public void create(LogConfig logConfig) {
         int logConfigId = logConfig.getId();
 
-        ByteBuffer bb = ByteBuffer.allocate(31);
+        ByteBuffer bb = ByteBuffer.allocate(31).order(CrtpPacket.BYTE_ORDER);
         bb.put((byte) CMD_CREATE_LOGCONFIG);
         bb.put((byte) logConfigId);
 
@@ -432,33 +522,46 @@ public class Logg {
         }
         for (LogVariable variable : logConfig.getLogVariables()) {
             VariableType variableType = variable.getVariableType();
-            
+            // the storage type is in the upper and the fetch type in the lower nibble
+            int fetchTypeId = LogTocElement.getTypeId(variable.getFetchAs());
+            if (fetchTypeId == -1) {
+                mLogger.error("Log variable " + variable.getName() + " can't be fetched as " + variable.getFetchAs());
+                return;
+            }
+
             if(!variable.isTocVariable()) { // Memory location
-                //create LogTocElement to get the variableTypeId
-                LogTocElement memLogTocElement = new LogTocElement();
-                memLogTocElement.setCtype(variableType);
-                int variableTypeId = memLogTocElement.getVariableTypeId();
-                
+                int variableTypeId = LogTocElement.getTypeId(variableType);
+                if (variableTypeId == -1) {
+                    mLogger.error("VariableType " + variableType.name() + " not found in LogTocElement.VARIABLE_TYPE_MAP.");
+                    return;
+                }
+
                 // logger.debug("Logging to raw memory %d, 0x%04X", var.get_storage_and_fetch_byte(), var.address)
                 mLogger.debug("Logging to raw memory " + variableType.name() + ", address: " + variable.getAddress());
                 // pk.data += struct.pack('<B', var.get_storage_and_fetch_byte())
                 // pk.data += struct.pack('<I', var.address)
-                bb.put(new byte[] {(byte) variableTypeId, (byte) variable.getAddress()});
+                if (bb.remaining() < 5) {
+                    mLogger.error("LogConfig " + logConfig.getName() + " has too many memory variables");
+                    return;
+                }
+                bb.put((byte) (variableTypeId << 4 | fetchTypeId));
+                bb.putInt(variable.getAddress());
             } else { // Item in TOC
                 String name = variable.getName();
                 int tocElementId = mToc.getElementId(name);
-                
+
+                // the Crazyflie takes the storage type of TOC variables from its TOC
                 TocElement logTocElement = mToc.getElementByCompleteName(name);
                 int variableTypeId = logTocElement.getVariableTypeId();
                 if (variableTypeId == -1) {
                     mLogger.error("VariableType " + variableType.name() + " not found in LogTocElement.VARIABLE_TYPE_MAP.");
                     //TODO: return?
-                } 
+                }
                 // logger.debug("Adding %s with id=%d and type=0x%02X", var.name, self.cf.log.toc.get_element_id(var.name), var.get_storage_and_fetch_byte())
 //                mLogger.debug("Adding " + name + " with id " + tocElementId + ", type " + variableType.name() + " and variableTypeId " + variableTypeId);
                 // pk.data += struct.pack('<B', var.get_storage_and_fetch_byte())
                 // pk.data += struct.pack('<B', self.cf.log.toc.get_element_id(var.name))
-                bb.put(new byte[] {(byte) variableTypeId, (byte) tocElementId});
+                bb.put(new byte[] {(byte) (Math.max(variableTypeId, 0) << 4 | fetchTypeId), (byte) tocElementId});
             }
         }
         mLogger.debug("Adding log config ID " + logConfigId);
@@ -531,11 +634,32 @@ public class Logg {
         }
         //hacky workarounds
         logConfig.setAdded(false);
-        mLogConfigs.remove(logConfig);
+        int id = logConfig.getId();
+        if (id >= 0 && id < MAX_LOG_CONFIGS) {
+            mLogConfigs.compareAndSet(id, logConfig, null);
+        }
     }
 
+    /**
+     * @return a snapshot of the registered log configs, ordered by ID
+     */
     public List<LogConfig> getLogConfigs() {
-        return mLogConfigs;
+        List<LogConfig> logConfigs = new ArrayList<LogConfig>();
+        for (int i = 0; i < MAX_LOG_CONFIGS; i++) {
+            LogConfig logConfig = mLogConfigs.get(i);
+            if (logConfig != null) {
+                logConfigs.add(logConfig);
+            }
+        }
+        return logConfigs;
+    }
+
+    /**
+     * @param id log config ID
+     * @return the registered log config with the given ID or <code>null</code>
+     */
+    public LogConfig getLogConfig(int id) {
+        return findLogConfig(id);
     }
 
     /* Log listener methods*/
@@ -575,7 +699,39 @@ public class Logg {
 
     public void notifyLogDataReceived(LogConfig logConfig, Map<String, Number> data, int timestamp) {
         for(LogListener ll : this.mLogListeners) {
-            ll.logDataReceived(logConfig, data, timestamp);
+            if (!(ll instanceof LogRecordListener)) {
+                ll.logDataReceived(logConfig, data, timestamp);
+            }
+        }
+    }
+
+    /**
+     * Notify the listeners about a log data packet. The data is decoded once into the reusable record of the
+     * log config, record listeners get the record and all other listeners a map that is only created if needed.
+     * Data that is too short is not passed to record listeners, the other listeners get an empty map.
+     *
+     * @param logConfig
+     * @param payload payload of the log data packet
+     * @param timestamp
+     */
+    private void notifyLogDataReceived(LogConfig logConfig, byte[] payload, int timestamp) {
+        LogRecord record = logConfig.getRecord();
+        boolean decoded = record.decode(payload, LOG_DATA_OFFSET, timestamp);
+        if (!decoded) {
+            mLogger.warn("Log data of log config ID=" + logConfig.getId() + " is too short");
+        }
+        Map<String, Number> data = null;
+        for(LogListener ll : this.mLogListeners) {
+            if (ll instanceof LogRecordListener) {
+                if (decoded) {
+                    ((LogRecordListener) ll).logRecordReceived(record);
+                }
+            } else {
+                if (data == null) {
+                    data = decoded ? record.toMap() : new HashMap<String, Number>();
+                }
+                ll.logDataReceived(logConfig, data, timestamp);
+            }
         }
     }
 
@@ -0,0 +1,519 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the most recent samples of all logged variables in memory, without boxing.
+ * <br/>
+ * Each log config gets a table with a timestamp column shared by its variables and one primitive ring buffer
+ * (column) per variable, so the memory used is bounded by <code>capacity * (variables + 1) * 8</code> bytes per
+ * log config. Add the store to {@link Logg#addLogListener(LogListener)}. A variable that is logged by several
+ * log configs is stored with the first log config that logs it, until no record of that log config has been received
+ * for 10 periods (e.g. because it has been replaced by a new subscription). The variable is then stored with one of
+ * the other log configs, and tables that store no variables and are no longer received are dropped.
+ * <br/>
+ * Timestamps are the firmware timestamps in ms, extended beyond 24 bits when they wrap around. All log configs
+ * share the same time base. Records that are older than the latest record of their log config are dropped.
+ * Queries select samples by timestamp range [from, to] (inclusive) and may be called from any thread.
+ */
+public class TelemetryStore extends LogRecordAdapter {
+
+    // number of periods without a record after which a log config is no longer received
+    private final static int STALE_PERIODS = 10;
+    // firmware time between the checks for log configs that are no longer received
+    private final static long MAINTENANCE_INTERVAL = 1000;
+
+    private final int mCapacity;
+
+    private final Map<LogConfig, Table> mTables = new ConcurrentHashMap<LogConfig, Table>();
+    private final Map<String, Column> mColumns = new ConcurrentHashMap<String, Column>();
+    private final AtomicLong mLateCount = new AtomicLong();
+
+    // last firmware timestamp and its extended value, guarded by this
+    private int mLastRawTimestamp;
+    private long mLastTimestamp = -1;
+
+    // firmware time of the next check for tables that are no longer fed, reset by clear()
+    private volatile long mNextMaintenance = -1;
+    // only accessed by the writer
+    private long mTableSequence = 0;
+
+    /**
+     * @param capacity number of samples kept per log config, e.g. 6000 for 10 minutes at 10Hz
+     */
+    public TelemetryStore(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.mCapacity = capacity;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    @Override
+    public void logRecordReceived(LogRecord record) {
+        LogConfig logConfig = record.getLogConfig();
+        Table table = mTables.get(logConfig);
+        if (table == null || table.mColumns.length != record.getVariableCount()) {
+            Table previous = table;
+            table = new Table(logConfig, mTableSequence++, record.getDecoder(), mCapacity);
+            mTables.put(logConfig, table);
+            addColumns(table, previous);
+        }
+        long timestamp = extendTimestamp(record.getTimestamp());
+        if (!table.add(timestamp, record)) {
+            mLateCount.incrementAndGet();
+        }
+        if (timestamp >= mNextMaintenance) {
+            mNextMaintenance = timestamp + MAINTENANCE_INTERVAL;
+            moveStaleColumns(timestamp);
+        }
+    }
+
+    /**
+     * Add the columns of a new table, replacing the ones of the previous table of the same log config.
+     * Variables that already have a column of another log config are not added.
+     */
+    private void addColumns(Table table, Table previous) {
+        if (previous != null) {
+            for (Iterator<Column> iterator = mColumns.values().iterator(); iterator.hasNext();) {
+                if (iterator.next().mTable == previous) {
+                    iterator.remove();
+                }
+            }
+        }
+        for (int i = 0; i < table.mNames.length; i++) {
+            if (!mColumns.containsKey(table.mNames[i])) {
+                mColumns.put(table.mNames[i], new Column(table, i));
+            }
+        }
+    }
+
+    /**
+     * Move the columns of tables that are no longer fed to a fed table with the same variable
+     * and drop the tables that are no longer fed and have no columns
+     */
+    private void moveStaleColumns(long now) {
+        for (Map.Entry<String, Column> entry : mColumns.entrySet()) {
+            if (entry.getValue().mTable.isStale(now)) {
+                // the first created of the fed tables, like a new variable
+                Table selected = null;
+                for (Table table : mTables.values()) {
+                    if (table.indexOf(entry.getKey()) >= 0 && !table.isStale(now)
+                            && (selected == null || table.mSequence < selected.mSequence)) {
+                        selected = table;
+                    }
+                }
+                if (selected != null) {
+                    mColumns.put(entry.getKey(), new Column(selected, selected.indexOf(entry.getKey())));
+                }
+            }
+        }
+        for (Iterator<Table> iterator = mTables.values().iterator(); iterator.hasNext();) {
+            Table table = iterator.next();
+            if (table.isStale(now) && !hasColumns(table)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private boolean hasColumns(Table table) {
+        for (Column column : mColumns.values()) {
+            if (column.mTable == table) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Extend a 24 bit firmware timestamp, using the same time base for all log configs
+     */
+    private synchronized long extendTimestamp(int rawTimestamp) {
+        long timestamp = rawTimestamp;
+        if (mLastTimestamp >= 0) {
+            timestamp = mLastTimestamp + LogFrameMerger.difference(rawTimestamp, mLastRawTimestamp);
+        }
+        mLastRawTimestamp = rawTimestamp;
+        mLastTimestamp = timestamp;
+        return timestamp;
+    }
+
+    /**
+     * @return number of records that have been dropped because they were older than the latest record of their log config
+     */
+    public long getLateCount() {
+        return mLateCount.get();
+    }
+
+    /**
+     * @return names of all stored variables
+     */
+    public List<String> getVariableNames() {
+        List<String> names = new ArrayList<String>(mColumns.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * @param name
+     * @return number of stored samples of the variable
+     */
+    public int size(String name) {
+        Column column = mColumns.get(name);
+        if (column == null) {
+            return 0;
+        }
+        synchronized (column.mTable) {
+            return column.mTable.mSize;
+        }
+    }
+
+    /**
+     * @return the number of bytes used by the ring buffers
+     */
+    public long getMemoryUsage() {
+        long bytes = 0;
+        for (Table table : mTables.values()) {
+            bytes += (long) (table.mColumns.length + 1) * mCapacity * 8;
+        }
+        return bytes;
+    }
+
+    /**
+     * @param name
+     * @return timestamp of the most recent sample or -1 if there is none
+     */
+    public long getLatestTimestamp(String name) {
+        Column column = mColumns.get(name);
+        if (column == null) {
+            return -1;
+        }
+        Table table = column.mTable;
+        synchronized (table) {
+            return table.mSize == 0 ? -1 : table.mTimestamps[table.physical(table.mSize - 1)];
+        }
+    }
+
+    /**
+     * @param name
+     * @return the most recent value or NaN if there is none
+     */
+    public double getLatest(String name) {
+        Column column = mColumns.get(name);
+        if (column == null) {
+            return Double.NaN;
+        }
+        Table table = column.mTable;
+        synchronized (table) {
+            return table.mSize == 0 ? Double.NaN : table.mColumns[column.mIndex][table.physical(table.mSize - 1)];
+        }
+    }
+
+    /**
+     * Copy the samples within a time range into the given arrays, oldest first. If the arrays are
+     * shorter than the number of samples in the range, the oldest samples are copied.
+     *
+     * @param name
+     * @param from
+     * @param to
+     * @param timestamps target for the timestamps, may be <code>null</code>
+     * @param values target for the values
+     * @return number of copied samples
+     */
+    public int query(String name, long from, long to, long[] timestamps, double[] values) {
+        Column column = mColumns.get(name);
+        if (column == null) {
+            return 0;
+        }
+        Table table = column.mTable;
+        double[] data = table.mColumns[column.mIndex];
+        synchronized (table) {
+            int start = table.lowerBound(from);
+            int end = Math.min(table.upperBound(to), start + values.length);
+            for (int i = start; i < end; i++) {
+                int physical = table.physical(i);
+                if (timestamps != null) {
+                    timestamps[i - start] = table.mTimestamps[physical];
+                }
+                values[i - start] = data[physical];
+            }
+            return Math.max(0, end - start);
+        }
+    }
+
+    /**
+     * @param name
+     * @param from
+     * @param to
+     * @return count, minimum, maximum and mean of the samples within the time range
+     */
+    public Statistics getStatistics(String name, long from, long to) {
+        Column column = mColumns.get(name);
+        if (column == null) {
+            return new Statistics(0, Double.NaN, Double.NaN, Double.NaN);
+        }
+        Table table = column.mTable;
+        double[] data = table.mColumns[column.mIndex];
+        synchronized (table) {
+            int start = table.lowerBound(from);
+            int end = table.upperBound(to);
+            if (end <= start) {
+                return new Statistics(0, Double.NaN, Double.NaN, Double.NaN);
+            }
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0;
+            for (int i = start; i < end; i++) {
+                double value = data[table.physical(i)];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sum += value;
+            }
+            return new Statistics(end - start, min, max, sum / (end - start));
+        }
+    }
+
+    /**
+     * Downsample the samples within a time range for plotting. The range is divided into buckets of equal
+     * duration and the minimum and maximum of each non empty bucket are returned, so peaks are preserved.
+     *
+     * @param name
+     * @param from
+     * @param to
+     * @param timestamps target for the start timestamp of each bucket
+     * @param min target for the minimum of each bucket
+     * @param max target for the maximum of each bucket
+     * @return number of non empty buckets, at most the length of the target arrays
+     */
+    public int downsample(String name, long from, long to, long[] timestamps, double[] min, double[] max) {
+        Column column = mColumns.get(name);
+        int buckets = Math.min(timestamps.length, Math.min(min.length, max.length));
+        if (column == null || buckets == 0 || to < from) {
+            return 0;
+        }
+        Table table = column.mTable;
+        double[] data = table.mColumns[column.mIndex];
+        double bucketDuration = (double) (to - from + 1) / buckets;
+        int count = 0;
+        int currentBucket = -1;
+        synchronized (table) {
+            int end = table.upperBound(to);
+            for (int i = table.lowerBound(from); i < end; i++) {
+                int physical = table.physical(i);
+                int bucket = Math.min(buckets - 1, (int) ((table.mTimestamps[physical] - from) / bucketDuration));
+                double value = data[physical];
+                if (bucket != currentBucket) {
+                    currentBucket = bucket;
+                    timestamps[count] = from + (long) (bucket * bucketDuration);
+                    min[count] = value;
+                    max[count] = value;
+                    count++;
+                } else {
+                    min[count - 1] = Math.min(min[count - 1], value);
+                    max[count - 1] = Math.max(max[count - 1], value);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Remove all samples
+     */
+    public void clear() {
+        mTables.clear();
+        mColumns.clear();
+        synchronized (this) {
+            mLastTimestamp = -1;
+            mNextMaintenance = -1;
+        }
+    }
+
+    /**
+     * Summary of the samples in a time range
+     */
+    public static class Statistics {
+
+        private final int mCount;
+        private final double mMin;
+        private final double mMax;
+        private final double mMean;
+
+        Statistics(int count, double min, double max, double mean) {
+            this.mCount = count;
+            this.mMin = min;
+            this.mMax = max;
+            this.mMean = mean;
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        public double getMin() {
+            return mMin;
+        }
+
+        public double getMax() {
+            return mMax;
+        }
+
+        public double getMean() {
+            return mMean;
+        }
+    }
+
+    private static class Column {
+
+        private final Table mTable;
+        private final int mIndex;
+
+        Column(Table table, int index) {
+            this.mTable = table;
+            this.mIndex = index;
+        }
+    }
+
+    /**
+     * Ring buffers of one log config, guarded by its monitor
+     */
+    private static class Table {
+
+        private final LogConfig mLogConfig;
+        // order of creation
+        private final long mSequence;
+        private final String[] mNames;
+        private final long[] mTimestamps;
+        private final double[][] mColumns;
+        // index of the oldest sample
+        private int mStart = 0;
+        private int mSize = 0;
+
+        Table(LogConfig logConfig, long sequence, LogDecoder decoder, int capacity) {
+            this.mLogConfig = logConfig;
+            this.mSequence = sequence;
+            this.mNames = new String[decoder.getVariableCount()];
+            for (int i = 0; i < mNames.length; i++) {
+                mNames[i] = decoder.getName(i);
+            }
+            this.mTimestamps = new long[capacity];
+            this.mColumns = new double[mNames.length][capacity];
+        }
+
+        /**
+         * @return <code>false</code> if the record has been dropped, because it is older than the latest sample
+         */
+        synchronized boolean add(long timestamp, LogRecord record) {
+            // keep the timestamps sorted for the binary searches
+            if (mSize > 0 && timestamp < mTimestamps[physical(mSize - 1)]) {
+                return false;
+            }
+
+            int capacity = mTimestamps.length;
+            int index;
+            if (mSize < capacity) {
+                index = physical(mSize);
+                mSize++;
+            } else {
+                index = mStart;
+                mStart = (mStart + 1) % capacity;
+            }
+            mTimestamps[index] = timestamp;
+            for (int i = 0; i < mColumns.length; i++) {
+                mColumns[i][index] = record.getDouble(i);
+            }
+            return true;
+        }
+
+        int indexOf(String name) {
+            for (int i = 0; i < mNames.length; i++) {
+                if (mNames[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return <code>true</code> if no record has been added for the last periods of the log config
+         */
+        synchronized boolean isStale(long now) {
+            long period = Math.max(10, mLogConfig.getPeriodInMs());
+            return mSize > 0 && now - mTimestamps[physical(mSize - 1)] > STALE_PERIODS * period;
+        }
+
+        int physical(int logicalIndex) {
+            return (mStart + logicalIndex) % mTimestamps.length;
+        }
+
+        /**
+         * @return logical index of the first sample with a timestamp >= t
+         */
+        int lowerBound(long t) {
+            int low = 0;
+            int high = mSize;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (mTimestamps[physical(mid)] < t) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return logical index of the first sample with a timestamp > t
+         */
+        int upperBound(long t) {
+            int low = 0;
+            int high = mSize;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (mTimestamps[physical(mid)] <= t) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.param;
+
+import java.util.concurrent.Executor;
+
+import se.bitcraze.crazyflie.lib.crazyflie.DeliveryPolicy;
+import se.bitcraze.crazyflie.lib.crazyflie.DeliveryQueue;
+
+/**
+ * Param listener that forwards updates to another listener on an executor, so a slow listener
+ * does not stall the packet thread. Group and name are taken from the wrapped listener.
+ */
+public class AsyncParamListener extends ParamListener {
+
+    private final ParamListener mDelegate;
+    private final DeliveryQueue<Update> mQueue;
+
+    private static class Update {
+        private final String mName;
+        private final Number mValue;
+
+        Update(String name, Number value) {
+            this.mName = name;
+            this.mValue = value;
+        }
+    }
+
+    /**
+     * Deliver updates on the default executor, dropping the oldest update when more than 64 are pending
+     *
+     * @param delegate
+     */
+    public AsyncParamListener(ParamListener delegate) {
+        this(delegate, DeliveryQueue.getDefaultExecutor(), 64, DeliveryPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * @param delegate listener that receives the updates
+     * @param executor executor running the listener, e.g. a virtual thread per task executor
+     * @param capacity maximum number of pending updates
+     * @param policy what to do when the queue is full
+     */
+    public AsyncParamListener(ParamListener delegate, Executor executor, int capacity, DeliveryPolicy policy) {
+        super(delegate.getGroup(), delegate.getName());
+        this.mDelegate = delegate;
+        this.mQueue = new DeliveryQueue<Update>(executor, capacity, policy) {
+            @Override
+            protected void deliver(Update update) {
+                mDelegate.updated(update.mName, update.mValue);
+            }
+        };
+    }
+
+    @Override
+    public void updated(String name, Number value) {
+        mQueue.offer(new Update(name, value));
+    }
+
+    public ParamListener getDelegate() {
+        return mDelegate;
+    }
+
+    /**
+     * @return number of updates dropped because of the delivery policy
+     */
+    public long getDroppedCount() {
+        return mQueue.getDroppedCount();
+    }
+
+    /**
+     * @return number of updates delivered to the wrapped listener
+     */
+    public long getDeliveredCount() {
+        return mQueue.getDeliveredCount();
+    }
+
+}
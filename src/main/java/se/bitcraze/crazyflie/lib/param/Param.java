@@ -27,12 +27,19 @@
 
 package se.bitcraze.crazyflie.lib.param;
 
-import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,6 +47,7 @@ import org.slf4j.LoggerFactory;
 import se.bitcraze.crazyflie.lib.crazyflie.ConnectionAdapter;
 import se.bitcraze.crazyflie.lib.crazyflie.Crazyflie;
 import se.bitcraze.crazyflie.lib.crazyflie.DataListener;
+import se.bitcraze.crazyflie.lib.crazyflie.ReplyListener;
 import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
 import se.bitcraze.crazyflie.lib.crtp.CrtpPacket.Header;
 import se.bitcraze.crazyflie.lib.crtp.CrtpPort;
@@ -48,6 +56,7 @@ import se.bitcraze.crazyflie.lib.toc.TocCache;
 import se.bitcraze.crazyflie.lib.toc.TocElement;
 import se.bitcraze.crazyflie.lib.toc.TocFetcher;
 import se.bitcraze.crazyflie.lib.toc.TocFetchFinishedListener;
+import se.bitcraze.crazyflie.lib.toc.VariableType;
 
 /**
  * Enables reading/writing of parameter values to/from the Crazyflie.
@@ -59,18 +68,74 @@ public class Param {
 
     final static Logger mLogger = LoggerFactory.getLogger("Param");
 
+    public final static int DEFAULT_READ_WINDOW = 16;
+    public final static long DEFAULT_READ_TIMEOUT_MS = 100;
+    public final static int DEFAULT_READ_RETRIES = 5;
+
     private Toc mToc;
     private Crazyflie mCrazyflie;
 
     private Thread mParamUpdaterThread;
     private ParamUpdaterThread mPut;
-    private Map<String, Map<String, Number>> mValues = new HashMap<String, Map<String, Number>>();
+    private final ParamValueStore mValues = new ParamValueStore();
     private boolean mHaveUpdated = false;
+    private volatile ParamReader mReader;
+    private volatile boolean mValueCacheEnabled = false;
+    private volatile TocCache mTocCache;
+
+    // futures waiting for a read reply, by parameter ID, guarded by itself
+    private final Map<Integer, List<CompletableFuture<Number>>> mPendingReads = new HashMap<Integer, List<CompletableFuture<Number>>>();
+    private final ReplyListener mPendingReadListener = new ReplyListener() {
+        public void replyReceived(CrtpPacket request, CrtpPacket reply) {
+            // completed in paramUpdated(), after the value has been stored
+        }
+
+        public void noReplyReceived(CrtpPacket request) {
+            int varId = request.getPayload()[0] & 0xFF;
+            List<CompletableFuture<Number>> futures = removePendingReads(varId);
+            if (futures != null) {
+                TimeoutException exception = new TimeoutException("No reply for parameter with ID " + varId);
+                for (CompletableFuture<Number> future : futures) {
+                    future.completeExceptionally(exception);
+                }
+            }
+        }
+    };
+
+    // writes by parameter ID, the first one is waiting for its acknowledgement, the others for their turn, guarded by itself
+    private final Map<Integer, ArrayDeque<PendingWrite>> mPendingWrites = new HashMap<Integer, ArrayDeque<PendingWrite>>();
+    private final ReplyListener mPendingWriteListener = new ReplyListener() {
+        public void replyReceived(CrtpPacket request, CrtpPacket reply) {
+            // completed in paramUpdated(), after the value has been stored
+        }
+
+        public void noReplyReceived(CrtpPacket request) {
+            PendingWrite write = removePendingWrite(request.getPayload());
+            if (write != null) {
+                write.mFuture.completeExceptionally(new TimeoutException("No acknowledgement for parameter with ID " + (request.getPayload()[0] & 0xFF)));
+            }
+        }
+    };
+
+    private static class PendingWrite {
+        private final CrtpPacket mPacket;
+        private final long mTimeoutMs;
+        private final int mMaxRetries;
+        private final CompletableFuture<Number> mFuture = new CompletableFuture<Number>();
+
+        PendingWrite(CrtpPacket packet, long timeoutMs, int maxRetries) {
+            this.mPacket = packet;
+            this.mTimeoutMs = timeoutMs;
+            this.mMaxRetries = maxRetries;
+        }
+    }
 
     // TODO: use only one map for both
     // TODO: ParamListener already contains group/completeName
-    private Map<String, ParamListener> mUpdateListeners = new HashMap<String, ParamListener>();         // completeName
-    private Map<String, ParamListener> mGroupUpdateListeners = new HashMap<String, ParamListener>();    // group
+    // read on the packet thread, see AsyncParamListener to move listener work off that thread
+    private Map<String, ParamListener> mUpdateListeners = new ConcurrentHashMap<String, ParamListener>();         // completeName
+    private Map<String, ParamListener> mGroupUpdateListeners = new ConcurrentHashMap<String, ParamListener>();    // group
+    private final AtomicInteger mListenerVersion = new AtomicInteger();
 
     // Possible states
     private int IDLE = 0;
@@ -121,9 +186,52 @@ public class Param {
      * Request an update of all the parameters in the TOC
      */
     public void requestUpdateOfAllParams() {
-        for (TocElement tocElement : mToc.getElements()) {
-            requestParamUpdate(tocElement.getCompleteName());
+        readAll(null);
+    }
+
+    /**
+     * Read all the parameters in the TOC with the default window, timeout and retries
+     *
+     * @param listener progress listener (can be <code>null</code>)
+     * @return the reader, a future of the number of read parameters
+     */
+    public ParamReader readAll(ParamReaderListener listener) {
+        return readAll(DEFAULT_READ_WINDOW, DEFAULT_READ_TIMEOUT_MS, DEFAULT_READ_RETRIES, listener);
+    }
+
+    /**
+     * Read all the parameters in the TOC. A read of all parameters that is still running is cancelled.
+     * Parameters with a listener are read first, also when the listener is added while reading.
+     * If the value cache is enabled, it is saved when all parameters have been read.
+     *
+     * @param window maximum number of requests in flight
+     * @param timeoutMs time to wait for a reply before a request is resent
+     * @param maxRetries number of resends before a parameter fails
+     * @param listener progress listener (can be <code>null</code>)
+     * @return the reader, a future of the number of read parameters
+     */
+    public synchronized ParamReader readAll(int window, long timeoutMs, int maxRetries, final ParamReaderListener listener) {
+        final Toc toc = mToc;
+        ParamReader reader = new ParamReader(mCrazyflie, toc.getElements(), window, timeoutMs, maxRetries, this, new ParamReaderListener() {
+            public void progress(ParamReader reader, int completed, int total) {
+                if (listener != null) {
+                    listener.progress(reader, completed, total);
+                }
+            }
+
+            public void finished(ParamReader reader) {
+                saveValueCache(reader, toc);
+                if (listener != null) {
+                    listener.finished(reader);
+                }
+            }
+        });
+        if (mReader != null) {
+            mReader.cancel(false);
         }
+        mReader = reader;
+        reader.start();
+        return reader;
     }
 
     /**
@@ -140,38 +248,22 @@ public class Param {
 
         return True
         */
-        for (TocElement tocElement : mToc.getElements()) {
-            if (mValues.get(tocElement.getGroup()) == null) {
-                return false;
-            } else {
-                if (mValues.get(tocElement.getGroup()).get(tocElement.getName()) == null) {
-                    return false;
-                }
-            }
-        }
-        return true;
+        // cached values don't count until they have been read from the Crazyflie
+        return mValues.getCount() - mValues.getStaleCount() >= mToc.getTocSize();
     }
 
     /**
      * Callback with data for an updated parameter
      */
     public void paramUpdated(CrtpPacket packet) {
-        int varId = packet.getPayload()[0];
+        int varId = packet.getPayload()[0] & 0xFF;
         TocElement tocElement = mToc.getElementById(varId);
         if (tocElement != null) {
             //s = struct.unpack(element.pytype, pk.data[1:])[0]
             //s = s.__str__()
-            // TODO: probably does not work as intended, use System.arrayCopy instead
-            ByteBuffer payload = ByteBuffer.wrap(packet.getPayload(), 1, packet.getPayload().length-1);
-            Number number = tocElement.getCtype().parse(payload);
-
-            String completeName = tocElement.getCompleteName();
 
             // Save the value for synchronous access
-            if (!mValues.containsKey(tocElement.getGroup())) {
-                mValues.put(tocElement.getGroup(), new HashMap<String, Number>());
-            }
-            mValues.get(tocElement.getGroup()).put(tocElement.getName(), number);
+            mValues.update(varId, tocElement.getCtype(), packet.getPayload(), 1);
 
             // This will only be called once
             if (checkIfAllUpdated() && !mHaveUpdated) {
@@ -180,35 +272,216 @@ public class Param {
             }
 //                mLogger.debug("Updated parameter " + completeName);
 
-            if (mUpdateListeners.containsKey(completeName)) {
-                mUpdateListeners.get(completeName).updated(completeName, number);
-            }
-            if (mGroupUpdateListeners.containsKey(tocElement.getGroup())) {
-                mGroupUpdateListeners.get(tocElement.getGroup()).updated(completeName, number);
+            // only box the value and build the name if someone listens
+            if (!mUpdateListeners.isEmpty() || !mGroupUpdateListeners.isEmpty()) {
+                String completeName = tocElement.getCompleteName();
+                Number number = mValues.getNumber(varId);
+                ParamListener paramListener = mUpdateListeners.get(completeName);
+                if (paramListener != null) {
+                    paramListener.updated(completeName, number);
+                }
+                ParamListener groupListener = mGroupUpdateListeners.get(tocElement.getGroup());
+                if (groupListener != null) {
+                    groupListener.updated(completeName, number);
+                }
             }
         } else {
             mLogger.debug("Variable id " + varId + " not found in TOC");
         }
+
+        int channel = packet.getHeader().getChannel();
+        ParamReader reader = mReader;
+        if (reader != null && channel == READ_CHANNEL) {
+            reader.paramRead(varId);
+        }
+        List<CompletableFuture<Number>> futures = null;
+        if (channel == READ_CHANNEL) {
+            futures = removePendingReads(varId);
+        } else if (channel == WRITE_CHANNEL) {
+            PendingWrite write = removePendingWrite(packet.getPayload());
+            if (write != null) {
+                futures = Collections.singletonList(write.mFuture);
+            }
+        }
+        if (futures != null) {
+            for (CompletableFuture<Number> future : futures) {
+                if (tocElement != null) {
+                    future.complete(mValues.getNumber(varId));
+                } else {
+                    future.completeExceptionally(new IllegalStateException("Variable id " + varId + " not found in TOC"));
+                }
+            }
+        }
+    }
+
+    private List<CompletableFuture<Number>> removePendingReads(int varId) {
+        synchronized (mPendingReads) {
+            return mPendingReads.remove(varId);
+        }
+    }
+
+    /**
+     * Remove the write in flight if the payload belongs to it and send the next write of the same parameter
+     *
+     * @param payload payload of the acknowledgement or of the request that has not been acknowledged
+     * @return the write or <code>null</code> if the payload does not belong to the write in flight
+     */
+    private PendingWrite removePendingWrite(byte[] payload) {
+        int varId = payload[0] & 0xFF;
+        PendingWrite write;
+        PendingWrite next;
+        synchronized (mPendingWrites) {
+            ArrayDeque<PendingWrite> writes = mPendingWrites.get(varId);
+            if (writes == null || !startsWith(payload, writes.peek().mPacket.getPayload())) {
+                return null;
+            }
+            write = writes.poll();
+            next = writes.peek();
+            if (next == null) {
+                mPendingWrites.remove(varId);
+            }
+        }
+        if (next != null) {
+            sendWrite(next);
+        }
+        return write;
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        if (data.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
+    /**
+     * Returns a snapshot of the stored values by group and name, built from the value store.
+     * Use {@link #getValueStore()} to read values without allocating.
+     *
+     * @return map of the values by group and name
+     */
     public Map<String, Map<String, Number>> getValuesMap() {
+        Map<String, Map<String, Number>> values = new HashMap<String, Map<String, Number>>();
+        for (TocElement tocElement : mToc.getTocElementMap().values()) {
+            Number value = mValues.getNumber(tocElement.getIdent());
+            if (value != null) {
+                Map<String, Number> group = values.get(tocElement.getGroup());
+                if (group == null) {
+                    group = new HashMap<String, Number>();
+                    values.put(tocElement.getGroup(), group);
+                }
+                group.put(tocElement.getName(), value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return the values indexed by TOC ident
+     */
+    public ParamValueStore getValueStore() {
         return mValues;
     }
 
+    /**
+     * Check if the value of a parameter has not been read from the Crazyflie yet, but was loaded from the value cache
+     *
+     * @param completeName
+     * @return <code>true</code> if the value is stale
+     */
+    public boolean isStale(String completeName) {
+        TocElement tocElement = mToc.getElementByCompleteName(completeName);
+        return tocElement != null && mValues.isStale(tocElement.getIdent());
+    }
+
+    /**
+     * Enable the parameter value cache. When enabled, the last known values are saved next to the TOC cache
+     * after all parameters have been read. On the next connection with the same TOC CRC, the values are
+     * loaded as stale values as soon as the TOC is available and refreshed in the background, starting with
+     * the groups and parameters that have a listener.
+     *
+     * @param enabled
+     */
+    public void setValueCacheEnabled(boolean enabled) {
+        this.mValueCacheEnabled = enabled;
+    }
+
+    public boolean isValueCacheEnabled() {
+        return mValueCacheEnabled;
+    }
+
+    /**
+     * Load the cached values of the TOC as stale values and read all parameters,
+     * the cache is updated when all parameters have been read (by this or a later read of all parameters).
+     */
+    private void warmStart(Toc toc, TocCache tocCache) {
+        Map<String, Number> cachedValues = tocCache.fetchValues(toc.getCrc());
+        if (cachedValues != null) {
+            int loaded = 0;
+            for (Map.Entry<String, Number> entry : cachedValues.entrySet()) {
+                TocElement tocElement = toc.getElementByCompleteName(entry.getKey());
+                // don't overwrite values that have already been read
+                if (tocElement != null && entry.getValue() != null && !mValues.isSet(tocElement.getIdent())) {
+                    mValues.updateStale(tocElement.getIdent(), tocElement.getCtype(), entry.getValue());
+                    loaded++;
+                }
+            }
+            mLogger.info("Loaded " + loaded + " cached parameter values.");
+        }
+        readAll(null);
+    }
+
+    /**
+     * Save the values to the value cache after all parameters of the TOC have been read
+     */
+    private void saveValueCache(ParamReader reader, Toc toc) {
+        TocCache tocCache = mTocCache;
+        if (mValueCacheEnabled && tocCache != null && !reader.isCancelled() && toc == mToc) {
+            tocCache.insertValues(toc.getCrc(), getValuesByCompleteName(toc));
+        }
+    }
+
+    /**
+     * The version changes whenever a listener is added or removed, see {@link ParamReader}
+     */
+    int getListenerVersion() {
+        return mListenerVersion.get();
+    }
+
+    /**
+     * @return <code>true</code> if there is a listener for the parameter or its group
+     */
+    boolean hasListener(TocElement tocElement) {
+        return mUpdateListeners.containsKey(tocElement.getCompleteName()) || mGroupUpdateListeners.containsKey(tocElement.getGroup());
+    }
+
+    private Map<String, Number> getValuesByCompleteName(Toc toc) {
+        Map<String, Number> values = new HashMap<String, Number>();
+        for (TocElement tocElement : toc.getElements()) {
+            Number value = mValues.getNumber(tocElement.getIdent());
+            if (value != null) {
+                values.put(tocElement.getCompleteName(), value);
+            }
+        }
+        return values;
+    }
+
     /**
      * Remove the listener for a group or a complete name (group.name)
      */
     public void removeParamListeners(String group, String name) {
         if (name == null || name.isEmpty()) {
-            if (mGroupUpdateListeners.containsKey(group)) {
-                mGroupUpdateListeners.remove(group);
-            }
+            mGroupUpdateListeners.remove(group);
         } else {
             String completeName = group + "." + name;
-            if (mUpdateListeners.containsKey(completeName)) {
-                mUpdateListeners.remove(completeName);
-            }
+            mUpdateListeners.remove(completeName);
         }
+        mListenerVersion.incrementAndGet();
     }
 
     /**
@@ -225,16 +498,30 @@ public class Param {
                 mUpdateListeners.put(paramListener.getCompleteName(), paramListener);
             }
         }
+        mListenerVersion.incrementAndGet();
     }
 
     /**
      * Initiate a refresh of the parameter TOC.
      */
     // def refresh_toc(self, refresh_done_callback, toc_cache):
-    public void refreshToc(TocFetchFinishedListener listener, TocCache tocCache) {
-       this.mToc = new Toc();
+    public void refreshToc(TocFetchFinishedListener listener, final TocCache tocCache) {
+       final Toc toc = new Toc();
+       this.mToc = toc;
+       this.mTocCache = tocCache;
+       // values of the old TOC don't count for the new one
+       mValues.clear();
+       mHaveUpdated = false;
        // toc_fetcher = TocFetcher(self.cf, ParamTocElement, CRTPPort.PARAM, self.toc, refresh_done_callback, toc_cache)
        TocFetcher tocFetcher = new TocFetcher(mCrazyflie, CrtpPort.PARAMETERS, mToc, tocCache);
+       if (mValueCacheEnabled && tocCache != null) {
+           // added first, so the cached values are available when the listener is called
+           tocFetcher.addTocFetchFinishedListener(new TocFetchFinishedListener(CrtpPort.PARAMETERS) {
+               public void tocFetchFinished() {
+                   warmStart(toc, tocCache);
+               }
+           });
+       }
        tocFetcher.addTocFetchFinishedListener(listener);
        tocFetcher.start();
     }
@@ -280,19 +567,128 @@ public class Param {
         } else if (tocElement.getAccess() == TocElement.RO_ACCESS) {
             mLogger.debug(completeName + " is read only, not trying to set value");
         } else {
-            //TODO: extract into method
-            Header header = new Header(WRITE_CHANNEL, CrtpPort.PARAMETERS);
-            //pk.data = struct.pack('<B', varid)
-            //pk.data += struct.pack(element.pytype, eval(value))
-            //TODO: value.byteValue() might not be the right method to use, because it can involve rounding or truncation!
-            byte[] parse = tocElement.getCtype().parse(value);
-            ByteBuffer bb = ByteBuffer.allocate(parse.length+1);
-            bb.put((byte) tocElement.getIdent());
-            bb.put(parse);
-            CrtpPacket packet = new CrtpPacket(header.getByte(), bb.array());
             //self.param_updater.request_param_setvalue(pk)
-            mPut.addParamRequest(packet);
+            mPut.addParamRequest(createWritePacket(tocElement, value));
+        }
+    }
+
+    private CrtpPacket createWritePacket(TocElement tocElement, Number value) {
+        Header header = new Header(WRITE_CHANNEL, CrtpPort.PARAMETERS);
+        //pk.data = struct.pack('<B', varid)
+        //pk.data += struct.pack(element.pytype, eval(value))
+        VariableType ctype = tocElement.getCtype();
+        byte[] data = new byte[ctype.getSize() + 1];
+        data[0] = (byte) tocElement.getIdent();
+        ctype.put(data, 1, value);
+        return new CrtpPacket(header.getByte(), data);
+    }
+
+    /**
+     * Read the value of a parameter with the default timeout and retries
+     *
+     * @param completeName
+     * @return future of the value that has been read
+     * @see #readValue(String, long, int)
+     */
+    public CompletableFuture<Number> readValue(String completeName) {
+        return readValue(completeName, DEFAULT_READ_TIMEOUT_MS, DEFAULT_READ_RETRIES);
+    }
+
+    /**
+     * Read the value of a parameter. The future completes when the value has been stored (see {@link #getValue(String)}),
+     * it fails with a {@link TimeoutException} if no reply has been received after all retries. A read of a parameter
+     * that is already being read shares the request in flight (and its timeout and retries). Cancelling the future does
+     * not stop the request.
+     *
+     * @param completeName
+     * @param timeoutMs time to wait for a reply before the request is resent
+     * @param maxRetries number of resends
+     * @return future of the value that has been read
+     */
+    public CompletableFuture<Number> readValue(String completeName, long timeoutMs, int maxRetries) {
+        TocElement tocElement = mToc.getElementByCompleteName(completeName);
+        if (tocElement == null) {
+            return failedFuture(new IllegalArgumentException(completeName + " is not in the TOC"));
+        }
+        Header header = new Header(READ_CHANNEL, CrtpPort.PARAMETERS);
+        CrtpPacket packet = new CrtpPacket(header.getByte(), new byte[] {(byte) tocElement.getIdent()});
+        CompletableFuture<Number> future = new CompletableFuture<Number>();
+        boolean send;
+        synchronized (mPendingReads) {
+            List<CompletableFuture<Number>> futures = mPendingReads.get(tocElement.getIdent());
+            send = (futures == null);
+            if (send) {
+                futures = new ArrayList<CompletableFuture<Number>>();
+                mPendingReads.put(tocElement.getIdent(), futures);
+            }
+            futures.add(future);
+        }
+        if (send) {
+            packet.setExpectedReply(new byte[] {packet.getPayload()[0]});
+            mCrazyflie.sendPacket(packet, timeoutMs, maxRetries, mPendingReadListener);
+        }
+        return future;
+    }
+
+    /**
+     * Write the value of a parameter with the default timeout and retries
+     *
+     * @param completeName
+     * @param value
+     * @return future of the value confirmed by the Crazyflie
+     * @see #writeValue(String, Number, long, int)
+     */
+    public CompletableFuture<Number> writeValue(String completeName, Number value) {
+        return writeValue(completeName, value, DEFAULT_READ_TIMEOUT_MS, DEFAULT_READ_RETRIES);
+    }
+
+    /**
+     * Write the value of a parameter. The future completes with the value in the acknowledgement of the Crazyflie,
+     * it fails with a {@link TimeoutException} if the write has not been acknowledged after all retries. Writes of the
+     * same parameter are sent one after the other, a write is only sent when the previous one has been acknowledged or
+     * has failed. Cancelling the future does not stop the request.
+     *
+     * @param completeName
+     * @param value
+     * @param timeoutMs time to wait for the acknowledgement before the request is resent
+     * @param maxRetries number of resends
+     * @return future of the value confirmed by the Crazyflie
+     */
+    public CompletableFuture<Number> writeValue(String completeName, Number value, long timeoutMs, int maxRetries) {
+        TocElement tocElement = mToc.getElementByCompleteName(completeName);
+        if (tocElement == null) {
+            return failedFuture(new IllegalArgumentException(completeName + " is not in the TOC"));
+        }
+        if (tocElement.getAccess() == TocElement.RO_ACCESS) {
+            return failedFuture(new IllegalArgumentException(completeName + " is read only"));
+        }
+        PendingWrite write = new PendingWrite(createWritePacket(tocElement, value), timeoutMs, maxRetries);
+        boolean send;
+        synchronized (mPendingWrites) {
+            ArrayDeque<PendingWrite> writes = mPendingWrites.get(tocElement.getIdent());
+            send = (writes == null);
+            if (send) {
+                writes = new ArrayDeque<PendingWrite>();
+                mPendingWrites.put(tocElement.getIdent(), writes);
+            }
+            writes.add(write);
         }
+        if (send) {
+            sendWrite(write);
+        }
+        return write.mFuture;
+    }
+
+    private void sendWrite(PendingWrite write) {
+        // the acknowledgement echoes the whole write, so a late acknowledgement of an earlier write doesn't match
+        write.mPacket.setExpectedReply(write.mPacket.getPayload().clone());
+        mCrazyflie.sendPacket(write.mPacket, write.mTimeoutMs, write.mMaxRetries, mPendingWriteListener);
+    }
+
+    private static CompletableFuture<Number> failedFuture(Throwable throwable) {
+        CompletableFuture<Number> future = new CompletableFuture<Number>();
+        future.completeExceptionally(throwable);
+        return future;
     }
 
     /**
@@ -307,8 +703,8 @@ public class Param {
             mLogger.warn("Cannot get value for " + completeName + ", it's not in the TOC!");
             return -1;
         }
-        if (getValuesMap().size() > 0) {
-            return getValuesMap().get(tocElement.getGroup()).get(tocElement.getName());
+        if (mValues.getCount() > 0) {
+            return mValues.getNumber(tocElement.getIdent());
         } else {
             mLogger.warn("Parameters values map is empty!");
             return -2;
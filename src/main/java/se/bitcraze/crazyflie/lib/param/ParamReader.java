@@ -0,0 +1,318 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.param;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import se.bitcraze.crazyflie.lib.crazyflie.Crazyflie;
+import se.bitcraze.crazyflie.lib.crazyflie.ReplyListener;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket.Header;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPort;
+import se.bitcraze.crazyflie.lib.toc.TocElement;
+
+/**
+ * Reads a list of parameters with a limited number of requests in flight.
+ * <br/>
+ * Every request is resent after the timeout and fails after the given number of retries, a new request is sent
+ * as soon as one completes. A parameter counts as read when {@link Param} has stored its value, so all values
+ * are available when the reader is done. The future returns the number of parameters that have been read.
+ * <br/>
+ * Parameters that have a listener in {@link Param} are requested first. The listeners are checked while reading,
+ * so listeners added after the reader has been started are taken into account for the remaining requests.
+ */
+public class ParamReader implements ReplyListener, Future<Integer> {
+
+    // see Param.READ_CHANNEL
+    private final static int READ_CHANNEL = 1;
+
+    private final Crazyflie mCrazyflie;
+    private final Param mParam;
+    private final TocElement[] mElements;
+    private final int[] mIndexById;
+    private final int mWindow;
+    private final long mTimeoutMs;
+    private final int mMaxRetries;
+    private final ParamReaderListener mListener;
+    private final CountDownLatch mDoneLatch = new CountDownLatch(1);
+
+    // guarded by this
+    private final boolean[] mSent;
+    private final boolean[] mCompleted;
+    private final List<String> mFailedNames = new ArrayList<String>();
+    // first index that may not have been sent yet
+    private int mNext = 0;
+    private int mSentCount = 0;
+    // unsent parameters with a listener when the listeners had the given version
+    private int[] mPrioritized = new int[0];
+    private int mPrioritizedPosition = 0;
+    private int mListenerVersion;
+    private int mInFlight = 0;
+    private int mReadCount = 0;
+    private boolean mPumping = false;
+    private boolean mCancelled = false;
+    private boolean mDone = false;
+
+    /**
+     * @param crazyflie
+     * @param elements parameters to read
+     * @param window maximum number of requests in flight
+     * @param timeoutMs time to wait for a reply before a request is resent
+     * @param maxRetries number of resends before a parameter fails
+     * @param param listeners of the parameters that are read first (can be <code>null</code>)
+     * @param listener progress listener (can be <code>null</code>)
+     */
+    ParamReader(Crazyflie crazyflie, List<TocElement> elements, int window, long timeoutMs, int maxRetries, Param param, ParamReaderListener listener) {
+        if (window < 1 || timeoutMs <= 0 || maxRetries < 0) {
+            throw new IllegalArgumentException("Invalid read window, timeout or retries");
+        }
+        this.mCrazyflie = crazyflie;
+        this.mElements = elements.toArray(new TocElement[elements.size()]);
+        this.mWindow = window;
+        this.mTimeoutMs = timeoutMs;
+        this.mMaxRetries = maxRetries;
+        this.mParam = param;
+        this.mListener = listener;
+        this.mSent = new boolean[mElements.length];
+        this.mCompleted = new boolean[mElements.length];
+        if (param != null) {
+            // differs from the current version, so the prioritized parameters are collected before the first request
+            this.mListenerVersion = param.getListenerVersion() - 1;
+        }
+
+        // parameter IDs are sent as one byte
+        this.mIndexById = new int[256];
+        Arrays.fill(mIndexById, -1);
+        for (int i = 0; i < mElements.length; i++) {
+            mIndexById[mElements[i].getIdent() & 0xFF] = i;
+        }
+    }
+
+    void start() {
+        if (mElements.length == 0) {
+            finish();
+        } else {
+            pump();
+        }
+    }
+
+    /**
+     * Send requests until the window is full. Only one thread sends at a time, a thread that
+     * completes a request while another one is sending leaves the sending to that thread.
+     */
+    private void pump() {
+        synchronized (this) {
+            if (mPumping) {
+                return;
+            }
+            mPumping = true;
+        }
+        while (true) {
+            int index;
+            synchronized (this) {
+                if (mCancelled || mInFlight >= mWindow || mSentCount >= mElements.length) {
+                    mPumping = false;
+                    return;
+                }
+                index = nextIndex();
+                mSent[index] = true;
+                mSentCount++;
+                mInFlight++;
+            }
+            int ident = mElements[index].getIdent();
+            Header header = new Header(READ_CHANNEL, CrtpPort.PARAMETERS);
+            CrtpPacket packet = new CrtpPacket(header.getByte(), new byte[] {(byte) ident});
+            packet.setExpectedReply(new byte[] {(byte) ident});
+            mCrazyflie.sendPacket(packet, mTimeoutMs, mMaxRetries, this);
+        }
+    }
+
+    /**
+     * @return index of the next parameter to request, parameters with a listener first
+     */
+    private int nextIndex() {
+        if (mParam != null) {
+            int version = mParam.getListenerVersion();
+            if (version != mListenerVersion) {
+                mListenerVersion = version;
+                int[] prioritized = new int[mElements.length - mSentCount];
+                int count = 0;
+                for (int i = mNext; i < mElements.length; i++) {
+                    if (!mSent[i] && mParam.hasListener(mElements[i])) {
+                        prioritized[count++] = i;
+                    }
+                }
+                mPrioritized = Arrays.copyOf(prioritized, count);
+                mPrioritizedPosition = 0;
+            }
+            while (mPrioritizedPosition < mPrioritized.length) {
+                int index = mPrioritized[mPrioritizedPosition++];
+                if (!mSent[index]) {
+                    return index;
+                }
+            }
+        }
+        while (mSent[mNext]) {
+            mNext++;
+        }
+        return mNext++;
+    }
+
+    /**
+     * Called by {@link Param} when the value of a parameter has been read and stored
+     *
+     * @param ident parameter ID
+     */
+    void paramRead(int ident) {
+        complete(ident, true);
+    }
+
+    private void complete(int ident, boolean read) {
+        int index = mIndexById[ident & 0xFF];
+        if (index == -1) {
+            return;
+        }
+        int completed;
+        synchronized (this) {
+            // ignore replies to requests of others and duplicates
+            if (!mSent[index] || mCompleted[index]) {
+                return;
+            }
+            mCompleted[index] = true;
+            mInFlight--;
+            if (read) {
+                mReadCount++;
+            } else {
+                mFailedNames.add(mElements[index].getCompleteName());
+            }
+            completed = mReadCount + mFailedNames.size();
+        }
+        if (mListener != null) {
+            mListener.progress(this, completed, mElements.length);
+        }
+        if (completed == mElements.length) {
+            finish();
+        } else {
+            pump();
+        }
+    }
+
+    private void finish() {
+        synchronized (this) {
+            if (mDone) {
+                return;
+            }
+            mDone = true;
+        }
+        mDoneLatch.countDown();
+        if (mListener != null) {
+            mListener.finished(this);
+        }
+    }
+
+    public void replyReceived(CrtpPacket request, CrtpPacket reply) {
+        // completed in paramRead(), after Param has stored the value
+    }
+
+    public void noReplyReceived(CrtpPacket request) {
+        complete(request.getPayload()[0], false);
+    }
+
+    /**
+     * Stop sending requests, requests in flight are not cancelled
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (mDone) {
+                return false;
+            }
+            mCancelled = true;
+        }
+        finish();
+        return true;
+    }
+
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    public synchronized boolean isDone() {
+        return mDone;
+    }
+
+    public Integer get() throws InterruptedException {
+        mDoneLatch.await();
+        return getResult();
+    }
+
+    public Integer get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (!mDoneLatch.await(timeout, unit)) {
+            throw new TimeoutException("Parameters have not been read within " + timeout + " " + unit);
+        }
+        return getResult();
+    }
+
+    private synchronized Integer getResult() {
+        if (mCancelled) {
+            throw new CancellationException();
+        }
+        return mReadCount;
+    }
+
+    /**
+     * @return number of parameters to read
+     */
+    public int getTotalCount() {
+        return mElements.length;
+    }
+
+    public synchronized int getReadCount() {
+        return mReadCount;
+    }
+
+    /**
+     * @return complete names of the parameters that have not been read after all retries
+     */
+    public synchronized List<String> getFailedNames() {
+        return new ArrayList<String>(mFailedNames);
+    }
+
+    /**
+     * @return number of requests waiting for a reply
+     */
+    public synchronized int getInFlightCount() {
+        return mInFlight;
+    }
+
+}
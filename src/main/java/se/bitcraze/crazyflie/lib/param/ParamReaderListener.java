@@ -0,0 +1,51 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.param;
+
+/**
+ * Listener for the progress of a {@link ParamReader}. Callbacks are executed on the packet or resend thread,
+ * so they must return quickly.
+ */
+public interface ParamReaderListener {
+
+    /**
+     * Called when a parameter has been read or failed
+     *
+     * @param reader
+     * @param completed number of read and failed parameters
+     * @param total number of parameters to read
+     */
+    public void progress(ParamReader reader, int completed, int total);
+
+    /**
+     * Called once when all parameters have been read or failed
+     *
+     * @param reader
+     */
+    public void finished(ParamReader reader);
+
+}
@@ -0,0 +1,223 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.param;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+/**
+ * Parameter values indexed by TOC ident.
+ * <br/>
+ * Every slot holds the raw bits of the value as it was received, its type and a version that is incremented
+ * on every update (0 if the value has never been set). Updates are serialized, reads are lock-free and retry
+ * if the slot changes while it is read. Neither updates nor reads of primitive values allocate.
+ * <br/>
+ * Values that have not been received from the Crazyflie (e.g. loaded from a cache) are marked as stale
+ * until they are updated with a received value.
+ */
+public class ParamValueStore {
+
+    /**
+     * Parameter IDs are sent as one byte
+     */
+    public final static int CAPACITY = 256;
+
+    private final AtomicLongArray mBits = new AtomicLongArray(CAPACITY);
+    private final AtomicReferenceArray<VariableType> mTypes = new AtomicReferenceArray<VariableType>(CAPACITY);
+    // odd while the slot is written
+    private final AtomicIntegerArray mVersions = new AtomicIntegerArray(CAPACITY);
+    // 1 if the value is stale
+    private final AtomicIntegerArray mStale = new AtomicIntegerArray(CAPACITY);
+
+    // guarded by this
+    private int mCount = 0;
+    private int mStaleCount = 0;
+
+    /**
+     * Store a value received from the Crazyflie
+     *
+     * @param ident parameter ID
+     * @param type type of the parameter
+     * @param data
+     * @param offset position of the value in the data
+     */
+    public void update(int ident, VariableType type, byte[] data, int offset) {
+        set(ident, type, type.getBits(data, offset), false);
+    }
+
+    /**
+     * Store a value
+     *
+     * @param ident parameter ID
+     * @param type type of the parameter
+     * @param value the value, converted to the type
+     */
+    public void update(int ident, VariableType type, Number value) {
+        set(ident, type, type.toBits(value), false);
+    }
+
+    /**
+     * Store a value that has not been received from the Crazyflie, e.g. a cached value
+     *
+     * @param ident parameter ID
+     * @param type type of the parameter
+     * @param value the value, converted to the type
+     */
+    public void updateStale(int ident, VariableType type, Number value) {
+        set(ident, type, type.toBits(value), true);
+    }
+
+    private synchronized void set(int ident, VariableType type, long bits, boolean stale) {
+        int index = ident & 0xFF;
+        int version = mVersions.get(index);
+        if (version == 0) {
+            mCount++;
+        }
+        int wasStale = mStale.getAndSet(index, stale ? 1 : 0);
+        mStaleCount += (stale ? 1 : 0) - wasStale;
+        mVersions.set(index, version + 1);
+        mTypes.set(index, type);
+        mBits.set(index, bits);
+        mVersions.set(index, version + 2);
+    }
+
+    /**
+     * @param ident parameter ID
+     * @return <code>true</code> if a value has been stored
+     */
+    public boolean isSet(int ident) {
+        return mVersions.get(ident & 0xFF) != 0;
+    }
+
+    /**
+     * The version changes on every update, e.g. to poll for changes
+     *
+     * @param ident parameter ID
+     * @return the version of the slot, 0 if no value has been stored
+     */
+    public int getVersion(int ident) {
+        int version;
+        do {
+            version = mVersions.get(ident & 0xFF);
+        } while ((version & 1) != 0);
+        return version;
+    }
+
+    public synchronized int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @param ident parameter ID
+     * @return <code>true</code> if the stored value has not been received from the Crazyflie
+     */
+    public boolean isStale(int ident) {
+        return mStale.get(ident & 0xFF) != 0;
+    }
+
+    /**
+     * @return number of stored values that have not been received from the Crazyflie
+     */
+    public synchronized int getStaleCount() {
+        return mStaleCount;
+    }
+
+    /**
+     * @param ident parameter ID
+     * @return the type of the stored value or <code>null</code>
+     */
+    public VariableType getType(int ident) {
+        return mTypes.get(ident & 0xFF);
+    }
+
+    /**
+     * @param ident parameter ID
+     * @return the value, floating point values are truncated, 0 if no value has been stored
+     */
+    public long getLong(int ident) {
+        int index = ident & 0xFF;
+        while (true) {
+            int version = mVersions.get(index);
+            VariableType type = mTypes.get(index);
+            long bits = mBits.get(index);
+            if ((version & 1) == 0 && version == mVersions.get(index)) {
+                return type == null ? 0 : type.toLong(bits);
+            }
+        }
+    }
+
+    /**
+     * @param ident parameter ID
+     * @return the value, 0 if no value has been stored
+     */
+    public double getDouble(int ident) {
+        int index = ident & 0xFF;
+        while (true) {
+            int version = mVersions.get(index);
+            VariableType type = mTypes.get(index);
+            long bits = mBits.get(index);
+            if ((version & 1) == 0 && version == mVersions.get(index)) {
+                return type == null ? 0 : type.toDouble(bits);
+            }
+        }
+    }
+
+    /**
+     * @param ident parameter ID
+     * @return the boxed value like {@link VariableType#parse(byte[], int)} returns it or <code>null</code> if no value has been stored
+     */
+    public Number getNumber(int ident) {
+        int index = ident & 0xFF;
+        while (true) {
+            int version = mVersions.get(index);
+            VariableType type = mTypes.get(index);
+            long bits = mBits.get(index);
+            if ((version & 1) == 0 && version == mVersions.get(index)) {
+                return type == null ? null : type.toNumber(bits);
+            }
+        }
+    }
+
+    /**
+     * Remove all values, the versions start again at 0
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            mVersions.set(i, 1);
+            mTypes.set(i, null);
+            mBits.set(i, 0);
+            mStale.set(i, 0);
+            mVersions.set(i, 0);
+        }
+        mCount = 0;
+        mStaleCount = 0;
+    }
+
+}
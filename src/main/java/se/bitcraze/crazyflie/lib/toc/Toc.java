@@ -28,23 +28,34 @@
 package se.bitcraze.crazyflie.lib.toc;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Container for TocElements
+ *
+ * Elements are indexed both by complete name and by ident, so that lookups from the
+ * packet handlers (which only carry the ident) are O(1). The list returned by
+ * {@link #getElements()} is an immutable snapshot that is only rebuilt when the TOC changes.
  */
 public class Toc {
 
     final Logger mLogger = LoggerFactory.getLogger("Toc");
 
+    private static final int INITIAL_CAPACITY = 256;
+
     private int mCrc;
 
-    private Map<String, TocElement> mTocElementMap = new HashMap<String, TocElement>();
+    private final Map<String, TocElement> mTocElementMap = new ConcurrentHashMap<String, TocElement>();
+
+    private volatile TocElement[] mElementsById = new TocElement[INITIAL_CAPACITY];
+
+    private volatile List<TocElement> mElements;
 
     public Toc() {
     }
@@ -60,8 +71,10 @@ public class Toc {
     /**
      * Clear the TOC
      */
-    public void clear() {
+    public synchronized void clear() {
         this.mTocElementMap.clear();
+        this.mElementsById = new TocElement[INITIAL_CAPACITY];
+        this.mElements = null;
     }
 
     /**
@@ -69,14 +82,34 @@ public class Toc {
      *
      * @param tocElement
      */
-    public void addElement(TocElement tocElement) {
+    public synchronized void addElement(TocElement tocElement) {
         if (tocElement.getGroup().isEmpty()) {
             mLogger.warn("TocElement has no group!");
             return;
         }
-        mTocElementMap.put(tocElement.getCompleteName(), tocElement);
+        TocElement previous = mTocElementMap.put(tocElement.getCompleteName(), tocElement);
+        if (previous != null && getElementById(previous.getIdent()) == previous) {
+            mElementsById[previous.getIdent()] = null;
+        }
+        index(tocElement);
+        this.mElements = null;
     }
 
+    private void index(TocElement tocElement) {
+        int ident = tocElement.getIdent();
+        if (ident < 0) {
+            mLogger.warn("TocElement " + tocElement.getCompleteName() + " has invalid ID " + ident);
+            return;
+        }
+        TocElement[] elementsById = mElementsById;
+        if (ident >= elementsById.length) {
+            TocElement[] grown = new TocElement[Math.max(ident + 1, elementsById.length * 2)];
+            System.arraycopy(elementsById, 0, grown, 0, elementsById.length);
+            elementsById = grown;
+        }
+        elementsById[ident] = tocElement;
+        this.mElementsById = elementsById;
+    }
     /**
      * Get a TocElement element identified by complete name from the container.
      *
@@ -117,38 +150,62 @@ public class Toc {
      * Get a TocElement element identified by index number from the container
      *
      * @param ident
-     * @return
+     * @return the TocElement or null if there is no element with this ident
      */
     public TocElement getElementById(int ident) {
-        for(TocElement tocElement : mTocElementMap.values()) {
-            if (tocElement.getIdent() == ident) {
-                return tocElement;
-            }
+        TocElement[] elementsById = mElementsById;
+        if (ident < 0 || ident >= elementsById.length) {
+            return null;
         }
-        mLogger.warn("Unable to find TOC element with ID " + ident);
-        return null;
+        return elementsById[ident];
     }
 
     /**
      * Get TocElements as list sorted by ID
      *
+     * The returned list is an immutable snapshot, it does not reflect later changes to the TOC.
+     *
      * @return list of TocElements sorted by ID
      */
-    //TODO: generate list not every time
     public List<TocElement> getElements() {
-        List<TocElement> tocElementList = new ArrayList<TocElement>();
-        for (int i = 0; i < getTocSize(); i++) {
-            tocElementList.add(getElementById(i));
+        List<TocElement> elements = mElements;
+        if (elements == null) {
+            synchronized (this) {
+                elements = mElements;
+                if (elements == null) {
+                    List<TocElement> tocElementList = new ArrayList<TocElement>(mTocElementMap.size());
+                    for (TocElement tocElement : mElementsById) {
+                        if (tocElement != null) {
+                            tocElementList.add(tocElement);
+                        }
+                    }
+                    elements = Collections.unmodifiableList(tocElementList);
+                    mElements = elements;
+                }
+            }
         }
-        return tocElementList;
+        return elements;
     }
 
+    /**
+     * Get a read-only view of the TocElements keyed by complete name (used by the TocCache)
+     *
+     * @return map of TocElements
+     */
     public Map<String, TocElement> getTocElementMap() {
-        return mTocElementMap;
+        return Collections.unmodifiableMap(mTocElementMap);
     }
 
-    public void setTocElementMap(Map<String, TocElement> map) {
-        this.mTocElementMap = map;
+    /**
+     * Replace the content of the TOC with the given TocElements
+     *
+     * @param map TocElements keyed by complete name
+     */
+    public synchronized void setTocElementMap(Map<String, ? extends TocElement> map) {
+        clear();
+        for (TocElement tocElement : map.values()) {
+            addElement(tocElement);
+        }
     }
 
     public int getTocSize() {
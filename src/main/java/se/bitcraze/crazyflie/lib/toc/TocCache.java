@@ -32,6 +32,7 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -60,9 +61,11 @@ public class TocCache {
 
     final Logger mLogger = LoggerFactory.getLogger("TocCache");
     private List<File> mCacheFiles = new ArrayList<File>();
+    private List<File> mValueCacheFiles = new ArrayList<File>();
     private File mCacheDir = null;
     private static final String PARAM_CACHE_DIR = "paramCache";
     private static final String LOG_CACHE_DIR = "logCache";
+    private static final String PARAM_VALUE_CACHE_DIR = "paramValueCache";
     private ObjectMapper mMapper = new ObjectMapper(); // can reuse, share globally
 
     public TocCache(File cacheDir) {
@@ -70,14 +73,19 @@ public class TocCache {
         //TODO: should it be possible to change the name of the dirs?
         addExistingCacheFiles(LOG_CACHE_DIR);
         addExistingCacheFiles(PARAM_CACHE_DIR);
+        addExistingCacheFiles(PARAM_VALUE_CACHE_DIR, mValueCacheFiles);
     }
 
     private void addExistingCacheFiles(String cachePath) {
+        addExistingCacheFiles(cachePath, mCacheFiles);
+    }
+
+    private void addExistingCacheFiles(String cachePath, List<File> cacheFiles) {
         if (cachePath != null) {
             //use cache dir if it's not null
             File cachePathFile = (mCacheDir != null) ? new File(mCacheDir, cachePath) : new File(cachePath);
             if(cachePathFile.exists()) {
-                this.mCacheFiles.addAll(Arrays.asList(cachePathFile.listFiles(jsonFilter)));
+                cacheFiles.addAll(Arrays.asList(cachePathFile.listFiles(jsonFilter)));
             }
         }
     }
@@ -161,8 +169,62 @@ public class TocCache {
         }
     }
 
+    /**
+     * Try to get the last known parameter values for a parameter TOC, return null otherwise
+     *
+     * @param crc CRC code of the parameter TOC
+     * @return values by complete name (group.name)
+     */
+    public Map<String, Number> fetchValues(int crc) {
+        String pattern = String.format("%08X.json", crc);
+        File hit = null;
+        for (File file : mValueCacheFiles) {
+            if(file.getName().endsWith(pattern)) {
+                hit = file;
+            }
+        }
+        if (hit == null) {
+            return null;
+        }
+        mLogger.debug("Found parameter value cache file: " + pattern);
+        try {
+            return mMapper.readValue(hit, new TypeReference<HashMap<String, Number>>() { });
+        } catch (IOException ioe) {
+            mLogger.error("Error while parsing value cache file " + hit.getName() + ": " + ioe.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Save the last known parameter values for a parameter TOC to file
+     *
+     * @param crc CRC code of the parameter TOC
+     * @param values values by complete name (group.name)
+     */
+    public void insertValues(int crc, Map<String, Number> values) {
+        String fileName = String.format("%08X.json", crc);
+        File cacheDir = (mCacheDir != null) ? new File(mCacheDir, PARAM_VALUE_CACHE_DIR) : new File(PARAM_VALUE_CACHE_DIR);
+        File cacheFile = new File(cacheDir, fileName);
+        try {
+            if (!cacheFile.exists()) {
+                cacheFile.getParentFile().mkdirs();
+                cacheFile.createNewFile();
+            }
+            this.mMapper.enable(SerializationFeature.INDENT_OUTPUT);
+            this.mMapper.writeValue(cacheFile, values);
+            this.mLogger.info("Saved parameter values to " + fileName);
+            if (!this.mValueCacheFiles.contains(cacheFile)) {
+                this.mValueCacheFiles.add(cacheFile);
+            }
+        } catch (IOException ioe) {
+            mLogger.error("Could not save parameter values to file " + fileName + ".\n" + ioe.getMessage());
+        }
+    }
+
     public void clear() {
-        for (File file : mCacheFiles) {
+        List<File> cacheFiles = new ArrayList<File>(mCacheFiles);
+        cacheFiles.addAll(mValueCacheFiles);
+        for (File file : cacheFiles) {
             boolean delete = file.delete();
             if (!delete) {
                 mLogger.error("Deleting cache file " + file.getAbsolutePath() + " failed.");
@@ -47,6 +47,7 @@ public class TocElement {
     private int mIdent = 0;
     private String mGroup = "";
     private String mName = "";
+    private String mCompleteName;
     private VariableType mCtype;
     private int mAccess = RO_ACCESS;
 
@@ -65,7 +66,8 @@ public class TocElement {
         if (data != null) {
             setGroupAndName(data);
 
-            setIdent(data[0]);
+            // IDs are unsigned bytes
+            setIdent(data[0] & 0xFF);
 
             setCtype(mVariableTypeMap.get(data[1] & 0x0F));
 
@@ -98,6 +100,7 @@ public class TocElement {
 
     public void setGroup(String group) {
         this.mGroup = group;
+        this.mCompleteName = null;
     }
 
     public String getName() {
@@ -106,11 +109,22 @@ public class TocElement {
 
     public void setName(String name) {
         this.mName = name;
+        this.mCompleteName = null;
     }
 
+    /**
+     * Returns the interned complete name (group.name) of this element
+     *
+     * @return complete name
+     */
     @JsonIgnore
     public String getCompleteName() {
-        return mGroup + "." + mName;
+        String completeName = mCompleteName;
+        if (completeName == null) {
+            completeName = (mGroup + "." + mName).intern();
+            mCompleteName = completeName;
+        }
+        return completeName;
     }
 
     public VariableType getCtype() {
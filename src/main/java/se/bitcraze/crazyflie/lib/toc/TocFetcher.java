@@ -88,7 +88,7 @@ public class TocFetcher {
     public void start() {
         mLogger.debug("Starting to fetch TOC (Port: " + this.mPort + ")...");
 
-        mDataListener = new DataListener(this.mPort) {
+        mDataListener = new DataListener(this.mPort, TOC_CHANNEL) {
             @Override
             public void dataReceived(CrtpPacket packet) {
                 newPacketReceived(packet);
@@ -162,7 +162,7 @@ public class TocFetcher {
                 // Always add new element, but only request new if it's not the last one.
 
                 // if self.requested_index != ord(payload[0]):
-                if (this.mRequestedIndex != payloadBuffer.get(0)) {
+                if (this.mRequestedIndex != (payloadBuffer.get(0) & 0xFF)) {
                     /*
                         # TODO: There might be a timing issue here with resending old
                         #       packets while loosing new ones. Then if 7 is requested
@@ -29,11 +29,16 @@ package se.bitcraze.crazyflie.lib.toc;
 
 import java.nio.ByteBuffer;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
 
+/**
+ * Variable types and their little endian codec.
+ *
+ * Values are read and written at exactly the width of the type, directly at
+ * absolute positions of the source (heap or direct {@link ByteBuffer} or byte
+ * array), independent of the byte order set on a buffer. None of the primitive
+ * accessors allocate.
+ */
 public enum VariableType {
     UINT8_T (1),
     UINT16_T (2),
@@ -44,123 +49,385 @@ public enum VariableType {
     INT32_T (4),
     INT64_T (8),
     FLOAT (4),
-    DOUBLE (8);
+    DOUBLE (8),
+    FP16 (2);
+
+    private final int mSize;
 
-    int mSize;
-    
     VariableType(int size) {
         this.mSize = size;
     }
-    
-    final Logger mLogger = LoggerFactory.getLogger(this.getClass().getSimpleName());
 
     /**
-     * Parse one variable of the given type.
+     * Parse one variable of the given type at the position of the buffer and
+     * advance the position by the size of the type.
      *
      * @param buffer the buffer to read raw data from
      * @return the parsed variable
      */
     public Number parse(ByteBuffer buffer) {
-        ByteBuffer tempBuffer = ByteBuffer.allocate(8).order(CrtpPacket.BYTE_ORDER);
-        //TODO: simplify
-        tempBuffer.put(buffer.get());
-        tempBuffer.put(buffer.get());
-        tempBuffer.put(buffer.get());
-        tempBuffer.put(buffer.get());
-        if(this == INT64_T || this == DOUBLE) {
-            tempBuffer.put(buffer.get());
-            tempBuffer.put(buffer.get());
-            tempBuffer.put(buffer.get());
-            tempBuffer.put(buffer.get());
-        }
-        tempBuffer.rewind();
+        int index = buffer.position();
+        Number number = parse(buffer, index);
+        buffer.position(index + mSize);
+        return number;
+    }
+
+    /**
+     * Parse one variable of the given type at an absolute index of the buffer.
+     * The position of the buffer is not changed.
+     *
+     * @param buffer the buffer to read raw data from
+     * @param index
+     * @return the parsed variable
+     */
+    public Number parse(ByteBuffer buffer, int index) {
+        return toNumber(getBits(buffer, index));
+    }
+
+    /**
+     * Parse one variable of the given type at an index of the array.
+     *
+     * @param data
+     * @param index
+     * @return the parsed variable
+     */
+    public Number parse(byte[] data, int index) {
+        return toNumber(getBits(data, index));
+    }
+
+    /**
+     * Parse one variable of the given type.
+     *
+     * For backwards compatibility the returned array is at least 4 bytes long,
+     * use {@link #put(byte[], int, Number)} to write the exact width.
+     *
+     * @param value
+     * @return the raw data
+     */
+    public byte[] parse(Number value) {
+        byte[] data = new byte[Math.max(4, mSize)];
+        put(data, 0, value);
+        return data;
+    }
+
+    /**
+     * Read one variable as long. Floating point values are truncated, UINT64_T
+     * values are returned as their two's complement bit pattern.
+     *
+     * @param buffer
+     * @param index absolute index in the buffer
+     * @return the value
+     */
+    public long getLong(ByteBuffer buffer, int index) {
+        return toLong(getBits(buffer, index));
+    }
+
+    public long getLong(byte[] data, int index) {
+        return toLong(getBits(data, index));
+    }
+
+    /**
+     * Read one variable as double. UINT64_T values are converted as unsigned.
+     *
+     * @param buffer
+     * @param index absolute index in the buffer
+     * @return the value
+     */
+    public double getDouble(ByteBuffer buffer, int index) {
+        return toDouble(getBits(buffer, index));
+    }
+
+    public double getDouble(byte[] data, int index) {
+        return toDouble(getBits(data, index));
+    }
+
+    /**
+     * Write one variable at an absolute index of the buffer. Integer values are
+     * truncated to the width of the type.
+     *
+     * @param buffer
+     * @param index
+     * @param value
+     */
+    public void put(ByteBuffer buffer, int index, Number value) {
+        putBits(buffer, index, toBits(value));
+    }
+
+    public void put(byte[] data, int index, Number value) {
+        putBits(data, index, toBits(value));
+    }
+
+    /**
+     * Decode consecutive variables of the given types into a caller provided array.
+     *
+     * @param buffer source buffer, its position is not changed
+     * @param index absolute index of the first variable
+     * @param types types of the packed variables
+     * @param values target array with at least <code>types.length</code> elements
+     * @return index after the last decoded variable
+     */
+    public static int decode(ByteBuffer buffer, int index, VariableType[] types, double[] values) {
+        for (int i = 0; i < types.length; i++) {
+            values[i] = types[i].getDouble(buffer, index);
+            index += types[i].mSize;
+        }
+        return index;
+    }
+
+    /**
+     * @see #decode(ByteBuffer, int, VariableType[], double[])
+     */
+    public static int decode(ByteBuffer buffer, int index, VariableType[] types, long[] values) {
+        for (int i = 0; i < types.length; i++) {
+            values[i] = types[i].getLong(buffer, index);
+            index += types[i].mSize;
+        }
+        return index;
+    }
+
+    /**
+     * @see #decode(ByteBuffer, int, VariableType[], double[])
+     */
+    public static int decode(byte[] data, int index, VariableType[] types, double[] values) {
+        for (int i = 0; i < types.length; i++) {
+            values[i] = types[i].getDouble(data, index);
+            index += types[i].mSize;
+        }
+        return index;
+    }
+
+    /**
+     * @see #decode(ByteBuffer, int, VariableType[], double[])
+     */
+    public static int decode(byte[] data, int index, VariableType[] types, long[] values) {
+        for (int i = 0; i < types.length; i++) {
+            values[i] = types[i].getLong(data, index);
+            index += types[i].mSize;
+        }
+        return index;
+    }
+
+    public int getSize() {
+        return this.mSize;
+    }
+
+    /**
+     * Read the raw, zero extended bits of one variable
+     */
+    private long getBits(ByteBuffer buffer, int index) {
+        boolean swap = buffer.order() != CrtpPacket.BYTE_ORDER;
+        switch (mSize) {
+            case 1:
+                return buffer.get(index) & 0xFFL;
+            case 2:
+                short s = buffer.getShort(index);
+                return (swap ? Short.reverseBytes(s) : s) & 0xFFFFL;
+            case 4:
+                int i = buffer.getInt(index);
+                return (swap ? Integer.reverseBytes(i) : i) & 0xFFFFFFFFL;
+            default:
+                long l = buffer.getLong(index);
+                return swap ? Long.reverseBytes(l) : l;
+        }
+    }
+
+    /**
+     * Read the raw, zero extended bits of one variable, e.g. to store a value without boxing it.
+     * Use {@link #toLong(long)}, {@link #toDouble(long)} or {@link #toNumber(long)} to convert them.
+     *
+     * @param data
+     * @param index
+     * @return the raw bits
+     */
+    public long getBits(byte[] data, int index) {
+        switch (mSize) {
+            case 1:
+                return data[index] & 0xFFL;
+            case 2:
+                return getInt16(data, index) & 0xFFFFL;
+            case 4:
+                return getInt32(data, index) & 0xFFFFFFFFL;
+            default:
+                return (getInt32(data, index) & 0xFFFFFFFFL) | ((long) getInt32(data, index + 4)) << 32;
+        }
+    }
+
+    private void putBits(ByteBuffer buffer, int index, long bits) {
+        boolean swap = buffer.order() != CrtpPacket.BYTE_ORDER;
+        switch (mSize) {
+            case 1:
+                buffer.put(index, (byte) bits);
+                break;
+            case 2:
+                buffer.putShort(index, swap ? Short.reverseBytes((short) bits) : (short) bits);
+                break;
+            case 4:
+                buffer.putInt(index, swap ? Integer.reverseBytes((int) bits) : (int) bits);
+                break;
+            default:
+                buffer.putLong(index, swap ? Long.reverseBytes(bits) : bits);
+                break;
+        }
+    }
+
+    private void putBits(byte[] data, int index, long bits) {
+        for (int i = 0; i < mSize; i++) {
+            data[index + i] = (byte) (bits >>> (8 * i));
+        }
+    }
+
+    private static int getInt16(byte[] data, int index) {
+        return (data[index] & 0xFF) | (data[index + 1] & 0xFF) << 8;
+    }
+
+    private static int getInt32(byte[] data, int index) {
+        return (data[index] & 0xFF) | (data[index + 1] & 0xFF) << 8 | (data[index + 2] & 0xFF) << 16 | (data[index + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * @param bits raw bits of a variable of this type
+     * @return the value as long, see {@link #getLong(byte[], int)}
+     */
+    public long toLong(long bits) {
         switch (this) {
-            case UINT8_T:
-                return ((short) tempBuffer.get()) & 0xff;
-            case UINT16_T:
-                return ((int) tempBuffer.getShort()) & 0xffff;
-            case UINT32_T:
-                return ((long) tempBuffer.getInt()) & 0xffffffffL;
-            case UINT64_T:
-                mLogger.warn("UINT64_T not yet implemented");
-                return -1;
             case INT8_T:
-                return tempBuffer.get();
+                return (byte) bits;
             case INT16_T:
-                return tempBuffer.getShort();
+                return (short) bits;
             case INT32_T:
-                return tempBuffer.getInt();
-            case INT64_T:
-                return tempBuffer.getLong();
+                return (int) bits;
             case FLOAT:
-                return tempBuffer.getFloat();
+                return (long) Float.intBitsToFloat((int) bits);
             case DOUBLE:
-                return tempBuffer.getDouble();
+                return (long) Double.longBitsToDouble(bits);
+            case FP16:
+                return (long) toFloat((short) bits);
             default:
-                mLogger.warn("Parsing " + this.name() + " is not yet implemented");
-                break;
+                return bits;
         }
-        return -1;
     }
 
     /**
-     * Parse one variable of the given type.
-     *
-     * @param value
-     * @return
+     * @param bits raw bits of a variable of this type
+     * @return the value as double, see {@link #getDouble(byte[], int)}
      */
-    public byte[] parse(Number value) {
-        ByteBuffer tempBuffer4 = ByteBuffer.allocate(4).order(CrtpPacket.BYTE_ORDER);
-
-        //Use ByteBuffer with 8 bytes for INT64_T and DOUBLE
-        ByteBuffer tempBuffer8 = ByteBuffer.allocate(8).order(CrtpPacket.BYTE_ORDER);
+    public double toDouble(long bits) {
+        switch (this) {
+            case UINT64_T:
+                // unsigned conversion
+                return (double) (bits >>> 1) * 2.0 + (bits & 1);
+            case FLOAT:
+                return Float.intBitsToFloat((int) bits);
+            case DOUBLE:
+                return Double.longBitsToDouble(bits);
+            case FP16:
+                return toFloat((short) bits);
+            default:
+                return toLong(bits);
+        }
+    }
 
+    /**
+     * @param bits raw bits of a variable of this type
+     * @return the boxed value, see {@link #parse(byte[], int)}
+     */
+    public Number toNumber(long bits) {
         switch (this) {
             case UINT8_T:
-                tempBuffer4.putShort((short) (value.byteValue() & 0xff));
-                break;
             case UINT16_T:
-                tempBuffer4.putInt((int) (value.shortValue() & 0xffff));
-                break;
-            case UINT32_T:
-                tempBuffer4.putInt((int) (((long) value.intValue()) & 0xffffffffL));
-                //tempBuffer.putLong((long) (value.intValue() & 0xffffffffL)); //only works if ByteBuffer is 8 bytes long
-                break;
-            case UINT64_T:
-                mLogger.warn("UINT64_T not yet implemented");
-                break;
+            case INT32_T:
+                return (int) toLong(bits);
             case INT8_T:
-                tempBuffer4.put(value.byteValue());
-                break;
+                return (byte) bits;
             case INT16_T:
-                tempBuffer4.putShort(value.shortValue());
-                break;
-            case INT32_T:
-                tempBuffer4.putInt(value.intValue());
-                break;
-            case INT64_T:
-                tempBuffer8.putLong(value.longValue());
-                tempBuffer8.rewind();
-                return tempBuffer8.array();
+                return (short) bits;
             case FLOAT:
-                tempBuffer4.putFloat(value.floatValue());
-                break;
+                return Float.intBitsToFloat((int) bits);
             case DOUBLE:
-                tempBuffer8.putDouble(value.doubleValue());
-                tempBuffer8.rewind();
-                return tempBuffer8.array();
+                return Double.longBitsToDouble(bits);
+            case FP16:
+                return toFloat((short) bits);
             default:
-                mLogger.warn("Parsing " + this.name() + " is not yet implemented");
-                break;
+                return toLong(bits);
         }
-        tempBuffer4.rewind();
-        return tempBuffer4.array();
     }
 
-    public int getSize() {
-        if (this == UINT64_T) {
-            mLogger.warn("UINT64_T not yet implemented");
+    /**
+     * @param value
+     * @return the raw bits of the value converted to this type, integer values are not truncated
+     */
+    public long toBits(Number value) {
+        switch (this) {
+            case FLOAT:
+                return Float.floatToIntBits(value.floatValue());
+            case DOUBLE:
+                return Double.doubleToLongBits(value.doubleValue());
+            case FP16:
+                return toHalf(value.floatValue());
+            default:
+                return value.longValue();
         }
-        return this.mSize;
     }
-}
\ No newline at end of file
+
+    /**
+     * Convert IEEE 754 half precision bits to a float
+     *
+     * @param half
+     * @return the float value
+     */
+    public static float toFloat(short half) {
+        int bits = half & 0xFFFF;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1F;
+        int mantissa = bits & 0x03FF;
+        if (exponent == 0x1F) {
+            // infinity or NaN
+            return Float.intBitsToFloat(sign | 0x7F800000 | mantissa << 13);
+        }
+        if (exponent == 0) {
+            // zero or subnormal (mantissa * 2^-24)
+            float value = mantissa / 16777216f;
+            return sign == 0 ? value : -value;
+        }
+        return Float.intBitsToFloat(sign | (exponent + 112) << 23 | mantissa << 13);
+    }
+
+    /**
+     * Convert a float to IEEE 754 half precision bits, rounding to nearest even
+     *
+     * @param value
+     * @return the half precision bits
+     */
+    public static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 112;
+        int mantissa = bits & 0x007FFFFF;
+        if (exponent == 0xFF - 112) {
+            // infinity or NaN
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x0200 | mantissa >>> 13 : 0));
+        }
+        if (exponent >= 0x1F) {
+            // overflow
+            return (short) (sign | 0x7C00);
+        }
+        int shift = 13;
+        if (exponent <= 0) {
+            // subnormal or zero
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x00800000;
+            shift = 14 - exponent;
+            exponent = 0;
+        }
+        int half = exponent << 10 | mantissa >>> shift;
+        int remainder = mantissa & ((1 << shift) - 1);
+        int halfway = 1 << (shift - 1);
+        if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+            // may carry into the exponent, which is still correct
+            half++;
+        }
+        return (short) (sign | half);
+    }
+}
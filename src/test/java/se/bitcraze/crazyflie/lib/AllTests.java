@@ -9,14 +9,37 @@ import se.bitcraze.crazyflie.lib.bootloader.CloaderTest;
 import se.bitcraze.crazyflie.lib.bootloader.TargetTest;
 import se.bitcraze.crazyflie.lib.bootloader.UtilitiesTest;
 import se.bitcraze.crazyflie.lib.crazyflie.CrazyflieTest;
+import se.bitcraze.crazyflie.lib.crazyflie.DataListenerDispatchTest;
+import se.bitcraze.crazyflie.lib.crazyflie.DeliveryQueueTest;
+import se.bitcraze.crazyflie.lib.crazyflie.PacketResenderTest;
 import se.bitcraze.crazyflie.lib.crazyradio.CrazyradioTest;
+import se.bitcraze.crazyflie.lib.crazyradio.PollStrategyTest;
+import se.bitcraze.crazyflie.lib.crazyradio.RadioDriverOfflineTest;
 import se.bitcraze.crazyflie.lib.crazyradio.RadioDriverTest;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketPoolTest;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketRingBufferTest;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketSchedulerTest;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketTest;
+import se.bitcraze.crazyflie.lib.crtp.LinkQualityEstimatorTest;
+import se.bitcraze.crazyflie.lib.crtp.LinkStatisticsRecorderTest;
+import se.bitcraze.crazyflie.lib.log.AsyncLogListenerTest;
+import se.bitcraze.crazyflie.lib.log.FlightRecorderTest;
 import se.bitcraze.crazyflie.lib.log.LogDataLiveTest;
 import se.bitcraze.crazyflie.lib.log.LogDataStaticTest;
+import se.bitcraze.crazyflie.lib.log.LogDecoderTest;
+import se.bitcraze.crazyflie.lib.log.LogFrameMergerTest;
+import se.bitcraze.crazyflie.lib.log.LogPeriodControllerTest;
+import se.bitcraze.crazyflie.lib.log.LogSubscriptionTest;
 import se.bitcraze.crazyflie.lib.log.LogTocElementTest;
+import se.bitcraze.crazyflie.lib.log.LoggRegistryTest;
 import se.bitcraze.crazyflie.lib.log.LoggTest;
+import se.bitcraze.crazyflie.lib.log.TelemetryStoreTest;
+import se.bitcraze.crazyflie.lib.param.ParamFutureTest;
+import se.bitcraze.crazyflie.lib.param.ParamReaderTest;
 import se.bitcraze.crazyflie.lib.param.ParamTest;
 import se.bitcraze.crazyflie.lib.param.ParamTocElementTest;
+import se.bitcraze.crazyflie.lib.param.ParamValueCacheTest;
+import se.bitcraze.crazyflie.lib.param.ParamValueStoreTest;
 import se.bitcraze.crazyflie.lib.toc.TocCacheTest;
 import se.bitcraze.crazyflie.lib.toc.TocFetcherTest;
 import se.bitcraze.crazyflie.lib.toc.TocTest;
@@ -28,16 +51,39 @@ import se.bitcraze.crazyflie.lib.usb.UsbLinkJavaTest;
     UsbLinkJavaTest.class,
     RadioDriverTest.class,
     CrazyradioTest.class,
+    PollStrategyTest.class,
+    RadioDriverOfflineTest.class,
     CrazyflieTest.class,
+    DataListenerDispatchTest.class,
+    PacketResenderTest.class,
+    DeliveryQueueTest.class,
+    CrtpPacketPoolTest.class,
+    CrtpPacketTest.class,
+    CrtpPacketRingBufferTest.class,
+    CrtpPacketSchedulerTest.class,
+    LinkQualityEstimatorTest.class,
+    LinkStatisticsRecorderTest.class,
     TocCacheTest.class,
     TocFetcherTest.class,
     TocTest.class,
     VariableTypeTest.class,
+    AsyncLogListenerTest.class,
     LogTocElementTest.class,
     LoggTest.class,
     LogDataStaticTest.class,
+    LogDecoderTest.class,
+    LoggRegistryTest.class,
+    LogSubscriptionTest.class,
+    LogFrameMergerTest.class,
+    LogPeriodControllerTest.class,
+    TelemetryStoreTest.class,
+    FlightRecorderTest.class,
     LogDataLiveTest.class,
+    ParamFutureTest.class,
+    ParamReaderTest.class,
     ParamTocElementTest.class,
+    ParamValueStoreTest.class,
+    ParamValueCacheTest.class,
     ParamTest.class,
     TargetTest.class,
     UtilitiesTest.class,
@@ -6,20 +6,66 @@ import org.junit.runners.Suite;
 
 import se.bitcraze.crazyflie.lib.bootloader.TargetTest;
 import se.bitcraze.crazyflie.lib.bootloader.UtilitiesTest;
+import se.bitcraze.crazyflie.lib.crazyflie.DataListenerDispatchTest;
+import se.bitcraze.crazyflie.lib.crazyflie.DeliveryQueueTest;
+import se.bitcraze.crazyflie.lib.crazyflie.PacketResenderTest;
+import se.bitcraze.crazyflie.lib.crazyradio.PollStrategyTest;
+import se.bitcraze.crazyflie.lib.crazyradio.RadioDriverOfflineTest;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketPoolTest;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketRingBufferTest;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketSchedulerTest;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketTest;
+import se.bitcraze.crazyflie.lib.crtp.LinkQualityEstimatorTest;
+import se.bitcraze.crazyflie.lib.crtp.LinkStatisticsRecorderTest;
+import se.bitcraze.crazyflie.lib.log.AsyncLogListenerTest;
+import se.bitcraze.crazyflie.lib.log.FlightRecorderTest;
 import se.bitcraze.crazyflie.lib.log.LogDataStaticTest;
+import se.bitcraze.crazyflie.lib.log.LogDecoderTest;
+import se.bitcraze.crazyflie.lib.log.LogFrameMergerTest;
+import se.bitcraze.crazyflie.lib.log.LogPeriodControllerTest;
+import se.bitcraze.crazyflie.lib.log.LogSubscriptionTest;
 import se.bitcraze.crazyflie.lib.log.LogTocElementTest;
+import se.bitcraze.crazyflie.lib.log.LoggRegistryTest;
+import se.bitcraze.crazyflie.lib.log.TelemetryStoreTest;
+import se.bitcraze.crazyflie.lib.param.ParamFutureTest;
+import se.bitcraze.crazyflie.lib.param.ParamReaderTest;
 import se.bitcraze.crazyflie.lib.param.ParamTocElementTest;
+import se.bitcraze.crazyflie.lib.param.ParamValueCacheTest;
+import se.bitcraze.crazyflie.lib.param.ParamValueStoreTest;
 import se.bitcraze.crazyflie.lib.toc.TocTest;
 import se.bitcraze.crazyflie.lib.toc.VariableTypeTest;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
     /*TocFetcherTest.class,*/ // only partially offline
+    PollStrategyTest.class,
+    RadioDriverOfflineTest.class,
+    DataListenerDispatchTest.class,
+    PacketResenderTest.class,
+    DeliveryQueueTest.class,
+    CrtpPacketPoolTest.class,
+    CrtpPacketTest.class,
+    CrtpPacketRingBufferTest.class,
+    CrtpPacketSchedulerTest.class,
+    LinkQualityEstimatorTest.class,
+    LinkStatisticsRecorderTest.class,
     TocTest.class,
     VariableTypeTest.class,
+    AsyncLogListenerTest.class,
     LogTocElementTest.class,
     LogDataStaticTest.class,
+    LogDecoderTest.class,
+    LoggRegistryTest.class,
+    LogSubscriptionTest.class,
+    LogFrameMergerTest.class,
+    LogPeriodControllerTest.class,
+    TelemetryStoreTest.class,
+    FlightRecorderTest.class,
+    ParamFutureTest.class,
+    ParamReaderTest.class,
     ParamTocElementTest.class,
+    ParamValueStoreTest.class,
+    ParamValueCacheTest.class,
     TargetTest.class,
     UtilitiesTest.class,
     /*BootloaderTest.class*/}) // mock test not complete yet
@@ -0,0 +1,109 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import se.bitcraze.crazyflie.lib.crazyradio.ConnectionData;
+import se.bitcraze.crazyflie.lib.crtp.CrtpDriver;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+
+/**
+ * Driver that keeps all packets in memory. Sent packets can be inspected and
+ * incoming packets can be injected by the test.
+ */
+public class InMemoryDriver extends CrtpDriver {
+
+    private final BlockingQueue<CrtpPacket> mInQueue = new LinkedBlockingQueue<CrtpPacket>();
+    private final BlockingQueue<CrtpPacket> mSentPackets = new LinkedBlockingQueue<CrtpPacket>();
+    private volatile boolean mConnected = false;
+
+    @Override
+    public void connect(ConnectionData connectionData) {
+        this.mConnectionData = connectionData;
+        this.mConnected = true;
+    }
+
+    @Override
+    public void disconnect() {
+        this.mConnected = false;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    @Override
+    public void sendPacket(CrtpPacket packet) {
+        mSentPackets.add(packet);
+    }
+
+    @Override
+    public CrtpPacket receivePacket(int wait) {
+        try {
+            return mInQueue.poll((long) wait, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Add a packet that will be returned by {@link #receivePacket(int)}
+     *
+     * @param packet
+     */
+    public void injectPacket(CrtpPacket packet) {
+        mInQueue.add(packet);
+    }
+
+    /**
+     * Get the next packet that has been sent through this driver
+     *
+     * @param wait time to wait in milliseconds
+     * @return the sent packet or <code>null</code> if no packet was sent within the wait time
+     */
+    public CrtpPacket pollSentPacket(int wait) throws InterruptedException {
+        return mSentPackets.poll((long) wait, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean scanSelected(int channel, int datarate, byte[] packet) {
+        return false;
+    }
+
+    @Override
+    public void startSendReceiveThread() {
+    }
+
+    @Override
+    public void stopSendReceiveThread() {
+    }
+
+}
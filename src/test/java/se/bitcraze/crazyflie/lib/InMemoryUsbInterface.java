@@ -0,0 +1,130 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.usb.UsbDevice;
+
+import se.bitcraze.crazyflie.lib.usb.CrazyUsbInterface;
+
+/**
+ * USB interface of a Crazyradio that answers every bulk transfer from memory.
+ * Acks injected by the test are returned first, otherwise the transfer is an empty ack.
+ */
+public class InMemoryUsbInterface implements CrazyUsbInterface {
+
+    // status byte with the ack bit set and no payload
+    public final static byte[] EMPTY_ACK = new byte[] {0x01};
+
+    private final BlockingQueue<byte[]> mAcks = new LinkedBlockingQueue<byte[]>();
+    private final AtomicLong mBulkTransferCount = new AtomicLong();
+    private volatile boolean mConnected = false;
+
+    public void initDevice(int usbVid, int usbPid) {
+        this.mConnected = true;
+    }
+
+    public void releaseInterface() {
+        this.mConnected = false;
+    }
+
+    public boolean isUsbConnected() {
+        return mConnected;
+    }
+
+    public int sendControlTransfer(int requestType, int request, int value, int index, byte[] data) {
+        return 0;
+    }
+
+    public int sendBulkTransfer(byte[] data, byte[] receiveData) {
+        byte[] ack = mAcks.poll();
+        if (ack == null) {
+            ack = EMPTY_ACK;
+        }
+        System.arraycopy(ack, 0, receiveData, 0, ack.length);
+        mBulkTransferCount.incrementAndGet();
+        return ack.length;
+    }
+
+    public List<UsbDevice> findDevices(int usbVid, int usbPid) {
+        return new ArrayList<UsbDevice>();
+    }
+
+    public float getFirmwareVersion() {
+        return 0.4f;
+    }
+
+    public String getSerialNumber() {
+        return "InMemory";
+    }
+
+    public void bulkWrite(byte[] data) {
+    }
+
+    public byte[] bulkRead() {
+        return new byte[0];
+    }
+
+    /**
+     * Add a raw ack (status byte followed by the payload) that answers one of the next bulk transfers
+     *
+     * @param ack
+     */
+    public void injectAck(byte[] ack) {
+        mAcks.add(ack);
+    }
+
+    /**
+     * @return the number of bulk transfers, which is the number of radio round trips
+     */
+    public long getBulkTransferCount() {
+        return mBulkTransferCount.get();
+    }
+
+    /**
+     * Wait until the given number of bulk transfers has been made
+     *
+     * @param count
+     * @param timeoutMs
+     * @return <code>true</code> if the transfers have been made in time
+     */
+    public boolean awaitBulkTransfers(long count, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (mBulkTransferCount.get() < count) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+}
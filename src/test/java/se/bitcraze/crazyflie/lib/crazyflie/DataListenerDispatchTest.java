@@ -0,0 +1,151 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crazyflie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.InMemoryDriver;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket.Header;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPort;
+
+public class DataListenerDispatchTest {
+
+    private InMemoryDriver mDriver;
+    private Crazyflie mCrazyflie;
+
+    @Before
+    public void setUp() {
+        mDriver = new InMemoryDriver();
+        mCrazyflie = new Crazyflie(mDriver);
+        mCrazyflie.connect(10, 0);
+    }
+
+    @After
+    public void tearDown() {
+        mCrazyflie.disconnect();
+    }
+
+    private static CrtpPacket createPacket(int channel, CrtpPort port) {
+        return new CrtpPacket(new Header(channel, port).getByte(), new byte[] {1, 2, 3});
+    }
+
+    private static class CountingDataListener extends DataListener {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        public CountingDataListener(CrtpPort port, int channel) {
+            super(port, channel);
+        }
+
+        @Override
+        public void dataReceived(CrtpPacket packet) {
+            assertEquals(getPort(), packet.getHeader().getPort());
+            if (getChannel() != ANY_CHANNEL) {
+                assertEquals(getChannel(), packet.getHeader().getChannel());
+            }
+            mCount.incrementAndGet();
+        }
+
+        public int getCount() {
+            return mCount.get();
+        }
+    }
+
+    /**
+     * Inject a packet on the memory port and wait until it has been dispatched, which means that all
+     * packets injected before have been dispatched too.
+     */
+    private void awaitDispatch() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        DataListener marker = new DataListener(CrtpPort.MEMORY) {
+            @Override
+            public void dataReceived(CrtpPacket packet) {
+                latch.countDown();
+            }
+        };
+        mCrazyflie.addDataListener(marker);
+        mDriver.injectPacket(createPacket(0, CrtpPort.MEMORY));
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        mCrazyflie.removeDataListener(marker);
+    }
+
+    @Test
+    public void testDispatchByPortAndChannel() throws InterruptedException {
+        CountingDataListener loggingAll = new CountingDataListener(CrtpPort.LOGGING, DataListener.ANY_CHANNEL);
+        CountingDataListener loggingChannel2 = new CountingDataListener(CrtpPort.LOGGING, 2);
+        CountingDataListener paramAll = new CountingDataListener(CrtpPort.PARAMETERS, DataListener.ANY_CHANNEL);
+        mCrazyflie.addDataListener(loggingAll);
+        mCrazyflie.addDataListener(loggingChannel2);
+        mCrazyflie.addDataListener(paramAll);
+        // adding a listener twice must not deliver packets twice
+        mCrazyflie.addDataListener(loggingAll);
+
+        mDriver.injectPacket(createPacket(0, CrtpPort.LOGGING));
+        mDriver.injectPacket(createPacket(1, CrtpPort.LOGGING));
+        mDriver.injectPacket(createPacket(2, CrtpPort.LOGGING));
+        mDriver.injectPacket(createPacket(2, CrtpPort.PARAMETERS));
+        mDriver.injectPacket(createPacket(0, CrtpPort.CONSOLE));
+        awaitDispatch();
+
+        assertEquals(3, loggingAll.getCount());
+        assertEquals(1, loggingChannel2.getCount());
+        assertEquals(1, paramAll.getCount());
+    }
+
+    @Test
+    public void testRemoveDataListener() throws InterruptedException {
+        CountingDataListener loggingAll = new CountingDataListener(CrtpPort.LOGGING, DataListener.ANY_CHANNEL);
+        CountingDataListener loggingChannel1 = new CountingDataListener(CrtpPort.LOGGING, 1);
+        mCrazyflie.addDataListener(loggingAll);
+        mCrazyflie.addDataListener(loggingChannel1);
+
+        mDriver.injectPacket(createPacket(1, CrtpPort.LOGGING));
+        awaitDispatch();
+        mCrazyflie.removeDataListener(loggingAll);
+        mDriver.injectPacket(createPacket(1, CrtpPort.LOGGING));
+        awaitDispatch();
+
+        assertEquals(1, loggingAll.getCount());
+        assertEquals(2, loggingChannel1.getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidChannel() {
+        new CountingDataListener(CrtpPort.LOGGING, 4);
+    }
+
+}
@@ -0,0 +1,182 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crazyflie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class DeliveryQueueTest {
+
+    /**
+     * Executor that only runs tasks when asked to
+     */
+    private static class ManualExecutor implements Executor {
+        private final LinkedList<Runnable> mTasks = new LinkedList<Runnable>();
+
+        public synchronized void execute(Runnable command) {
+            mTasks.add(command);
+        }
+
+        void runAll() {
+            while (true) {
+                Runnable task;
+                synchronized (this) {
+                    task = mTasks.poll();
+                }
+                if (task == null) {
+                    return;
+                }
+                task.run();
+            }
+        }
+    }
+
+    private static class RecordingQueue extends DeliveryQueue<Integer> {
+        private final List<Integer> mDelivered = new ArrayList<Integer>();
+
+        RecordingQueue(Executor executor, int capacity, DeliveryPolicy policy) {
+            super(executor, capacity, policy);
+        }
+
+        @Override
+        protected void deliver(Integer event) {
+            mDelivered.add(event);
+        }
+    }
+
+    @Test
+    public void testDeliversInOrder() {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingQueue queue = new RecordingQueue(executor, 10, DeliveryPolicy.DROP_OLDEST);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        assertTrue(queue.mDelivered.isEmpty());
+        executor.runAll();
+        assertEquals(5, queue.mDelivered.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Integer.valueOf(i), queue.mDelivered.get(i));
+        }
+        assertEquals(5, queue.getDeliveredCount());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testDropOldest() {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingQueue queue = new RecordingQueue(executor, 3, DeliveryPolicy.DROP_OLDEST);
+        queue.offer(0, false);
+        for (int i = 1; i <= 6; i++) {
+            queue.offer(i);
+        }
+        assertEquals(3, queue.getDroppedCount());
+        executor.runAll();
+        // events that are not droppable survive
+        assertEquals("[0, 4, 5, 6]", queue.mDelivered.toString());
+    }
+
+    @Test
+    public void testLatestOnly() {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingQueue queue = new RecordingQueue(executor, 10, DeliveryPolicy.LATEST_ONLY);
+        queue.offer(1);
+        queue.offer(2);
+        queue.offer(-1, false);
+        queue.offer(3);
+        assertEquals(2, queue.getDroppedCount());
+        executor.runAll();
+        assertEquals("[-1, 3]", queue.mDelivered.toString());
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException {
+        final ManualExecutor executor = new ManualExecutor();
+        final RecordingQueue queue = new RecordingQueue(executor, 1, DeliveryPolicy.BLOCK);
+        queue.offer(1);
+        final CountDownLatch offered = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                queue.offer(2);
+                offered.countDown();
+            }
+        });
+        producer.start();
+        assertFalse(offered.await(100, TimeUnit.MILLISECONDS));
+        executor.runAll();
+        assertTrue(offered.await(1, TimeUnit.SECONDS));
+        producer.join();
+        executor.runAll();
+        assertEquals("[1, 2]", queue.mDelivered.toString());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testListenerExceptionIsIsolated() {
+        ManualExecutor executor = new ManualExecutor();
+        final List<Integer> delivered = new ArrayList<Integer>();
+        DeliveryQueue<Integer> queue = new DeliveryQueue<Integer>(executor, 10, DeliveryPolicy.DROP_OLDEST) {
+            @Override
+            protected void deliver(Integer event) {
+                if (event == 1) {
+                    throw new IllegalStateException("listener failure");
+                }
+                delivered.add(event);
+            }
+        };
+        queue.offer(1);
+        queue.offer(2);
+        executor.runAll();
+        assertEquals("[2]", delivered.toString());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testDefaultExecutor() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(100);
+        DeliveryQueue<Integer> queue = new DeliveryQueue<Integer>(DeliveryQueue.getDefaultExecutor(), 1000, DeliveryPolicy.DROP_OLDEST) {
+            @Override
+            protected void deliver(Integer event) {
+                latch.countDown();
+            }
+        };
+        for (int i = 0; i < 100; i++) {
+            queue.offer(i);
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+}
@@ -0,0 +1,171 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crazyflie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.InMemoryDriver;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket.Header;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPort;
+
+public class PacketResenderTest {
+
+    private InMemoryDriver mDriver;
+    private Crazyflie mCrazyflie;
+
+    @Before
+    public void setUp() {
+        mDriver = new InMemoryDriver();
+        mCrazyflie = new Crazyflie(mDriver);
+        mCrazyflie.connect(10, 0);
+    }
+
+    @After
+    public void tearDown() {
+        mCrazyflie.disconnect();
+    }
+
+    private static CrtpPacket createRequest(int channel, byte... expectedReply) {
+        CrtpPacket packet = new CrtpPacket(new Header(channel, CrtpPort.PARAMETERS).getByte(), expectedReply.clone());
+        packet.setExpectedReply(expectedReply);
+        return packet;
+    }
+
+    private static CrtpPacket createReply(int channel, byte... payload) {
+        return new CrtpPacket(new Header(channel, CrtpPort.PARAMETERS).getByte(), payload);
+    }
+
+    private static class TestReplyListener implements ReplyListener {
+        final CountDownLatch mLatch = new CountDownLatch(1);
+        final AtomicReference<CrtpPacket> mReply = new AtomicReference<CrtpPacket>();
+        volatile boolean mFailed = false;
+
+        public void replyReceived(CrtpPacket request, CrtpPacket reply) {
+            mReply.set(reply);
+            mLatch.countDown();
+        }
+
+        public void noReplyReceived(CrtpPacket request) {
+            mFailed = true;
+            mLatch.countDown();
+        }
+    }
+
+    @Test
+    public void testResendUntilReply() throws InterruptedException {
+        TestReplyListener listener = new TestReplyListener();
+        CrtpPacket request = createRequest(1, (byte) 7);
+        mCrazyflie.sendPacket(request, 20, -1, listener);
+
+        // first transmission and at least two resends
+        assertSame(request, mDriver.pollSentPacket(100));
+        assertSame(request, mDriver.pollSentPacket(100));
+        assertSame(request, mDriver.pollSentPacket(100));
+        assertEquals(1, mCrazyflie.getPendingReplyCount());
+
+        CrtpPacket reply = createReply(1, new byte[] {7, 42, 0, 0, 0});
+        mDriver.injectPacket(reply);
+        assertTrue(listener.mLatch.await(1, TimeUnit.SECONDS));
+        assertSame(reply, listener.mReply.get());
+        assertEquals(0, mCrazyflie.getPendingReplyCount());
+
+        // no more resends after the reply
+        Thread.sleep(50);
+        while (mDriver.pollSentPacket(0) != null) {
+            // drain resends that were already queued
+        }
+        assertNull(mDriver.pollSentPacket(60));
+    }
+
+    @Test
+    public void testResendBudget() throws InterruptedException {
+        TestReplyListener listener = new TestReplyListener();
+        CrtpPacket request = createRequest(1, (byte) 3);
+        mCrazyflie.sendPacket(request, 10, 2, listener);
+
+        assertTrue(listener.mLatch.await(1, TimeUnit.SECONDS));
+        assertTrue(listener.mFailed);
+        // first transmission and two resends
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(mDriver.pollSentPacket(0));
+        }
+        assertNull(mDriver.pollSentPacket(0));
+        assertEquals(0, mCrazyflie.getPendingReplyCount());
+    }
+
+    @Test
+    public void testReplyMustMatchChannelAndPrefix() throws InterruptedException {
+        TestReplyListener listener = new TestReplyListener();
+        mCrazyflie.sendPacket(createRequest(1, (byte) 5, (byte) 1), 1000, -1, listener);
+
+        // wrong channel, wrong prefix
+        mDriver.injectPacket(createReply(2, (byte) 5, (byte) 1));
+        mDriver.injectPacket(createReply(1, (byte) 5, (byte) 2));
+        assertTrue(!listener.mLatch.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, mCrazyflie.getPendingReplyCount());
+
+        mDriver.injectPacket(createReply(1, (byte) 5, (byte) 1, (byte) 0));
+        assertTrue(listener.mLatch.await(1, TimeUnit.SECONDS));
+        assertNotNull(listener.mReply.get());
+    }
+
+    @Test
+    public void testSameExpectedReplyIsMerged() throws InterruptedException {
+        TestReplyListener listener1 = new TestReplyListener();
+        TestReplyListener listener2 = new TestReplyListener();
+        mCrazyflie.sendPacket(createRequest(1, (byte) 9), 1000, -1, listener1);
+        mCrazyflie.sendPacket(createRequest(1, (byte) 9), 1000, -1, listener2);
+        assertEquals(1, mCrazyflie.getPendingReplyCount());
+
+        mDriver.injectPacket(createReply(1, (byte) 9, (byte) 0));
+        assertTrue(listener1.mLatch.await(1, TimeUnit.SECONDS));
+        assertTrue(listener2.mLatch.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDisconnectFailsPendingRequests() throws InterruptedException {
+        TestReplyListener listener = new TestReplyListener();
+        mCrazyflie.sendPacket(createRequest(1, (byte) 1), 1000, -1, listener);
+        mCrazyflie.disconnect();
+        assertTrue(listener.mLatch.await(1, TimeUnit.SECONDS));
+        assertTrue(listener.mFailed);
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crazyradio;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PollStrategyTest {
+
+    private final static long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testBusySpin() {
+        PollStrategy strategy = new BusySpinPollStrategy();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, strategy.getWaitTime(false, i * MS));
+        }
+    }
+
+    @Test
+    public void testBackoff() {
+        PollStrategy strategy = new BackoffPollStrategy(2, 1, 5, TimeUnit.MILLISECONDS);
+        assertEquals(0, strategy.getWaitTime(false, 0));
+        assertEquals(0, strategy.getWaitTime(false, 0));
+        assertEquals(1 * MS, strategy.getWaitTime(false, 0));
+        assertEquals(2 * MS, strategy.getWaitTime(false, 0));
+        assertEquals(4 * MS, strategy.getWaitTime(false, 0));
+        assertEquals(5 * MS, strategy.getWaitTime(false, 0));
+        assertEquals(5 * MS, strategy.getWaitTime(false, 0));
+        // data resets the backoff
+        assertEquals(0, strategy.getWaitTime(true, 0));
+        assertEquals(0, strategy.getWaitTime(false, 0));
+    }
+
+    @Test
+    public void testFixedRate() {
+        FixedRatePollStrategy strategy = new FixedRatePollStrategy(100);
+        assertEquals(10 * MS, strategy.getPeriod());
+        assertEquals(10 * MS, strategy.getWaitTime(false, 0));
+        // round trip took 1 ms
+        assertEquals(9 * MS, strategy.getWaitTime(true, 11 * MS));
+        // a late round trip does not cause a burst of polls
+        assertEquals(0, strategy.getWaitTime(false, 50 * MS));
+        assertEquals(10 * MS, strategy.getWaitTime(false, 50 * MS));
+    }
+
+    @Test
+    public void testAdaptive() {
+        AdaptivePollStrategy strategy = new AdaptivePollStrategy(0, 10 * MS, TimeUnit.NANOSECONDS, 4);
+        // idle link
+        assertEquals(10 * MS, strategy.getWaitTime(false, 0));
+
+        // a log block every 8 ms
+        for (int i = 1; i <= 20; i++) {
+            assertEquals(0, strategy.getWaitTime(true, i * 8 * MS));
+        }
+        assertEquals(8 * MS, strategy.getEstimatedInterval());
+        assertEquals(2 * MS, strategy.getWaitTime(false, 161 * MS));
+
+        // the log block has been stopped
+        assertEquals(10 * MS, strategy.getWaitTime(false, 300 * MS));
+
+        strategy.reset();
+        assertEquals(0, strategy.getEstimatedInterval());
+    }
+
+    @Test
+    public void testAdaptiveWaitIsBounded() {
+        AdaptivePollStrategy strategy = new AdaptivePollStrategy(1, 3, TimeUnit.MILLISECONDS, 2);
+        strategy.getWaitTime(true, 0);
+        strategy.getWaitTime(true, 100 * MS);
+        assertEquals(3 * MS, strategy.getWaitTime(false, 101 * MS));
+
+        strategy = new AdaptivePollStrategy(1, 3, TimeUnit.MILLISECONDS, 4);
+        strategy.getWaitTime(true, 0);
+        strategy.getWaitTime(true, 2 * MS);
+        assertEquals(1 * MS, strategy.getWaitTime(false, 2 * MS));
+    }
+
+}
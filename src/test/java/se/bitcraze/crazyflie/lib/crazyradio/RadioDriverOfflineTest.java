@@ -0,0 +1,109 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package se.bitcraze.crazyflie.lib.crazyradio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.InMemoryUsbInterface;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPort;
+import se.bitcraze.crazyflie.lib.crtp.LinkStatistics;
+
+/**
+ * Tests of the radio thread with a Crazyradio that is simulated in memory
+ */
+public class RadioDriverOfflineTest {
+
+    private InMemoryUsbInterface mUsbInterface;
+    private RadioDriver mRadioDriver;
+
+    @Before
+    public void setUp() {
+        mUsbInterface = new InMemoryUsbInterface();
+        mRadioDriver = new RadioDriver(mUsbInterface);
+    }
+
+    @After
+    public void tearDown() {
+        mRadioDriver.disconnect();
+    }
+
+    @Test
+    public void testEmptyAckIsNotQueued() throws InterruptedException {
+        // console packet "hi" followed by empty acks
+        mUsbInterface.injectAck(new byte[] {0x01, 0x00, 'h', 'i'});
+        mRadioDriver.connect(new ConnectionData(10, Crazyradio.DR_2MPS));
+        assertTrue(mUsbInterface.awaitBulkTransfers(20, 2000));
+
+        assertEquals(1, mRadioDriver.getInQueueSize());
+        CrtpPacket packet = mRadioDriver.getInQueue().poll();
+        assertEquals(CrtpPort.CONSOLE, packet.getHeader().getPort());
+        assertArrayEquals(new byte[] {'h', 'i'}, packet.getPayload());
+    }
+
+    @Test
+    public void testLinkStatisticsCountEmptyAcks() throws InterruptedException {
+        // log packet with a two byte payload followed by empty acks
+        mUsbInterface.injectAck(new byte[] {0x01, 0x52, 1, 2});
+        mRadioDriver.connect(new ConnectionData(10, Crazyradio.DR_2MPS));
+        // the statistics of a round trip are recorded before the next transfer
+        assertTrue(mUsbInterface.awaitBulkTransfers(31, 2000));
+
+        LinkStatistics statistics = mRadioDriver.getLinkStatistics();
+        assertEquals(1, statistics.getDownlinkPacketCount());
+        assertEquals(3, statistics.getDownlinkBytes(CrtpPort.LOGGING));
+        assertEquals(0, statistics.getDownlinkBytes(CrtpPort.CONSOLE));
+        assertTrue(statistics.getAckCount() >= 30);
+        assertTrue(statistics.getEmptyAckCount() >= 29);
+        assertTrue(statistics.getEmptyAckRatio() > 0.9);
+    }
+
+    @Test
+    public void testBackoffAfterEmptyAcks() throws InterruptedException {
+        // poll 3 more times after the data, then wait 50 ms between polls
+        mRadioDriver.setPollStrategy(new BackoffPollStrategy(3, 50, 50, TimeUnit.MILLISECONDS));
+        mUsbInterface.injectAck(new byte[] {0x01, 0x52, 1, 2});
+        mRadioDriver.connect(new ConnectionData(10, Crazyradio.DR_2MPS));
+        assertTrue(mUsbInterface.awaitBulkTransfers(5, 2000));
+
+        Thread.sleep(200);
+        // a busy polling radio thread makes thousands of transfers in this time
+        long transfers = mUsbInterface.getBulkTransferCount();
+        assertTrue("Too many transfers: " + transfers, transfers <= 15);
+        assertEquals(1, mRadioDriver.getInQueueSize());
+    }
+
+}
@@ -0,0 +1,114 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crtp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CrtpPacketPoolTest {
+
+    // status byte, header (port 5, channel 2), payload
+    private final byte[] mRawData = new byte[] {1, 82, 1, 67, -58, 0, -59, 68, -126, 64};
+
+    @Test
+    public void testObtain() {
+        CrtpPacketPool pool = new CrtpPacketPool(4);
+        CrtpPacket packet = pool.obtain(mRawData, 1, mRawData.length - 1);
+
+        assertTrue(packet.isPooled());
+        assertEquals(CrtpPort.LOGGING, packet.getHeader().getPort());
+        assertEquals(2, packet.getHeader().getChannel());
+        assertArrayEquals(new byte[] {1, 67, -58, 0, -59, 68, -126, 64}, packet.getPayload());
+        assertArrayEquals(new CrtpPacket(new byte[] {82, 1, 67, -58, 0, -59, 68, -126, 64}).toByteArray(), packet.toByteArray());
+    }
+
+    @Test
+    public void testReleaseRecyclesPacket() {
+        CrtpPacketPool pool = new CrtpPacketPool(4);
+        CrtpPacket packet = pool.obtain(mRawData, 1, mRawData.length - 1);
+        packet.release();
+
+        byte[] otherData = new byte[] {0, 0x02, 1, 2, 3, 4, 5, 6, 7, 8};
+        CrtpPacket recycled = pool.obtain(otherData, 1, otherData.length - 1);
+        assertSame(packet, recycled);
+        assertEquals(CrtpPort.CONSOLE, recycled.getHeader().getPort());
+        assertEquals(2, recycled.getHeader().getChannel());
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, recycled.getPayload());
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(2, pool.getObtainedCount());
+    }
+
+    @Test
+    public void testRetainedPacketIsNotRecycled() {
+        CrtpPacketPool pool = new CrtpPacketPool(4);
+        CrtpPacket packet = pool.obtain(mRawData, 1, mRawData.length - 1);
+        packet.retain();
+        packet.release();
+
+        CrtpPacket other = pool.obtain(mRawData, 1, mRawData.length - 1);
+        assertNotSame(packet, other);
+
+        packet.release();
+        assertSame(packet, pool.obtain(mRawData, 1, mRawData.length - 1));
+    }
+
+    @Test
+    public void testDifferentPayloadLengths() {
+        CrtpPacketPool pool = new CrtpPacketPool(4);
+        CrtpPacket packet = pool.obtain(mRawData, 1, mRawData.length - 1);
+        packet.release();
+
+        CrtpPacket shortPacket = pool.obtain(mRawData, 1, 3);
+        assertNotSame(packet, shortPacket);
+        assertEquals(2, shortPacket.getPayload().length);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleaseTooOften() {
+        CrtpPacketPool pool = new CrtpPacketPool(4);
+        CrtpPacket packet = pool.obtain(mRawData, 1, mRawData.length - 1);
+        packet.release();
+        packet.release();
+    }
+
+    @Test
+    public void testReleaseOfUnpooledPacket() {
+        CrtpPacket packet = new CrtpPacket(new byte[] {82, 1, 2});
+        assertFalse(packet.isPooled());
+        // must not fail
+        packet.retain();
+        packet.release();
+        packet.release();
+    }
+
+}
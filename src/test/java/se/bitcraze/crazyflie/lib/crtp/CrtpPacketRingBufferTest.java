@@ -0,0 +1,237 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketRingBuffer.OverflowPolicy;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketRingBuffer.WaitStrategy;
+
+public class CrtpPacketRingBufferTest {
+
+    private static CrtpPacket createPacket(int id) {
+        return new CrtpPacket((byte) 0x10, new byte[] {(byte) id, (byte) (id >> 8), (byte) (id >> 16)});
+    }
+
+    private static int getId(CrtpPacket packet) {
+        byte[] payload = packet.getPayload();
+        return (payload[0] & 0xff) | (payload[1] & 0xff) << 8 | (payload[2] & 0xff) << 16;
+    }
+
+    @Test
+    public void testCapacityIsRoundedUp() {
+        assertEquals(8, new CrtpPacketRingBuffer(5, OverflowPolicy.REJECT, WaitStrategy.PARK).getCapacity());
+        assertEquals(1, new CrtpPacketRingBuffer(1, OverflowPolicy.REJECT, WaitStrategy.PARK).getCapacity());
+    }
+
+    @Test
+    public void testFifoOrderWithWrapAround() throws InterruptedException {
+        CrtpPacketRingBuffer buffer = new CrtpPacketRingBuffer(4, OverflowPolicy.REJECT, WaitStrategy.PARK);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(buffer.offer(createPacket(i)));
+            assertTrue(buffer.offer(createPacket(i + 100)));
+            assertEquals(2, buffer.size());
+            assertEquals(i, getId(buffer.poll()));
+            assertEquals(i + 100, getId(buffer.poll()));
+        }
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testReject() throws InterruptedException {
+        CrtpPacketRingBuffer buffer = new CrtpPacketRingBuffer(2, OverflowPolicy.REJECT, WaitStrategy.PARK);
+        assertTrue(buffer.offer(createPacket(1)));
+        assertTrue(buffer.offer(createPacket(2)));
+        assertFalse(buffer.offer(createPacket(3)));
+        assertEquals(1, buffer.getDroppedCount());
+        assertEquals(1, getId(buffer.poll()));
+        assertEquals(2, getId(buffer.poll()));
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        CrtpPacketRingBuffer buffer = new CrtpPacketRingBuffer(2, OverflowPolicy.DROP_OLDEST, WaitStrategy.PARK);
+        assertTrue(buffer.offer(createPacket(1)));
+        assertTrue(buffer.offer(createPacket(2)));
+        assertTrue(buffer.offer(createPacket(3)));
+        assertEquals(2, buffer.size());
+        assertEquals(1, buffer.getDroppedCount());
+        assertEquals(2, getId(buffer.poll()));
+        assertEquals(3, getId(buffer.poll()));
+    }
+
+    @Test
+    public void testDropOldestReleasesPooledPackets() throws InterruptedException {
+        CrtpPacketPool pool = new CrtpPacketPool(4);
+        byte[] data = new byte[] {0x10, 1, 2, 3};
+        CrtpPacketRingBuffer buffer = new CrtpPacketRingBuffer(1, OverflowPolicy.DROP_OLDEST, WaitStrategy.PARK);
+        CrtpPacket first = pool.obtain(data, 0, data.length);
+        buffer.offer(first);
+        buffer.offer(pool.obtain(data, 0, data.length));
+        // the dropped packet is back in the pool
+        assertSame(first, pool.obtain(data, 0, data.length));
+    }
+
+    @Test
+    public void testPollTimeout() throws InterruptedException {
+        CrtpPacketRingBuffer buffer = new CrtpPacketRingBuffer(2, OverflowPolicy.BLOCK, WaitStrategy.PARK);
+        long start = System.nanoTime();
+        assertNull(buffer.poll(20, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void testBlockingOfferWaitsForConsumer() throws InterruptedException {
+        final CrtpPacketRingBuffer buffer = new CrtpPacketRingBuffer(1, OverflowPolicy.BLOCK, WaitStrategy.PARK);
+        buffer.offer(createPacket(1));
+        Thread consumer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                buffer.poll();
+            }
+        });
+        consumer.start();
+        assertTrue(buffer.offer(createPacket(2)));
+        consumer.join();
+        assertEquals(2, getId(buffer.poll()));
+    }
+
+    @Test
+    public void testProducerConsumer() throws InterruptedException {
+        // BUSY_SPIN is left out because it needs a dedicated core per thread
+        for (WaitStrategy waitStrategy : new WaitStrategy[] {WaitStrategy.YIELD, WaitStrategy.PARK}) {
+            final int count = 20000;
+            final CrtpPacketRingBuffer buffer = new CrtpPacketRingBuffer(16, OverflowPolicy.BLOCK, waitStrategy);
+            Thread producer = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < count; i++) {
+                            buffer.offer(createPacket(i));
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            producer.start();
+            for (int i = 0; i < count; i++) {
+                CrtpPacket packet = buffer.poll(1, TimeUnit.SECONDS);
+                assertEquals(i, getId(packet));
+            }
+            producer.join();
+            assertEquals(0, buffer.getDroppedCount());
+        }
+    }
+
+    @Test
+    public void testMultipleProducers() throws InterruptedException {
+        final int count = 20000;
+        final CrtpPacketRingBuffer buffer = new CrtpPacketRingBuffer(8, OverflowPolicy.BLOCK, WaitStrategy.PARK, true);
+        Thread[] producers = new Thread[3];
+        for (int p = 0; p < producers.length; p++) {
+            final int offset = p * count;
+            producers[p] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < count; i++) {
+                            buffer.offer(createPacket(offset + i));
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            producers[p].start();
+        }
+        int[] lastIds = new int[] {-1, -1, -1};
+        for (int i = 0; i < producers.length * count; i++) {
+            int id = getId(buffer.poll(1, TimeUnit.SECONDS));
+            int producer = id / count;
+            // packets of each producer arrive in order
+            assertTrue(id > lastIds[producer]);
+            lastIds[producer] = id;
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testParkedConsumerIsWokenUp() throws InterruptedException {
+        final int count = 5000;
+        final CrtpPacketRingBuffer buffer = new CrtpPacketRingBuffer(4, OverflowPolicy.BLOCK, WaitStrategy.PARK);
+        // number of the packet the consumer is waiting for
+        final AtomicInteger waitingFor = new AtomicInteger(-1);
+        final Thread consumer = Thread.currentThread();
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        while (waitingFor.get() < i) {
+                            Thread.yield();
+                        }
+                        // every tenth packet is offered when the consumer is parked,
+                        // the others race with the consumer going to sleep
+                        while (i % 10 == 0 && consumer.getState() != Thread.State.TIMED_WAITING) {
+                            Thread.yield();
+                        }
+                        buffer.offer(createPacket(i));
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        producer.start();
+        for (int i = 0; i < count; i++) {
+            waitingFor.set(i);
+            long start = System.nanoTime();
+            CrtpPacket packet = buffer.poll(5, TimeUnit.SECONDS);
+            assertNotNull("Lost wakeup for packet " + i, packet);
+            assertEquals(i, getId(packet));
+            assertTrue("Consumer slept through packet " + i, System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        }
+        producer.join();
+    }
+
+}
@@ -0,0 +1,145 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketRingBuffer.OverflowPolicy;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketRingBuffer.WaitStrategy;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacketScheduler.Lane;
+
+public class CrtpPacketSchedulerTest {
+
+    private static CrtpPacket createPacket(CrtpPort port, int id) {
+        return new CrtpPacket((byte) (port.getNumber() << 4), new byte[] {(byte) id});
+    }
+
+    @Test
+    public void testLanes() {
+        assertEquals(Lane.COMMANDER, CrtpPacketScheduler.getLane(new CommanderPacket(0, 0, 0, (char) 0)));
+        assertEquals(Lane.PRIORITY, CrtpPacketScheduler.getLane(createPacket(CrtpPort.PARAMETERS, 0)));
+        assertEquals(Lane.PRIORITY, CrtpPacketScheduler.getLane(createPacket(CrtpPort.LOGGING, 0)));
+        assertEquals(Lane.BULK, CrtpPacketScheduler.getLane(createPacket(CrtpPort.MEMORY, 0)));
+        assertEquals(Lane.BULK, CrtpPacketScheduler.getLane(CrtpPacket.NULL_PACKET));
+    }
+
+    @Test
+    public void testLatestSetpointWins() throws InterruptedException {
+        CrtpPacketScheduler scheduler = new CrtpPacketScheduler();
+        scheduler.offer(createPacket(CrtpPort.COMMANDER, 1));
+        scheduler.offer(createPacket(CrtpPort.COMMANDER, 2));
+        CrtpPacket latest = createPacket(CrtpPort.COMMANDER, 3);
+        scheduler.offer(latest);
+
+        assertEquals(1, scheduler.size());
+        assertEquals(2, scheduler.getOverwrittenSetpointCount());
+        assertSame(latest, scheduler.poll());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void testPriorityLaneIsServedFirst() throws InterruptedException {
+        CrtpPacketScheduler scheduler = new CrtpPacketScheduler();
+        CrtpPacket bulk = createPacket(CrtpPort.MEMORY, 1);
+        CrtpPacket setpoint = createPacket(CrtpPort.COMMANDER, 2);
+        CrtpPacket param = createPacket(CrtpPort.PARAMETERS, 3);
+        scheduler.offer(bulk);
+        scheduler.offer(setpoint);
+        scheduler.offer(param);
+
+        assertSame(param, scheduler.poll());
+        assertSame(setpoint, scheduler.poll());
+        assertSame(bulk, scheduler.poll());
+        assertEquals(1, scheduler.getSentCount(Lane.PRIORITY));
+        assertEquals(1, scheduler.getSentCount(Lane.COMMANDER));
+        assertEquals(1, scheduler.getSentCount(Lane.BULK));
+    }
+
+    @Test
+    public void testStarvationGuards() throws InterruptedException {
+        CrtpPacketScheduler scheduler = new CrtpPacketScheduler(
+                new CrtpPacketRingBuffer(16, OverflowPolicy.REJECT, WaitStrategy.PARK, true),
+                new CrtpPacketRingBuffer(16, OverflowPolicy.REJECT, WaitStrategy.PARK, true), 1, 2);
+        for (int i = 0; i < 10; i++) {
+            scheduler.offer(createPacket(CrtpPort.LOGGING, i));
+        }
+        CrtpPacket setpoint = createPacket(CrtpPort.COMMANDER, 100);
+        CrtpPacket bulk = createPacket(CrtpPort.MEMORY, 101);
+        scheduler.offer(setpoint);
+        scheduler.offer(bulk);
+
+        // one log packet, then the set-point may not be passed over anymore
+        assertEquals(Lane.PRIORITY, CrtpPacketScheduler.getLane(scheduler.poll()));
+        assertSame(setpoint, scheduler.poll());
+        // the bulk packet has been passed over twice now
+        assertSame(bulk, scheduler.poll());
+        assertEquals(1, scheduler.getForcedCount(Lane.COMMANDER));
+        assertEquals(1, scheduler.getForcedCount(Lane.BULK));
+        assertEquals(1, scheduler.getDeferredCount(Lane.COMMANDER));
+        assertEquals(2, scheduler.getDeferredCount(Lane.BULK));
+        assertEquals(9, scheduler.size(Lane.PRIORITY));
+    }
+
+    @Test
+    public void testRejectedPacketIsCounted() throws InterruptedException {
+        CrtpPacketScheduler scheduler = new CrtpPacketScheduler(
+                new CrtpPacketRingBuffer(1, OverflowPolicy.REJECT, WaitStrategy.PARK, true),
+                new CrtpPacketRingBuffer(1, OverflowPolicy.REJECT, WaitStrategy.PARK, true), 1, 4);
+        scheduler.offer(createPacket(CrtpPort.PARAMETERS, 1));
+        assertFalse(scheduler.offer(createPacket(CrtpPort.PARAMETERS, 2)));
+        assertEquals(1, scheduler.getDroppedCount(Lane.PRIORITY));
+    }
+
+    @Test
+    public void testPollWaitsForPacket() throws InterruptedException {
+        final CrtpPacketScheduler scheduler = new CrtpPacketScheduler();
+        final CrtpPacket setpoint = createPacket(CrtpPort.COMMANDER, 1);
+        assertNull(scheduler.poll(1, TimeUnit.MILLISECONDS));
+
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                    scheduler.offer(setpoint);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        });
+        producer.start();
+        assertSame(setpoint, scheduler.poll(5, TimeUnit.SECONDS));
+        producer.join();
+    }
+
+}
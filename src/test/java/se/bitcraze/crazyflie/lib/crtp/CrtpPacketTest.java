@@ -0,0 +1,85 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket.Header;
+
+public class CrtpPacketTest {
+
+    @Test
+    public void testPortLookup() {
+        for (CrtpPort port : CrtpPort.values()) {
+            if (port != CrtpPort.UNKNOWN) {
+                assertSame(port, CrtpPort.getByNumber(port.getNumber()));
+            }
+        }
+        assertNull(CrtpPort.getByNumber((byte) 1));
+        assertNull(CrtpPort.getByNumber((byte) 7));
+    }
+
+    @Test
+    public void testHeadersAreInterned() {
+        for (int i = 0; i < 256; i++) {
+            Header header = Header.valueOf((byte) i);
+            assertSame(header, Header.valueOf((byte) i));
+            assertEquals((byte) i, header.getByte());
+            assertEquals(new Header((byte) i), header);
+        }
+        assertSame(Header.valueOf((byte) 0x52), new CrtpPacket((byte) 0x52, new byte[0]).getHeader());
+        assertSame(Header.valueOf((byte) 0x52), new CrtpPacket(new byte[] {0x52, 1}).getHeader());
+        assertSame(Header.valueOf((byte) 0x52), new CrtpPacket(2, CrtpPort.LOGGING).getHeader());
+    }
+
+    @Test
+    public void testHeaderDecoding() {
+        for (CrtpPort port : new CrtpPort[] {CrtpPort.CONSOLE, CrtpPort.PARAMETERS, CrtpPort.COMMANDER,
+                CrtpPort.MEMORY, CrtpPort.LOGGING, CrtpPort.DEBUGDRIVER, CrtpPort.LINKCTRL}) {
+            for (int channel = 0; channel < 4; channel++) {
+                Header header = Header.valueOf(channel, port);
+                assertSame(port, header.getPort());
+                assertEquals(channel, header.getChannel());
+                assertEquals(header, new Header(channel, port));
+                assertSame(header, Header.valueOf(header.getByte()));
+            }
+        }
+    }
+
+    @Test
+    public void testNullPacketHeader() {
+        Header header = Header.valueOf((byte) 0xFF);
+        assertSame(CrtpPort.UNKNOWN, header.getPort());
+        assertEquals((byte) 0xFF, header.getByte());
+        assertSame(header, CrtpPacket.NULL_PACKET.getHeader());
+    }
+
+}
@@ -0,0 +1,135 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.InMemoryDriver;
+import se.bitcraze.crazyflie.lib.crazyflie.ConnectionAdapter;
+
+public class LinkQualityEstimatorTest {
+
+    private final static long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testRateLimit() {
+        LinkQualityEstimator estimator = new LinkQualityEstimator(0.1, 10, 0);
+        int notifications = 0;
+        // 1 kHz round trips for one second with alternating retries
+        for (int i = 0; i < 1000; i++) {
+            if (estimator.update(true, i % 2, i * MS) >= 0) {
+                notifications++;
+            }
+        }
+        assertTrue("Got " + notifications + " notifications", notifications >= 9 && notifications <= 11);
+    }
+
+    @Test
+    public void testSmoothing() {
+        LinkQualityEstimator estimator = new LinkQualityEstimator(0.1, 1000, 0);
+        assertEquals(100, estimator.update(true, 0, 0));
+        // a single lost ack doesn't drop the quality to 0
+        assertEquals(90, estimator.update(false, 0, 1 * MS));
+        for (int i = 2; i < 100; i++) {
+            estimator.update(false, 0, i * MS);
+        }
+        assertEquals(0, estimator.getQuality());
+    }
+
+    @Test
+    public void testHysteresis() {
+        LinkQualityEstimator estimator = new LinkQualityEstimator(1, 1000, 5);
+        assertEquals(80, estimator.update(true, 2, 0));
+        // 20 ms later a change of 3% is not reported
+        assertEquals(-1, estimator.update(true, 2, 20 * MS));
+        assertEquals(70, estimator.update(true, 3, 40 * MS));
+        assertEquals(-1, estimator.update(true, 3, 60 * MS));
+        // reaching the limits is always reported
+        estimator = new LinkQualityEstimator(0.5, 1000, 20);
+        assertEquals(90, estimator.update(true, 1, 0));
+        assertEquals(-1, estimator.update(true, 0, 10 * MS));
+        assertEquals(-1, estimator.update(true, 0, 20 * MS));
+        int quality = -1;
+        for (int i = 3; i < 20 && quality == -1; i++) {
+            quality = estimator.update(true, 0, i * 10 * MS);
+        }
+        assertEquals(100, quality);
+    }
+
+    @Test
+    public void testSlowListenerDoesNotBlock() throws InterruptedException {
+        final CountDownLatch firstUpdate = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger lastQuality = new AtomicInteger(-1);
+        final AtomicInteger updateCount = new AtomicInteger();
+        final CountDownLatch lastUpdate = new CountDownLatch(1);
+
+        InMemoryDriver driver = new InMemoryDriver() {
+            {
+                addConnectionListener(new ConnectionAdapter() {
+                    @Override
+                    public void linkQualityUpdated(int percent) {
+                        updateCount.incrementAndGet();
+                        lastQuality.set(percent);
+                        firstUpdate.countDown();
+                        if (percent == 42) {
+                            lastUpdate.countDown();
+                        }
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+                postLinkQualityUpdated(100);
+                try {
+                    firstUpdate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // the listener is blocked, these must not block and are coalesced
+                for (int i = 0; i <= 42; i++) {
+                    postLinkQualityUpdated(i);
+                }
+            }
+        };
+        release.countDown();
+        assertTrue(lastUpdate.await(5, TimeUnit.SECONDS));
+        assertEquals(42, lastQuality.get());
+        assertEquals(2, updateCount.get());
+        driver.disconnect();
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.crtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket.Header;
+
+public class LinkStatisticsRecorderTest {
+
+    @Test
+    public void testCounters() {
+        LinkStatisticsRecorder recorder = new LinkStatisticsRecorder();
+        byte logHeader = Header.valueOf(2, CrtpPort.LOGGING).getByte();
+        byte commanderHeader = Header.valueOf(0, CrtpPort.COMMANDER).getByte();
+
+        for (int i = 0; i < 10; i++) {
+            recorder.recordRoundTrip(TimeUnit.MICROSECONDS.toNanos(500), true, i < 8 ? 0 : 3);
+            recorder.recordUplink(commanderHeader, 15);
+        }
+        for (int i = 0; i < 4; i++) {
+            recorder.recordDownlink(logHeader, 32);
+        }
+        for (int i = 0; i < 6; i++) {
+            recorder.recordEmptyAck();
+        }
+        recorder.recordRoundTrip(TimeUnit.MILLISECONDS.toNanos(20), false, 15);
+
+        LinkStatistics statistics = recorder.snapshot(3, 1);
+        assertEquals(10, statistics.getAckCount());
+        assertEquals(1, statistics.getLostAckCount());
+        assertEquals(0.6, statistics.getEmptyAckRatio(), 0.0001);
+        assertEquals(8, statistics.getRetryCount(0));
+        assertEquals(2, statistics.getRetryCount(3));
+        assertEquals(10, statistics.getUplinkPacketCount());
+        assertEquals(4, statistics.getDownlinkPacketCount());
+        assertEquals(150, statistics.getUplinkBytes(CrtpPort.COMMANDER));
+        assertEquals(128, statistics.getDownlinkBytes(CrtpPort.LOGGING));
+        assertEquals(0, statistics.getDownlinkBytes(CrtpPort.PARAMETERS));
+        assertEquals(3, statistics.getInQueueDepth());
+        assertEquals(1, statistics.getOutQueueDepth());
+        assertEquals(20, statistics.getRoundTripTime(100, TimeUnit.MILLISECONDS));
+
+        recorder.reset();
+        assertEquals(0, recorder.snapshot(0, 0).getAckCount());
+    }
+
+    @Test
+    public void testRoundTripPercentiles() {
+        LinkStatisticsRecorder recorder = new LinkStatisticsRecorder();
+        for (int i = 1; i <= 1000; i++) {
+            recorder.recordRoundTrip(TimeUnit.MICROSECONDS.toNanos(i), true, 0);
+        }
+        LinkStatistics statistics = recorder.snapshot(0, 0);
+        long p50 = statistics.getRoundTripTime(50, TimeUnit.MICROSECONDS);
+        long p90 = statistics.getRoundTripTime(90, TimeUnit.MICROSECONDS);
+        long p99 = statistics.getRoundTripTime(99, TimeUnit.MICROSECONDS);
+        // buckets are at most 1/8 of their value wide
+        assertTrue(p50 >= 500 && p50 <= 500 * 9 / 8);
+        assertTrue(p90 >= 900 && p90 <= 900 * 9 / 8);
+        assertTrue(p99 >= 990 && p99 <= 990 * 9 / 8);
+    }
+
+    @Test
+    public void testBuckets() {
+        long previousUpperBound = -1;
+        for (long micros = 0; micros < 100000; micros++) {
+            int bucket = LinkStatisticsRecorder.getBucket(micros);
+            assertTrue(micros <= LinkStatisticsRecorder.getBucketUpperBound(bucket));
+            if (bucket > 0) {
+                assertTrue(micros > LinkStatisticsRecorder.getBucketUpperBound(bucket - 1));
+            }
+            previousUpperBound = Math.max(previousUpperBound, LinkStatisticsRecorder.getBucketUpperBound(bucket));
+        }
+        assertTrue(previousUpperBound >= 99999);
+    }
+
+    @Test
+    public void testRates() {
+        LinkStatisticsRecorder recorder = new LinkStatisticsRecorder();
+        long start = TimeUnit.SECONDS.toNanos(100);
+        recorder.updateRates(start);
+        for (int i = 0; i < 50; i++) {
+            recorder.recordUplink((byte) 0x30, 15);
+        }
+        for (int i = 0; i < 100; i++) {
+            recorder.recordDownlink((byte) 0x52, 32);
+        }
+        recorder.updateRates(start + TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(0, recorder.snapshot(0, 0).getUplinkPacketRate(), 0.001);
+        recorder.updateRates(start + TimeUnit.SECONDS.toNanos(2));
+        LinkStatistics statistics = recorder.snapshot(0, 0);
+        assertEquals(25, statistics.getUplinkPacketRate(), 0.001);
+        assertEquals(50, statistics.getDownlinkPacketRate(), 0.001);
+    }
+
+}
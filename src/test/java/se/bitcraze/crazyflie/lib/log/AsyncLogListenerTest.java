@@ -0,0 +1,139 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.crazyflie.DeliveryPolicy;
+import se.bitcraze.crazyflie.lib.param.AsyncParamListener;
+import se.bitcraze.crazyflie.lib.param.ParamListener;
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+public class AsyncLogListenerTest {
+
+    private final List<Runnable> mTasks = new ArrayList<Runnable>();
+
+    private final Executor mExecutor = new Executor() {
+        public void execute(Runnable command) {
+            mTasks.add(command);
+        }
+    };
+
+    private void runTasks() {
+        while (!mTasks.isEmpty()) {
+            mTasks.remove(0).run();
+        }
+    }
+
+    @Test
+    public void testLifecycleIsNeverDropped() {
+        final List<String> calls = new ArrayList<String>();
+        AsyncLogListener listener = new AsyncLogListener(new LogAdapter() {
+            @Override
+            public void logConfigAdded(LogConfig logConfig) {
+                calls.add("added");
+            }
+
+            @Override
+            public void logConfigStarted(LogConfig logConfig) {
+                calls.add("started");
+            }
+
+            @Override
+            public void logDataReceived(LogConfig logConfig, Map<String, Number> data, int timestamp) {
+                calls.add("data" + timestamp);
+            }
+        }, mExecutor, 1, DeliveryPolicy.LATEST_ONLY);
+
+        LogConfig logConfig = new LogConfig("test", 10);
+        listener.logConfigAdded(logConfig);
+        listener.logConfigStarted(logConfig);
+        for (int i = 0; i < 5; i++) {
+            listener.logDataReceived(logConfig, null, i);
+        }
+        assertTrue(calls.isEmpty());
+        runTasks();
+        assertEquals("[added, started, data4]", calls.toString());
+        assertEquals(4, listener.getDroppedCount());
+        assertEquals(3, listener.getDeliveredCount());
+    }
+
+    @Test
+    public void testRecordsAreCopied() {
+        LogConfig logConfig = new LogConfig("test", 10);
+        logConfig.addMemory("a.u8", VariableType.UINT8_T, 0);
+        final List<LogRecord> records = new ArrayList<LogRecord>();
+        AsyncLogRecordListener listener = new AsyncLogRecordListener(new LogRecordAdapter() {
+            public void logRecordReceived(LogRecord record) {
+                records.add(record);
+            }
+        }, mExecutor, 10, DeliveryPolicy.DROP_OLDEST);
+
+        LogRecord record = logConfig.getRecord();
+        for (int i = 0; i < 3; i++) {
+            record.decode(new byte[] {(byte) i}, 0, i * 10);
+            listener.logRecordReceived(record);
+        }
+        runTasks();
+        assertEquals(3, records.size());
+        for (int i = 0; i < 3; i++) {
+            assertNotSame(record, records.get(i));
+            assertEquals(i, records.get(i).getInt(0));
+            assertEquals(i * 10, records.get(i).getTimestamp());
+        }
+    }
+
+    @Test
+    public void testAsyncParamListener() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Thread caller = Thread.currentThread();
+        final List<Thread> threads = new ArrayList<Thread>();
+        ParamListener listener = new AsyncParamListener(new ParamListener("stabilizer", null) {
+            @Override
+            public void updated(String name, Number value) {
+                threads.add(Thread.currentThread());
+                latch.countDown();
+            }
+        });
+        assertEquals("stabilizer", listener.getGroup());
+        listener.updated("stabilizer.roll", 1.0f);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNotSame(caller, threads.get(0));
+    }
+
+}
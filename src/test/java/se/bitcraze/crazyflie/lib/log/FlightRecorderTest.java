@@ -0,0 +1,219 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import se.bitcraze.crazyflie.lib.InMemoryDriver;
+import se.bitcraze.crazyflie.lib.crazyflie.Crazyflie;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+public class FlightRecorderTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Logg mLogg;
+    private LogConfig mConfigA;
+    private LogConfig mConfigB;
+
+    @Before
+    public void setUp() {
+        mLogg = new Logg(new Crazyflie(new InMemoryDriver()));
+        mConfigA = new LogConfig("a", 10);
+        mConfigA.addMemory("a.u16", VariableType.UINT16_T, 0);
+        mConfigA.addMemory("a.f", VariableType.FLOAT, 2);
+        mLogg.addConfig(mConfigA);
+        mConfigB = new LogConfig("b", 100);
+        mConfigB.addMemory("b.i8", VariableType.INT8_T, 0);
+        mLogg.addConfig(mConfigB);
+    }
+
+    private static CrtpPacket createPacket(LogConfig logConfig, int timestamp, int value) {
+        // full sized radio payload
+        byte[] payload = new byte[31];
+        payload[0] = (byte) logConfig.getId();
+        payload[1] = (byte) timestamp;
+        payload[2] = (byte) (timestamp >> 8);
+        payload[3] = (byte) (timestamp >> 16);
+        int offset = 4;
+        for (LogVariable logVariable : logConfig.getLogVariables()) {
+            logVariable.getVariableType().put(payload, offset, value);
+            offset += logVariable.getVariableType().getSize();
+        }
+        return new CrtpPacket((byte) 0x52, payload);
+    }
+
+    private static List<Long> read(FlightRecording recording, long from, long to) {
+        final List<Long> values = new ArrayList<Long>();
+        recording.query(from, to, new FlightRecording.Visitor() {
+            public boolean logRecordRead(long hostTimestamp, LogRecord record) {
+                assertEquals(hostTimestamp, record.getTimestamp());
+                assertEquals(record.getLong(0), hostTimestamp);
+                values.add(hostTimestamp);
+                return true;
+            }
+        });
+        return values;
+    }
+
+    @Test
+    public void testRecordAndScan() throws IOException {
+        File directory = mFolder.newFolder();
+        FlightRecorder recorder = new FlightRecorder(directory);
+        recorder.start(mLogg);
+        for (int i = 0; i < 100; i++) {
+            recorder.offer(createPacket(i % 10 == 0 ? mConfigB : mConfigA, i, i), i);
+        }
+        // unknown log config
+        recorder.offer(new CrtpPacket((byte) 0x52, new byte[] {(byte) 200, 0, 0, 0, 1}));
+        recorder.stop();
+        assertEquals(100, recorder.getRecordedCount());
+        assertEquals(1, recorder.getDroppedCount());
+        assertEquals(1, recorder.getSegmentCount());
+
+        FlightRecording recording = new FlightRecording(directory);
+        assertEquals(1, recording.getSegmentCount());
+        assertEquals(0, recording.getStartTime());
+        final List<String> names = new ArrayList<String>();
+        final List<Number> floats = new ArrayList<Number>();
+        recording.scan(new FlightRecording.Visitor() {
+            public boolean logRecordRead(long hostTimestamp, LogRecord record) {
+                names.add(record.getLogConfig().getName());
+                if (record.getVariableCount() == 2) {
+                    floats.add(record.getNumber(1));
+                }
+                return true;
+            }
+        });
+        assertEquals(100, names.size());
+        assertEquals("b", names.get(0));
+        assertEquals("a", names.get(1));
+        assertEquals(Float.valueOf(1), floats.get(0));
+        assertEquals(read(recording, 0, 99).size(), 100);
+    }
+
+    @Test
+    public void testSegments() throws IOException {
+        File directory = mFolder.newFolder();
+        // small segments with an index entry every 16 bytes
+        FlightRecorder recorder = new FlightRecorder(directory, FlightRecording.DATA_START + 4096, 4096);
+        recorder.start(mLogg);
+        for (int i = 0; i < 1000; i++) {
+            recorder.offer(createPacket(mConfigA, i, i), i);
+        }
+        recorder.stop();
+        assertEquals(1000, recorder.getRecordedCount());
+        assertTrue(recorder.getSegmentCount() > 3);
+
+        FlightRecording recording = new FlightRecording(directory);
+        assertEquals(recorder.getSegmentCount(), recording.getSegmentCount());
+        List<Long> values = read(recording, 0, 999);
+        assertEquals(1000, values.size());
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(i, values.get(i).longValue());
+        }
+
+        values = read(recording, 500, 510);
+        assertEquals(11, values.size());
+        assertEquals(500, values.get(0).longValue());
+
+        // a second run appends new segments
+        recorder.start(mLogg);
+        recorder.offer(createPacket(mConfigA, 1000, 1000), 1000);
+        recorder.stop();
+        recording = new FlightRecording(directory);
+        assertEquals(1, recorder.getSegmentCount());
+        assertEquals(1, read(recording, 1000, 2000).size());
+    }
+
+    @Test
+    public void testStopReading() throws IOException {
+        File directory = mFolder.newFolder();
+        FlightRecorder recorder = new FlightRecorder(directory);
+        recorder.start(mLogg);
+        for (int i = 0; i < 10; i++) {
+            recorder.offer(createPacket(mConfigA, i, i), i);
+        }
+        recorder.stop();
+
+        final List<Long> values = new ArrayList<Long>();
+        new FlightRecording(directory).scan(new FlightRecording.Visitor() {
+            public boolean logRecordRead(long hostTimestamp, LogRecord record) {
+                values.add(hostTimestamp);
+                return values.size() < 3;
+            }
+        });
+        assertEquals(3, values.size());
+    }
+
+    @Test
+    public void testLayoutChanges() throws IOException {
+        File directory = mFolder.newFolder();
+        FlightRecorder recorder = new FlightRecorder(directory);
+        recorder.start(mLogg);
+        for (int i = 0; i < 15; i++) {
+            if (i == 5) {
+                // e.g. changed by the LogPeriodController
+                mConfigA.setPeriodInMs(20);
+            } else if (i == 10) {
+                // same log config object with other variables
+                mConfigA.addMemory("a.i8", VariableType.INT8_T, 6);
+            }
+            recorder.offer(createPacket(mConfigA, i, i), i);
+        }
+        recorder.stop();
+
+        final List<String> layouts = new ArrayList<String>();
+        new FlightRecording(directory).scan(new FlightRecording.Visitor() {
+            public boolean logRecordRead(long hostTimestamp, LogRecord record) {
+                assertEquals(hostTimestamp, record.getLong(0));
+                layouts.add(record.getLogConfig().getPeriodInMs() + "/" + record.getVariableCount());
+                return true;
+            }
+        });
+        assertEquals(15, layouts.size());
+        assertEquals("10/2", layouts.get(4));
+        assertEquals("20/2", layouts.get(5));
+        assertEquals("20/2", layouts.get(9));
+        assertEquals("20/3", layouts.get(10));
+        assertEquals("20/3", layouts.get(14));
+    }
+
+}
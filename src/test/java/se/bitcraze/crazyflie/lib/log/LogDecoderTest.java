@@ -0,0 +1,273 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.InMemoryDriver;
+import se.bitcraze.crazyflie.lib.crazyflie.Crazyflie;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+public class LogDecoderTest {
+
+    private static LogConfig createLogConfig() {
+        LogConfig logConfig = new LogConfig("test", 10);
+        logConfig.addMemory("a.u8", VariableType.UINT8_T, 0);
+        logConfig.addMemory("a.i16", VariableType.INT16_T, 1);
+        logConfig.addMemory("a.u32", VariableType.UINT32_T, 3);
+        logConfig.addMemory("a.f", VariableType.FLOAT, 7);
+        logConfig.addMemory("a.i8", VariableType.INT8_T, 11);
+        logConfig.addMemory("a.d", VariableType.DOUBLE, 12);
+        return logConfig;
+    }
+
+    private static byte[] createLogData(int offset) {
+        ByteBuffer buffer = ByteBuffer.allocate(offset + 20).order(CrtpPacket.BYTE_ORDER);
+        buffer.position(offset);
+        buffer.put((byte) 200);
+        buffer.putShort((short) -1234);
+        buffer.putInt(0xF0000001);
+        buffer.putFloat(3.5f);
+        buffer.put((byte) -7);
+        buffer.putDouble(-0.125);
+        return buffer.array();
+    }
+
+    @Test
+    public void testOffsets() {
+        LogDecoder decoder = createLogConfig().getDecoder();
+        assertEquals(6, decoder.getVariableCount());
+        assertEquals(20, decoder.getSize());
+        assertEquals(0, decoder.getOffset(0));
+        assertEquals(1, decoder.getOffset(1));
+        assertEquals(3, decoder.getOffset(2));
+        assertEquals(7, decoder.getOffset(3));
+        assertEquals(11, decoder.getOffset(4));
+        assertEquals(12, decoder.getOffset(5));
+        assertEquals(3, decoder.indexOf("a.f"));
+        assertEquals(-1, decoder.indexOf("a.x"));
+    }
+
+    @Test
+    public void testDecode() {
+        LogConfig logConfig = createLogConfig();
+        LogRecord record = logConfig.getRecord();
+        assertTrue(record.decode(createLogData(4), 4, 1234));
+
+        assertEquals(1234, record.getTimestamp());
+        assertEquals(200, record.getInt(0));
+        assertEquals(-1234, record.getInt(1));
+        assertEquals(0xF0000001L, record.getLong(2));
+        assertEquals(3.5f, record.getFloat(3), 0);
+        assertEquals(3, record.getLong(3));
+        assertEquals(-7, record.getInt(4));
+        assertEquals(-0.125, record.getDouble(5), 0);
+
+        // the same record is reused
+        assertSame(record, logConfig.getRecord());
+        assertFalse(record.decode(new byte[10], 0, 0));
+    }
+
+    @Test
+    public void testMapCompatibility() {
+        Map<String, Number> data = createLogConfig().unpackLogData(createLogData(0));
+        assertEquals(Integer.valueOf(200), data.get("a.u8"));
+        assertEquals(Short.valueOf((short) -1234), data.get("a.i16"));
+        assertEquals(Long.valueOf(0xF0000001L), data.get("a.u32"));
+        assertEquals(Float.valueOf(3.5f), data.get("a.f"));
+        assertEquals(Byte.valueOf((byte) -7), data.get("a.i8"));
+        assertEquals(Double.valueOf(-0.125), data.get("a.d"));
+    }
+
+    @Test
+    public void testDecoderIsRecompiled() {
+        LogConfig logConfig = createLogConfig();
+        LogDecoder decoder = logConfig.getDecoder();
+        logConfig.addMemory("a.u16", VariableType.UINT16_T, 20);
+        assertEquals(7, logConfig.getDecoder().getVariableCount());
+        assertEquals(22, logConfig.getDecoder().getSize());
+        assertEquals(6, decoder.getVariableCount());
+    }
+
+    @Test
+    public void testDecoderIsRecompiledAfterSetFetchAs() {
+        LogConfig logConfig = new LogConfig("test", 10);
+        logConfig.addMemory("a.f", VariableType.FLOAT, 0);
+        logConfig.addMemory("a.u", VariableType.UINT8_T, 4);
+        LogRecord record = logConfig.getRecord();
+        assertEquals(5, logConfig.getDecoder().getSize());
+
+        logConfig.getLogVariables().get(0).setFetchAs(VariableType.FP16);
+        assertEquals(3, logConfig.getDecoder().getSize());
+        assertEquals(2, logConfig.getDecoder().getOffset(1));
+        assertNotSame(record, logConfig.getRecord());
+
+        ByteBuffer buffer = ByteBuffer.allocate(3).order(CrtpPacket.BYTE_ORDER);
+        buffer.putShort(VariableType.toHalf(1.5f));
+        buffer.put((byte) 9);
+        record = logConfig.getRecord();
+        assertTrue(record.decode(buffer.array(), 0, 0));
+        assertEquals(1.5f, record.getFloat(0), 0);
+        assertEquals(9, record.getLong(1));
+    }
+
+    @Test
+    public void testRecordListener() {
+        Logg logg = new Logg(new Crazyflie(new InMemoryDriver()));
+        LogConfig logConfig = createLogConfig();
+        logg.addConfig(logConfig);
+
+        final List<Float> recordValues = new ArrayList<Float>();
+        final List<Number> mapValues = new ArrayList<Number>();
+        logg.addLogListener(new LogRecordAdapter() {
+            public void logRecordReceived(LogRecord record) {
+                recordValues.add(record.getFloat(3));
+            }
+            @Override
+            public void logDataReceived(LogConfig logConfig, Map<String, Number> data, int timestamp) {
+                throw new AssertionError("Record listeners don't receive maps");
+            }
+        });
+        logg.addLogListener(new LogAdapter() {
+            @Override
+            public void logDataReceived(LogConfig logConfig, Map<String, Number> data, int timestamp) {
+                mapValues.add(data.get("a.f"));
+                assertEquals(0x030201, timestamp);
+            }
+        });
+
+        byte[] payload = createLogData(4);
+        payload[0] = (byte) logConfig.getId();
+        payload[1] = 1;
+        payload[2] = 2;
+        payload[3] = 3;
+        logg.newPacketReceived(new CrtpPacket((byte) 0x52, payload));
+
+        assertEquals(1, recordValues.size());
+        assertEquals(3.5f, recordValues.get(0), 0);
+        assertEquals(1, mapValues.size());
+        assertEquals(3.5f, mapValues.get(0));
+    }
+
+    @Test
+    public void testShortDataReachesMapListeners() {
+        Logg logg = new Logg(new Crazyflie(new InMemoryDriver()));
+        LogConfig logConfig = createLogConfig();
+        logg.addConfig(logConfig);
+
+        final List<LogRecord> records = new ArrayList<LogRecord>();
+        final List<Map<String, Number>> maps = new ArrayList<Map<String, Number>>();
+        logg.addLogListener(new LogRecordAdapter() {
+            public void logRecordReceived(LogRecord record) {
+                records.add(record);
+            }
+        });
+        logg.addLogListener(new LogAdapter() {
+            @Override
+            public void logDataReceived(LogConfig logConfig, Map<String, Number> data, int timestamp) {
+                maps.add(data);
+            }
+        });
+
+        // 10 of the 20 bytes
+        byte[] payload = new byte[14];
+        payload[0] = (byte) logConfig.getId();
+        logg.newPacketReceived(new CrtpPacket((byte) 0x52, payload));
+
+        assertEquals(0, records.size());
+        assertEquals(1, maps.size());
+        assertTrue(maps.get(0).isEmpty());
+    }
+
+    @Test
+    public void testFetchAs() {
+        LogConfig logConfig = new LogConfig("test", 10);
+        logConfig.addMemory("a.f", VariableType.FLOAT, VariableType.FP16, 0);
+        logConfig.addMemory("a.i", VariableType.FLOAT, VariableType.INT16_T, 4);
+        logConfig.addMemory("a.u", VariableType.UINT32_T, 8);
+        LogDecoder decoder = logConfig.getDecoder();
+        assertEquals(8, decoder.getSize());
+        assertEquals(VariableType.FP16, decoder.getVariableType(0));
+        assertEquals(2, decoder.getOffset(1));
+
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(CrtpPacket.BYTE_ORDER);
+        buffer.putShort(VariableType.toHalf(-2.5f));
+        buffer.putShort((short) -300);
+        buffer.putInt(7);
+        Map<String, Number> data = logConfig.unpackLogData(buffer.array());
+        assertEquals(Float.valueOf(-2.5f), data.get("a.f"));
+        assertEquals(Short.valueOf((short) -300), data.get("a.i"));
+        assertEquals(Long.valueOf(7), data.get("a.u"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFetchAsTooLarge() {
+        new LogConfig("test", 10).addVariable("a.f", VariableType.FLOAT, VariableType.DOUBLE);
+    }
+
+    @Test
+    public void testCreateEncodesFetchType() throws InterruptedException {
+        InMemoryDriver driver = new InMemoryDriver();
+        Logg logg = new Logg(new Crazyflie(driver));
+        // reset reply, creates the TOC
+        logg.newPacketReceived(new CrtpPacket((byte) 0x51, new byte[] {5, 0, 0}));
+        logg.getToc().addElement(new LogTocElement(new byte[] {3, 0x07, 'a', 0, 'f', 0}));
+
+        LogConfig logConfig = new LogConfig("test", 10);
+        logConfig.addVariable("a.f", null, VariableType.FP16);
+        logConfig.addMemory("m.i", VariableType.INT32_T, VariableType.INT16_T, 0x20001234);
+        logg.addConfig(logConfig);
+        assertTrue(logConfig.isValid());
+        assertEquals(VariableType.FLOAT, logConfig.getLogVariables().get(0).getVariableType());
+        assertEquals(4, logConfig.getDecoder().getSize());
+
+        driver.connect(null);
+        logg.create(logConfig);
+        byte[] payload = driver.pollSentPacket(1000).getPayload();
+        assertEquals(0, payload[0]);
+        assertEquals(logConfig.getId(), payload[1]);
+        // stored as float (0x07), fetched as FP16 (0x08)
+        assertEquals(0x78, payload[2]);
+        assertEquals(3, payload[3]);
+        // stored as int32 (0x06), fetched as int16 (0x05)
+        assertEquals(0x65, payload[4]);
+        assertEquals(0x20001234, ByteBuffer.wrap(payload, 5, 4).order(CrtpPacket.BYTE_ORDER).getInt());
+    }
+
+}
@@ -0,0 +1,188 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+public class LogFrameMergerTest {
+
+    private LogConfig mConfigA;
+    private LogConfig mConfigB;
+    private LogConfig mConfigC;
+    private LogFrameMerger mMerger;
+
+    // timestamp and completeness of the received frames
+    private List<Integer> mTimestamps = new ArrayList<Integer>();
+    private List<Boolean> mComplete = new ArrayList<Boolean>();
+    private List<Long> mSums = new ArrayList<Long>();
+
+    @Before
+    public void setUp() {
+        mConfigA = createLogConfig("a");
+        mConfigB = createLogConfig("b");
+        mConfigC = createLogConfig("c");
+        mMerger = new LogFrameMerger(Arrays.asList(mConfigA, mConfigB, mConfigC), 3, 2, 20);
+        mMerger.addLogFrameListener(new LogFrameListener() {
+            public void logFrameReceived(LogFrame frame) {
+                mTimestamps.add(frame.getTimestamp());
+                mComplete.add(frame.isComplete());
+                long sum = 0;
+                for (int i = 0; i < frame.getVariableCount(); i++) {
+                    sum += frame.getLong(i);
+                }
+                mSums.add(sum);
+            }
+        });
+    }
+
+    private static LogConfig createLogConfig(String name) {
+        LogConfig logConfig = new LogConfig(name, 10);
+        logConfig.addMemory(name + ".value", VariableType.UINT16_T, 0);
+        return logConfig;
+    }
+
+    private void receive(LogConfig logConfig, int timestamp, int value) {
+        LogRecord record = logConfig.getRecord();
+        record.decode(new byte[] {(byte) value, (byte) (value >> 8)}, 0, timestamp);
+        mMerger.logRecordReceived(record);
+    }
+
+    @Test
+    public void testTolerance() {
+        receive(mConfigA, 100, 1);
+        receive(mConfigB, 102, 2);
+        assertTrue(mTimestamps.isEmpty());
+        receive(mConfigC, 97, 3);
+        assertEquals(Arrays.asList(100), mTimestamps);
+        assertEquals(Arrays.asList(true), mComplete);
+        assertEquals(Arrays.asList(6L), mSums);
+        assertEquals(1, mMerger.getCompleteFrameCount());
+    }
+
+    @Test
+    public void testFrameAccess() {
+        final List<LogFrame> frames = new ArrayList<LogFrame>();
+        mMerger.addLogFrameListener(new LogFrameListener() {
+            public void logFrameReceived(LogFrame frame) {
+                assertEquals(3, frame.getVariableCount());
+                assertEquals(1, frame.indexOf("b.value"));
+                assertEquals(Integer.valueOf(500), frame.getNumber(1));
+                assertNull(frame.getNumber(2));
+                assertFalse(frame.isPresent(2));
+                assertEquals(2, frame.toMap().size());
+                assertEquals(101, frame.getTimestamp(1));
+                frames.add(frame);
+            }
+        });
+        receive(mConfigA, 100, 1);
+        receive(mConfigB, 101, 500);
+        mMerger.flush();
+        assertEquals(1, frames.size());
+        assertEquals(1, mMerger.getPartialFrameCount());
+    }
+
+    @Test
+    public void testReorder() {
+        receive(mConfigA, 100, 1);
+        receive(mConfigB, 100, 1);
+        // the next sample of A and B arrives before C of the first frame
+        receive(mConfigA, 110, 10);
+        receive(mConfigB, 110, 10);
+        receive(mConfigC, 100, 1);
+        assertEquals(Arrays.asList(100), mTimestamps);
+        receive(mConfigC, 111, 10);
+        assertEquals(Arrays.asList(100, 110), mTimestamps);
+        assertEquals(Arrays.asList(true, true), mComplete);
+        assertEquals(Arrays.asList(3L, 30L), mSums);
+    }
+
+    @Test
+    public void testPartialOnTimeout() {
+        receive(mConfigA, 100, 1);
+        receive(mConfigB, 100, 1);
+        receive(mConfigA, 110, 10);
+        assertTrue(mTimestamps.isEmpty());
+        receive(mConfigA, 121, 10);
+        assertEquals(Arrays.asList(100), mTimestamps);
+        assertEquals(Arrays.asList(false), mComplete);
+        assertEquals(1, mMerger.getPartialFrameCount());
+
+        // C of the emitted frame is too late
+        receive(mConfigC, 100, 1);
+        assertEquals(1, mMerger.getLateRecordCount());
+    }
+
+    @Test
+    public void testWindowOverflow() {
+        receive(mConfigA, 100, 1);
+        receive(mConfigA, 105, 1);
+        assertTrue(mTimestamps.isEmpty());
+        receive(mConfigA, 110, 1);
+        assertEquals(Arrays.asList(100), mTimestamps);
+    }
+
+    @Test
+    public void testDropPartialFrames() {
+        mMerger.setEmitPartialFrames(false);
+        receive(mConfigA, 100, 1);
+        mMerger.flush();
+        assertTrue(mTimestamps.isEmpty());
+        assertEquals(1, mMerger.getDroppedFrameCount());
+    }
+
+    @Test
+    public void testTimestampWrapAround() {
+        int max = (1 << 24) - 1;
+        receive(mConfigA, max - 1, 1);
+        receive(mConfigB, 1, 1);
+        receive(mConfigC, max, 1);
+        assertEquals(Arrays.asList(max - 1), mTimestamps);
+        assertEquals(Arrays.asList(true), mComplete);
+        assertEquals(2, LogFrameMerger.difference(1, max));
+        assertEquals(-2, LogFrameMerger.difference(max, 1));
+    }
+
+    @Test
+    public void testDefaults() {
+        LogFrameMerger merger = new LogFrameMerger(Arrays.asList(mConfigA));
+        assertTrue(merger.isEmitPartialFrames());
+        assertEquals(1, merger.getLogConfigs().size());
+    }
+
+}
@@ -0,0 +1,222 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.InMemoryDriver;
+import se.bitcraze.crazyflie.lib.InMemoryUsbInterface;
+import se.bitcraze.crazyflie.lib.crazyradio.ConnectionData;
+import se.bitcraze.crazyflie.lib.crazyradio.Crazyradio;
+import se.bitcraze.crazyflie.lib.crazyradio.RadioDriver;
+import se.bitcraze.crazyflie.lib.crazyflie.Crazyflie;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.crtp.LinkStatisticsRecorder;
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+public class LogPeriodControllerTest {
+
+    private InMemoryDriver mDriver;
+    private LogPeriodController mController;
+
+    @Before
+    public void setUp() {
+        mDriver = new InMemoryDriver();
+        mController = new Logg(new Crazyflie(mDriver)).getPeriodController();
+    }
+
+    private static LogConfig createLogConfig(String name, int id, int periodInMs) {
+        LogConfig logConfig = new LogConfig(name, periodInMs);
+        logConfig.addMemory(name + ".v", VariableType.UINT8_T, 0);
+        logConfig.setId(id);
+        logConfig.setAdded(true);
+        logConfig.setStarted(true);
+        return logConfig;
+    }
+
+    private void receive(LogConfig logConfig, int count, int interval) {
+        LogRecord record = logConfig.getRecord();
+        for (int i = 0; i < count; i++) {
+            record.decode(new byte[1], 0, 1000 + i * interval);
+            mController.logRecordReceived(record);
+        }
+    }
+
+    @Test
+    public void testSlowDownWhenSamplesAreMissing() {
+        LogConfig logConfig = createLogConfig("a", 1, 10);
+        mController.manage(logConfig, 10, 40, 0);
+
+        // every third sample arrives
+        receive(logConfig, 20, 30);
+        assertSame(logConfig, mController.update(null));
+        assertEquals(20, logConfig.getPeriodInMs());
+        assertEquals(1.0 / 3, mController.getDeliveryRatio(logConfig), 0.05);
+
+        receive(logConfig, 20, 60);
+        assertSame(logConfig, mController.update(null));
+        assertEquals(40, logConfig.getPeriodInMs());
+
+        // max period reached
+        receive(logConfig, 20, 120);
+        assertNull(mController.update(null));
+        assertEquals(40, logConfig.getPeriodInMs());
+        assertEquals(2, mController.getPeriodChangeCount());
+    }
+
+    @Test
+    public void testPriorities() {
+        LogConfig important = createLogConfig("important", 1, 10);
+        LogConfig optional = createLogConfig("optional", 2, 10);
+        mController.manage(important, 10, 100, 10);
+        mController.manage(optional, 10, 100, 0);
+        mController.setHoldOffUpdates(1);
+
+        // the lossy log config is not necessarily the one that is slowed down
+        receive(important, 20, 20);
+        receive(optional, 20, 10);
+        assertSame(optional, mController.update(null));
+        assertEquals(20, optional.getPeriodInMs());
+        assertEquals(10, important.getPeriodInMs());
+
+        // held off
+        receive(important, 20, 10);
+        receive(optional, 20, 20);
+        assertNull(mController.update(null));
+
+        receive(important, 20, 10);
+        receive(optional, 20, 20);
+        assertSame(optional, mController.update(null));
+        assertEquals(10, optional.getPeriodInMs());
+    }
+
+    @Test
+    public void testLinkSaturation() {
+        LogConfig logConfig = createLogConfig("a", 1, 100);
+        mController.manage(logConfig, 100, 400, 0);
+        mController.setHoldOffUpdates(0);
+
+        LinkStatisticsRecorder recorder = new LinkStatisticsRecorder();
+        // idle link, the period is already at its minimum
+        for (int i = 0; i < 100; i++) {
+            recorder.recordRoundTrip(1000, true, 0);
+            recorder.recordEmptyAck();
+        }
+        receive(logConfig, 10, 100);
+        assertNull(mController.update(recorder.snapshot(0, 0)));
+
+        for (int i = 0; i < 100; i++) {
+            recorder.recordRoundTrip(1000, true, 0);
+        }
+        // no new empty acks, every ack carries data
+        receive(logConfig, 10, 100);
+        assertSame(logConfig, mController.update(recorder.snapshot(0, 0)));
+        assertEquals(200, logConfig.getPeriodInMs());
+
+        // half of the new acks are empty
+        for (int i = 0; i < 100; i++) {
+            recorder.recordRoundTrip(1000, true, 0);
+            if (i % 2 == 0) {
+                recorder.recordEmptyAck();
+            }
+        }
+        receive(logConfig, 10, 200);
+        assertSame(logConfig, mController.update(recorder.snapshot(0, 0)));
+        assertEquals(100, logConfig.getPeriodInMs());
+    }
+
+    @Test
+    public void testPeriodChangeRestartsLogConfig() throws InterruptedException {
+        mDriver.connect(null);
+        LogConfig logConfig = createLogConfig("a", 7, 10);
+        mController.manage(logConfig, 10, 100, 0);
+        receive(logConfig, 10, 50);
+        assertSame(logConfig, mController.update(null));
+
+        CrtpPacket stop = mDriver.pollSentPacket(1000);
+        assertNotNull(stop);
+        assertEquals(4, stop.getPayload()[0]);
+        assertEquals(7, stop.getPayload()[1]);
+        CrtpPacket start = mDriver.pollSentPacket(1000);
+        assertNotNull(start);
+        assertEquals(3, start.getPayload()[0]);
+        assertEquals(7, start.getPayload()[1]);
+        assertEquals(2, start.getPayload()[2]);
+    }
+
+    @Test
+    public void testWithoutEmptyAckReports() {
+        LogConfig logConfig = createLogConfig("a", 1, 100);
+        mController.manage(logConfig, 20, 400, 0);
+
+        // a driver that does not report empty acks
+        LinkStatisticsRecorder recorder = new LinkStatisticsRecorder();
+        for (int i = 0; i < 100; i++) {
+            recorder.recordRoundTrip(1000, true, 0);
+        }
+        receive(logConfig, 10, 100);
+        assertSame(logConfig, mController.update(recorder.snapshot(0, 0)));
+        assertEquals(50, logConfig.getPeriodInMs());
+    }
+
+    @Test
+    public void testRadioDriverStatistics() throws InterruptedException {
+        InMemoryUsbInterface usbInterface = new InMemoryUsbInterface();
+        RadioDriver radioDriver = new RadioDriver(usbInterface);
+        LogPeriodController controller = new Logg(new Crazyflie(radioDriver)).getPeriodController();
+        LogConfig logConfig = createLogConfig("a", 1, 100);
+        controller.manage(logConfig, 20, 400, 0);
+        controller.setHoldOffUpdates(0);
+
+        radioDriver.connect(new ConnectionData(10, Crazyradio.DR_2MPS));
+        try {
+            // idle link, only empty acks
+            assertTrue(usbInterface.awaitBulkTransfers(20, 2000));
+            assertSame(logConfig, controller.update(radioDriver.getLinkStatistics()));
+            assertEquals(50, logConfig.getPeriodInMs());
+
+            // saturated downlink, every ack carries a console packet
+            long transfers = usbInterface.getBulkTransferCount();
+            for (int i = 0; i < 1000; i++) {
+                usbInterface.injectAck(new byte[] {0x01, 0x00, 'x'});
+            }
+            assertTrue(usbInterface.awaitBulkTransfers(transfers + 1000, 2000));
+            assertSame(logConfig, controller.update(radioDriver.getLinkStatistics()));
+            assertEquals(100, logConfig.getPeriodInMs());
+        } finally {
+            radioDriver.disconnect();
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.InMemoryDriver;
+import se.bitcraze.crazyflie.lib.crazyflie.Crazyflie;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.toc.Toc;
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+public class LogSubscriptionTest {
+
+    private Logg mLogg;
+    private List<Map<String, Number>> mFrames = new ArrayList<Map<String, Number>>();
+
+    @Before
+    public void setUp() {
+        mLogg = new Logg(new Crazyflie(new InMemoryDriver()));
+        // reply to the logging reset creates the TOC
+        mLogg.newPacketReceived(new CrtpPacket((byte) 0x51, new byte[] {5, 0, 0}));
+        Toc toc = mLogg.getToc();
+        for (int i = 0; i < 20; i++) {
+            addTocElement(toc, i, "motion", "f" + i, VariableType.FLOAT);
+        }
+        for (int i = 0; i < 3; i++) {
+            addTocElement(toc, 20 + i, "pm", "u" + i, VariableType.UINT8_T);
+        }
+    }
+
+    private static void addTocElement(Toc toc, int ident, String group, String name, VariableType type) {
+        LogTocElement tocElement = new LogTocElement();
+        tocElement.setIdent(ident);
+        tocElement.setGroup(group);
+        tocElement.setName(name);
+        tocElement.setCtype(type);
+        toc.addElement(tocElement);
+    }
+
+    private static List<LogVariable> createVariables(VariableType... types) {
+        List<LogVariable> logVariables = new ArrayList<LogVariable>();
+        for (int i = 0; i < types.length; i++) {
+            logVariables.add(new LogVariable("v" + i, types[i]));
+        }
+        return logVariables;
+    }
+
+    @Test
+    public void testPacker() {
+        VariableType[] types = new VariableType[40];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = VariableType.FLOAT;
+        }
+        // 160 bytes need at least 7 blocks of 26 bytes
+        List<List<LogVariable>> blocks = LogBlockPacker.pack(createVariables(types), 26, 14);
+        assertEquals(7, blocks.size());
+
+        // 6 doubles and 2 uint16 fill two blocks completely
+        blocks = LogBlockPacker.pack(createVariables(VariableType.DOUBLE, VariableType.UINT16_T, VariableType.DOUBLE,
+                VariableType.DOUBLE, VariableType.UINT16_T, VariableType.DOUBLE, VariableType.DOUBLE, VariableType.DOUBLE), 26, 14);
+        assertEquals(2, blocks.size());
+
+        // the number of variables per block is limited as well
+        types = new VariableType[15];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = VariableType.UINT8_T;
+        }
+        blocks = LogBlockPacker.pack(createVariables(types), 26, 14);
+        assertEquals(2, blocks.size());
+        assertEquals(14, blocks.get(0).size());
+    }
+
+    private LogSubscription subscribe() {
+        LogSubscription subscription = new LogSubscription("test", 10);
+        for (int i = 0; i < 20; i++) {
+            subscription.addVariable("motion.f" + i);
+        }
+        for (int i = 0; i < 3; i++) {
+            subscription.addVariable("pm.u" + i, 100);
+        }
+        subscription.addListener(new LogSubscriptionListener() {
+            public void logFrameReceived(LogSubscription subscription, int periodInMs, Map<String, Number> data, int timestamp) {
+                if (periodInMs == 10) {
+                    mFrames.add(data);
+                }
+            }
+        });
+        assertTrue(mLogg.subscribe(subscription));
+        return subscription;
+    }
+
+    private void sendLogData(LogConfig logConfig, int timestamp) {
+        ByteBuffer buffer = ByteBuffer.allocate(30).order(CrtpPacket.BYTE_ORDER);
+        buffer.put((byte) logConfig.getId());
+        buffer.put((byte) timestamp).put((byte) 0).put((byte) 0);
+        for (LogVariable logVariable : logConfig.getLogVariables()) {
+            int index = Integer.parseInt(logVariable.getName().substring(logVariable.getName().indexOf('.') + 2));
+            logVariable.getVariableType().put(buffer, buffer.position(), index);
+            buffer.position(buffer.position() + logVariable.getVariableType().getSize());
+        }
+        mLogg.newPacketReceived(new CrtpPacket((byte) 0x52, buffer.array()));
+    }
+
+    @Test
+    public void testSubscribe() {
+        LogSubscription subscription = subscribe();
+
+        // 20 floats in 4 log configs and 3 uint8 in one
+        List<LogConfig> logConfigs = subscription.getLogConfigs();
+        assertEquals(5, logConfigs.size());
+        assertEquals(5, mLogg.getLogConfigs().size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(1, logConfigs.get(i).getPeriod());
+        }
+        assertEquals(10, logConfigs.get(4).getPeriod());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(mFrames.isEmpty());
+            sendLogData(logConfigs.get(i), 7);
+        }
+        assertEquals(1, mFrames.size());
+        assertEquals(20, mFrames.get(0).size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals((float) i, mFrames.get(0).get("motion.f" + i));
+        }
+
+        // timestamps within half the period are merged
+        for (int i = 0; i < 4; i++) {
+            sendLogData(logConfigs.get(i), 17 + i);
+        }
+        assertEquals(2, mFrames.size());
+
+        // a frame with a missing log config is dropped once it timed out
+        sendLogData(logConfigs.get(0), 27);
+        sendLogData(logConfigs.get(1), 27);
+        for (int i = 0; i < 4; i++) {
+            sendLogData(logConfigs.get(i), 37);
+        }
+        assertEquals(2, mFrames.size());
+        for (int i = 0; i < 4; i++) {
+            sendLogData(logConfigs.get(i), 57);
+        }
+        assertEquals(4, mFrames.size());
+        assertEquals(1, subscription.getIncompleteFrameCount());
+    }
+
+    @Test
+    public void testUnsubscribe() {
+        LogSubscription subscription = subscribe();
+        List<LogConfig> logConfigs = subscription.getLogConfigs();
+        mLogg.unsubscribe(subscription);
+        assertTrue(subscription.getLogConfigs().isEmpty());
+        assertTrue(mLogg.getLogConfigs().isEmpty());
+        assertFalse(logConfigs.get(0).isAdded());
+    }
+
+    @Test
+    public void testSlowVariable() {
+        LogSubscription subscription = new LogSubscription("test");
+        subscription.addVariable("pm.u0", 5000);
+        subscription.addVariable("pm.u1", 2540);
+        assertTrue(mLogg.subscribe(subscription));
+        // both are logged at the slowest period of the firmware
+        List<LogConfig> logConfigs = subscription.getLogConfigs();
+        assertEquals(1, logConfigs.size());
+        assertEquals(254, logConfigs.get(0).getPeriod());
+        assertEquals(2, logConfigs.get(0).getLogVariables().size());
+    }
+
+    @Test
+    public void testUnknownVariable() {
+        LogSubscription subscription = new LogSubscription("test");
+        subscription.addVariable("motion.f0");
+        subscription.addVariable("motion.unknown");
+        assertFalse(mLogg.subscribe(subscription));
+        assertTrue(mLogg.getLogConfigs().isEmpty());
+    }
+
+}
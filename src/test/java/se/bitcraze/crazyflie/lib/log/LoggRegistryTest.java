@@ -0,0 +1,143 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.InMemoryDriver;
+import se.bitcraze.crazyflie.lib.crazyflie.Crazyflie;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+public class LoggRegistryTest {
+
+    private Logg mLogg;
+
+    @Before
+    public void setUp() {
+        mLogg = new Logg(new Crazyflie(new InMemoryDriver()));
+    }
+
+    private static LogConfig createLogConfig(String name) {
+        LogConfig logConfig = new LogConfig(name, 10);
+        logConfig.addMemory(name + ".value", VariableType.UINT16_T, 0);
+        return logConfig;
+    }
+
+    private static CrtpPacket createLogDataPacket(int id) {
+        return new CrtpPacket((byte) 0x52, new byte[] {(byte) id, 0, 0, 0, 1, 0});
+    }
+
+    @Test
+    public void testUniqueIds() {
+        Set<Integer> ids = new HashSet<Integer>();
+        for (int i = 0; i < Logg.MAX_LOG_CONFIGS - 1; i++) {
+            LogConfig logConfig = createLogConfig("config" + i);
+            mLogg.addConfig(logConfig);
+            assertTrue(logConfig.isValid());
+            assertTrue(logConfig.getId() > 0 && logConfig.getId() < Logg.MAX_LOG_CONFIGS);
+            assertTrue(ids.add(logConfig.getId()));
+            assertSame(logConfig, mLogg.getLogConfig(logConfig.getId()));
+        }
+        assertEquals(Logg.MAX_LOG_CONFIGS - 1, mLogg.getLogConfigs().size());
+
+        // all IDs are in use
+        LogConfig logConfig = createLogConfig("full");
+        mLogg.addConfig(logConfig);
+        assertFalse(logConfig.isValid());
+
+        // a deleted config frees its ID
+        LogConfig deleted = mLogg.getLogConfig(42);
+        mLogg.delete(deleted);
+        assertNull(mLogg.getLogConfig(42));
+        mLogg.addConfig(logConfig);
+        assertTrue(logConfig.isValid());
+        assertEquals(42, logConfig.getId());
+    }
+
+    @Test
+    public void testAddTwice() {
+        LogConfig logConfig = createLogConfig("config");
+        mLogg.addConfig(logConfig);
+        int id = logConfig.getId();
+        mLogg.addConfig(logConfig);
+        assertEquals(id, logConfig.getId());
+        assertEquals(1, mLogg.getLogConfigs().size());
+    }
+
+    @Test
+    public void testDeleteWhileStreaming() throws InterruptedException {
+        final LogConfig logConfig = createLogConfig("config");
+        mLogg.addConfig(logConfig);
+        final int id = logConfig.getId();
+        final AtomicInteger received = new AtomicInteger();
+        mLogg.addLogListener(new LogAdapter() {
+            @Override
+            public void logDataReceived(LogConfig logConfig, Map<String, Number> data, int timestamp) {
+                assertEquals(1, data.get("config.value").intValue());
+                received.incrementAndGet();
+            }
+        });
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 0; i < 1000; i++) {
+                    mLogg.delete(logConfig);
+                    mLogg.addConfig(logConfig);
+                }
+            }
+        });
+        thread.start();
+        int sent = 0;
+        while (thread.isAlive()) {
+            mLogg.newPacketReceived(createLogDataPacket(id));
+            sent++;
+        }
+        thread.join();
+
+        // re-adding assigns the next free ID
+        assertTrue(received.get() <= sent);
+        assertSame(logConfig, mLogg.getLogConfig(logConfig.getId()));
+        assertEquals(1, mLogg.getLogConfigs().size());
+        int before = received.get();
+        mLogg.newPacketReceived(createLogDataPacket(logConfig.getId()));
+        assertEquals(before + 1, received.get());
+    }
+
+}
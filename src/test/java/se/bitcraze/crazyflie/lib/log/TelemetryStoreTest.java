@@ -0,0 +1,219 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.log;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+public class TelemetryStoreTest {
+
+    private LogConfig mLogConfig;
+    private TelemetryStore mStore;
+
+    @Before
+    public void setUp() {
+        mLogConfig = new LogConfig("test", 10);
+        mLogConfig.addMemory("test.a", VariableType.INT16_T, 0);
+        mLogConfig.addMemory("test.b", VariableType.FLOAT, 2);
+        mStore = new TelemetryStore(10);
+    }
+
+    private void receive(int timestamp, int a, float b) {
+        byte[] data = new byte[6];
+        VariableType.INT16_T.put(data, 0, a);
+        VariableType.FLOAT.put(data, 2, b);
+        LogRecord record = mLogConfig.getRecord();
+        record.decode(data, 0, timestamp);
+        mStore.logRecordReceived(record);
+    }
+
+    @Test
+    public void testRingBuffer() {
+        for (int i = 0; i < 15; i++) {
+            receive(i * 10, i, i / 2f);
+        }
+        assertEquals(Arrays.asList("test.a", "test.b"), mStore.getVariableNames());
+        assertEquals(10, mStore.size("test.a"));
+        assertEquals(0, mStore.size("test.unknown"));
+        assertEquals(140, mStore.getLatestTimestamp("test.a"));
+        assertEquals(7, mStore.getLatest("test.b"), 0);
+        assertEquals(3 * 10 * 8, mStore.getMemoryUsage());
+
+        // only the last 10 samples are kept
+        long[] timestamps = new long[20];
+        double[] values = new double[20];
+        assertEquals(10, mStore.query("test.a", 0, 1000, timestamps, values));
+        assertEquals(50, timestamps[0]);
+        assertEquals(5, values[0], 0);
+        assertEquals(140, timestamps[9]);
+        assertEquals(14, values[9], 0);
+
+        // inclusive range
+        assertEquals(3, mStore.query("test.a", 60, 80, timestamps, values));
+        assertArrayEquals(new double[] {6, 7, 8}, Arrays.copyOf(values, 3), 0);
+        assertEquals(0, mStore.query("test.a", 141, 1000, timestamps, values));
+
+        // limited by the target array
+        double[] small = new double[2];
+        assertEquals(2, mStore.query("test.a", 0, 1000, null, small));
+        assertArrayEquals(new double[] {5, 6}, small, 0);
+    }
+
+    @Test
+    public void testStatistics() {
+        for (int i = 0; i < 10; i++) {
+            receive(i * 10, i % 2 == 0 ? i : -i, 0);
+        }
+        TelemetryStore.Statistics statistics = mStore.getStatistics("test.a", 20, 50);
+        assertEquals(4, statistics.getCount());
+        assertEquals(-5, statistics.getMin(), 0);
+        assertEquals(4, statistics.getMax(), 0);
+        assertEquals((2 - 3 + 4 - 5) / 4.0, statistics.getMean(), 0);
+
+        statistics = mStore.getStatistics("test.a", 1000, 2000);
+        assertEquals(0, statistics.getCount());
+        assertTrue(Double.isNaN(statistics.getMean()));
+    }
+
+    @Test
+    public void testDownsample() {
+        for (int i = 0; i < 10; i++) {
+            receive(i * 10, i, 0);
+        }
+        long[] timestamps = new long[5];
+        double[] min = new double[5];
+        double[] max = new double[5];
+        assertEquals(5, mStore.downsample("test.a", 0, 99, timestamps, min, max));
+        assertArrayEquals(new long[] {0, 20, 40, 60, 80}, timestamps);
+        assertArrayEquals(new double[] {0, 2, 4, 6, 8}, min, 0);
+        assertArrayEquals(new double[] {1, 3, 5, 7, 9}, max, 0);
+
+        // empty buckets are skipped
+        assertEquals(2, mStore.downsample("test.a", 0, 249, timestamps, min, max));
+        assertArrayEquals(new double[] {4, 9}, Arrays.copyOf(max, 2), 0);
+    }
+
+    @Test
+    public void testTimestampWrapAround() {
+        int max = (1 << 24) - 1;
+        receive(max - 10, 1, 0);
+        receive(max, 2, 0);
+        receive(9, 3, 0);
+        assertEquals(max + 10, mStore.getLatestTimestamp("test.a"));
+        assertEquals(2, mStore.query("test.a", max, max + 10, null, new double[3]));
+    }
+
+    private void receive(LogConfig logConfig, int timestamp, float value) {
+        byte[] data = new byte[4];
+        VariableType.FLOAT.put(data, 0, value);
+        LogRecord record = logConfig.getRecord();
+        record.decode(data, 0, timestamp);
+        mStore.logRecordReceived(record);
+    }
+
+    @Test
+    public void testSameVariableInTwoLogConfigs() {
+        LogConfig first = new LogConfig("first", 10);
+        first.addMemory("test.x", VariableType.FLOAT, 0);
+        LogConfig second = new LogConfig("second", 10);
+        second.addMemory("test.x", VariableType.FLOAT, 0);
+        receive(first, 10, 1);
+        receive(second, 15, 2);
+        receive(first, 20, 3);
+        receive(second, 25, 4);
+        // the column of the first log config is not replaced
+        assertEquals(2, mStore.size("test.x"));
+        assertEquals(3, mStore.getLatest("test.x"), 0);
+        assertEquals(20, mStore.getLatestTimestamp("test.x"));
+    }
+
+    @Test
+    public void testSharedTimeBaseAfterWrapAround() {
+        int max = (1 << 24) - 1;
+        receive(max - 10, 1, 0);
+        receive(5, 2, 0);
+        // created after the wrap around
+        LogConfig other = new LogConfig("other", 10);
+        other.addMemory("test.c", VariableType.FLOAT, 0);
+        receive(other, 8, 7);
+        assertEquals(max + 6, mStore.getLatestTimestamp("test.a"));
+        assertEquals(max + 9, mStore.getLatestTimestamp("test.c"));
+        double[] values = new double[2];
+        assertEquals(1, mStore.query("test.c", max, max + 10, null, values));
+        assertEquals(7, values[0], 0);
+    }
+
+    @Test
+    public void testLateRecordsAreDropped() {
+        receive(10, 1, 0);
+        receive(30, 3, 0);
+        receive(20, 2, 0);
+        receive(40, 4, 0);
+        assertEquals(1, mStore.getLateCount());
+        assertEquals(3, mStore.size("test.a"));
+        double[] values = new double[4];
+        long[] timestamps = new long[4];
+        assertEquals(3, mStore.query("test.a", 0, 100, timestamps, values));
+        assertArrayEquals(new long[] {10, 30, 40, 0}, timestamps);
+        assertEquals(2, mStore.query("test.a", 25, 40, null, values));
+    }
+
+    @Test
+    public void testResubscribe() {
+        LogConfig first = new LogConfig("first", 10);
+        first.addMemory("test.x", VariableType.FLOAT, 0);
+        LogConfig other = new LogConfig("other", 10);
+        other.addMemory("test.x", VariableType.FLOAT, 0);
+        for (int i = 0; i < 5; i++) {
+            receive(first, i * 10, 1);
+            receive(other, i * 10 + 5, 2);
+        }
+
+        // new log configs with the same variables replace the old ones, which are no longer received
+        LogConfig second = new LogConfig("second", 10);
+        second.addMemory("test.x", VariableType.FLOAT, 0);
+        LogConfig otherSecond = new LogConfig("other", 10);
+        otherSecond.addMemory("test.x", VariableType.FLOAT, 0);
+        for (int i = 5; i < 200; i++) {
+            receive(second, i * 10, 3);
+            receive(otherSecond, i * 10 + 5, 4);
+        }
+        assertEquals(3, mStore.getLatest("test.x"), 0);
+        assertEquals(1990, mStore.getLatestTimestamp("test.x"));
+        // the tables of the old log configs are dropped
+        assertEquals(2 * 2 * 10 * 8, mStore.getMemoryUsage());
+    }
+
+}
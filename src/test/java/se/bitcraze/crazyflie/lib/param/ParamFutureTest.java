@@ -0,0 +1,214 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.param;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.InMemoryDriver;
+import se.bitcraze.crazyflie.lib.crazyflie.Crazyflie;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket.Header;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPort;
+
+public class ParamFutureTest {
+
+    private static final int READ_CHANNEL = 1;
+    private static final int WRITE_CHANNEL = 2;
+    private static final int SILENT_ID = 99;
+
+    private InMemoryDriver mDriver;
+    private Crazyflie mCrazyflie;
+    private Param mParam;
+    private Thread mResponder;
+
+    // requests (by payload) that are lost the first time they are sent
+    private final Set<String> mDroppedOnce = Collections.synchronizedSet(new HashSet<String>());
+    private final List<String> mWrites = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() {
+        mDriver = new InMemoryDriver();
+        mCrazyflie = new Crazyflie(mDriver);
+        mCrazyflie.connect(10, 0);
+        mParam = new Param(mCrazyflie);
+        for (int i = 0; i < 100; i++) {
+            // uint16 parameters, the last ten are read only
+            byte[] data = ("\0\0g\0p" + i + "\0").getBytes();
+            data[0] = (byte) i;
+            data[1] = (byte) (i < 90 ? 0x09 : 0x49);
+            mParam.getToc().addElement(new ParamTocElement(data));
+        }
+        mResponder = new Thread(new Runnable() {
+            public void run() {
+                respond();
+            }
+        });
+        mResponder.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mResponder.interrupt();
+        mResponder.join();
+        mCrazyflie.disconnect();
+    }
+
+    /**
+     * Reads return 1000 + ID, writes are acknowledged with the written value
+     */
+    private void respond() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                CrtpPacket request = mDriver.pollSentPacket(100);
+                if (request == null || request.getHeader().getPort() != CrtpPort.PARAMETERS) {
+                    continue;
+                }
+                int channel = request.getHeader().getChannel();
+                byte[] payload = request.getPayload();
+                if ((payload[0] & 0xFF) == SILENT_ID) {
+                    continue;
+                }
+                if (channel == WRITE_CHANNEL) {
+                    mWrites.add(Arrays.toString(payload));
+                }
+                if (mDroppedOnce.remove(Arrays.toString(payload))) {
+                    continue;
+                }
+                byte[] reply;
+                if (channel == READ_CHANNEL) {
+                    int value = 1000 + payload[0];
+                    reply = new byte[] {payload[0], (byte) value, (byte) (value >> 8)};
+                } else if (channel == WRITE_CHANNEL) {
+                    reply = payload.clone();
+                } else {
+                    continue;
+                }
+                mDriver.injectPacket(new CrtpPacket(new Header(channel, CrtpPort.PARAMETERS).getByte(), reply));
+            }
+        } catch (InterruptedException e) {
+            // done
+        }
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        Number value = mParam.readValue("g.p12").get(1, TimeUnit.SECONDS);
+        assertEquals(1012, value.intValue());
+        assertEquals(1012, mParam.getValue("g.p12").intValue());
+        assertEquals(Integer.valueOf(1012), mParam.getValuesMap().get("g").get("p12"));
+        assertEquals(1, mParam.getValuesMap().get("g").size());
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        List<CompletableFuture<Number>> futures = new ArrayList<CompletableFuture<Number>>();
+        for (int i = 0; i < 90; i++) {
+            futures.add(mParam.readValue("g.p" + i));
+        }
+        // a second read of the same parameter shares the request
+        futures.add(mParam.readValue("g.p0"));
+        for (int i = 0; i < 90; i++) {
+            assertEquals(1000 + i, futures.get(i).get(2, TimeUnit.SECONDS).intValue());
+        }
+        assertEquals(1000, futures.get(90).get(2, TimeUnit.SECONDS).intValue());
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        Number value = mParam.writeValue("g.p3", 4242).get(1, TimeUnit.SECONDS);
+        assertEquals(4242, value.intValue());
+        assertEquals(4242, mParam.getValue("g.p3").intValue());
+    }
+
+    @Test
+    public void testOverlappingWrites() throws Exception {
+        // the second write is lost the first time it is sent
+        mDroppedOnce.add(Arrays.toString(new byte[] {4, 5, 0}));
+        CompletableFuture<Number> first = mParam.writeValue("g.p4", 3, 30, 3);
+        CompletableFuture<Number> second = mParam.writeValue("g.p4", 5, 30, 3);
+        assertEquals(3, first.get(1, TimeUnit.SECONDS).intValue());
+        // acknowledged only after it has been resent
+        assertEquals(5, second.get(1, TimeUnit.SECONDS).intValue());
+        assertEquals(5, mParam.getValue("g.p4").intValue());
+        // sent one after the other
+        assertEquals(Arrays.asList("[4, 3, 0]", "[4, 5, 0]", "[4, 5, 0]"), mWrites);
+    }
+
+    @Test
+    public void testInvalidRequests() throws InterruptedException {
+        assertFailure(mParam.writeValue("g.p95", 1), IllegalArgumentException.class);
+        assertFailure(mParam.readValue("g.unknown"), IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testTimeout() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        CompletableFuture<Number> future = mParam.readValue("g.p" + SILENT_ID, 20, 2);
+        assertFailure(future, TimeoutException.class);
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        CompletableFuture<Number> future = mParam.readValue("g.p" + SILENT_ID, 20, 1);
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+        // the request still times out without affecting the cancelled future
+        Thread.sleep(100);
+        assertTrue(future.isCancelled());
+        assertEquals(1001, mParam.readValue("g.p1").get(1, TimeUnit.SECONDS).intValue());
+    }
+
+    private static void assertFailure(CompletableFuture<Number> future, Class<? extends Throwable> cause) throws InterruptedException {
+        try {
+            future.get(2, TimeUnit.SECONDS);
+            fail("Expected " + cause.getSimpleName());
+        } catch (ExecutionException e) {
+            assertEquals(cause, e.getCause().getClass());
+        } catch (TimeoutException e) {
+            fail("Future has not completed");
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.param;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.InMemoryDriver;
+import se.bitcraze.crazyflie.lib.crazyflie.Crazyflie;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket.Header;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPort;
+
+public class ParamReaderTest {
+
+    private static final int READ_CHANNEL = 1;
+    private static final int PARAM_COUNT = 200;
+
+    private InMemoryDriver mDriver;
+    private Crazyflie mCrazyflie;
+    private Param mParam;
+    private Thread mResponder;
+
+    private final AtomicInteger mMaxInFlight = new AtomicInteger();
+    private final Set<Integer> mDroppedOnce = new HashSet<Integer>(Arrays.asList(5, 150));
+    private final Set<Integer> mNeverAnswered = new HashSet<Integer>(Arrays.asList(7));
+
+    @Before
+    public void setUp() {
+        mDriver = new InMemoryDriver();
+        mCrazyflie = new Crazyflie(mDriver);
+        mCrazyflie.connect(10, 0);
+        mParam = new Param(mCrazyflie);
+        for (int i = 0; i < PARAM_COUNT; i++) {
+            // uint8 parameters named g.p<id>
+            byte[] name = ("\0\0g\0p" + i + "\0").getBytes();
+            name[0] = (byte) i;
+            name[1] = 0x08;
+            mParam.getToc().addElement(new ParamTocElement(name));
+        }
+        mResponder = new Thread(new Runnable() {
+            public void run() {
+                respond();
+            }
+        });
+        mResponder.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mResponder.interrupt();
+        mResponder.join();
+        mCrazyflie.disconnect();
+    }
+
+    /**
+     * Answer read requests like a Crazyflie, tracking the number of requests in flight
+     */
+    private void respond() {
+        Set<Integer> inFlight = new HashSet<Integer>();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                CrtpPacket request = mDriver.pollSentPacket(100);
+                if (request == null || request.getHeader().getPort() != CrtpPort.PARAMETERS
+                        || request.getHeader().getChannel() != READ_CHANNEL) {
+                    continue;
+                }
+                int id = request.getPayload()[0] & 0xFF;
+                if (mNeverAnswered.contains(id)) {
+                    continue;
+                }
+                inFlight.add(id);
+                mMaxInFlight.set(Math.max(mMaxInFlight.get(), inFlight.size()));
+                if (mDroppedOnce.remove(id)) {
+                    continue;
+                }
+                inFlight.remove(id);
+                mDriver.injectPacket(new CrtpPacket(new Header(READ_CHANNEL, CrtpPort.PARAMETERS).getByte(), new byte[] {(byte) id, (byte) (id + 1)}));
+            }
+        } catch (InterruptedException e) {
+            // done
+        }
+    }
+
+    @Test
+    public void testReadAll() throws Exception {
+        final AtomicInteger progressCount = new AtomicInteger();
+        final CountDownLatch finished = new CountDownLatch(1);
+        ParamReader reader = mParam.readAll(8, 30, 3, new ParamReaderListener() {
+            public void progress(ParamReader reader, int completed, int total) {
+                progressCount.incrementAndGet();
+                assertEquals(PARAM_COUNT, total);
+            }
+
+            public void finished(ParamReader reader) {
+                finished.countDown();
+            }
+        });
+
+        assertEquals(Integer.valueOf(PARAM_COUNT - 1), reader.get(5, TimeUnit.SECONDS));
+        assertTrue(finished.await(1, TimeUnit.SECONDS));
+        assertTrue(reader.isDone());
+        assertEquals(PARAM_COUNT, progressCount.get());
+        assertEquals(Arrays.asList("g.p7"), reader.getFailedNames());
+        assertEquals(0, reader.getInFlightCount());
+        assertTrue(mMaxInFlight.get() <= 8);
+
+        // dropped requests have been resent and all values are stored
+        assertEquals(6, mParam.getValue("g.p5").intValue());
+        assertEquals(151, mParam.getValue("g.p150").intValue());
+        assertEquals(200, mParam.getValue("g.p199").intValue());
+        assertFalse(mParam.checkIfAllUpdated());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        mNeverAnswered.addAll(Arrays.asList(0, 1, 2, 3));
+        ParamReader reader = mParam.readAll(4, 1000, 0, null);
+        assertTrue(reader.cancel(false));
+        assertTrue(reader.isDone());
+        assertTrue(reader.isCancelled());
+        assertFalse(reader.cancel(false));
+        Thread.sleep(50);
+        // no requests after the first window
+        assertTrue(reader.getReadCount() == 0);
+    }
+
+}
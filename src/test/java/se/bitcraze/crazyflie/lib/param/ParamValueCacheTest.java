@@ -0,0 +1,266 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package se.bitcraze.crazyflie.lib.param;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import se.bitcraze.crazyflie.lib.InMemoryDriver;
+import se.bitcraze.crazyflie.lib.crazyflie.Crazyflie;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPacket.Header;
+import se.bitcraze.crazyflie.lib.crtp.CrtpPort;
+import se.bitcraze.crazyflie.lib.toc.Toc;
+import se.bitcraze.crazyflie.lib.toc.TocCache;
+import se.bitcraze.crazyflie.lib.toc.TocFetchFinishedListener;
+import se.bitcraze.crazyflie.lib.toc.TocFetcher;
+
+public class ParamValueCacheTest {
+
+    private static final int READ_CHANNEL = 1;
+    private static final int PARAM_COUNT = 40;
+    private static final int CRC = 0x12345678;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private InMemoryDriver mDriver;
+    private Crazyflie mCrazyflie;
+    private Param mParam;
+    private Thread mResponder;
+
+    private final List<Integer> mRequestedIds = Collections.synchronizedList(new ArrayList<Integer>());
+    // read requests are answered when released
+    private volatile CountDownLatch mReleaseReads = new CountDownLatch(0);
+
+    @Before
+    public void setUp() {
+        // uint8 parameters a.p<id> and b.p<id>, cached values are 50 + id
+        Toc toc = new Toc();
+        Map<String, Number> values = new HashMap<String, Number>();
+        for (int i = 0; i < PARAM_COUNT; i++) {
+            ParamTocElement tocElement = createTocElement(i);
+            toc.addElement(tocElement);
+            values.put(tocElement.getCompleteName(), 50 + i);
+        }
+        TocCache tocCache = new TocCache(mFolder.getRoot());
+        tocCache.insert(CRC, CrtpPort.PARAMETERS, toc);
+        tocCache.insertValues(CRC, values);
+
+        mDriver = new InMemoryDriver();
+        mCrazyflie = new Crazyflie(mDriver);
+        mCrazyflie.connect(10, 0);
+        mParam = new Param(mCrazyflie);
+        mResponder = new Thread(new Runnable() {
+            public void run() {
+                respond();
+            }
+        });
+        mResponder.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mResponder.interrupt();
+        mResponder.join();
+        mCrazyflie.disconnect();
+    }
+
+    private ParamTocElement createTocElement(int id) {
+        String group = (id < PARAM_COUNT / 2) ? "a" : "b";
+        byte[] data = ("\0\0" + group + "\0p" + id + "\0").getBytes();
+        data[0] = (byte) id;
+        data[1] = 0x08;
+        return new ParamTocElement(data);
+    }
+
+    /**
+     * Answer TOC info and read requests like a Crazyflie, the values read are id + 1
+     */
+    private void respond() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                CrtpPacket request = mDriver.pollSentPacket(100);
+                if (request == null || request.getHeader().getPort() != CrtpPort.PARAMETERS) {
+                    continue;
+                }
+                int channel = request.getHeader().getChannel();
+                if (channel == TocFetcher.TOC_CHANNEL && request.getPayload()[0] == TocFetcher.CMD_TOC_INFO) {
+                    ByteBuffer info = ByteBuffer.allocate(6);
+                    info.put((byte) TocFetcher.CMD_TOC_INFO).put((byte) PARAM_COUNT).putInt(CRC);
+                    mDriver.injectPacket(new CrtpPacket(request.getHeaderByte(), info.array()));
+                } else if (channel == READ_CHANNEL) {
+                    int id = request.getPayload()[0] & 0xFF;
+                    mRequestedIds.add(id);
+                    mReleaseReads.await();
+                    mDriver.injectPacket(new CrtpPacket(new Header(READ_CHANNEL, CrtpPort.PARAMETERS).getByte(), new byte[] {(byte) id, (byte) (id + 1)}));
+                }
+            }
+        } catch (InterruptedException e) {
+            // done
+        }
+    }
+
+    private void refreshToc(final AtomicReference<Number> valueAtFinish, final AtomicReference<Boolean> staleAtFinish) throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(1);
+        mParam.refreshToc(new TocFetchFinishedListener(CrtpPort.PARAMETERS) {
+            public void tocFetchFinished() {
+                valueAtFinish.set(mParam.getValue("a.p3"));
+                staleAtFinish.set(mParam.isStale("a.p3"));
+                finished.countDown();
+            }
+        }, new TocCache(mFolder.getRoot()));
+        assertTrue(finished.await(2, TimeUnit.SECONDS));
+    }
+
+    private void waitUntilAllUpdated() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!mParam.checkIfAllUpdated() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(mParam.checkIfAllUpdated());
+    }
+
+    @Test
+    public void testWarmStart() throws Exception {
+        mParam.setValueCacheEnabled(true);
+        mParam.addParamListener(new ParamListener("b", null) {
+            public void updated(String name, Number value) {
+            }
+        });
+        AtomicReference<Number> valueAtFinish = new AtomicReference<Number>();
+        AtomicReference<Boolean> staleAtFinish = new AtomicReference<Boolean>();
+        refreshToc(valueAtFinish, staleAtFinish);
+
+        // cached values are available as soon as the TOC is
+        assertEquals(53, valueAtFinish.get().intValue());
+        assertTrue(staleAtFinish.get());
+
+        waitUntilAllUpdated();
+        assertEquals(4, mParam.getValue("a.p3").intValue());
+        assertFalse(mParam.isStale("a.p3"));
+        assertEquals(0, mParam.getValueStore().getStaleCount());
+
+        // the subscribed group is read first
+        for (int i = 0; i < PARAM_COUNT / 2; i++) {
+            assertTrue(mRequestedIds.get(i) >= PARAM_COUNT / 2);
+        }
+
+        // the refreshed values are saved
+        Map<String, Number> cachedValues = waitForCachedValue("a.p3", 4);
+        assertEquals(4, cachedValues.get("a.p3").intValue());
+        assertEquals(PARAM_COUNT, cachedValues.size());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        AtomicReference<Number> valueAtFinish = new AtomicReference<Number>();
+        AtomicReference<Boolean> staleAtFinish = new AtomicReference<Boolean>();
+        refreshToc(valueAtFinish, staleAtFinish);
+
+        assertEquals(PARAM_COUNT, mParam.getToc().getTocSize());
+        // no values
+        assertEquals(-2, valueAtFinish.get().intValue());
+        assertFalse(staleAtFinish.get());
+        Thread.sleep(100);
+        assertTrue(mRequestedIds.isEmpty());
+        assertNull(new TocCache(mFolder.getRoot()).fetchValues(CRC + 1));
+    }
+
+    private Map<String, Number> waitForCachedValue(String completeName, int value) throws InterruptedException {
+        Map<String, Number> cachedValues = null;
+        long deadline = System.currentTimeMillis() + 2000;
+        while (System.currentTimeMillis() < deadline) {
+            cachedValues = new TocCache(mFolder.getRoot()).fetchValues(CRC);
+            // null while the file is written
+            if (cachedValues != null && cachedValues.get(completeName).intValue() == value) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+        return cachedValues;
+    }
+
+    @Test
+    public void testCacheSavedByLaterReadAll() throws Exception {
+        mParam.setValueCacheEnabled(true);
+        mReleaseReads = new CountDownLatch(1);
+        refreshToc(new AtomicReference<Number>(), new AtomicReference<Boolean>());
+
+        // the app reads all parameters after the setup, which cancels the warm start
+        ParamReader reader = mParam.readAll(null);
+        mReleaseReads.countDown();
+        assertEquals(Integer.valueOf(PARAM_COUNT), reader.get(5, TimeUnit.SECONDS));
+        Map<String, Number> cachedValues = waitForCachedValue("b.p30", 31);
+        assertEquals(31, cachedValues.get("b.p30").intValue());
+        assertEquals(PARAM_COUNT, cachedValues.size());
+    }
+
+    @Test
+    public void testListenerAddedAfterSetupIsPrioritized() throws Exception {
+        mParam.setValueCacheEnabled(true);
+        mReleaseReads = new CountDownLatch(1);
+        refreshToc(new AtomicReference<Number>(), new AtomicReference<Boolean>());
+
+        // the first window has been requested, the listener is added after the setup has finished
+        mParam.addParamListener(new ParamListener("b", null) {
+            public void updated(String name, Number value) {
+            }
+        });
+        mReleaseReads.countDown();
+        waitUntilAllUpdated();
+
+        int window = Param.DEFAULT_READ_WINDOW;
+        for (int i = 0; i < window; i++) {
+            assertEquals(i, mRequestedIds.get(i).intValue());
+        }
+        for (int i = window; i < window + PARAM_COUNT / 2; i++) {
+            assertTrue(mRequestedIds.get(i) >= PARAM_COUNT / 2);
+        }
+        assertEquals(PARAM_COUNT, mRequestedIds.size());
+    }
+
+}
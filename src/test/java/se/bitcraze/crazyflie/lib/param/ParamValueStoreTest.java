@@ -0,0 +1,134 @@
+/**
+ *    ||          ____  _ __
+ * +------+      / __ )(_) /_______________ _____  ___
+ * | 0xBC |     / __  / / __/ ___/ ___/ __ `/_  / / _ \
+ * +------+    / /_/ / / /_/ /__/ /  / /_/ / / /_/  __/
+ *  ||  ||    /_____/_/\__/\___/_/   \__,_/ /___/\___/
+ *
+ * Copyright (C) 2015 Bitcraze AB
+ *
+ * Crazyflie Nano Quadcopter Client
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package se.bitcraze.crazyflie.lib.param;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import se.bitcraze.crazyflie.lib.toc.VariableType;
+
+public class ParamValueStoreTest {
+
+    @Test
+    public void testUpdate() {
+        ParamValueStore store = new ParamValueStore();
+        assertFalse(store.isSet(3));
+        assertNull(store.getNumber(3));
+        assertEquals(0, store.getVersion(3));
+
+        store.update(3, VariableType.UINT16_T, new byte[] {3, (byte) 0xFE, (byte) 0xFF}, 1);
+        assertTrue(store.isSet(3));
+        assertEquals(0xFFFE, store.getLong(3));
+        assertEquals(0xFFFE, store.getDouble(3), 0);
+        assertEquals(Integer.valueOf(0xFFFE), store.getNumber(3));
+        assertEquals(VariableType.UINT16_T, store.getType(3));
+        int version = store.getVersion(3);
+        assertTrue(version > 0);
+
+        store.update(200, VariableType.FLOAT, 2.75f);
+        assertEquals(2.75, store.getDouble(200), 0);
+        assertEquals(2, store.getLong(200));
+        assertEquals(Float.valueOf(2.75f), store.getNumber(200));
+        assertEquals(2, store.getCount());
+
+        store.update(3, VariableType.UINT16_T, 7);
+        assertTrue(store.getVersion(3) > version);
+        assertEquals(2, store.getCount());
+
+        store.clear();
+        assertEquals(0, store.getCount());
+        assertFalse(store.isSet(200));
+        assertEquals(0, store.getVersion(3));
+    }
+
+    @Test
+    public void testStale() {
+        ParamValueStore store = new ParamValueStore();
+        store.updateStale(4, VariableType.INT8_T, -3);
+        store.updateStale(5, VariableType.FLOAT, 0.1);
+        assertTrue(store.isStale(4));
+        assertEquals(-3, store.getLong(4));
+        assertEquals(Float.valueOf(0.1f), store.getNumber(5));
+        assertEquals(2, store.getCount());
+        assertEquals(2, store.getStaleCount());
+
+        store.update(4, VariableType.INT8_T, new byte[] {2}, 0);
+        assertFalse(store.isStale(4));
+        assertEquals(2, store.getCount());
+        assertEquals(1, store.getStaleCount());
+
+        store.clear();
+        assertFalse(store.isStale(5));
+        assertEquals(0, store.getStaleCount());
+    }
+
+    @Test
+    public void testBoxedTypesMatchParse() {
+        ParamValueStore store = new ParamValueStore();
+        byte[] data = new byte[] {(byte) 0xF0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 1, 0, 0, 0};
+        for (VariableType type : VariableType.values()) {
+            store.update(1, type, data, 0);
+            assertEquals(type.name(), type.parse(data, 0), store.getNumber(1));
+        }
+    }
+
+    @Test
+    public void testConsistentReads() throws InterruptedException {
+        final ParamValueStore store = new ParamValueStore();
+        store.update(5, VariableType.INT32_T, 1);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                // switch between a float and a double with the same value
+                for (int i = 0; running.get(); i++) {
+                    if (i % 2 == 0) {
+                        store.update(5, VariableType.FLOAT, 1.5f);
+                    } else {
+                        store.update(5, VariableType.DOUBLE, 1.5);
+                    }
+                }
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 100000; i++) {
+                double value = store.getDouble(5);
+                assertTrue("Torn read: " + value, value == 1.5 || value == 1);
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+}
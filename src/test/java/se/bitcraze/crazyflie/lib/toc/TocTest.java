@@ -28,8 +28,12 @@
 package se.bitcraze.crazyflie.lib.toc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -144,4 +148,68 @@ public class TocTest {
         mToc.clear();
         assertEquals(0, mToc.getTocSize());
     }
+
+    @Test
+    public void testGetElementByIdAfterReplace() {
+        TocElement replacement = createTocElement("testGroup", "testName", 7);
+        mToc.addElement(replacement);
+        assertEquals(1, mToc.getTocSize());
+        assertNull(mToc.getElementById(1));
+        assertSame(replacement, mToc.getElementById(7));
+        assertNull(mToc.getElementById(-1));
+    }
+
+    @Test
+    public void testGetElementByIdHighIdent() {
+        TocElement tocElement = createTocElement("testGroup", "high", 300);
+        mToc.addElement(tocElement);
+        assertSame(tocElement, mToc.getElementById(300));
+        assertEquals(2, mToc.getElements().size());
+    }
+
+    @Test
+    public void testGetElementsSnapshot() {
+        mToc.addElement(createTocElement("testGroup", "testName0", 0));
+        List<TocElement> elements = mToc.getElements();
+        assertSame(elements, mToc.getElements());
+        assertEquals(0, elements.get(0).getIdent());
+        assertEquals(1, elements.get(1).getIdent());
+        try {
+            elements.add(createTocElement("testGroup", "testName2", 2));
+            fail("Snapshot must be immutable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        mToc.addElement(createTocElement("testGroup", "testName2", 2));
+        assertEquals(2, elements.size());
+        assertEquals(3, mToc.getElements().size());
+    }
+
+    @Test
+    public void testSetTocElementMap() {
+        Map<String, TocElement> map = new HashMap<String, TocElement>();
+        TocElement tocElement = createTocElement("cached", "element", 3);
+        map.put(tocElement.getCompleteName(), tocElement);
+        mToc.setTocElementMap(map);
+        assertEquals(1, mToc.getTocSize());
+        assertNull(mToc.getElementById(1));
+        assertSame(tocElement, mToc.getElementById(3));
+        assertSame(tocElement, mToc.getElementByCompleteName("cached.element"));
+    }
+
+    @Test
+    public void testCompleteNameInterned() {
+        TocElement tocElement = createTocElement("test" + "Group", new String("testName"), 1);
+        assertSame("testGroup.testName", tocElement.getCompleteName());
+        tocElement.setName("otherName");
+        assertEquals("testGroup.otherName", tocElement.getCompleteName());
+    }
+
+    private TocElement createTocElement(String group, String name, int ident) {
+        TocElement tocElement = new TocElement();
+        tocElement.setGroup(group);
+        tocElement.setName(name);
+        tocElement.setIdent(ident);
+        return tocElement;
+    }
 }
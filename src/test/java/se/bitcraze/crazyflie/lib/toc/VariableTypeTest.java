@@ -29,8 +29,10 @@ package se.bitcraze.crazyflie.lib.toc;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.junit.Test;
 
@@ -149,6 +151,113 @@ public class VariableTypeTest {
         assertEquals(8, VariableType.INT64_T.getSize());
         assertEquals(4, VariableType.FLOAT.getSize());
         assertEquals(8, VariableType.DOUBLE.getSize());
+        assertEquals(2, VariableType.FP16.getSize());
+    }
+
+    @Test
+    public void testParseConsumesExactWidth() {
+        mBuffer.put(new byte[] {-32, -8, -89, 5, 6, 7, 8, 9});
+        mBuffer.rewind();
+        assertEquals(224, VariableType.UINT8_T.parse(mBuffer));
+        assertEquals(1, mBuffer.position());
+        assertEquals(43000, VariableType.UINT16_T.parse(mBuffer));
+        assertEquals(3, mBuffer.position());
+        assertEquals((byte) 5, VariableType.INT8_T.parse(mBuffer));
+        assertEquals(4, mBuffer.position());
+    }
+
+    @Test
+    public void testAbsoluteAccess() {
+        byte[] data = new byte[] {0, 0, -46, 2, -106, 73, 0, 0};
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length).order(ByteOrder.BIG_ENDIAN);
+        direct.put(data);
+        direct.position(5);
+
+        // independent of buffer type and byte order
+        assertEquals(1234567890L, VariableType.INT32_T.getLong(ByteBuffer.wrap(data), 2));
+        assertEquals(1234567890L, VariableType.INT32_T.getLong(direct, 2));
+        assertEquals(1234567890.0, VariableType.INT32_T.getDouble(data, 2), 0);
+        assertEquals(1234567890, VariableType.INT32_T.parse(direct, 2));
+        assertEquals(5, direct.position());
+
+        VariableType.INT16_T.put(direct, 0, -2);
+        assertEquals(-2, VariableType.INT16_T.getLong(direct, 0));
+        assertEquals(65534, VariableType.UINT16_T.getLong(direct, 0));
+    }
+
+    @Test
+    public void testUint64() {
+        byte[] data = new byte[8];
+        VariableType.UINT64_T.put(data, 0, -1L);
+        assertArrayEquals(new byte[] {-1, -1, -1, -1, -1, -1, -1, -1}, data);
+        assertEquals(-1L, VariableType.UINT64_T.getLong(data, 0));
+        assertEquals(18446744073709551615.0, VariableType.UINT64_T.getDouble(data, 0), 0);
+
+        VariableType.UINT64_T.put(data, 0, 123456789012345L);
+        assertEquals(123456789012345L, VariableType.UINT64_T.parse(data, 0));
+    }
+
+    @Test
+    public void testDouble() {
+        byte[] data = new byte[9];
+        VariableType.DOUBLE.put(data, 1, -0.125);
+        assertEquals(-0.125, VariableType.DOUBLE.parse(data, 1));
+        assertEquals(0, VariableType.DOUBLE.getLong(data, 1));
+    }
+
+    @Test
+    public void testFp16() {
+        assertEquals(0x3C00, VariableType.toHalf(1.0f));
+        assertEquals((short) 0xC000, VariableType.toHalf(-2.0f));
+        assertEquals(0x7BFF, VariableType.toHalf(65504f));
+        assertEquals(0x7C00, VariableType.toHalf(100000f));
+        assertEquals(0x0001, VariableType.toHalf(5.9604645E-8f));
+        assertEquals(0x3555, VariableType.toHalf(1 / 3f));
+        assertEquals(0, VariableType.toHalf(1E-10f));
+        assertTrue(Float.isNaN(VariableType.toFloat(VariableType.toHalf(Float.NaN))));
+
+        assertEquals(1.0f, VariableType.toFloat((short) 0x3C00), 0);
+        assertEquals(65504f, VariableType.toFloat((short) 0x7BFF), 0);
+        assertEquals(5.9604645E-8f, VariableType.toFloat((short) 0x0001), 0);
+        assertEquals(Float.NEGATIVE_INFINITY, VariableType.toFloat((short) 0xFC00), 0);
+
+        // all finite half values survive a round trip
+        for (int i = 0; i < 0x10000; i++) {
+            if ((i & 0x7C00) != 0x7C00) {
+                assertEquals(i, VariableType.toHalf(VariableType.toFloat((short) i)) & 0xFFFF);
+            }
+        }
+
+        byte[] data = new byte[2];
+        VariableType.FP16.put(data, 0, 1.5f);
+        assertArrayEquals(new byte[] {0, 0x3E}, data);
+        assertEquals(1.5f, VariableType.FP16.parse(data, 0));
+        assertEquals(1, VariableType.FP16.getLong(data, 0));
+    }
+
+    @Test
+    public void testBulkDecode() {
+        VariableType[] types = new VariableType[] {VariableType.UINT8_T, VariableType.INT16_T, VariableType.FLOAT, VariableType.FP16};
+        ByteBuffer buffer = ByteBuffer.allocate(12);
+        int index = 3;
+        for (VariableType type : types) {
+            type.put(buffer, index, -1.5f);
+            index += type.getSize();
+        }
+
+        double[] doubles = new double[types.length];
+        assertEquals(12, VariableType.decode(buffer, 3, types, doubles));
+        assertEquals(255, doubles[0], 0);
+        assertEquals(-1, doubles[1], 0);
+        assertEquals(-1.5, doubles[2], 0);
+        assertEquals(-1.5, doubles[3], 0);
+
+        long[] longs = new long[types.length];
+        assertEquals(12, VariableType.decode(buffer.array(), 3, types, longs));
+        assertEquals(255, longs[0]);
+        assertEquals(-1, longs[1]);
+        assertEquals(-1, longs[2]);
+        assertEquals(-1, longs[3]);
     }
 
 }